@@ -0,0 +1,400 @@
+package com.toolkit.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 原生下载引擎压力/长稳测试 (桌面 JVM)
+ * <p>
+ * 在本机启动 {@link FaultInjectingHttpServer}, 以 {@link JvmDownloadPlatform} 初始化 {@link DownloadBridge},
+ * 像 C# 端一样经 DownloadBridge 添加上千个下载任务、每帧批量查询并上报进度, 同时运行 {@link DownloadLockManager};
+ * 结束后输出吞吐、任务耗时分位数、内存峰值和通知发布频率, 未达标时以退出码 1 结束, 可直接放进 CI。
+ * </p>
+ * <p>
+ * 与 ManualMode 中真机上的 DownloadSoakTest 使用相同的故障模型和默认参数; 真机测试另外覆盖 Android 系统服务本身,
+ * 本测试覆盖引擎、控制通道、通知限频和锁管理器, 不需要设备或模拟器。
+ * </p>
+ * <p>
+ * 运行: Tests/Jvm~/run-download-load-test.sh [key=value ...], 参数见 {@link Options};
+ * 插件中不引用 android.* 的源文件与本目录一起用 javac 编译即可 (Java 8+)。
+ * </p>
+ */
+public final class DownloadLoadTest {
+
+    /**
+     * 测试参数, 命令行以 key=value 覆盖 (键名同字段名)
+     */
+    static final class Options {
+        // ---- 任务 ----
+        int smallFileCount = 2000;
+        int minSmallFileBytes = 4 * 1024;
+        int maxSmallFileBytes = 256 * 1024;
+        /** 分段下载的大文件, 用于覆盖 Range 续传和 ETag 校验 */
+        int largeFileCount = 8;
+        int largeFileBytes = 16 * 1024 * 1024;
+        int largeFileConnections = 4;
+
+        // ---- 通知 ----
+        /** 与业务层一样每帧上报批量进度, 检查通知合并限频 */
+        boolean pushProgressEveryFrame = true;
+        float maxNotificationsPerSecond = 2f;
+        /** 进度发往前台服务通知 (否则为独立通知) */
+        boolean foregroundService = false;
+        long frameMs = 16;
+
+        // ---- 通过条件 ----
+        double maxFailureRate = 0.01;
+        long timeoutSeconds = 600;
+
+        final FaultInjectingHttpServer.FaultProfile faults = new FaultInjectingHttpServer.FaultProfile();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq <= 0) throw new IllegalArgumentException("expected key=value: " + arg);
+                options._set(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+            return options;
+        }
+
+        private void _set(String key, String value) {
+            switch (key) {
+                case "smallFileCount": smallFileCount = Integer.parseInt(value); break;
+                case "minSmallFileBytes": minSmallFileBytes = Integer.parseInt(value); break;
+                case "maxSmallFileBytes": maxSmallFileBytes = Integer.parseInt(value); break;
+                case "largeFileCount": largeFileCount = Integer.parseInt(value); break;
+                case "largeFileBytes": largeFileBytes = Integer.parseInt(value); break;
+                case "largeFileConnections": largeFileConnections = Integer.parseInt(value); break;
+                case "pushProgressEveryFrame": pushProgressEveryFrame = Boolean.parseBoolean(value); break;
+                case "maxNotificationsPerSecond": maxNotificationsPerSecond = Float.parseFloat(value); break;
+                case "foregroundService": foregroundService = Boolean.parseBoolean(value); break;
+                case "frameMs": frameMs = Long.parseLong(value); break;
+                case "maxFailureRate": maxFailureRate = Double.parseDouble(value); break;
+                case "timeoutSeconds": timeoutSeconds = Long.parseLong(value); break;
+                case "maxLatencyMs": faults.maxLatencyMs = Integer.parseInt(value); break;
+                case "bandwidthBytesPerSecond": faults.bandwidthBytesPerSecond = Integer.parseInt(value); break;
+                case "resetRate": faults.resetRate = Double.parseDouble(value); break;
+                case "truncateRate": faults.truncateRate = Double.parseDouble(value); break;
+                case "wrongETagRate": faults.wrongETagRate = Double.parseDouble(value); break;
+                default: throw new IllegalArgumentException("unknown option: " + key);
+            }
+        }
+    }
+
+    private static final class Job {
+        final String url;
+        final String savePath;
+        final String md5;
+        final long size;
+
+        Job(String url, String savePath, String md5, long size) {
+            this.url = url;
+            this.savePath = savePath;
+            this.md5 = md5;
+            this.size = size;
+        }
+    }
+
+    private final Options _options;
+    private final FaultInjectingHttpServer _server;
+    private final DownloadEngine _engine = new DownloadEngine();
+    private final JvmDownloadPlatform _platform = new JvmDownloadPlatform(_engine);
+    private final DownloadLockManager _lockManager = new DownloadLockManager(_platform, _engine);
+    private File _workDir;
+
+    // ---- 任务跟踪 ----
+    private long[] _taskIds;
+    private long[] _finishNanos;
+    private int[] _finalStatus;
+    private int[] _finalError;
+    private final List<Integer> _unfinished = new ArrayList<>();
+
+    // ---- 指标 ----
+    private long _startNanos;
+    private long _totalBytes;
+    private long _peakJavaHeap;
+    private long _peakDirect;
+    private long[] _diagnosticsAtStart;
+
+    private DownloadLoadTest(Options options) {
+        _options = options;
+        _server = new FaultInjectingHttpServer(options.faults);
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean passed = new DownloadLoadTest(Options.parse(args)).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * @return 是否通过
+     */
+    boolean run() throws IOException, InterruptedException {
+        _server.start();
+        _workDir = Files.createTempDirectory("download_load").toFile();
+        try {
+            DownloadBridge.init(_platform);
+            DownloadBridge.setNotificationMaxRate(_options.maxNotificationsPerSecond);
+            _lockManager.start();
+            if (_options.foregroundService) DownloadBridge.startService("压测中", "准备中");
+
+            System.out.println("[DownloadLoad] 正在生成期望摘要...");
+            Job[] jobs = _prepare();
+            _enqueueAll(jobs);
+
+            long deadline = _startNanos + _options.timeoutSeconds * 1000000000L;
+            while (!_unfinished.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(_options.frameMs);
+                _sampleMemory();
+                _pollTasks();
+            }
+            return _finish();
+        } finally {
+            _lockManager.stop();
+            _server.close();
+            _platform.shutdown();
+            _deleteRecursively(_workDir);
+        }
+    }
+
+    // ---- 准备 ----
+
+    private Job[] _prepare() {
+        Random random = new Random(20261018);
+        int smallCount = _options.smallFileCount;
+        int minSize = _options.minSmallFileBytes;
+        int maxSize = Math.max(minSize, _options.maxSmallFileBytes);
+        Job[] jobs = new Job[smallCount + _options.largeFileCount];
+        for (int i = 0; i < jobs.length; i++) {
+            int size = i < smallCount ? minSize + random.nextInt(maxSize - minSize + 1) : _options.largeFileBytes;
+            jobs[i] = new Job(_server.urlFor(i, size), new File(_workDir, i + ".bin").getPath(),
+                    _computeMd5(i, size), size);
+        }
+        return jobs;
+    }
+
+    private static String _computeMd5(int seed, long size) {
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        for (long offset = 0; offset < size; offset += buffer.length) {
+            int count = (int) Math.min(buffer.length, size - offset);
+            FaultInjectingHttpServer.fill(seed, offset, buffer, count);
+            md5.update(buffer, 0, count);
+        }
+
+        StringBuilder hex = new StringBuilder(32);
+        for (byte b : md5.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 小文件一次批量添加, 大文件逐个以分段方式添加
+     */
+    private void _enqueueAll(Job[] jobs) {
+        int smallCount = _options.smallFileCount;
+        String[] urls = new String[smallCount];
+        String[] paths = new String[smallCount];
+        String[] hashes = new String[smallCount];
+        for (int i = 0; i < smallCount; i++) {
+            urls[i] = jobs[i].url;
+            paths[i] = jobs[i].savePath;
+            hashes[i] = jobs[i].md5;
+        }
+
+        _diagnosticsAtStart = DownloadBridge.getDiagnostics();
+        _taskIds = new long[jobs.length];
+        _finishNanos = new long[jobs.length];
+        _finalStatus = new int[jobs.length];
+        _finalError = new int[jobs.length];
+        _startNanos = System.nanoTime();
+
+        if (smallCount > 0) {
+            long[] smallIds = DownloadBridge.enqueueBatch(urls, paths, DownloadTask.PRIORITY_NORMAL, "md5", hashes);
+            System.arraycopy(smallIds, 0, _taskIds, 0, smallCount);
+        }
+        for (int i = smallCount; i < jobs.length; i++) {
+            _taskIds[i] = DownloadBridge.enqueueVerifiedDownload(jobs[i].url, jobs[i].savePath,
+                    _options.largeFileConnections, DownloadTask.PRIORITY_NORMAL, "md5", jobs[i].md5, 0, null);
+        }
+
+        _unfinished.clear();
+        _totalBytes = 0;
+        for (int i = 0; i < jobs.length; i++) {
+            _totalBytes += jobs[i].size;
+            _unfinished.add(i);
+        }
+        DownloadBridge.setBatchTitle("压测中");
+    }
+
+    // ---- 轮询 ----
+
+    private void _sampleMemory() {
+        long[] diagnostics = DownloadBridge.getDiagnostics();
+        _peakJavaHeap = Math.max(_peakJavaHeap, diagnostics[2]);
+        _peakDirect = Math.max(_peakDirect, diagnostics[3]);
+    }
+
+    /**
+     * 一次调用查询全部未结束任务, 结束的任务记录耗时并移出
+     */
+    private void _pollTasks() {
+        int count = _unfinished.size();
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) ids[i] = _taskIds[_unfinished.get(i)];
+
+        long[] state = DownloadBridge.queryDownloads(ids);
+        if (_options.pushProgressEveryFrame) {
+            long[] done = new long[count];
+            long[] total = new long[count];
+            for (int i = 0; i < count; i++) {
+                done[i] = state[i * 4 + 2];
+                total[i] = state[i * 4 + 3];
+            }
+            DownloadBridge.updateProgressBatch(ids, done, total);
+        }
+
+        long now = System.nanoTime();
+        for (int i = count - 1; i >= 0; i--) {
+            int status = (int) state[i * 4];
+            if (status != DownloadTask.STATUS_COMPLETED && status != DownloadTask.STATUS_FAILED
+                    && status != DownloadTask.STATUS_CANCELLED) continue;
+
+            int index = _unfinished.get(i);
+            _finishNanos[index] = now;
+            _finalStatus[index] = status;
+            _finalError[index] = (int) state[i * 4 + 1];
+            DownloadBridge.removeDownload(_taskIds[index]);
+            _unfinished.remove(i);
+        }
+    }
+
+    // ---- 报告 ----
+
+    private boolean _finish() {
+        DownloadBridge.clearProgressBatch();
+        if (_options.foregroundService) {
+            DownloadBridge.stopService();
+        } else {
+            DownloadBridge.hideNotification();
+        }
+
+        long endNanos = System.nanoTime();
+        float elapsed = (endNanos - _startNanos) / 1e9f;
+        int total = _taskIds.length;
+        float[] latencies = new float[total];
+        Map<String, Integer> failures = new LinkedHashMap<>();
+        int failed = 0;
+        for (int i = 0; i < total; i++) {
+            long finish = _finishNanos[i] != 0 ? _finishNanos[i] : endNanos;
+            latencies[i] = (finish - _startNanos) / 1e6f;
+            if (_finishNanos[i] != 0 && _finalStatus[i] == DownloadTask.STATUS_COMPLETED) continue;
+
+            failed++;
+            String key = _finishNanos[i] == 0 ? "未结束" : "error " + _finalError[i];
+            Integer n = failures.get(key);
+            failures.put(key, n == null ? 1 : n + 1);
+        }
+        Arrays.sort(latencies);
+
+        long[] diagnostics = DownloadBridge.getDiagnostics();
+        long submitted = diagnostics[0] - _diagnosticsAtStart[0];
+        long posted = diagnostics[1] - _diagnosticsAtStart[1];
+        float seconds = Math.max(elapsed, 0.001f);
+        float postRate = posted / seconds;
+        long[] stats = DownloadBridge.getStats();
+        long[] locks = DownloadBridge.getLockHoldTimes();
+
+        boolean failureOk = failed <= total * _options.maxFailureRate;
+        // 限频窗口外的最终状态补发最多多出一次
+        boolean notificationOk = _options.maxNotificationsPerSecond <= 0
+                || postRate <= _options.maxNotificationsPerSecond + 1f / Math.max(1f, elapsed);
+        boolean passed = failureOk && notificationOk;
+
+        StringBuilder report = new StringBuilder(1024);
+        report.append(passed ? "[DownloadLoad] 通过" : "[DownloadLoad] 未通过").append('\n');
+        report.append(String.format("任务: %d (小文件 %d, 大文件 %d), 失败 %d%s%n", total,
+                _options.smallFileCount, _options.largeFileCount, failed,
+                failureOk ? "" : String.format(" > 上限 %.1f%%", _options.maxFailureRate * 100)));
+        for (Map.Entry<String, Integer> entry : failures.entrySet()) {
+            report.append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        report.append(String.format("用时: %.1fs, 吞吐: %.2f MB/s%n", elapsed,
+                _totalBytes / seconds / (1024 * 1024)));
+        report.append(String.format("任务耗时: p50 %.0fms, p99 %.0fms, max %.0fms%n",
+                _percentile(latencies, 0.5), _percentile(latencies, 0.99), _percentile(latencies, 1)));
+        report.append(String.format("内存峰值: Java 堆 %dKB, 直接缓冲区 %dKB%n", _peakJavaHeap / 1024, _peakDirect / 1024));
+        report.append(String.format("通知: 提交 %d 次 (%.1f/s), 发布 %d 次 (%.2f/s)%s%n", submitted,
+                submitted / seconds, posted, postRate,
+                notificationOk ? "" : " > 上限 " + _options.maxNotificationsPerSecond + "/s"));
+        report.append(String.format("平台: 独立通知 %d 次, 服务通知 %d 次, 锁获取 %d 次, WakeLock %dms, WifiLock %dms%n",
+                _platform.notificationsShown.get(), _platform.serviceUpdates.get(), _platform.lockAcquires.get(),
+                locks[0], locks[1]));
+        report.append(String.format("引擎: 重试 %d, 请求 %d, 首字节 p99 %dms, 卡顿 %d 次%n",
+                stats[DownloadStats.IDX_RETRIES], stats[DownloadStats.IDX_CONNECTIONS_OPENED],
+                _histogramPercentile(stats, DownloadStats.HIST_TTFB, 0.99),
+                stats[_histogramOffset(DownloadStats.HIST_STALL)]));
+        report.append(String.format("服务器: 请求 %d, 连接 %d, 发送 %dKB, 重置 %d, 截断 %d, 错误 ETag %d",
+                _server.requests.get(), _server.connections.get(), _server.bytesServed.get() / 1024,
+                _server.resets.get(), _server.truncations.get(), _server.wrongETags.get()));
+
+        if (passed) {
+            System.out.println(report);
+        } else {
+            System.err.println(report);
+        }
+        return passed;
+    }
+
+    private static float _percentile(float[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(sorted.length * quantile) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static int _histogramOffset(int histogram) {
+        return DownloadStats.HEADER_SIZE + histogram * DownloadStats.HISTOGRAM_SIZE;
+    }
+
+    /**
+     * 直方图分位数, 取所在桶的上界 (毫秒), 布局见 {@link DownloadStats}
+     */
+    private static long _histogramPercentile(long[] stats, int histogram, double quantile) {
+        int offset = _histogramOffset(histogram);
+        long count = stats[offset];
+        if (count == 0) return 0;
+
+        long target = (long) Math.ceil(count * quantile);
+        long seen = 0;
+        for (int i = 0; i < DownloadStats.BUCKET_COUNT; i++) {
+            seen += stats[offset + 3 + i];
+            if (seen >= target) return i == DownloadStats.BUCKET_COUNT - 1 ? stats[offset + 2] : 1L << i;
+        }
+        return stats[offset + 2];
+    }
+
+    private static void _deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) _deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
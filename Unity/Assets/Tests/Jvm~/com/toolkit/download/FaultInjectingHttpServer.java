@@ -0,0 +1,363 @@
+package com.toolkit.download;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 注入故障的本地 HTTP/1.1 服务器, 供 {@link DownloadLoadTest} 压测原生下载引擎
+ * <p>
+ * 与 ManualMode 中 C# 版的 FaultInjectingHttpServer 行为一致: 支持 Range 和 keep-alive,
+ * 可注入延迟、带宽限制、连接重置、响应截断和错误 ETag。
+ * 路径 /blob/{seed}/{size} 返回由 seed 确定的 size 字节内容, 期望摘要可在本地算出, 不需要准备文件。
+ * </p>
+ * <p>每个连接一个线程, 仅用于测试</p>
+ */
+final class FaultInjectingHttpServer implements Closeable {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * 故障注入配置
+     * <p>各概率按请求独立抽取; 重置和截断在发送部分响应体后发生</p>
+     */
+    static final class FaultProfile {
+        /** 响应头前的随机延迟上限 (毫秒) */
+        int maxLatencyMs = 150;
+        /** 单连接带宽上限 (字节/秒), 0 表示不限 */
+        int bandwidthBytesPerSecond = 512 * 1024;
+        /** 发送部分响应体后以 RST 断开的概率 */
+        double resetRate = 0.02;
+        /** 发送部分响应体后正常关闭 (响应体短于 Content-Length) 的概率 */
+        double truncateRate = 0.02;
+        /** 返回与首次响应不同的 ETag 的概率 (内容不变, 用于触发校验器变化后的重下) */
+        double wrongETagRate = 0.01;
+    }
+
+    private final FaultProfile _faults;
+    private final AtomicInteger _connectionSeed = new AtomicInteger();
+    private ServerSocket _listener;
+    private volatile boolean _running;
+
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong connections = new AtomicLong();
+    final AtomicLong bytesServed = new AtomicLong();
+    final AtomicLong resets = new AtomicLong();
+    final AtomicLong truncations = new AtomicLong();
+    final AtomicLong wrongETags = new AtomicLong();
+
+    FaultInjectingHttpServer(FaultProfile faults) {
+        _faults = faults != null ? faults : new FaultProfile();
+    }
+
+    /**
+     * 在 127.0.0.1 的随机端口上启动
+     */
+    void start() throws IOException {
+        _listener = new ServerSocket(0, 256, InetAddress.getLoopbackAddress());
+        _running = true;
+        Thread accept = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                _acceptLoop();
+            }
+        }, "LoadServer-Accept");
+        accept.setDaemon(true);
+        accept.start();
+    }
+
+    /**
+     * 文件的下载地址
+     */
+    String urlFor(int seed, long size) {
+        return "http://127.0.0.1:" + _listener.getLocalPort() + "/blob/" + seed + "/" + size;
+    }
+
+    /**
+     * 生成内容的第 position 个字节 (与 urlFor 返回的文件内容一致)
+     */
+    static byte byteAt(int seed, long position) {
+        int x = seed * 0x9E3779B1 ^ (int) position * 0x85EBCA77 ^ (int) (position >> 32);
+        x ^= x >>> 15;
+        x *= 0x2C1B3C6D;
+        x ^= x >>> 12;
+        return (byte) x;
+    }
+
+    /**
+     * 填充生成内容的一段
+     */
+    static void fill(int seed, long position, byte[] buffer, int count) {
+        for (int i = 0; i < count; i++) {
+            buffer[i] = byteAt(seed, position + i);
+        }
+    }
+
+    @Override
+    public void close() {
+        _running = false;
+        try {
+            if (_listener != null) _listener.close();
+        } catch (IOException e) {
+            // 关闭监听失败不影响测试结果
+        }
+    }
+
+    // ---- 连接 ----
+
+    private void _acceptLoop() {
+        while (_running) {
+            final Socket client;
+            try {
+                client = _listener.accept();
+            } catch (IOException e) {
+                break;
+            }
+
+            connections.incrementAndGet();
+            final int seed = _connectionSeed.incrementAndGet();
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    _serve(client, seed);
+                }
+            }, "LoadServer-Conn");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 在一个 keep-alive 连接上依次处理请求, 注入故障后直接断开
+     */
+    private void _serve(Socket client, int seed) {
+        Random random = new Random(seed);
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try {
+            client.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = client.getOutputStream();
+            while (_running) {
+                Request request = _readRequest(in);
+                if (request == null) break;
+
+                requests.incrementAndGet();
+                if (!_respond(client, out, request, random, buffer)) break;
+                if (request.close) break;
+            }
+        } catch (IOException e) {
+            // 客户端断开或取消, 与真实服务器一样直接丢弃连接
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                client.close();
+            } catch (IOException e) {
+                // 已在关闭
+            }
+        }
+    }
+
+    /**
+     * @return 连接可以继续复用时返回 true
+     */
+    private boolean _respond(Socket client, OutputStream out, Request request, Random random, byte[] buffer)
+            throws IOException, InterruptedException {
+        long[] blob = _parseBlob(request.path);
+        if (blob == null) {
+            _writeHead(out, "404 Not Found", 0, null, null, request.close);
+            return true;
+        }
+        int fileSeed = (int) blob[0];
+        long size = blob[1];
+
+        // 多区间请求按 RFC 7233 忽略 Range, 返回完整内容
+        String range = request.range != null && request.range.indexOf(',') < 0 ? request.range : null;
+        long[] span = range != null ? _parseRange(range, size) : null;
+        if (range != null && span == null) {
+            _writeHead(out, "416 Range Not Satisfiable", 0, "bytes */" + size, null, request.close);
+            return true;
+        }
+        boolean partial = span != null;
+        long from = partial ? span[0] : 0;
+        long to = partial ? span[1] : size - 1;
+
+        if (_faults.maxLatencyMs > 0) {
+            Thread.sleep(random.nextInt(_faults.maxLatencyMs + 1));
+        }
+
+        String etag = "\"" + fileSeed + "-" + size + "\"";
+        if (random.nextDouble() < _faults.wrongETagRate) {
+            etag = "\"" + fileSeed + "-" + size + "-" + random.nextInt() + "\"";
+            wrongETags.incrementAndGet();
+        }
+
+        long length = to - from + 1;
+        _writeHead(out, partial ? "206 Partial Content" : "200 OK", length,
+                partial ? "bytes " + from + "-" + to + "/" + size : null, etag, request.close);
+        if (request.head) return true;
+
+        // 故障在响应体中途发生, 与真实网络的断流一致
+        long stopAt = length;
+        boolean reset = random.nextDouble() < _faults.resetRate;
+        boolean truncate = !reset && random.nextDouble() < _faults.truncateRate;
+        if (reset || truncate) stopAt = (long) (length * random.nextDouble() * 0.9);
+
+        long sent = 0;
+        long paceStart = System.nanoTime();
+        while (sent < stopAt) {
+            int count = (int) Math.min(buffer.length, stopAt - sent);
+            fill(fileSeed, from + sent, buffer, count);
+            out.write(buffer, 0, count);
+            sent += count;
+            bytesServed.addAndGet(count);
+
+            if (_faults.bandwidthBytesPerSecond > 0) {
+                long dueMs = sent * 1000 / _faults.bandwidthBytesPerSecond;
+                long waitMs = dueMs - (System.nanoTime() - paceStart) / 1000000L;
+                if (waitMs > 0) Thread.sleep(waitMs);
+            }
+        }
+        out.flush();
+
+        if (reset) {
+            resets.incrementAndGet();
+            client.setSoLinger(true, 0);
+            return false;
+        }
+        if (truncate) {
+            truncations.incrementAndGet();
+            client.shutdownOutput();
+            return false;
+        }
+        return true;
+    }
+
+    private static void _writeHead(OutputStream out, String status, long length, String contentRange,
+                                   String etag, boolean close) throws IOException {
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(status).append("\r\n");
+        head.append("Content-Length: ").append(length).append("\r\n");
+        head.append("Content-Type: application/octet-stream\r\n");
+        head.append("Accept-Ranges: bytes\r\n");
+        if (contentRange != null) head.append("Content-Range: ").append(contentRange).append("\r\n");
+        if (etag != null) head.append("ETag: ").append(etag).append("\r\n");
+        if (close) head.append("Connection: close\r\n");
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    // ---- 解析 ----
+
+    private static final class Request {
+        String path;
+        String range;
+        boolean head;
+        boolean close;
+    }
+
+    /**
+     * 读取请求行和请求头 (忽略请求体, 引擎只发 GET/HEAD)
+     *
+     * @return 连接已关闭时返回 null
+     */
+    private static Request _readRequest(InputStream in) throws IOException {
+        String line = _readLine(in);
+        if (line == null || line.isEmpty()) return null;
+
+        String[] parts = line.split(" ");
+        if (parts.length < 3) return null;
+
+        Request request = new Request();
+        request.head = parts[0].equals("HEAD");
+        request.path = parts[1];
+        request.close = parts[2].equals("HTTP/1.0");
+
+        while ((line = _readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) continue;
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Range")) {
+                request.range = value;
+            } else if (name.equalsIgnoreCase("Connection")) {
+                request.close = value.equalsIgnoreCase("close");
+            }
+        }
+        return line == null ? null : request;
+    }
+
+    /**
+     * @return 连接关闭时返回 null
+     */
+    private static String _readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        while (true) {
+            int b = in.read();
+            if (b < 0) return null;
+            if (b == '\n') break;
+            if (b != '\r') line.append((char) b);
+        }
+        return line.toString();
+    }
+
+    /**
+     * @return [seed, size], 路径不是 /blob/{seed}/{size} 时返回 null
+     */
+    private static long[] _parseBlob(String path) {
+        String[] parts = path.split("/");
+        if (parts.length != 4 || !parts[1].equals("blob")) return null;
+        try {
+            long seed = Integer.parseInt(parts[2]);
+            long size = Long.parseLong(parts[3]);
+            return size > 0 ? new long[]{seed, size} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析单个区间 "bytes=a-b" / "bytes=a-" / "bytes=-n"
+     *
+     * @return [from, to], 无法满足时返回 null
+     */
+    private static long[] _parseRange(String value, long size) {
+        if (!value.startsWith("bytes=")) return null;
+
+        String spec = value.substring(6);
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+
+        String first = spec.substring(0, dash);
+        String last = spec.substring(dash + 1);
+        try {
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) return null;
+                return new long[]{Math.max(0, size - suffix), size - 1};
+            }
+
+            long from = Long.parseLong(first);
+            if (from >= size) return null;
+            long to = size - 1;
+            if (!last.isEmpty()) {
+                to = Long.parseLong(last);
+                if (to < from) return null;
+                to = Math.min(to, size - 1);
+            }
+            return new long[]{from, to};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
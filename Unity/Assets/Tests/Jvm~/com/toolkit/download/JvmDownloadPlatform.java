@@ -0,0 +1,197 @@
+package com.toolkit.download;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 桌面 JVM 上的 {@link DownloadPlatform}
+ * <p>
+ * 单线程调度器代替 Android 主线程 (Handler 语义: removeCallbacks 取消该 Runnable 的全部挂起投递),
+ * 唤醒锁按到期时间在内存中模拟, 前台服务和通知只计数并记录最后一次内容。
+ * 控制通道始终是进程内的 {@link LocalDownloadControl}。
+ * </p>
+ */
+final class JvmDownloadPlatform implements DownloadPlatform {
+
+    private final DownloadEngine _engine;
+    private final long _startNanos = System.nanoTime();
+    private final ScheduledExecutorService _main;
+    private final Map<Runnable, List<ScheduledFuture<?>>> _posted = new IdentityHashMap<>();
+
+    // ---- 计数 ----
+    final AtomicLong notificationsShown = new AtomicLong();
+    final AtomicLong notificationsHidden = new AtomicLong();
+    final AtomicLong serviceStarts = new AtomicLong();
+    final AtomicLong serviceUpdates = new AtomicLong();
+    final AtomicLong serviceStops = new AtomicLong();
+    final AtomicLong lockAcquires = new AtomicLong();
+
+    private volatile boolean _serviceRunning;
+    private volatile String _lastContent;
+
+    JvmDownloadPlatform(DownloadEngine engine) {
+        _engine = engine;
+        _main = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jvm-main");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** 停止模拟主线程, 挂起的投递全部丢弃 */
+    void shutdown() {
+        _main.shutdownNow();
+    }
+
+    boolean isServiceRunning() {
+        return _serviceRunning;
+    }
+
+    /** 最后一次发布的通知内容 (独立通知或前台服务通知) */
+    String lastContent() {
+        return _lastContent;
+    }
+
+    // ---- 时钟与主线程 ----
+
+    @Override
+    public long elapsedRealtime() {
+        return (System.nanoTime() - _startNanos) / 1000000L;
+    }
+
+    @Override
+    public void postDelayed(final Runnable task, long delayMs) {
+        synchronized (_posted) {
+            final ScheduledFuture<?>[] self = new ScheduledFuture<?>[1];
+            self[0] = _main.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (_posted) {
+                        List<ScheduledFuture<?>> list = _posted.get(task);
+                        if (list != null && list.remove(self[0]) && list.isEmpty()) _posted.remove(task);
+                    }
+                    task.run();
+                }
+            }, Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+
+            List<ScheduledFuture<?>> list = _posted.get(task);
+            if (list == null) {
+                list = new ArrayList<>();
+                _posted.put(task, list);
+            }
+            list.add(self[0]);
+        }
+    }
+
+    @Override
+    public void removeCallbacks(Runnable task) {
+        synchronized (_posted) {
+            List<ScheduledFuture<?>> list = _posted.remove(task);
+            if (list == null) return;
+            for (ScheduledFuture<?> future : list) future.cancel(false);
+        }
+    }
+
+    // ---- 唤醒锁 ----
+
+    @Override
+    public Lock newWakeLock(String tag) {
+        return new MemoryLock();
+    }
+
+    @Override
+    public Lock newWifiLock(String tag) {
+        return new MemoryLock();
+    }
+
+    private final class MemoryLock implements Lock {
+        private boolean _held;
+        private long _expiresAt;
+
+        @Override
+        public synchronized void acquire(long timeoutMs) {
+            lockAcquires.incrementAndGet();
+            _held = true;
+            _expiresAt = timeoutMs > 0 ? elapsedRealtime() + timeoutMs : Long.MAX_VALUE;
+        }
+
+        @Override
+        public synchronized void release() {
+            _held = false;
+        }
+
+        @Override
+        public synchronized boolean isHeld() {
+            return _held && elapsedRealtime() < _expiresAt;
+        }
+    }
+
+    // ---- 引擎与前台服务 ----
+
+    @Override
+    public DownloadControl createControl() {
+        return new LocalDownloadControl(_engine, this);
+    }
+
+    @Override
+    public void startService(String title, String content, String iconName) {
+        serviceStarts.incrementAndGet();
+        _serviceRunning = true;
+        _lastContent = content;
+    }
+
+    @Override
+    public void updateService(String title, String content, int progress) {
+        serviceUpdates.incrementAndGet();
+        _lastContent = content;
+    }
+
+    @Override
+    public void stopService() {
+        serviceStops.incrementAndGet();
+        _serviceRunning = false;
+    }
+
+    // ---- 独立通知 ----
+
+    @Override
+    public void setSmallIconName(String iconName) {
+    }
+
+    @Override
+    public void showNotification(String title, String content, int progress) {
+        notificationsShown.incrementAndGet();
+        _lastContent = content;
+    }
+
+    @Override
+    public void hideNotification() {
+        notificationsHidden.incrementAndGet();
+    }
+
+    // ---- 诊断 ----
+
+    /**
+     * JVM 上没有 Native 堆统计, 以直接缓冲区 (引擎的读写缓冲) 的占用代替
+     */
+    @Override
+    public long nativeHeapBytes() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) return pool.getMemoryUsed();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,15 @@
+#!/bin/sh
+# 在桌面 JVM 上运行原生下载引擎的压力测试 (DownloadLoadTest), 参数为 key=value, 未通过时退出码为 1
+# 插件源码中引用 android.* 的文件 (服务、Binder、Android 平台实现) 不参与编译
+set -e
+
+HERE=$(cd "$(dirname "$0")" && pwd)
+PLUGIN="$HERE/../../UnityToolKit/Plugins/Download/Android"
+OUT="${OUT:-${TMPDIR:-/tmp}/download-load-test}"
+
+rm -rf "$OUT"
+mkdir -p "$OUT"
+javac -encoding UTF-8 -nowarn -d "$OUT" \
+    $(grep -L '^import android\.' "$PLUGIN"/*.java) \
+    "$HERE"/com/toolkit/download/*.java
+exec java -Dfile.encoding=UTF-8 -Dstdout.encoding=UTF-8 -Dsun.stdout.encoding=UTF-8 -cp "$OUT" com.toolkit.download.DownloadLoadTest "$@"
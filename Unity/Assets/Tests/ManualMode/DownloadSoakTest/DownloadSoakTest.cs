@@ -0,0 +1,384 @@
+/*
+ * datetime     : 2026/10/18
+ * description  : 原生下载引擎压力/长稳测试
+ *                在真机上启动注入故障的本地 HTTP 服务器, 经 AndroidDownloadHandler -> DownloadBridge
+ *                添加上千个下载任务, 统计吞吐、任务耗时分位数、内存峰值和通知发布频率
+ *
+ * 使用方式:
+ *   - 将组件挂到任意场景的 GameObject 上, 打包 Android (需包含 ManualModeTests 程序集) 后点击 "开始压测"
+ *   - 本地服务器为明文 HTTP, Player Settings 中需允许 HTTP 下载 (Allow downloads over HTTP)
+ *   - 结果同时输出到日志, 可用 adb logcat -s Unity 收集; 未通过时以 LogError 输出
+ *
+ * 覆盖范围:
+ *   - 本组件覆盖真机上的完整链路 (C# 封装、JNI、前台服务、系统通知), 只能手动运行
+ *   - 同样的负载和故障在桌面 JVM 上由 Tests/Jvm~/run-download-load-test.sh 驱动 (DownloadLoadTest),
+ *     不需要设备, 可进入 CI; 两边参数名和默认值一致
+ *   - 发版前或改动下载引擎 (分段、续传、重试、通知限频) 后应在真机上跑一轮
+ */
+
+using System;
+using System.Collections.Generic;
+using System.IO;
+using System.Security.Cryptography;
+using System.Text;
+using System.Threading.Tasks;
+using ToolKit.Tools.Network;
+using UnityEngine;
+using UnityToolKit.Plugins.Download;
+
+namespace Tests.DownloadSoakTest
+{
+    public class DownloadSoakTest : MonoBehaviour
+    {
+        [Header("任务")]
+        public int SmallFileCount = 2000;
+        public int MinSmallFileBytes = 4 * 1024;
+        public int MaxSmallFileBytes = 256 * 1024;
+        [Tooltip("分段下载的大文件, 用于覆盖 Range 续传和 ETag 校验")]
+        public int LargeFileCount = 8;
+        public int LargeFileBytes = 16 * 1024 * 1024;
+        public int LargeFileConnections = 4;
+
+        [Header("故障注入")]
+        public FaultProfile Faults = new FaultProfile();
+
+        [Header("通知")]
+        [Tooltip("与业务层一样每帧上报批量进度, 检查 Java 端合并限频")]
+        public bool PushProgressEveryFrame = true;
+        public float MaxNotificationsPerSecond = 2f;
+
+        [Header("通过条件")]
+        [Range(0, 1)] public float MaxFailureRate = 0.01f;
+        public bool AutoStart;
+
+        private readonly struct Job
+        {
+            public readonly string Url;
+            public readonly string SavePath;
+            public readonly string Md5;
+            public readonly int Size;
+
+            public Job(string url, string savePath, string md5, int size)
+            {
+                Url = url;
+                SavePath = savePath;
+                Md5 = md5;
+                Size = size;
+            }
+        }
+
+        private AndroidDownloadHandler _handler;
+        private FaultInjectingHttpServer _server;
+        private string _workDir;
+        private Task<Job[]> _prepare;
+        private bool _running;
+        private string _report = "等待开始";
+
+        // ---- 任务跟踪 ----
+        private long[] _taskIds;
+        private float[] _enqueueTime;
+        private float[] _finishTime;
+        private EDownloadStatus[] _finalStatus;
+        private EDownloadError[] _finalError;
+        private readonly List<int> _unfinished = new List<int>();
+        private long[] _queryIds = Array.Empty<long>();
+        private EDownloadStatus[] _queryStatus = Array.Empty<EDownloadStatus>();
+        private DownloadProgress[] _queryProgress = Array.Empty<DownloadProgress>();
+        private EDownloadError[] _queryError = Array.Empty<EDownloadError>();
+        private long[] _progressDone = Array.Empty<long>();
+        private long[] _progressTotal = Array.Empty<long>();
+
+        // ---- 指标 ----
+        private float _startTime;
+        private long _totalBytes;
+        private long _peakJavaHeap;
+        private long _peakNativeHeap;
+        private long _peakManagedHeap;
+        private NativeDiagnostics _diagnosticsAtStart;
+        private readonly NativeDownloadStats _stats = new NativeDownloadStats();
+
+        private void Start()
+        {
+            if (AutoStart) StartSoak();
+        }
+
+        private void OnDestroy()
+        {
+            _server?.Dispose();
+        }
+
+        private void OnGUI()
+        {
+            GUILayout.BeginArea(new Rect(20, 20, Screen.width - 40, Screen.height - 40));
+            GUI.enabled = !_running;
+            if (GUILayout.Button("开始压测", GUILayout.Height(80))) StartSoak();
+            GUI.enabled = true;
+            GUILayout.Label(_report);
+            GUILayout.EndArea();
+        }
+
+        #region Setup
+
+        private void StartSoak()
+        {
+#if UNITY_ANDROID && !UNITY_EDITOR
+            var config = new DownloadNotificationConfig
+            {
+                DisplayMode = ENotificationDisplayMode.Always,
+                MaxUpdatesPerSecond = MaxNotificationsPerSecond
+            };
+            _handler ??= (AndroidDownloadHandler)PlatformDownloadHandlerFactory.Create(config);
+
+            _server?.Dispose();
+            _server = new FaultInjectingHttpServer(Faults);
+            _server.Start();
+
+            _workDir = Path.Combine(Application.temporaryCachePath, "download_soak");
+            if (Directory.Exists(_workDir)) Directory.Delete(_workDir, true);
+            Directory.CreateDirectory(_workDir);
+
+            _running = true;
+            _report = "正在生成期望摘要...";
+
+            // 摘要按生成内容逐字节计算, 放在线程池里, 不卡主线程
+            var server = _server;
+            string workDir = _workDir;
+            int smallCount = SmallFileCount;
+            int minSize = MinSmallFileBytes;
+            int maxSize = Math.Max(MinSmallFileBytes, MaxSmallFileBytes);
+            int largeCount = LargeFileCount;
+            int largeSize = LargeFileBytes;
+            _prepare = Task.Run(() =>
+            {
+                var random = new System.Random(20261018);
+                var jobs = new Job[smallCount + largeCount];
+                for (int i = 0; i < jobs.Length; i++)
+                {
+                    int size = i < smallCount ? random.Next(minSize, maxSize + 1) : largeSize;
+                    jobs[i] = new Job(server.UrlFor(i, size), Path.Combine(workDir, $"{i}.bin"),
+                        ComputeMd5(i, size), size);
+                }
+                return jobs;
+            });
+#else
+            _report = "仅支持 Android 真机";
+#endif
+        }
+
+        private static string ComputeMd5(int seed, int size)
+        {
+            using (var md5 = MD5.Create())
+            {
+                var buffer = new byte[64 * 1024];
+                for (int offset = 0; offset < size; offset += buffer.Length)
+                {
+                    int count = Math.Min(buffer.Length, size - offset);
+                    FaultInjectingHttpServer.Fill(seed, offset, buffer, count);
+                    md5.TransformBlock(buffer, 0, count, null, 0);
+                }
+                md5.TransformFinalBlock(buffer, 0, 0);
+
+                var hex = new StringBuilder(32);
+                foreach (byte b in md5.Hash) hex.Append(b.ToString("x2"));
+                return hex.ToString();
+            }
+        }
+
+        /// <summary>
+        /// 小文件一次批量添加, 大文件逐个以分段方式添加
+        /// </summary>
+        private void EnqueueAll(Job[] jobs)
+        {
+            int smallCount = SmallFileCount;
+            var urls = new string[smallCount];
+            var paths = new string[smallCount];
+            var hashes = new string[smallCount];
+            for (int i = 0; i < smallCount; i++)
+            {
+                urls[i] = jobs[i].Url;
+                paths[i] = jobs[i].SavePath;
+                hashes[i] = jobs[i].Md5;
+            }
+
+            _handler.GetNativeDiagnostics(out _diagnosticsAtStart);
+            _peakJavaHeap = _peakNativeHeap = _peakManagedHeap = 0;
+            _totalBytes = 0;
+            _startTime = Time.realtimeSinceStartup;
+
+            _taskIds = new long[jobs.Length];
+            _enqueueTime = new float[jobs.Length];
+            _finishTime = new float[jobs.Length];
+            _finalStatus = new EDownloadStatus[jobs.Length];
+            _finalError = new EDownloadError[jobs.Length];
+
+            long[] smallIds = smallCount > 0
+                ? _handler.EnqueueNativeBatch(urls, paths, EDownloadPriority.Normal, "md5", hashes)
+                : Array.Empty<long>();
+            Array.Copy(smallIds, _taskIds, smallCount);
+            for (int i = smallCount; i < jobs.Length; i++)
+            {
+                _taskIds[i] = _handler.EnqueueVerifiedNativeDownload(jobs[i].Url, jobs[i].SavePath, "md5",
+                    jobs[i].Md5, LargeFileConnections);
+            }
+
+            float now = Time.realtimeSinceStartup;
+            _unfinished.Clear();
+            for (int i = 0; i < jobs.Length; i++)
+            {
+                _enqueueTime[i] = now;
+                _totalBytes += jobs[i].Size;
+                _unfinished.Add(i);
+            }
+            _handler.SetBatchProgressTitle("压测中");
+        }
+
+        #endregion
+
+        #region Polling
+
+        private void Update()
+        {
+            if (!_running) return;
+
+            if (_prepare != null)
+            {
+                if (!_prepare.IsCompleted) return;
+                var jobs = _prepare.Result;
+                _prepare = null;
+                EnqueueAll(jobs);
+            }
+
+            SampleMemory();
+            PollTasks();
+            if (_unfinished.Count == 0) Finish();
+            else _report = $"进行中: {_taskIds.Length - _unfinished.Count}/{_taskIds.Length}, "
+                           + $"用时 {Time.realtimeSinceStartup - _startTime:F1}s";
+        }
+
+        private void SampleMemory()
+        {
+            if (_handler.GetNativeDiagnostics(out var diagnostics))
+            {
+                _peakJavaHeap = Math.Max(_peakJavaHeap, diagnostics.JavaHeapBytes);
+                _peakNativeHeap = Math.Max(_peakNativeHeap, diagnostics.NativeHeapBytes);
+            }
+            _peakManagedHeap = Math.Max(_peakManagedHeap, GC.GetTotalMemory(false));
+        }
+
+        /// <summary>
+        /// 一次 JNI 调用查询全部未结束任务, 结束的任务记录耗时并移出
+        /// </summary>
+        private void PollTasks()
+        {
+            int count = _unfinished.Count;
+            if (_queryIds.Length != count)
+            {
+                _queryIds = new long[count];
+                _queryStatus = new EDownloadStatus[count];
+                _queryProgress = new DownloadProgress[count];
+                _queryError = new EDownloadError[count];
+                _progressDone = new long[count];
+                _progressTotal = new long[count];
+            }
+            for (int i = 0; i < count; i++) _queryIds[i] = _taskIds[_unfinished[i]];
+
+            if (!_handler.QueryNativeDownloads(_queryIds, _queryStatus, _queryProgress, _queryError)) return;
+
+            if (PushProgressEveryFrame)
+            {
+                for (int i = 0; i < count; i++)
+                {
+                    _progressDone[i] = _queryProgress[i].BytesDownloaded;
+                    _progressTotal[i] = _queryProgress[i].TotalBytes;
+                }
+                _handler.ShowBatchProgress(_queryIds, _progressDone, _progressTotal);
+            }
+
+            float now = Time.realtimeSinceStartup;
+            for (int i = count - 1; i >= 0; i--)
+            {
+                var status = _queryStatus[i];
+                if (status != EDownloadStatus.Completed && status != EDownloadStatus.Failed
+                                                         && status != EDownloadStatus.Cancelled) continue;
+
+                int index = _unfinished[i];
+                _finishTime[index] = now;
+                _finalStatus[index] = status;
+                _finalError[index] = _queryError[i];
+                _handler.RemoveNativeDownload(_taskIds[index]);
+                _unfinished.RemoveAt(i);
+            }
+        }
+
+        #endregion
+
+        #region Report
+
+        private void Finish()
+        {
+            _running = false;
+            _handler.ClearBatchProgress();
+            _handler.HideNotification();
+
+            float elapsed = Time.realtimeSinceStartup - _startTime;
+            int total = _taskIds.Length;
+            var latencies = new float[total];
+            var failures = new Dictionary<EDownloadError, int>();
+            int failed = 0;
+            for (int i = 0; i < total; i++)
+            {
+                latencies[i] = (_finishTime[i] - _enqueueTime[i]) * 1000f;
+                if (_finalStatus[i] == EDownloadStatus.Completed) continue;
+                failed++;
+                failures.TryGetValue(_finalError[i], out int n);
+                failures[_finalError[i]] = n + 1;
+            }
+            Array.Sort(latencies);
+
+            _handler.GetNativeDiagnostics(out var diagnostics);
+            long submitted = diagnostics.NotificationsSubmitted - _diagnosticsAtStart.NotificationsSubmitted;
+            long posted = diagnostics.NotificationsPosted - _diagnosticsAtStart.NotificationsPosted;
+            float postRate = elapsed > 0 ? posted / elapsed : 0;
+            _handler.GetNativeStats(_stats);
+
+            bool failureOk = failed <= total * MaxFailureRate;
+            // 限频窗口外的最终状态补发最多多出一次
+            bool notificationOk = MaxNotificationsPerSecond <= 0 || postRate <= MaxNotificationsPerSecond + 1f / Math.Max(1f, elapsed);
+            bool passed = failureOk && notificationOk;
+
+            var report = new StringBuilder(1024);
+            report.AppendLine(passed ? "[DownloadSoak] 通过" : "[DownloadSoak] 未通过");
+            report.AppendLine($"任务: {total} (小文件 {SmallFileCount}, 大文件 {LargeFileCount}), 失败 {failed}"
+                              + (failureOk ? "" : $" > 上限 {MaxFailureRate:P1}"));
+            foreach (var pair in failures) report.AppendLine($"  {pair.Key}: {pair.Value}");
+            report.AppendLine($"用时: {elapsed:F1}s, 吞吐: {_totalBytes / Math.Max(elapsed, 0.001f) / (1024 * 1024):F2} MB/s");
+            report.AppendLine($"任务耗时: p50 {Percentile(latencies, 0.5):F0}ms, p99 {Percentile(latencies, 0.99):F0}ms, "
+                              + $"max {Percentile(latencies, 1):F0}ms");
+            report.AppendLine($"内存峰值: Java 堆 {_peakJavaHeap / 1024}KB, Native 堆 {_peakNativeHeap / 1024}KB, "
+                              + $"托管堆 {_peakManagedHeap / 1024}KB");
+            report.AppendLine($"通知: 提交 {submitted} 次 ({submitted / Math.Max(elapsed, 0.001f):F1}/s), "
+                              + $"发布 {posted} 次 ({postRate:F2}/s)" + (notificationOk ? "" : $" > 上限 {MaxNotificationsPerSecond}/s"));
+            report.AppendLine($"引擎: 重试 {_stats.Retries}, 请求 {_stats.ConnectionsOpened}, "
+                              + $"首字节 p99 {_stats.TimeToFirstByte.Percentile(0.99)}ms, 卡顿 {_stats.Stall.Count} 次");
+            report.AppendLine($"服务器: 请求 {_server.Requests}, 连接 {_server.Connections}, 发送 {_server.BytesServed / 1024}KB, "
+                              + $"重置 {_server.Resets}, 截断 {_server.Truncations}, 错误 ETag {_server.WrongETags}");
+
+            _report = report.ToString();
+            if (passed) Debug.Log(_report);
+            else Debug.LogError(_report);
+
+            _server.Dispose();
+            _server = null;
+            if (Directory.Exists(_workDir)) Directory.Delete(_workDir, true);
+        }
+
+        private static float Percentile(float[] sorted, double quantile)
+        {
+            if (sorted.Length == 0) return 0;
+            int index = (int)Math.Ceiling(sorted.Length * quantile) - 1;
+            return sorted[Math.Max(0, Math.Min(sorted.Length - 1, index))];
+        }
+
+        #endregion
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * datetime     : 2026/10/18
+ * description  : 注入故障的本地 HTTP 服务器, 供 DownloadSoakTest 压测原生下载引擎
+ *                支持 Range 和 keep-alive, 可注入延迟、带宽限制、连接重置、响应截断和错误 ETag
+ */
+
+using System;
+using System.IO;
+using System.Net;
+using System.Net.Sockets;
+using System.Text;
+using System.Threading;
+using UnityEngine;
+
+namespace Tests.DownloadSoakTest
+{
+    /// <summary>
+    /// 故障注入配置
+    /// <para>各概率按请求独立抽取; 重置和截断在发送部分响应体后发生</para>
+    /// </summary>
+    [Serializable]
+    public class FaultProfile
+    {
+        /// <summary> 响应头前的随机延迟上限 (毫秒) </summary>
+        public int MaxLatencyMs = 150;
+
+        /// <summary> 单连接带宽上限 (字节/秒), 0 表示不限 </summary>
+        public int BandwidthBytesPerSecond = 512 * 1024;
+
+        /// <summary> 发送部分响应体后以 RST 断开的概率 </summary>
+        [Range(0, 1)] public float ResetRate = 0.02f;
+
+        /// <summary> 发送部分响应体后正常关闭 (响应体短于 Content-Length) 的概率 </summary>
+        [Range(0, 1)] public float TruncateRate = 0.02f;
+
+        /// <summary> 返回与首次响应不同的 ETag 的概率 (内容不变, 用于触发校验器变化后的重下) </summary>
+        [Range(0, 1)] public float WrongETagRate = 0.01f;
+    }
+
+    /// <summary>
+    /// 注入故障的本地 HTTP/1.1 服务器
+    /// <para>路径 /blob/{seed}/{size} 返回由 seed 确定的 size 字节内容, 期望摘要可在本地算出, 不需要准备文件</para>
+    /// <para>每个连接一个线程, 仅用于测试</para>
+    /// </summary>
+    public sealed class FaultInjectingHttpServer : IDisposable
+    {
+        private const int ChunkSize = 16 * 1024;
+
+        private readonly FaultProfile _faults;
+        private TcpListener _listener;
+        private Thread _acceptThread;
+        private volatile bool _running;
+        private int _connectionSeed;
+
+        private long _requests;
+        private long _connections;
+        private long _bytesServed;
+        private long _resets;
+        private long _truncations;
+        private long _wrongETags;
+
+        public FaultInjectingHttpServer(FaultProfile faults)
+        {
+            _faults = faults ?? new FaultProfile();
+        }
+
+        #region Properties
+
+        /// <summary> 监听端口 (启动后有效) </summary>
+        public int Port { get; private set; }
+
+        public long Requests => Interlocked.Read(ref _requests);
+        public long Connections => Interlocked.Read(ref _connections);
+        public long BytesServed => Interlocked.Read(ref _bytesServed);
+        public long Resets => Interlocked.Read(ref _resets);
+        public long Truncations => Interlocked.Read(ref _truncations);
+        public long WrongETags => Interlocked.Read(ref _wrongETags);
+
+        #endregion
+
+        #region Public Methods
+
+        /// <summary>
+        /// 在 127.0.0.1 的随机端口上启动
+        /// </summary>
+        public void Start()
+        {
+            _listener = new TcpListener(IPAddress.Loopback, 0);
+            _listener.Start(256);
+            Port = ((IPEndPoint)_listener.LocalEndpoint).Port;
+            _running = true;
+            _acceptThread = new Thread(AcceptLoop) { IsBackground = true, Name = "SoakServer-Accept" };
+            _acceptThread.Start();
+        }
+
+        /// <summary>
+        /// 文件的下载地址
+        /// </summary>
+        public string UrlFor(int seed, int size)
+        {
+            return $"http://127.0.0.1:{Port}/blob/{seed}/{size}";
+        }
+
+        /// <summary>
+        /// 生成内容的第 position 个字节 (与 UrlFor 返回的文件内容一致)
+        /// </summary>
+        public static byte ByteAt(int seed, long position)
+        {
+            uint x = (uint)seed * 0x9E3779B1u ^ (uint)position * 0x85EBCA77u ^ (uint)(position >> 32);
+            x ^= x >> 15;
+            x *= 0x2C1B3C6Du;
+            x ^= x >> 12;
+            return (byte)x;
+        }
+
+        /// <summary>
+        /// 填充生成内容的一段
+        /// </summary>
+        public static void Fill(int seed, long position, byte[] buffer, int count)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                buffer[i] = ByteAt(seed, position + i);
+            }
+        }
+
+        public void Dispose()
+        {
+            _running = false;
+            try
+            {
+                _listener?.Stop();
+            }
+            catch (SocketException)
+            {
+            }
+        }
+
+        #endregion
+
+        #region Connection
+
+        private void AcceptLoop()
+        {
+            while (_running)
+            {
+                TcpClient client;
+                try
+                {
+                    client = _listener.AcceptTcpClient();
+                }
+                catch (SocketException)
+                {
+                    break;
+                }
+                catch (ObjectDisposedException)
+                {
+                    break;
+                }
+
+                Interlocked.Increment(ref _connections);
+                int seed = Interlocked.Increment(ref _connectionSeed);
+                var thread = new Thread(() => Serve(client, seed)) { IsBackground = true, Name = "SoakServer-Conn" };
+                thread.Start();
+            }
+        }
+
+        /// <summary>
+        /// 在一个 keep-alive 连接上依次处理请求, 注入故障后直接断开
+        /// </summary>
+        private void Serve(TcpClient client, int seed)
+        {
+            var random = new System.Random(seed);
+            var buffer = new byte[ChunkSize];
+            try
+            {
+                client.NoDelay = true;
+                var stream = client.GetStream();
+                while (_running)
+                {
+                    var request = ReadRequest(stream);
+                    if (request == null) break;
+
+                    Interlocked.Increment(ref _requests);
+                    if (!Respond(client, stream, request, random, buffer)) break;
+                    if (request.Close) break;
+                }
+            }
+            catch (IOException)
+            {
+            }
+            catch (SocketException)
+            {
+            }
+            catch (ObjectDisposedException)
+            {
+            }
+            finally
+            {
+                client.Close();
+            }
+        }
+
+        /// <returns>连接可以继续复用时返回 true</returns>
+        private bool Respond(TcpClient client, NetworkStream stream, Request request, System.Random random, byte[] buffer)
+        {
+            if (!TryParseBlob(request.Path, out int fileSeed, out long size))
+            {
+                WriteHead(stream, "404 Not Found", 0, null, null, request.Close);
+                return true;
+            }
+
+            // 多区间请求按 RFC 7233 忽略 Range, 返回完整内容
+            string range = request.Range != null && request.Range.IndexOf(',') < 0 ? request.Range : null;
+            long from = 0;
+            long to = size - 1;
+            bool partial = range != null && TryParseRange(range, size, out from, out to);
+            if (range != null && !partial)
+            {
+                WriteHead(stream, "416 Range Not Satisfiable", 0, $"bytes */{size}", null, request.Close);
+                return true;
+            }
+
+            if (_faults.MaxLatencyMs > 0)
+            {
+                Thread.Sleep(random.Next(_faults.MaxLatencyMs + 1));
+            }
+
+            string etag = $"\"{fileSeed}-{size}\"";
+            if (random.NextDouble() < _faults.WrongETagRate)
+            {
+                etag = $"\"{fileSeed}-{size}-{random.Next()}\"";
+                Interlocked.Increment(ref _wrongETags);
+            }
+
+            long length = to - from + 1;
+            WriteHead(stream, partial ? "206 Partial Content" : "200 OK", length,
+                partial ? $"bytes {from}-{to}/{size}" : null, etag, request.Close);
+            if (request.Head) return true;
+
+            // 故障在响应体中途发生, 与真实网络的断流一致
+            long stopAt = length;
+            bool reset = random.NextDouble() < _faults.ResetRate;
+            bool truncate = !reset && random.NextDouble() < _faults.TruncateRate;
+            if (reset || truncate) stopAt = (long)(length * random.NextDouble() * 0.9);
+
+            long sent = 0;
+            var pace = System.Diagnostics.Stopwatch.StartNew();
+            while (sent < stopAt)
+            {
+                int count = (int)Math.Min(buffer.Length, stopAt - sent);
+                Fill(fileSeed, from + sent, buffer, count);
+                stream.Write(buffer, 0, count);
+                sent += count;
+                Interlocked.Add(ref _bytesServed, count);
+
+                if (_faults.BandwidthBytesPerSecond > 0)
+                {
+                    long dueMs = sent * 1000 / _faults.BandwidthBytesPerSecond;
+                    long waitMs = dueMs - pace.ElapsedMilliseconds;
+                    if (waitMs > 0) Thread.Sleep((int)waitMs);
+                }
+            }
+
+            if (reset)
+            {
+                Interlocked.Increment(ref _resets);
+                client.Client.LingerState = new LingerOption(true, 0);
+                return false;
+            }
+            if (truncate)
+            {
+                Interlocked.Increment(ref _truncations);
+                client.Client.Shutdown(SocketShutdown.Send);
+                return false;
+            }
+            return true;
+        }
+
+        private static void WriteHead(NetworkStream stream, string status, long length, string contentRange,
+            string etag, bool close)
+        {
+            var head = new StringBuilder(256);
+            head.Append("HTTP/1.1 ").Append(status).Append("\r\n");
+            head.Append("Content-Length: ").Append(length).Append("\r\n");
+            head.Append("Content-Type: application/octet-stream\r\n");
+            head.Append("Accept-Ranges: bytes\r\n");
+            if (contentRange != null) head.Append("Content-Range: ").Append(contentRange).Append("\r\n");
+            if (etag != null) head.Append("ETag: ").Append(etag).Append("\r\n");
+            if (close) head.Append("Connection: close\r\n");
+            head.Append("\r\n");
+
+            byte[] bytes = Encoding.ASCII.GetBytes(head.ToString());
+            stream.Write(bytes, 0, bytes.Length);
+        }
+
+        #endregion
+
+        #region Parsing
+
+        private sealed class Request
+        {
+            public string Path;
+            public string Range;
+            public bool Head;
+            public bool Close;
+        }
+
+        /// <summary>
+        /// 读取请求行和请求头 (忽略请求体, 引擎只发 GET/HEAD)
+        /// </summary>
+        /// <returns>连接已关闭时返回 null</returns>
+        private static Request ReadRequest(NetworkStream stream)
+        {
+            string line = ReadLine(stream);
+            if (string.IsNullOrEmpty(line)) return null;
+
+            string[] parts = line.Split(' ');
+            if (parts.Length < 3) return null;
+
+            var request = new Request
+            {
+                Head = parts[0] == "HEAD",
+                Path = parts[1],
+                Close = parts[2] == "HTTP/1.0"
+            };
+
+            while (!string.IsNullOrEmpty(line = ReadLine(stream)))
+            {
+                int colon = line.IndexOf(':');
+                if (colon <= 0) continue;
+                string name = line.Substring(0, colon).Trim();
+                string value = line.Substring(colon + 1).Trim();
+                if (name.Equals("Range", StringComparison.OrdinalIgnoreCase))
+                {
+                    request.Range = value;
+                }
+                else if (name.Equals("Connection", StringComparison.OrdinalIgnoreCase))
+                {
+                    request.Close = value.Equals("close", StringComparison.OrdinalIgnoreCase);
+                }
+            }
+            return line == null ? null : request;
+        }
+
+        /// <returns>连接关闭时返回 null</returns>
+        private static string ReadLine(NetworkStream stream)
+        {
+            var line = new StringBuilder(64);
+            while (true)
+            {
+                int b = stream.ReadByte();
+                if (b < 0) return null;
+                if (b == '\n') break;
+                if (b != '\r') line.Append((char)b);
+            }
+            return line.ToString();
+        }
+
+        private static bool TryParseBlob(string path, out int seed, out long size)
+        {
+            seed = 0;
+            size = 0;
+            string[] parts = path.Split('/');
+            return parts.Length == 4 && parts[1] == "blob"
+                                     && int.TryParse(parts[2], out seed)
+                                     && long.TryParse(parts[3], out size) && size > 0;
+        }
+
+        /// <summary>
+        /// 解析单个区间 "bytes=a-b" / "bytes=a-" / "bytes=-n"
+        /// </summary>
+        private static bool TryParseRange(string value, long size, out long from, out long to)
+        {
+            from = 0;
+            to = size - 1;
+            if (!value.StartsWith("bytes=")) return false;
+
+            string spec = value.Substring(6);
+            int dash = spec.IndexOf('-');
+            if (dash < 0) return false;
+
+            string first = spec.Substring(0, dash);
+            string last = spec.Substring(dash + 1);
+            if (first.Length == 0)
+            {
+                if (!long.TryParse(last, out long suffix) || suffix <= 0) return false;
+                from = Math.Max(0, size - suffix);
+                return true;
+            }
+
+            if (!long.TryParse(first, out from) || from >= size) return false;
+            if (last.Length > 0)
+            {
+                if (!long.TryParse(last, out to) || to < from) return false;
+                to = Math.Min(to, size - 1);
+            }
+            return true;
+        }
+
+        #endregion
+    }
+}
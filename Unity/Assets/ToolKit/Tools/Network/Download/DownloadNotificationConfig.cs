@@ -32,5 +32,12 @@ namespace ToolKit.Tools.Network
         /// <para>iOS: 不适用, 始终使用 App 图标</para>
         /// </summary>
         public string SmallIconName { get; set; }
+
+        /// <summary>
+        /// 通知栏每秒最多刷新次数
+        /// <para>Android: 内容未变化的更新直接丢弃, 超频的更新合并为最新一次延后发布; 小于等于 0 表示不限频</para>
+        /// <para>iOS: 不适用</para>
+        /// </summary>
+        public float MaxUpdatesPerSecond { get; set; } = 2f;
     }
 }
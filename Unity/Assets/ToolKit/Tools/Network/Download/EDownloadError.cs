@@ -30,6 +30,12 @@ namespace ToolKit.Tools.Network
         Cancelled,
 
         /// <summary> 操作超时 (连接超时或读取超时) </summary>
-        Timeout
+        Timeout,
+
+        /// <summary> 完整性校验失败 (文件摘要与期望值不符) </summary>
+        Integrity,
+
+        /// <summary> 内容格式无效 (补丁或归档损坏、格式不符), 重新下载同一内容无法恢复, 不会自动重试 </summary>
+        Corrupt
     }
 }
@@ -0,0 +1,23 @@
+/*
+ * datetime     : 2026/10/18
+ * description  : 原生下载优先级枚举定义
+ */
+
+namespace ToolKit.Tools.Network
+{
+    /// <summary>
+    /// 原生下载任务优先级
+    /// <para>数值越大越优先, 并发已满时高优先级任务会抢占低优先级任务 (被抢占的任务保留已下载分段)</para>
+    /// </summary>
+    public enum EDownloadPriority
+    {
+        /// <summary> 后台预取 </summary>
+        Background,
+
+        /// <summary> 普通 </summary>
+        Normal,
+
+        /// <summary> 关键 (如启动必需的资源包) </summary>
+        Critical
+    }
+}
@@ -0,0 +1,305 @@
+package com.toolkit.download;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+/**
+ * {@link DownloadPlatform} 的 Android 实现
+ * <p>
+ * 同时是 C# 端的初始化入口 ({@link #install}): 创建通知渠道, 按服务声明的进程选择控制通道后交给 {@link DownloadBridge}。
+ * 前台服务也用本类构建通知, 图标、点击意图和独立通知的 Builder 均会缓存, 避免每次更新都做资源查找和对象创建。
+ * </p>
+ */
+public final class AndroidDownloadPlatform implements DownloadPlatform {
+
+    static final String CHANNEL_ID = "toolkit_download_channel";
+    private static final int STANDALONE_NOTIFICATION_ID = 19901;
+
+    private final Context _context;
+    private final NotificationManager _notificationManager;
+    private final Handler _mainHandler = new Handler(Looper.getMainLooper());
+
+    private String _smallIconName;
+    private int _smallIconId;
+    private PendingIntent _contentIntent;
+    private boolean _contentIntentResolved;
+    private Notification.Builder _standaloneBuilder;
+
+    AndroidDownloadPlatform(Context context) {
+        _context = context.getApplicationContext();
+        _notificationManager = (NotificationManager)
+                _context.getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+
+    /**
+     * 初始化下载模块 (由 C# 端调用, 传入 UnityPlayer.currentActivity)
+     * <p>同时加载下载日志 (上次进程被杀死时未完成的原生下载任务会自动续传)、DNS 记录和 TLS 会话缓存</p>
+     * <p>服务声明在独立进程时绑定服务, 引擎和日志只在服务进程中创建</p>
+     */
+    public static void install(Context context) {
+        AndroidDownloadPlatform platform = new AndroidDownloadPlatform(context);
+        platform._createNotificationChannel();
+        DownloadBridge.init(platform);
+    }
+
+    // ---- 时钟与主线程 ----
+
+    @Override
+    public long elapsedRealtime() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        _mainHandler.postDelayed(task, delayMs);
+    }
+
+    @Override
+    public void removeCallbacks(Runnable task) {
+        _mainHandler.removeCallbacks(task);
+    }
+
+    // ---- 唤醒锁 ----
+
+    @Override
+    public Lock newWakeLock(String tag) {
+        PowerManager pm = (PowerManager) _context.getSystemService(Context.POWER_SERVICE);
+        if (pm == null) return null;
+
+        final PowerManager.WakeLock lock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, tag);
+        lock.setReferenceCounted(false);
+        return new Lock() {
+            @Override
+            public void acquire(long timeoutMs) {
+                if (timeoutMs > 0) {
+                    lock.acquire(timeoutMs);
+                } else {
+                    lock.acquire();
+                }
+            }
+
+            @Override
+            public void release() {
+                lock.release();
+            }
+
+            @Override
+            public boolean isHeld() {
+                return lock.isHeld();
+            }
+        };
+    }
+
+    @Override
+    public Lock newWifiLock(String tag) {
+        WifiManager wm = (WifiManager) _context.getSystemService(Context.WIFI_SERVICE);
+        if (wm == null) return null;
+
+        final WifiManager.WifiLock lock = wm.createWifiLock(WifiManager.WIFI_MODE_FULL_HIGH_PERF, tag);
+        lock.setReferenceCounted(false);
+        return new Lock() {
+            @Override
+            public void acquire(long timeoutMs) {
+                // WifiLock 没有超时, 由锁管理器在空闲时释放
+                lock.acquire();
+            }
+
+            @Override
+            public void release() {
+                lock.release();
+            }
+
+            @Override
+            public boolean isHeld() {
+                return lock.isHeld();
+            }
+        };
+    }
+
+    // ---- 引擎与前台服务 ----
+
+    @Override
+    public DownloadControl createControl() {
+        if (RemoteDownloadControl.isServiceRemote(_context)) {
+            return RemoteDownloadControl.bind(_context);
+        }
+        DownloadForegroundService.enablePersistence(_context);
+        return new LocalDownloadControl(DownloadForegroundService.getEngine(), this);
+    }
+
+    @Override
+    public void startService(String title, String content, String iconName) {
+        Intent intent = new Intent(_context, DownloadForegroundService.class);
+        intent.putExtra("action", "start");
+        intent.putExtra("title", title);
+        intent.putExtra("content", content);
+        // 独立进程中的服务读不到本进程设置的图标名
+        intent.putExtra("icon", iconName);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            _context.startForegroundService(intent);
+        } else {
+            _context.startService(intent);
+        }
+    }
+
+    /**
+     * 服务已进入前台时直接调用实例方法, 仅在启动尚未完成时回退到 Intent
+     */
+    @Override
+    public void updateService(String title, String content, int progress) {
+        DownloadForegroundService service = DownloadForegroundService.getForegroundInstance();
+        if (service != null) {
+            service.updateDirect(title, content, progress);
+            return;
+        }
+
+        Intent intent = new Intent(_context, DownloadForegroundService.class);
+        intent.putExtra("action", "update");
+        intent.putExtra("title", title);
+        intent.putExtra("content", content);
+        intent.putExtra("progress", progress);
+        _context.startService(intent);
+    }
+
+    @Override
+    public void stopService() {
+        DownloadForegroundService service = DownloadForegroundService.getForegroundInstance();
+        if (service != null) {
+            service.stopDirect();
+            return;
+        }
+
+        Intent intent = new Intent(_context, DownloadForegroundService.class);
+        intent.putExtra("action", "stop");
+        _context.startService(intent);
+    }
+
+    // ---- 独立通知 (前台 DisplayMode.Always 场景) ----
+
+    @Override
+    public synchronized void setSmallIconName(String iconName) {
+        _smallIconName = iconName;
+        _smallIconId = 0;
+        _standaloneBuilder = null;
+    }
+
+    /**
+     * 发布独立通知, 复用缓存的 Builder
+     */
+    @Override
+    public synchronized void showNotification(String title, String content, int progress) {
+        if (_notificationManager == null) return;
+
+        Notification.Builder builder = _standaloneBuilder;
+        if (builder == null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                builder = new Notification.Builder(_context, CHANNEL_ID);
+            } else {
+                builder = new Notification.Builder(_context);
+            }
+            builder.setSmallIcon(smallIcon())
+                    .setOngoing(true)
+                    .setOnlyAlertOnce(true);
+
+            // 点击通知打开 App
+            PendingIntent contentIntent = contentIntent();
+            if (contentIntent != null) {
+                builder.setContentIntent(contentIntent);
+            }
+            _standaloneBuilder = builder;
+        }
+
+        builder.setContentTitle(title)
+                .setContentText(content)
+                .setProgress(100, progress, false);
+
+        _notificationManager.notify(STANDALONE_NOTIFICATION_ID, builder.build());
+    }
+
+    @Override
+    public void hideNotification() {
+        if (_notificationManager == null) return;
+        _notificationManager.cancel(STANDALONE_NOTIFICATION_ID);
+    }
+
+    // ---- 诊断 ----
+
+    @Override
+    public long nativeHeapBytes() {
+        return Debug.getNativeHeapAllocatedSize();
+    }
+
+    // ---- 通知资源 (前台服务共用) ----
+
+    /**
+     * 解析通知小图标资源 ID
+     * <p>优先使用自定义图标名, 回退到系统默认下载图标; 结果会缓存, 避免重复 getIdentifier 查找</p>
+     */
+    synchronized int smallIcon() {
+        if (_smallIconId != 0) return _smallIconId;
+
+        int resId = 0;
+        if (_smallIconName != null) {
+            resId = _context.getResources().getIdentifier(
+                    _smallIconName, "drawable", _context.getPackageName());
+        }
+        if (resId == 0) resId = android.R.drawable.stat_sys_download;
+        _smallIconId = resId;
+        return resId;
+    }
+
+    /**
+     * 获取点击通知时打开 App 的 PendingIntent (首次调用时创建并缓存)
+     */
+    synchronized PendingIntent contentIntent() {
+        if (_contentIntentResolved) return _contentIntent;
+
+        _contentIntent = _buildContentIntent();
+        _contentIntentResolved = true;
+        return _contentIntent;
+    }
+
+    private PendingIntent _buildContentIntent() {
+        Intent launchIntent = _context.getPackageManager()
+                .getLaunchIntentForPackage(_context.getPackageName());
+        if (launchIntent == null) return null;
+
+        launchIntent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            flags |= PendingIntent.FLAG_IMMUTABLE;
+        }
+        return PendingIntent.getActivity(_context, 0, launchIntent, flags);
+    }
+
+    /**
+     * 创建通知渠道 (Android 8.0+)
+     */
+    private void _createNotificationChannel() {
+        if (_notificationManager == null) return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                    CHANNEL_ID,
+                    "下载服务",
+                    NotificationManager.IMPORTANCE_LOW
+            );
+            channel.setDescription("文件下载进度通知");
+            channel.setSound(null, null);
+            channel.enableVibration(false);
+            _notificationManager.createNotificationChannel(channel);
+        }
+    }
+}
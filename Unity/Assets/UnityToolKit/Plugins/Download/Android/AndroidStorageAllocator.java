@@ -0,0 +1,40 @@
+package com.toolkit.download;
+
+import android.os.StatFs;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Android 平台的磁盘空间检查与预分配
+ * <p>使用 StatFs 查询可用空间, posix_fallocate 真正占用磁盘块; 文件系统不支持时回退到 setLength</p>
+ */
+class AndroidStorageAllocator extends StorageAllocator {
+
+    @Override
+    long getAvailableBytes(File dir) {
+        try {
+            return new StatFs(dir.getPath()).getAvailableBytes();
+        } catch (IllegalArgumentException e) {
+            return super.getAvailableBytes(dir);
+        }
+    }
+
+    @Override
+    void allocate(RandomAccessFile file, long length) throws IOException {
+        if (file.length() >= length) return;
+        try {
+            Os.posix_fallocate(file.getFD(), 0, length);
+        } catch (ErrnoException e) {
+            if (e.errno == OsConstants.ENOSPC) {
+                throw new IOException("no space left for " + length + " bytes", e);
+            }
+            // 部分文件系统 (如 FAT 格式的外置存储) 不支持 fallocate
+            super.allocate(file, length);
+        }
+    }
+}
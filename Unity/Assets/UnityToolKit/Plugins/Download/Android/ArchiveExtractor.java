@@ -0,0 +1,721 @@
+package com.toolkit.download;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 边下载边解压的归档解包器
+ * <p>
+ * 下载线程每读到一块数据就推入 {@link #write}, 解包器按状态机解析头部并直接解压写出最终文件,
+ * 归档本身不落盘。相比先下载再解压, 每个字节少写一次、少读一次。
+ * </p>
+ * <p>
+ * zip 可在条目边界续传: 已完成的条目由检查点线程批量 fsync ({@link #sync}) 后,
+ * 其后的归档偏移才会写入任务日志; 中断后以 Range 请求从该偏移继续, 写到一半的条目丢弃重写。
+ * gzip 只有一个输出文件, 解压器状态无法持久化, 中断后从头开始。
+ * </p>
+ * <p>
+ * CRC 不符和压缩数据损坏为可重试的 ERROR_INTEGRITY, 重试时从最近完成的条目之后重新请求;
+ * 签名或头部无效、条目路径越出目标目录说明归档本身有问题, 以不可重试的 ERROR_CORRUPT 失败。
+ * </p>
+ * <p>只由单个下载线程写入; {@link #sync} 可在检查点线程并发调用。</p>
+ */
+abstract class ArchiveExtractor {
+
+    static final String ZIP = "zip";
+    static final String GZIP = "gzip";
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 解压输出缓冲, STORED 条目也经由它复制 */
+    final byte[] buffer = new byte[IO_BUFFER_SIZE];
+    /** Inflater 只接受 byte[] 输入, 直接缓冲区中的数据先复制到这里 */
+    final byte[] input = new byte[IO_BUFFER_SIZE];
+    final Inflater inflater = new Inflater(true);
+    final CRC32 crc = new CRC32();
+
+    /** 头部等定长字段的累积缓冲 */
+    byte[] scratch = new byte[64];
+    int filled;
+    int need;
+
+    /** 已消费的归档字节数 (绝对偏移) */
+    long offset;
+
+    // ---- 已完成条目 (由 this 监视器保护) ----
+    private long _completedOffset;
+    private long _durableOffset;
+    private final List<File> _unsynced = new ArrayList<>();
+
+    ArchiveExtractor(long startOffset) {
+        offset = startOffset;
+        _completedOffset = startOffset;
+    }
+
+    /**
+     * 格式是否受支持 (大小写不敏感, 不创建解包器, 没有副作用)
+     */
+    static boolean isSupported(String format) {
+        if (format == null) return false;
+        switch (format.toLowerCase(Locale.ROOT)) {
+            case ZIP:
+            case GZIP:
+            case "gz":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 按格式名创建解包器 (大小写不敏感)
+     *
+     * @param output      zip 为解压目录, gzip 为输出文件
+     * @param startOffset 续传时归档中的条目边界偏移, 仅 zip 有效
+     * @throws IllegalArgumentException 格式不受支持
+     */
+    static ArchiveExtractor create(String format, File output, long startOffset) {
+        switch (format.toLowerCase(Locale.ROOT)) {
+            case ZIP:
+                return new ZipExtractor(output, startOffset);
+            case GZIP:
+            case "gz":
+                return new GzipExtractor(output);
+            default:
+                throw new IllegalArgumentException("unsupported archive format: " + format);
+        }
+    }
+
+    /**
+     * 消费 data 中 [position, limit) 的全部字节
+     */
+    final void write(ByteBuffer data) throws DownloadException {
+        try {
+            while (data.hasRemaining()) {
+                int start = data.position();
+                boolean entryDone = step(data);
+                offset += data.position() - start;
+                if (entryDone) onEntryDone();
+            }
+        } catch (IOException e) {
+            if (e instanceof DownloadException) throw (DownloadException) e;
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "extract write failed", e);
+        } catch (DataFormatException e) {
+            throw new DownloadException(corruptError(), "corrupt archive", e);
+        }
+    }
+
+    /**
+     * 归档数据已全部送达, 检查是否完整结束
+     */
+    abstract void finish() throws DownloadException;
+
+    /**
+     * 丢弃写到一半的条目, 返回下次应从归档的哪个偏移继续输入
+     *
+     * @param canSeek 服务器是否支持 Range; 不支持时只能从头开始
+     */
+    abstract long rewind(boolean canSeek) throws DownloadException;
+
+    /**
+     * 将已完成但尚未落盘的条目 fsync
+     * <p>以只读方式打开, 不会重新创建解压后已被删除的文件; 已不存在的文件直接跳过</p>
+     *
+     * @return 可安全写入日志的续传偏移: 其之前的条目均已落盘
+     */
+    final long sync() {
+        List<File> files;
+        long durable;
+        synchronized (this) {
+            files = new ArrayList<>(_unsynced);
+            durable = _completedOffset;
+        }
+        for (File file : files) {
+            if (!file.exists()) continue;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.getFD().sync();
+            } catch (IOException e) {
+                // 落盘失败时不推进检查点, 下次重试
+                synchronized (this) {
+                    return _durableOffset;
+                }
+            }
+        }
+        synchronized (this) {
+            _unsynced.removeAll(files);
+            _durableOffset = durable;
+        }
+        return durable;
+    }
+
+    /** 释放解压器并删除未完成的输出 */
+    void close() {
+        inflater.end();
+    }
+
+    // ---- 子类使用 ----
+
+    /**
+     * 解析一步, 消费 data 中的部分字节
+     *
+     * @return 是否恰好结束一个条目 (此时 offset 已更新到条目之后)
+     */
+    abstract boolean step(ByteBuffer data) throws IOException, DataFormatException;
+
+    /**
+     * 压缩数据损坏时的错误码: 归档默认可重试 (从最近的条目边界重新请求), 子类可改为不可重试
+     */
+    int corruptError() {
+        return DownloadTask.ERROR_INTEGRITY;
+    }
+
+    /** 条目结束后的收尾 (校验、关闭文件), 在 offset 更新后调用 */
+    abstract void onEntryDone() throws IOException;
+
+    /** 记录一个已完成的条目, 当前偏移成为新的续传点 */
+    final synchronized void markCompleted(File file) {
+        if (file != null) _unsynced.add(file);
+        _completedOffset = offset;
+    }
+
+    final synchronized long completedOffset() {
+        return _completedOffset;
+    }
+
+    /** 放弃已完成条目的记录, 从头开始 */
+    final synchronized void resetCompleted() {
+        _unsynced.clear();
+        _completedOffset = 0;
+        _durableOffset = 0;
+    }
+
+    /**
+     * 累积 need 个字节到 scratch
+     *
+     * @return 是否已凑齐
+     */
+    final boolean fill(ByteBuffer data) {
+        if (scratch.length < need) {
+            byte[] grown = new byte[Math.max(need, scratch.length * 2)];
+            System.arraycopy(scratch, 0, grown, 0, filled);
+            scratch = grown;
+        }
+        int take = Math.min(need - filled, data.remaining());
+        data.get(scratch, filled, take);
+        filled += take;
+        return filled == need;
+    }
+
+    final void expect(int bytes) {
+        filled = 0;
+        need = bytes;
+    }
+
+    /**
+     * 将 data 中的压缩数据送入 Inflater 并写出解压结果; 流结束时多余的输入留在 data 中
+     *
+     * @return deflate 流是否已结束
+     */
+    final boolean inflate(ByteBuffer data, FileOutputStream out)
+            throws IOException, DataFormatException {
+        int start = data.position();
+        int take = Math.min(data.remaining(), input.length);
+        data.get(input, 0, take);
+        inflater.setInput(input, 0, take);
+
+        while (true) {
+            int n = inflater.inflate(buffer);
+            if (n > 0) {
+                crc.update(buffer, 0, n);
+                if (out != null) out.write(buffer, 0, n);
+                continue;
+            }
+            if (inflater.finished() || inflater.needsInput()) break;
+            if (inflater.needsDictionary()) {
+                throw new DataFormatException("preset dictionary not supported");
+            }
+        }
+
+        if (inflater.finished()) {
+            data.position(start + take - inflater.getRemaining());
+            return true;
+        }
+        return false;
+    }
+
+    static int u16(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8;
+    }
+
+    static long u32(byte[] b, int i) {
+        return (u16(b, i) | (long) u16(b, i + 2) << 16) & 0xFFFFFFFFL;
+    }
+
+    static long u64(byte[] b, int i) {
+        return u32(b, i) | u32(b, i + 4) << 32;
+    }
+
+    static void closeQuietly(FileOutputStream out) {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * zip 流式解包: 按本地文件头顺序解析, 遇到中央目录即结束
+     * <p>
+     * 支持 STORED / DEFLATED、数据描述符 (通用标志第 3 位) 和 ZIP64 本地扩展字段。
+     * 不支持加密条目, 也不支持带数据描述符的 STORED 条目 (流式读取时无法确定其长度), 遇到时以 ERROR_CORRUPT 失败。
+     * </p>
+     */
+    private static final class ZipExtractor extends ArchiveExtractor {
+
+        private static final int SIG_LOCAL = 0x04034b50;
+        private static final int SIG_CENTRAL = 0x02014b50;
+        private static final int SIG_END = 0x06054b50;
+        private static final int SIG_DESCRIPTOR = 0x08074b50;
+        private static final int LOCAL_HEADER_SIZE = 30;
+        private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+
+        private static final int FLAG_ENCRYPTED = 1;
+        private static final int FLAG_DESCRIPTOR = 1 << 3;
+        private static final int METHOD_STORED = 0;
+        private static final int METHOD_DEFLATED = 8;
+
+        private static final int ST_SIGNATURE = 0;
+        private static final int ST_HEADER = 1;
+        private static final int ST_NAME = 2;
+        private static final int ST_STORED = 3;
+        private static final int ST_INFLATE = 4;
+        private static final int ST_DESCRIPTOR = 5;
+        private static final int ST_DONE = 6;
+
+        private final File _root;
+        private final String _rootPath;
+        private int _state;
+
+        // ---- 当前条目 ----
+        private int _flags;
+        private int _method;
+        private long _expectedCrc;
+        private long _compressedSize;
+        private long _size;
+        private boolean _zip64;
+        private long _remaining;
+        private long _written;
+        private File _target;
+        private FileOutputStream _output;
+
+        ZipExtractor(File root, long startOffset) {
+            super(startOffset);
+            _root = root;
+            String path;
+            try {
+                path = root.getCanonicalPath();
+            } catch (IOException e) {
+                path = root.getAbsolutePath();
+            }
+            _rootPath = path + File.separator;
+            _beginEntry();
+        }
+
+        @Override
+        boolean step(ByteBuffer data) throws IOException, DataFormatException {
+            switch (_state) {
+                case ST_SIGNATURE:
+                    if (!fill(data)) return false;
+                    _readSignature();
+                    return false;
+                case ST_HEADER:
+                    if (!fill(data)) return false;
+                    _readHeader();
+                    return false;
+                case ST_NAME:
+                    if (!fill(data)) return false;
+                    return _openEntry();
+                case ST_STORED:
+                    return _copyStored(data);
+                case ST_INFLATE:
+                    if (!inflate(data, _output)) return false;
+                    _written = inflater.getBytesWritten();
+                    if ((_flags & FLAG_DESCRIPTOR) == 0) return true;
+                    _state = ST_DESCRIPTOR;
+                    expect(4);
+                    return false;
+                case ST_DESCRIPTOR:
+                    if (!fill(data)) return false;
+                    return _readDescriptor();
+                default:
+                    // 中央目录及之后的内容不需要
+                    data.position(data.limit());
+                    return false;
+            }
+        }
+
+        private void _readSignature() throws DownloadException {
+            int signature = (int) u32(scratch, 0);
+            if (signature == SIG_LOCAL) {
+                _state = ST_HEADER;
+                need = LOCAL_HEADER_SIZE;
+            } else if (signature == SIG_CENTRAL || signature == SIG_END) {
+                _state = ST_DONE;
+            } else {
+                throw new DownloadException(DownloadTask.ERROR_CORRUPT,
+                        "bad zip signature near " + offset);
+            }
+        }
+
+        private void _readHeader() throws DownloadException {
+            _flags = u16(scratch, 6);
+            _method = u16(scratch, 8);
+            _expectedCrc = u32(scratch, 14);
+            _compressedSize = u32(scratch, 18);
+            _size = u32(scratch, 22);
+            int nameLength = u16(scratch, 26);
+            int extraLength = u16(scratch, 28);
+
+            if ((_flags & FLAG_ENCRYPTED) != 0) {
+                throw new DownloadException(DownloadTask.ERROR_CORRUPT, "encrypted zip entry");
+            }
+            if (_method != METHOD_STORED && _method != METHOD_DEFLATED) {
+                throw new DownloadException(DownloadTask.ERROR_CORRUPT,
+                        "unsupported zip method " + _method);
+            }
+            if (_method == METHOD_STORED && (_flags & FLAG_DESCRIPTOR) != 0) {
+                throw new DownloadException(DownloadTask.ERROR_CORRUPT,
+                        "stored entry with data descriptor");
+            }
+            _state = ST_NAME;
+            need = LOCAL_HEADER_SIZE + nameLength + extraLength;
+        }
+
+        private boolean _openEntry() throws IOException {
+            int nameLength = u16(scratch, 26);
+            int extraLength = u16(scratch, 28);
+            String name = new String(scratch, LOCAL_HEADER_SIZE, nameLength, UTF_8);
+            _readZip64Extra(LOCAL_HEADER_SIZE + nameLength, extraLength);
+
+            _target = _resolve(name);
+            crc.reset();
+            _written = 0;
+            if (name.endsWith("/")) {
+                if (!_target.isDirectory() && !_target.mkdirs()) {
+                    throw new DownloadException(DownloadTask.ERROR_STORAGE, "mkdirs failed: " + _target);
+                }
+                _target = null;
+            } else {
+                File parent = _target.getParentFile();
+                if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                    throw new DownloadException(DownloadTask.ERROR_STORAGE, "mkdirs failed: " + parent);
+                }
+                _output = new FileOutputStream(_target);
+            }
+
+            if (_method == METHOD_DEFLATED) {
+                inflater.reset();
+                _state = ST_INFLATE;
+                return false;
+            }
+            _remaining = _compressedSize;
+            _state = ST_STORED;
+            return _remaining == 0;
+        }
+
+        /**
+         * 本地头中的大小为 0xFFFFFFFF 时, 真实值在 ZIP64 扩展字段 (0x0001) 中, 依次为原始大小和压缩大小
+         */
+        private void _readZip64Extra(int offset, int length) {
+            _zip64 = false;
+            int end = offset + length;
+            while (offset + 4 <= end) {
+                int id = u16(scratch, offset);
+                int size = u16(scratch, offset + 2);
+                int field = offset + 4;
+                if (id == 0x0001) {
+                    _zip64 = true;
+                    if (_size == ZIP64_MARKER && field + 8 <= end) {
+                        _size = u64(scratch, field);
+                        field += 8;
+                    }
+                    if (_compressedSize == ZIP64_MARKER && field + 8 <= end) {
+                        _compressedSize = u64(scratch, field);
+                    }
+                }
+                offset += 4 + size;
+            }
+        }
+
+        /**
+         * 条目路径必须位于解压目录之内, 拒绝 "../" 等越界路径 (Zip Slip)
+         */
+        private File _resolve(String name) throws DownloadException {
+            File file = new File(_root, name);
+            String path;
+            try {
+                path = file.getCanonicalPath();
+            } catch (IOException e) {
+                throw new DownloadException(DownloadTask.ERROR_STORAGE, "bad entry path: " + name, e);
+            }
+            if (!(path + File.separator).startsWith(_rootPath)) {
+                throw new DownloadException(DownloadTask.ERROR_CORRUPT,
+                        "entry outside target directory: " + name);
+            }
+            return file;
+        }
+
+        private boolean _copyStored(ByteBuffer data) throws IOException {
+            int take = (int) Math.min(Math.min(data.remaining(), _remaining), buffer.length);
+            data.get(buffer, 0, take);
+            crc.update(buffer, 0, take);
+            if (_output != null) _output.write(buffer, 0, take);
+            _written += take;
+            _remaining -= take;
+            return _remaining == 0;
+        }
+
+        /**
+         * 数据描述符: [可选签名] crc32 压缩大小 原始大小, ZIP64 条目的大小字段为 8 字节
+         */
+        private boolean _readDescriptor() {
+            int sizeFields = _zip64 ? 16 : 8;
+            if (need == 4) {
+                boolean signed = (int) u32(scratch, 0) == SIG_DESCRIPTOR;
+                need = (signed ? 8 : 4) + sizeFields;
+                return false;
+            }
+            int crcAt = need - sizeFields - 4;
+            _expectedCrc = u32(scratch, crcAt);
+            _size = _zip64 ? u64(scratch, crcAt + 4 + 8) : u32(scratch, crcAt + 4 + 4);
+            return true;
+        }
+
+        @Override
+        void onEntryDone() throws IOException {
+            FileOutputStream output = _output;
+            _output = null;
+            if (output != null) output.close();
+
+            if (crc.getValue() != _expectedCrc || _written != _size) {
+                if (_target != null) _target.delete();
+                throw new DownloadException(DownloadTask.ERROR_INTEGRITY,
+                        "crc mismatch: " + _target);
+            }
+            markCompleted(_target);
+            _target = null;
+            _beginEntry();
+        }
+
+        private void _beginEntry() {
+            _state = ST_SIGNATURE;
+            expect(4);
+        }
+
+        @Override
+        void finish() throws DownloadException {
+            if (_state != ST_DONE) {
+                throw new DownloadException(DownloadTask.ERROR_NETWORK, "zip stream truncated");
+            }
+        }
+
+        @Override
+        long rewind(boolean canSeek) {
+            _discardEntry();
+            if (!canSeek) resetCompleted();
+            offset = completedOffset();
+            _beginEntry();
+            return offset;
+        }
+
+        @Override
+        void close() {
+            _discardEntry();
+            super.close();
+        }
+
+        private void _discardEntry() {
+            closeQuietly(_output);
+            _output = null;
+            if (_target != null) {
+                _target.delete();
+                _target = null;
+            }
+        }
+    }
+
+    /**
+     * gzip 流式解压到单个文件 (支持多个 member 首尾相接)
+     * <p>输出先写入 output + ".part", 校验 CRC32 和长度后重命名</p>
+     */
+    private static final class GzipExtractor extends ArchiveExtractor {
+
+        private static final int FLAG_HCRC = 2;
+        private static final int FLAG_EXTRA = 4;
+        private static final int FLAG_NAME = 8;
+        private static final int FLAG_COMMENT = 16;
+        private static final int HEADER_SIZE = 10;
+        private static final int TRAILER_SIZE = 8;
+
+        private static final int ST_HEADER = 0;
+        private static final int ST_EXTRA_LENGTH = 1;
+        private static final int ST_EXTRA = 2;
+        private static final int ST_NAME = 3;
+        private static final int ST_COMMENT = 4;
+        private static final int ST_HCRC = 5;
+        private static final int ST_INFLATE = 6;
+        private static final int ST_TRAILER = 7;
+
+        private final File _target;
+        private final File _temp;
+        private FileOutputStream _output;
+        private int _state;
+        private int _headerFlags;
+        private int _members;
+
+        GzipExtractor(File target) {
+            super(0);
+            _target = target;
+            _temp = new File(target.getPath() + ".part");
+            _beginMember();
+        }
+
+        @Override
+        boolean step(ByteBuffer data) throws IOException, DataFormatException {
+            switch (_state) {
+                case ST_HEADER:
+                    if (!fill(data)) return false;
+                    if (u16(scratch, 0) != 0x8b1f || scratch[2] != 8) {
+                        throw new DownloadException(DownloadTask.ERROR_CORRUPT, "bad gzip header");
+                    }
+                    _headerFlags = scratch[3] & 0xFF;
+                    _nextHeaderField(ST_EXTRA_LENGTH);
+                    return false;
+                case ST_EXTRA_LENGTH:
+                    if (!fill(data)) return false;
+                    _state = ST_EXTRA;
+                    expect(u16(scratch, 0));
+                    return false;
+                case ST_EXTRA:
+                    if (!fill(data)) return false;
+                    _nextHeaderField(ST_NAME);
+                    return false;
+                case ST_NAME:
+                case ST_COMMENT:
+                    // 以 0 结尾的字符串, 内容不需要
+                    while (data.hasRemaining()) {
+                        if (data.get() == 0) {
+                            _nextHeaderField(_state + 1);
+                            break;
+                        }
+                    }
+                    return false;
+                case ST_HCRC:
+                    if (!fill(data)) return false;
+                    _nextHeaderField(ST_INFLATE);
+                    return false;
+                case ST_INFLATE:
+                    if (_output == null) _openOutput();
+                    if (!inflate(data, _output)) return false;
+                    _state = ST_TRAILER;
+                    expect(TRAILER_SIZE);
+                    return false;
+                default:
+                    if (!fill(data)) return false;
+                    return true;
+            }
+        }
+
+        /** 跳过标志位未设置的可选头部字段, 进入 from 及之后第一个存在的状态 */
+        private void _nextHeaderField(int from) {
+            int state = from;
+            if (state == ST_EXTRA_LENGTH && (_headerFlags & FLAG_EXTRA) == 0) state = ST_NAME;
+            if (state == ST_NAME && (_headerFlags & FLAG_NAME) == 0) state = ST_COMMENT;
+            if (state == ST_COMMENT && (_headerFlags & FLAG_COMMENT) == 0) state = ST_HCRC;
+            if (state == ST_HCRC && (_headerFlags & FLAG_HCRC) == 0) state = ST_INFLATE;
+            _state = state;
+            if (state == ST_EXTRA_LENGTH || state == ST_HCRC) expect(2);
+            if (state == ST_INFLATE) inflater.reset();
+        }
+
+        private void _openOutput() throws IOException {
+            File parent = _temp.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new DownloadException(DownloadTask.ERROR_STORAGE, "mkdirs failed: " + parent);
+            }
+            _output = new FileOutputStream(_temp);
+            crc.reset();
+        }
+
+        @Override
+        void onEntryDone() throws IOException {
+            long expectedCrc = u32(scratch, 0);
+            long expectedSize = u32(scratch, 4);
+            if (crc.getValue() != expectedCrc
+                    || (inflater.getBytesWritten() & 0xFFFFFFFFL) != expectedSize) {
+                throw new DownloadException(DownloadTask.ERROR_INTEGRITY, "gzip crc mismatch");
+            }
+            _members++;
+            // 后续 member 追加到同一文件, CRC 按 member 独立计算
+            crc.reset();
+            _beginMember();
+        }
+
+        private void _beginMember() {
+            _state = ST_HEADER;
+            expect(HEADER_SIZE);
+        }
+
+        @Override
+        void finish() throws DownloadException {
+            if (_members == 0 || _state != ST_HEADER || filled != 0) {
+                throw new DownloadException(DownloadTask.ERROR_NETWORK, "gzip stream truncated");
+            }
+            try {
+                FileOutputStream output = _output;
+                _output = null;
+                if (output != null) {
+                    output.getFD().sync();
+                    output.close();
+                }
+            } catch (IOException e) {
+                throw new DownloadException(DownloadTask.ERROR_STORAGE, "close failed", e);
+            }
+            if (_target.exists() && !_target.delete()) {
+                throw new DownloadException(DownloadTask.ERROR_STORAGE, "cannot replace " + _target);
+            }
+            if (!_temp.renameTo(_target)) {
+                throw new DownloadException(DownloadTask.ERROR_STORAGE, "rename failed: " + _target);
+            }
+        }
+
+        @Override
+        long rewind(boolean canSeek) {
+            closeQuietly(_output);
+            _output = null;
+            _members = 0;
+            offset = 0;
+            _beginMember();
+            return 0;
+        }
+
+        @Override
+        void close() {
+            closeQuietly(_output);
+            _output = null;
+            _temp.delete();
+            super.close();
+        }
+    }
+}
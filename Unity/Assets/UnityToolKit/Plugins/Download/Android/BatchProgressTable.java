@@ -0,0 +1,179 @@
+package com.toolkit.download;
+
+/**
+ * 批量任务进度表
+ * <p>
+ * 以 taskId 为键的开放寻址哈希表, 每个任务的状态只占平行基本类型数组中的一个槽位,
+ * 更新时不为单个任务分配对象。汇总值 (已下载/总大小/完成数) 随更新增量维护,
+ * 每帧上百个任务的更新只需 O(n) 且无装箱。
+ * </p>
+ * <p>非线程安全, 由调用方加锁</p>
+ */
+class BatchProgressTable {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final long KB = 1024L;
+    private static final long MB = KB * 1024L;
+    private static final long GB = MB * 1024L;
+
+    private long[] _keys;
+    private long[] _done;
+    private long[] _total;
+    private boolean[] _used;
+    private int _size;
+
+    private long _sumDone;
+    private long _sumTotal;
+    private int _completedCount;
+
+    BatchProgressTable() {
+        _allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * 批量更新任务进度; 数组长度不一致时以最短者为准
+     * <p>bytesTotal 小于等于 0 表示总大小未知, 该任务不计入完成数</p>
+     */
+    void update(long[] taskIds, long[] bytesDone, long[] bytesTotal) {
+        int n = Math.min(taskIds.length, Math.min(bytesDone.length, bytesTotal.length));
+        for (int i = 0; i < n; i++) {
+            _put(taskIds[i], Math.max(0, bytesDone[i]), bytesTotal[i]);
+        }
+    }
+
+    void clear() {
+        _allocate(INITIAL_CAPACITY);
+        _size = 0;
+        _sumDone = 0;
+        _sumTotal = 0;
+        _completedCount = 0;
+    }
+
+    int size() {
+        return _size;
+    }
+
+    int completedCount() {
+        return _completedCount;
+    }
+
+    long sumDone() {
+        return _sumDone;
+    }
+
+    long sumTotal() {
+        return _sumTotal;
+    }
+
+    /** 总进度百分比 (0~100) */
+    int percent() {
+        if (_sumTotal <= 0) return 0;
+        return (int) Math.min(100, _sumDone * 100 / _sumTotal);
+    }
+
+    /**
+     * 生成通知文本, 如 "12/200  345.6 MB / 1.2 GB"
+     * <p>复用传入的 StringBuilder, 每次只产生最终的 String</p>
+     */
+    String formatSummary(StringBuilder sb) {
+        sb.setLength(0);
+        sb.append(_completedCount).append('/').append(_size).append("  ");
+        _appendBytes(sb, _sumDone);
+        if (_sumTotal > 0) {
+            sb.append(" / ");
+            _appendBytes(sb, _sumTotal);
+        }
+        return sb.toString();
+    }
+
+    // ---- 哈希表 ----
+
+    private void _put(long key, long done, long total) {
+        if ((_size + 1) * 4 > _keys.length * 3) _grow();
+
+        int slot = _findSlot(_keys, _used, key);
+        if (_used[slot]) {
+            _sumDone += done - _done[slot];
+            _sumTotal += _positive(total) - _positive(_total[slot]);
+            if (_isComplete(_done[slot], _total[slot])) _completedCount--;
+        } else {
+            _used[slot] = true;
+            _keys[slot] = key;
+            _size++;
+            _sumDone += done;
+            _sumTotal += _positive(total);
+        }
+        _done[slot] = done;
+        _total[slot] = total;
+        if (_isComplete(done, total)) _completedCount++;
+    }
+
+    private void _grow() {
+        long[] oldKeys = _keys;
+        long[] oldDone = _done;
+        long[] oldTotal = _total;
+        boolean[] oldUsed = _used;
+
+        _allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (!oldUsed[i]) continue;
+            int slot = _findSlot(_keys, _used, oldKeys[i]);
+            _used[slot] = true;
+            _keys[slot] = oldKeys[i];
+            _done[slot] = oldDone[i];
+            _total[slot] = oldTotal[i];
+        }
+    }
+
+    private void _allocate(int capacity) {
+        _keys = new long[capacity];
+        _done = new long[capacity];
+        _total = new long[capacity];
+        _used = new boolean[capacity];
+    }
+
+    private static int _findSlot(long[] keys, boolean[] used, long key) {
+        int mask = keys.length - 1;
+        int slot = _hash(key) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int _hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long _positive(long value) {
+        return value > 0 ? value : 0;
+    }
+
+    private static boolean _isComplete(long done, long total) {
+        return total > 0 && done >= total;
+    }
+
+    /**
+     * 追加可读的字节大小, 保留一位小数, 不使用 String.format
+     */
+    private static void _appendBytes(StringBuilder sb, long bytes) {
+        long unit;
+        String suffix;
+        if (bytes >= GB) {
+            unit = GB;
+            suffix = " GB";
+        } else if (bytes >= MB) {
+            unit = MB;
+            suffix = " MB";
+        } else if (bytes >= KB) {
+            unit = KB;
+            suffix = " KB";
+        } else {
+            sb.append(bytes).append(" B");
+            return;
+        }
+        long tenths = bytes * 10 / unit;
+        sb.append(tenths / 10).append('.').append(tenths % 10).append(suffix);
+    }
+}
@@ -0,0 +1,243 @@
+package com.toolkit.download;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自适应并发控制 (AIMD)
+ * <p>
+ * 所有下载连接在发起请求前向控制器申请名额, 名额总数即并发上限。
+ * 按固定窗口统计整体吞吐和单连接吞吐: 窗口内名额用满时上限加一 (加性增);
+ * 试探窗口内吞吐的增量不足平均单连接吞吐的一半, 说明链路已饱和, 撤回这次增加并保持一段时间。
+ * 出现超时或 HTTP 429/503 时上限减半 (乘性减), 同一窗口内的连续错误只减一次。
+ * </p>
+ * <p>
+ * 大文件的并发任务数和小文件通道的并发数都由当前上限推导,
+ * 同一任务的分段数也随空闲名额动态拆分 (见 DownloadEngine), 因此拥塞的移动网络会收敛到少量连接,
+ * 高带宽 Wi-Fi 会逐步放开。也可以 {@link #setFixedLimit} 固定上限, 用于对比测试。
+ * </p>
+ */
+class ConcurrencyController {
+
+    static final int MIN_LIMIT = 1;
+    static final int MAX_LIMIT = 24;
+    static final int INITIAL_LIMIT = 8;
+
+    // ---- 快照布局 ----
+    static final int IDX_LIMIT = 0;
+    static final int IDX_ACTIVE = 1;
+    static final int IDX_GOODPUT = 2;
+    static final int IDX_PER_CONNECTION = 3;
+    static final int IDX_INCREASES = 4;
+    static final int IDX_DECREASES = 5;
+    static final int IDX_CONGESTION_EVENTS = 6;
+    static final int IDX_ADAPTIVE = 7;
+    static final int SNAPSHOT_SIZE = 8;
+
+    private static final long WINDOW_NANOS = 2000000000L;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double DECREASE_FACTOR = 0.5;
+    /** 新增一个连接带来的吞吐增量低于平均单连接吞吐的该比例时, 视为已饱和 */
+    private static final double MARGINAL_GAIN_THRESHOLD = 0.5;
+    /** 撤回或减半后保持的窗口数, 避免在饱和点附近来回震荡 */
+    private static final int HOLD_WINDOWS = 5;
+    private static final long WAIT_SLICE_MS = 100;
+
+    private final AtomicLong _windowBytes = new AtomicLong();
+    /** 下次评估的时刻, 下载线程无锁判断是否需要结束窗口 */
+    private volatile long _nextEvaluation = System.nanoTime() + WINDOW_NANOS;
+    private final Runnable _onLimitChanged;
+
+    // ---- 以下由 this 监视器保护 ----
+    private int _limit = INITIAL_LIMIT;
+    private boolean _adaptive = true;
+    private int _active;
+    private long _windowStart = System.nanoTime();
+    /** 窗口内活跃连接数对时间的积分, 用于求平均连接数 */
+    private double _activeNanos;
+    private long _lastActiveChange = _windowStart;
+    private boolean _saturated;
+    private boolean _probing;
+    private int _holdWindows;
+    private long _lastDecrease;
+    private double _goodput;
+    private double _perConnection;
+    private long _increases;
+    private long _decreases;
+    private long _congestionEvents;
+
+    /**
+     * @param onLimitChanged 上限变化后调用 (不持有控制器的锁), 用于重新调度任务
+     */
+    ConcurrencyController(Runnable onLimitChanged) {
+        _onLimitChanged = onLimitChanged;
+    }
+
+    // ---- 连接名额 ----
+
+    /**
+     * 申请一个连接名额, 名额用尽时等待
+     *
+     * @return 等待期间任务被取消或抢占时返回 false
+     */
+    boolean acquire(DownloadTask task) {
+        synchronized (this) {
+            while (_active >= _limit) {
+                _saturated = true;
+                if (task.shouldStop()) return false;
+                try {
+                    wait(WAIT_SLICE_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            _accumulate(System.nanoTime());
+            _active++;
+            if (_active >= _limit) _saturated = true;
+            return true;
+        }
+    }
+
+    synchronized void release() {
+        _accumulate(System.nanoTime());
+        _active--;
+        notifyAll();
+    }
+
+    /** 当前空闲名额数 */
+    synchronized int available() {
+        return _limit - _active;
+    }
+
+    /** 大文件通道的并发任务数: 平均每个任务至少两个连接 */
+    synchronized int taskSlots(int maxTasks) {
+        return Math.max(1, Math.min(maxTasks, _limit / 2));
+    }
+
+    /** 小文件通道的并发任务数: 每个任务一个连接 */
+    synchronized int smallFileSlots(int maxTasks) {
+        return Math.max(1, Math.min(maxTasks, _limit));
+    }
+
+    // ---- 反馈 ----
+
+    /**
+     * 记录收到的字节数, 每个窗口结束时调整一次上限
+     */
+    void onBytes(int bytes) {
+        _windowBytes.addAndGet(bytes);
+        long now = System.nanoTime();
+        if (now - _nextEvaluation < 0) return;
+
+        boolean changed;
+        synchronized (this) {
+            if (now - _windowStart < WINDOW_NANOS) return;
+            changed = _evaluate(now);
+        }
+        if (changed) _onLimitChanged.run();
+    }
+
+    /**
+     * 拥塞信号 (超时、HTTP 429/503): 上限减半
+     */
+    void onCongestion() {
+        synchronized (this) {
+            _congestionEvents++;
+            long now = System.nanoTime();
+            if (!_adaptive || now - _lastDecrease < WINDOW_NANOS) return;
+            _lastDecrease = now;
+
+            int next = Math.max(MIN_LIMIT, (int) (_limit * DECREASE_FACTOR));
+            _probing = false;
+            _holdWindows = HOLD_WINDOWS;
+            if (next == _limit) return;
+            _limit = next;
+            _decreases++;
+        }
+        _onLimitChanged.run();
+    }
+
+    /**
+     * 固定并发上限, 小于等于 0 表示恢复自适应
+     */
+    void setFixedLimit(int limit) {
+        synchronized (this) {
+            if (limit > 0) {
+                _adaptive = false;
+                _limit = Math.max(MIN_LIMIT, Math.min(limit, MAX_LIMIT));
+            } else {
+                _adaptive = true;
+                _probing = false;
+                _holdWindows = 0;
+            }
+            notifyAll();
+        }
+        _onLimitChanged.run();
+    }
+
+    /**
+     * 导出状态, 布局见 IDX_*
+     */
+    synchronized long[] snapshot() {
+        long[] out = new long[SNAPSHOT_SIZE];
+        out[IDX_LIMIT] = _limit;
+        out[IDX_ACTIVE] = _active;
+        out[IDX_GOODPUT] = (long) _goodput;
+        out[IDX_PER_CONNECTION] = (long) _perConnection;
+        out[IDX_INCREASES] = _increases;
+        out[IDX_DECREASES] = _decreases;
+        out[IDX_CONGESTION_EVENTS] = _congestionEvents;
+        out[IDX_ADAPTIVE] = _adaptive ? 1 : 0;
+        return out;
+    }
+
+    // ---- 内部 ----
+
+    private void _accumulate(long now) {
+        _activeNanos += (double) _active * (now - _lastActiveChange);
+        _lastActiveChange = now;
+    }
+
+    /**
+     * 结束一个窗口
+     *
+     * @return 上限是否变化
+     */
+    private boolean _evaluate(long now) {
+        _accumulate(now);
+        double seconds = (now - _windowStart) / NANOS_PER_SECOND;
+        double goodput = _windowBytes.getAndSet(0) / seconds;
+        double connections = Math.max(1, _activeNanos / (now - _windowStart));
+        double perConnection = goodput / connections;
+        boolean saturated = _saturated;
+
+        int before = _limit;
+        if (_adaptive) {
+            if (_probing) {
+                // 上个窗口刚加了一个连接: 带来的增量不够一个连接的一半就撤回
+                _probing = false;
+                if (saturated && goodput - _goodput < _perConnection * MARGINAL_GAIN_THRESHOLD) {
+                    _limit = Math.max(MIN_LIMIT, _limit - 1);
+                    _holdWindows = HOLD_WINDOWS;
+                    _decreases++;
+                }
+            } else if (_holdWindows > 0) {
+                _holdWindows--;
+            } else if (saturated && _limit < MAX_LIMIT) {
+                // 名额不够用才有必要试探, 空闲时保持
+                _limit++;
+                _probing = true;
+                _increases++;
+            }
+        }
+
+        _goodput = goodput;
+        _perConnection = perConnection;
+        _windowStart = now;
+        _nextEvaluation = now + WINDOW_NANOS;
+        _activeNanos = 0;
+        _saturated = _active >= _limit;
+        if (_limit > before) notifyAll();
+        return _limit != before;
+    }
+}
@@ -0,0 +1,376 @@
+package com.toolkit.download;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按内容摘要寻址的下载缓存
+ * <p>
+ * 对象以 "算法-摘要" 命名, 平铺在缓存目录中; 同一内容只保存一份, 再次请求时在发出任何网络请求前命中。
+ * 索引 (摘要 → 相对路径、大小、最近访问时间) 常驻内存, 同时写入 index.bin;
+ * 访问时间的更新先在内存中累积, 由后台线程延迟合并写盘。
+ * </p>
+ * <p>
+ * 总大小超过预算时, 后台线程按最近访问时间淘汰最旧的对象;
+ * {@link #MIN_IDLE_MS} 内访问过的对象不淘汰, 避免刚下载或刚命中的文件在调用方读取前被删除。
+ * </p>
+ * <p>
+ * 启动时先同步读取索引, 再在后台核对目录: 索引中已不存在的文件移出索引,
+ * 目录中有而索引中没有的对象 (写索引前进程被杀死, 或由日志恢复的任务完成) 补入索引。
+ * 对象只在校验通过后由临时文件改名而来, 补入的文件内容可信; 下载中的 .part 文件不参与核对。
+ * </p>
+ * <p>所有方法线程安全 (由 this 监视器保护), 文件删除和索引写盘在 executor 上执行</p>
+ */
+final class ContentCache {
+
+    static final long DEFAULT_BUDGET = 512L * 1024 * 1024;
+    static final long MIN_IDLE_MS = 30 * 1000L;
+
+    private static final String INDEX_NAME = "index.bin";
+    private static final int MAGIC = 0x544B4343; // "TKCC"
+    private static final int VERSION = 1;
+    private static final long FLUSH_DELAY_MS = 2000;
+    /** 摘要的最大长度 (十六进制字符), 超出时不视为合法对象名 */
+    private static final int MAX_HASH_LENGTH = 128;
+
+    private static final class Entry {
+        long size;
+        long lastAccess;
+    }
+
+    private final File _dir;
+    private final File _indexFile;
+    private final ScheduledExecutorService _executor;
+    /** 按访问顺序排列, 迭代顺序即淘汰顺序 */
+    private final LinkedHashMap<String, Entry> _entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long _budget;
+    private long _totalBytes;
+    private boolean _flushScheduled;
+    private boolean _evictScheduled;
+
+    // ---- 统计 ----
+    private long _hits;
+    private long _misses;
+    private long _evictions;
+    private long _evictedBytes;
+
+    ContentCache(File dir, long budget, ScheduledExecutorService executor) {
+        _dir = dir;
+        _indexFile = new File(dir, INDEX_NAME);
+        _budget = budget > 0 ? budget : DEFAULT_BUDGET;
+        _executor = executor;
+    }
+
+    // ---- 键 ----
+
+    /**
+     * 生成对象键 "算法-摘要", 同时作为对象文件名
+     *
+     * @throws IllegalArgumentException 算法不受支持、算法为 crc32 (碰撞概率过高, 不能作为内容地址) 或摘要不是十六进制
+     */
+    static String key(String algorithm, String hash) {
+        if (algorithm == null || hash == null) {
+            throw new IllegalArgumentException("content cache requires algorithm and hash");
+        }
+        String name = algorithm.toLowerCase(Locale.ROOT);
+        if ("sha-256".equals(name)) name = StreamingDigest.SHA256;
+        if ("xxhash64".equals(name)) name = StreamingDigest.XXH64;
+        if (!StreamingDigest.MD5.equals(name) && !StreamingDigest.SHA256.equals(name)
+                && !StreamingDigest.XXH64.equals(name)) {
+            throw new IllegalArgumentException("unsupported content cache algorithm: " + algorithm);
+        }
+        String hex = hash.toLowerCase(Locale.ROOT);
+        if (!_isHex(hex)) {
+            throw new IllegalArgumentException("invalid hash: " + hash);
+        }
+        return name + "-" + hex;
+    }
+
+    /**
+     * 保存路径位于缓存目录中时返回对应的对象键, 否则返回 null
+     */
+    String keyForPath(String path) {
+        File file = new File(path);
+        if (!_dir.equals(file.getParentFile())) return null;
+        String name = file.getName();
+        return _isKey(name) ? name : null;
+    }
+
+    File objectFile(String key) {
+        return new File(_dir, key);
+    }
+
+    // ---- 启动 ----
+
+    /**
+     * 读取索引并在后台核对目录 (重复调用无效果由调用方保证)
+     */
+    synchronized void load() {
+        if (!_dir.exists()) _dir.mkdirs();
+        if (_indexFile.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(_indexFile)))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        String key = in.readUTF();
+                        Entry entry = new Entry();
+                        entry.size = in.readLong();
+                        entry.lastAccess = in.readLong();
+                        if (_isKey(key)) _put(key, entry);
+                    }
+                }
+            } catch (IOException e) {
+                // 索引损坏时从空索引开始, 由目录核对补回
+                _entries.clear();
+                _totalBytes = 0;
+            }
+        }
+
+        _executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                _reconcile();
+            }
+        });
+    }
+
+    private void _reconcile() {
+        File[] files = _dir.listFiles();
+        Map<String, File> found = new HashMap<>();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && _isKey(file.getName())) found.put(file.getName(), file);
+            }
+        }
+
+        synchronized (this) {
+            Iterator<Map.Entry<String, Entry>> it = _entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> e = it.next();
+                found.remove(e.getKey());
+                // 列目录之后才登记的对象不在 found 中, 按文件本身判断
+                if (objectFile(e.getKey()).length() != e.getValue().size) {
+                    _totalBytes -= e.getValue().size;
+                    it.remove();
+                }
+            }
+            for (Map.Entry<String, File> e : found.entrySet()) {
+                if (_entries.containsKey(e.getKey())) continue;
+                Entry entry = new Entry();
+                entry.size = e.getValue().length();
+                entry.lastAccess = e.getValue().lastModified();
+                _put(e.getKey(), entry);
+            }
+            _sortByAccess();
+            _scheduleFlush();
+            _scheduleEvict(0);
+        }
+    }
+
+    /**
+     * 补入的对象按文件修改时间插在末尾, 重排为按最近访问时间的淘汰顺序
+     */
+    private void _sortByAccess() {
+        List<Map.Entry<String, Entry>> sorted = new ArrayList<>(_entries.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, Entry>>() {
+            @Override
+            public int compare(Map.Entry<String, Entry> a, Map.Entry<String, Entry> b) {
+                return Long.compare(a.getValue().lastAccess, b.getValue().lastAccess);
+            }
+        });
+        _entries.clear();
+        for (Map.Entry<String, Entry> e : sorted) {
+            _entries.put(e.getKey(), e.getValue());
+        }
+    }
+
+    // ---- 查询与登记 ----
+
+    /**
+     * 查找对象并记录一次访问
+     *
+     * @return 对象大小, 不存在 (或文件已被外部删除) 时返回 -1
+     */
+    synchronized long acquire(String key) {
+        Entry entry = _entries.get(key);
+        if (entry != null && objectFile(key).length() != entry.size) {
+            _entries.remove(key);
+            _totalBytes -= entry.size;
+            _scheduleFlush();
+            entry = null;
+        }
+        if (entry == null) {
+            _misses++;
+            return -1;
+        }
+        _hits++;
+        entry.lastAccess = System.currentTimeMillis();
+        _scheduleFlush();
+        return entry.size;
+    }
+
+    /**
+     * 对象不存在时返回 null, 否则返回其路径并记录一次访问
+     */
+    String pathIfPresent(String key) {
+        return acquire(key) >= 0 ? objectFile(key).getPath() : null;
+    }
+
+    /**
+     * 登记刚改名到位的对象, 超出预算时安排淘汰
+     */
+    synchronized void commit(String key, long size) {
+        Entry entry = _entries.get(key);
+        if (entry != null) {
+            _totalBytes -= entry.size;
+        } else {
+            entry = new Entry();
+        }
+        entry.size = size;
+        entry.lastAccess = System.currentTimeMillis();
+        _put(key, entry);
+        _scheduleFlush();
+        _scheduleEvict(0);
+    }
+
+    synchronized void setBudget(long bytes) {
+        _budget = bytes > 0 ? bytes : DEFAULT_BUDGET;
+        _scheduleEvict(0);
+    }
+
+    /**
+     * @return [对象数, 总字节数, 预算字节数, 命中次数, 未命中次数, 淘汰次数, 淘汰字节数]
+     */
+    synchronized long[] snapshot() {
+        return new long[]{_entries.size(), _totalBytes, _budget, _hits, _misses, _evictions, _evictedBytes};
+    }
+
+    // ---- 淘汰与写盘 (executor) ----
+
+    private void _put(String key, Entry entry) {
+        _entries.put(key, entry);
+        _totalBytes += entry.size;
+    }
+
+    private void _scheduleEvict(long delayMs) {
+        if (_evictScheduled || _totalBytes <= _budget) return;
+        _evictScheduled = true;
+        _executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                _evict();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 从最久未访问的对象开始删除, 直到总大小回到预算以内;
+     * 剩余对象都在 MIN_IDLE_MS 内访问过时, 等最早的一个过期后再试
+     */
+    private void _evict() {
+        long retryMs = -1;
+        synchronized (this) {
+            _evictScheduled = false;
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<String, Entry>> it = _entries.entrySet().iterator();
+            while (_totalBytes > _budget && it.hasNext()) {
+                Map.Entry<String, Entry> e = it.next();
+                long idle = now - e.getValue().lastAccess;
+                if (idle < MIN_IDLE_MS) {
+                    retryMs = MIN_IDLE_MS - idle;
+                    break;
+                }
+                File file = objectFile(e.getKey());
+                if (file.exists() && !file.delete()) continue;
+                it.remove();
+                _totalBytes -= e.getValue().size;
+                _evictions++;
+                _evictedBytes += e.getValue().size;
+            }
+            _scheduleFlush();
+            if (retryMs >= 0) _scheduleEvict(retryMs);
+        }
+    }
+
+    private void _scheduleFlush() {
+        if (_flushScheduled) return;
+        _flushScheduled = true;
+        _executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                _flush();
+            }
+        }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 先写临时文件再原子替换; 写入失败时下次启动由目录核对补回
+     */
+    private void _flush() {
+        byte[] bytes;
+        synchronized (this) {
+            _flushScheduled = false;
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 + _entries.size() * 96);
+            try (DataOutputStream out = new DataOutputStream(buffer)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(_entries.size());
+                for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().size);
+                    out.writeLong(e.getValue().lastAccess);
+                }
+            } catch (IOException e) {
+                return;
+            }
+            bytes = buffer.toByteArray();
+        }
+
+        File temp = new File(_indexFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(bytes);
+            out.getFD().sync();
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(_indexFile)) temp.delete();
+    }
+
+    // ---- 辅助方法 ----
+
+    private static boolean _isKey(String name) {
+        int dash = name.indexOf('-');
+        if (dash <= 0) return false;
+        String algorithm = name.substring(0, dash);
+        return (StreamingDigest.MD5.equals(algorithm) || StreamingDigest.SHA256.equals(algorithm)
+                || StreamingDigest.XXH64.equals(algorithm)) && _isHex(name.substring(dash + 1));
+    }
+
+    private static boolean _isHex(String s) {
+        if (s.isEmpty() || s.length() > MAX_HASH_LENGTH) return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,50 @@
+package com.toolkit.download;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * 直接内存缓冲区池
+ * <p>
+ * 下载线程从池中借出固定大小的直接 ByteBuffer, 读满后以 FileChannel 定位写入。
+ * 直接缓冲区写文件时不会再被 NIO 拷贝到临时直接内存, 复用也免去了每个分段请求分配读缓冲区带来的 GC 压力。
+ * 网络侧仍是 InputStream, 经 Channels.newChannel 读入时会先复制到适配器内部的堆数组, 这一次拷贝无法省去。
+ * </p>
+ */
+class DirectBufferPool {
+
+    private final int _bufferSize;
+    private final int _maxPooled;
+    private final ArrayDeque<ByteBuffer> _pool = new ArrayDeque<>();
+
+    DirectBufferPool(int bufferSize, int maxPooled) {
+        _bufferSize = bufferSize;
+        _maxPooled = maxPooled;
+    }
+
+    int bufferSize() {
+        return _bufferSize;
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer;
+        synchronized (_pool) {
+            buffer = _pool.pollFirst();
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(_bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区; 池已满时直接丢弃, 交由 GC 回收
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != _bufferSize) return;
+        synchronized (_pool) {
+            if (_pool.size() < _maxPooled) _pool.addFirst(buffer);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.toolkit.download;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 下载主机的 DNS 解析记录
+ * <p>
+ * HttpURLConnection 没有替换解析器的入口, 连接时总是经由系统解析器 (Android 为 netd 缓存);
+ * 本类记录每个主机最近一次成功解析的时刻, 按 TTL 判断系统缓存是否仍然有效:
+ * 过半 TTL 时引擎在后台提前刷新, 使系统缓存在下次连接前保持命中; 下载线程自身从不单独解析。
+ * Java 拿不到记录本身的 TTL, 统一使用 {@link #DEFAULT_TTL_MS}; 估计偏长只会让连接时自行解析, 不影响正确性。
+ * </p>
+ * <p>
+ * 主机列表持久化到文件, 下次启动时引擎在后台预先解析, 首个分段请求发出前系统缓存已经就绪。
+ * 文件格式: [magic][version][count] 后接 count 个 [host][resolvedAt][usedAt], 先写临时文件再原子替换。
+ * </p>
+ */
+final class DnsCache {
+
+    /** 解析结果视为有效的时长 */
+    static final long DEFAULT_TTL_MS = 120 * 1000L;
+    /** 超过该时长未使用的主机不再持久化 */
+    static final long RETAIN_MS = 7 * 24 * 3600 * 1000L;
+    static final int MAX_HOSTS = 32;
+
+    private static final int MAGIC = 0x544B444E; // "TKDN"
+    private static final int VERSION = 1;
+
+    private static final class Entry {
+        long resolvedAt;
+        long usedAt;
+        boolean refreshing;
+    }
+
+    private final File _file;
+    private final long _ttlMs;
+    /** 按访问顺序排列, 超出上限时淘汰最久未用的主机 */
+    private final LinkedHashMap<String, Entry> _entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param file 持久化文件, 为 null 时只在内存中记录
+     */
+    DnsCache(File file, long ttlMs) {
+        _file = file;
+        _ttlMs = ttlMs;
+    }
+
+    /**
+     * 读取持久化的主机列表, 文件损坏时视为空
+     *
+     * @return 需要预先解析的主机, 最近使用的在前
+     */
+    synchronized List<String> load(long now) {
+        List<String> hosts = new ArrayList<>();
+        if (_file == null || !_file.exists()) return hosts;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(_file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return hosts;
+            int count = Math.min(in.readInt(), MAX_HOSTS);
+            for (int i = 0; i < count; i++) {
+                String host = in.readUTF();
+                Entry entry = new Entry();
+                entry.resolvedAt = in.readLong();
+                entry.usedAt = in.readLong();
+                if (now - entry.usedAt > RETAIN_MS) continue;
+                _entries.put(host, entry);
+            }
+        } catch (IOException e) {
+            _entries.clear();
+            _file.delete();
+        }
+
+        for (String host : _entries.keySet()) {
+            hosts.add(0, host);
+        }
+        return hosts;
+    }
+
+    /**
+     * 主机的解析结果是否仍在 TTL 内, 同时记录一次使用
+     */
+    synchronized boolean isFresh(String host, long now) {
+        Entry entry = _entries.get(host);
+        if (entry == null) return false;
+        entry.usedAt = now;
+        return now - entry.resolvedAt < _ttlMs;
+    }
+
+    /**
+     * 超过半个 TTL 且没有刷新在进行时返回 true, 调用方负责在后台解析后调用 {@link #put} 或 {@link #failed}
+     */
+    synchronized boolean claimRefresh(String host, long now) {
+        Entry entry = _entries.get(host);
+        if (entry == null || entry.refreshing) return false;
+        if (now - entry.resolvedAt < _ttlMs / 2) return false;
+        entry.refreshing = true;
+        return true;
+    }
+
+    /**
+     * 记录一次成功解析并写回文件 (每个主机至多每半个 TTL 解析一次, 写入很少)
+     */
+    synchronized void put(String host, long now) {
+        Entry entry = _entries.get(host);
+        if (entry == null) {
+            entry = new Entry();
+            entry.usedAt = now;
+            _entries.put(host, entry);
+            _trim();
+        }
+        entry.resolvedAt = now;
+        entry.refreshing = false;
+        _save();
+    }
+
+    /** 解析失败, 允许之后再次刷新 */
+    synchronized void failed(String host) {
+        Entry entry = _entries.get(host);
+        if (entry != null) entry.refreshing = false;
+    }
+
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    private void _trim() {
+        Iterator<String> it = _entries.keySet().iterator();
+        while (_entries.size() > MAX_HOSTS && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换; 写入失败只影响下次启动的预解析, 忽略即可
+     */
+    private void _save() {
+        if (_file == null) return;
+
+        File parent = _file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) return;
+
+        File temp = new File(_file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().resolvedAt);
+                out.writeLong(e.getValue().usedAt);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(_file)) temp.delete();
+    }
+}
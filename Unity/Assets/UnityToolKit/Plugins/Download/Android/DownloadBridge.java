@@ -1,44 +1,91 @@
 package com.toolkit.download;
 
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
-import android.content.Context;
-import android.content.Intent;
-import android.os.Build;
-
 /**
  * Android 后台下载桥接类
  * <p>
  * 供 Unity C# 端通过 AndroidJavaClass 调用, 控制前台服务的生命周期和通知更新。
  * 同时提供独立通知功能 (用于前台 DisplayMode.Always 场景)。
  * </p>
+ * <p>
+ * 通知更新经过 {@link NotificationThrottle} 合并与限频, 再交给 {@link DownloadPlatform} 发布。
+ * 本类不直接引用 android.* 类型: 设备上由 {@link AndroidDownloadPlatform#install} 注入 Android 实现,
+ * 压力测试可在桌面 JVM 上注入进程内实现。
+ * </p>
+ * <p>
+ * 原生下载的操作经 {@link DownloadControl} 转发: 服务与 Unity 同进程时直接调用引擎,
+ * 服务声明在独立进程时经 Binder 跨进程调用 (见 {@link RemoteDownloadControl}), 由平台在初始化时识别。
+ * 通知限频和批量进度汇总始终在 Unity 进程中完成, 只有限频后的通知更新跨进程发送。
+ * </p>
  */
 public class DownloadBridge {
 
-    static final String CHANNEL_ID = "toolkit_download_channel";
-    private static final int STANDALONE_NOTIFICATION_ID = 19901;
+    private static final long DEFAULT_NOTIFICATION_INTERVAL_MS = 500;
 
-    private static Context _context;
-    private static NotificationManager _notificationManager;
+    private static volatile DownloadPlatform _platform;
+    private static volatile DownloadControl _control;
     private static String _smallIconName;
+    private static long _notificationIntervalMs = DEFAULT_NOTIFICATION_INTERVAL_MS;
+    private static volatile boolean _serviceRequested;
+
+    private static NotificationThrottle _serviceThrottle;
+    private static NotificationThrottle _standaloneThrottle;
+
+    private static final BatchProgressTable _batchTable = new BatchProgressTable();
+    private static final StringBuilder _batchText = new StringBuilder(64);
+    private static volatile String _batchTitle = "下载中";
+
+    /**
+     * 注入平台实现并创建控制通道 (设备上由 {@link AndroidDownloadPlatform#install} 调用, 重复调用无效果)
+     */
+    static synchronized void init(DownloadPlatform platform) {
+        if (_platform != null) return;
+
+        _serviceThrottle = new NotificationThrottle(
+                new NotificationThrottle.Sink() {
+                    @Override
+                    public void post(String title, String content, int progress) {
+                        _sendServiceUpdate(title, content, progress);
+                    }
+                }, _notificationIntervalMs, platform);
+        _standaloneThrottle = new NotificationThrottle(
+                new NotificationThrottle.Sink() {
+                    @Override
+                    public void post(String title, String content, int progress) {
+                        _postStandalone(title, content, progress);
+                    }
+                }, _notificationIntervalMs, platform);
+        platform.setSmallIconName(_smallIconName);
+        _control = platform.createControl();
+        _platform = platform;
+    }
 
     /**
-     * 初始化 (由 C# 端调用, 传入 UnityPlayer.currentActivity)
+     * 下载服务和引擎是否运行在独立进程中
      */
-    public static void init(Context context) {
-        _context = context.getApplicationContext();
-        _notificationManager = (NotificationManager)
-                _context.getSystemService(Context.NOTIFICATION_SERVICE);
-        _createNotificationChannel();
+    public static boolean isDownloadProcessIsolated() {
+        return _control().isRemote();
+    }
+
+    /**
+     * 原生下载的控制通道
+     * <p>必须先调用 init: 不能回退为进程内引擎, 否则服务声明在独立进程时会同时存在两个引擎和两份日志</p>
+     *
+     * @throws IllegalStateException 尚未调用 init
+     */
+    private static DownloadControl _control() {
+        DownloadControl control = _control;
+        if (control == null) {
+            throw new IllegalStateException("DownloadBridge.init has not been called");
+        }
+        return control;
     }
 
     /**
      * 设置通知小图标资源名 (drawable 资源名, 如 "ic_download")
      */
-    public static void setSmallIconName(String iconName) {
+    public static synchronized void setSmallIconName(String iconName) {
         _smallIconName = iconName;
+        if (_platform != null) _platform.setSmallIconName(iconName);
     }
 
     /**
@@ -48,147 +95,527 @@ public class DownloadBridge {
         return _smallIconName;
     }
 
+    /**
+     * 设置通知最大发布频率
+     * <p>内容未变化的更新始终会被丢弃; 超频的更新合并为最新一次, 在窗口结束时补发</p>
+     *
+     * @param postsPerSecond 每秒最多发布次数, 小于等于 0 表示不限频 (默认 2)
+     */
+    public static synchronized void setNotificationMaxRate(float postsPerSecond) {
+        _notificationIntervalMs = postsPerSecond > 0 ? (long) (1000f / postsPerSecond) : 0;
+        if (_platform == null) return;
+        _serviceThrottle.setMinIntervalMs(_notificationIntervalMs);
+        _standaloneThrottle.setMinIntervalMs(_notificationIntervalMs);
+    }
+
     // ---- 前台服务 ----
 
     /**
      * 启动前台下载服务
      */
     public static void startService(String title, String content) {
-        if (_context == null) return;
-
-        Intent intent = new Intent(_context, DownloadForegroundService.class);
-        intent.putExtra("action", "start");
-        intent.putExtra("title", title);
-        intent.putExtra("content", content);
+        DownloadPlatform platform = _platform;
+        if (platform == null) return;
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            _context.startForegroundService(intent);
-        } else {
-            _context.startService(intent);
-        }
+        _serviceThrottle.reset();
+        _serviceRequested = true;
+        platform.startService(title, content, _smallIconName);
     }
 
     /**
      * 更新前台服务通知栏进度
+     * <p>服务已在前台时走进程内直接调用, 不经过 Intent 分发</p>
      *
      * @param title    通知标题
      * @param content  通知内容
      * @param progress 进度 (0~100)
      */
     public static void updateNotification(String title, String content, int progress) {
-        if (_context == null) return;
-
-        Intent intent = new Intent(_context, DownloadForegroundService.class);
-        intent.putExtra("action", "update");
-        intent.putExtra("title", title);
-        intent.putExtra("content", content);
-        intent.putExtra("progress", progress);
+        if (_platform == null) return;
+        DownloadLockManager.noteActivity();
+        _serviceThrottle.submit(title, content, Math.min(progress, 100));
+    }
 
-        _context.startService(intent);
+    /**
+     * 向前台服务发送更新指令 (由限频器调用)
+     * <p>服务已进入前台时直接调用实例方法 (独立进程时经 Binder), 仅在启动尚未完成时回退到 Intent</p>
+     */
+    private static void _sendServiceUpdate(String title, String content, int progress) {
+        _control().updateService(title, content, progress);
     }
 
     /**
      * 停止前台下载服务
      */
     public static void stopService() {
-        if (_context == null) return;
+        if (_platform == null) return;
 
-        Intent intent = new Intent(_context, DownloadForegroundService.class);
-        intent.putExtra("action", "stop");
-        _context.startService(intent);
+        _serviceThrottle.reset();
+        _serviceRequested = false;
+        _control().stopService();
     }
 
-    // ---- 独立通知 (前台 DisplayMode.Always 场景) ----
+    /**
+     * 获取下载期间 WakeLock / WifiLock 的累计持有时长
+     * <p>锁仅在有数据流动时持有, 空闲或卡住时自动释放</p>
+     *
+     * @return [wakeLockMs, wifiLockMs]
+     */
+    public static long[] getLockHoldTimes() {
+        return _control().getLockHoldTimes();
+    }
 
     /**
-     * 显示/更新独立通知 (不依赖前台服务)
-     * <p>用于 App 在前台时显示下载进度通知 (DisplayMode.Always)</p>
+     * 获取原生下载引擎的运行指标快照
+     * <p>
+     * 包含吞吐量 EWMA、连接数、重试次数、WakeLock/WifiLock 持有时长,
+     * 以及首字节/DNS/连接/TLS/卡顿五个毫秒直方图。布局见 {@link DownloadStats},
+     * 与 C# 端 NativeDownloadStats 一致。开销很小, 可每秒轮询。
+     * DNS 命中数只是按解析记录 TTL 的估计 ({@link DnsCache} 不保存地址), DNS 直方图只来自后台预解析。
+     * </p>
+     */
+    public static long[] getStats() {
+        return _control().getStats();
+    }
+
+    /**
+     * 获取 Unity 进程侧的诊断数据, 用于压力测试和内存排查
+     * <p>引擎运行在独立进程时, 堆用量只反映 Unity 进程, 不含下载线程和缓冲区</p>
      *
-     * @param title    通知标题
-     * @param content  通知内容
-     * @param progress 进度 (0~100)
+     * @return [通知累计提交次数, 通知累计发布次数, Java 堆已用字节, Native 堆已分配字节]
      */
-    public static void showNotification(String title, String content, int progress) {
-        if (_context == null || _notificationManager == null) return;
+    public static long[] getDiagnostics() {
+        Runtime runtime = Runtime.getRuntime();
+        DownloadPlatform platform = _platform;
+        if (platform == null) {
+            return new long[]{0, 0, runtime.totalMemory() - runtime.freeMemory(), 0};
+        }
+        return new long[]{
+                _serviceThrottle.submittedCount() + _standaloneThrottle.submittedCount(),
+                _serviceThrottle.postedCount() + _standaloneThrottle.postedCount(),
+                runtime.totalMemory() - runtime.freeMemory(),
+                platform.nativeHeapBytes()
+        };
+    }
 
-        Notification.Builder builder;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            builder = new Notification.Builder(_context, CHANNEL_ID);
+    /**
+     * 获取自适应并发控制器的状态, 用于日志和遥测
+     *
+     * @return [连接上限, 活跃连接数, 上个窗口吞吐 (字节/秒), 单连接吞吐 (字节/秒),
+     * 累计加窗次数, 累计减窗次数, 累计拥塞信号数 (超时/429/503), 是否自适应 (1/0)]
+     */
+    public static long[] getConcurrencyState() {
+        return _control().getConcurrencyState();
+    }
+
+    /**
+     * 固定原生下载的总连接数, 小于等于 0 表示恢复自适应 (默认)
+     * <p>用于与自适应策略做对比测试, 或在已知网络环境下强制限制连接数</p>
+     */
+    public static void setConnectionLimit(int limit) {
+        _control().setConnectionLimit(limit);
+    }
+
+    // ---- 批量进度 ----
+
+    /**
+     * 批量上报任务进度 (每帧一次)
+     * <p>
+     * Java 端按 taskId 以基本类型数组保存各任务状态, 汇总总进度并自行生成通知文本,
+     * 避免 C# 端逐任务跨 JNI 传递字符串。未出现在本次批次中的任务保持上次的状态。
+     * 前台服务已启动时更新服务通知, 否则更新独立通知。
+     * </p>
+     *
+     * @param taskIds    任务 ID
+     * @param bytesDone  已下载字节数
+     * @param bytesTotal 总字节数, 小于等于 0 表示未知
+     */
+    public static void updateProgressBatch(long[] taskIds, long[] bytesDone, long[] bytesTotal) {
+        if (_platform == null || taskIds == null || bytesDone == null || bytesTotal == null) return;
+
+        String content;
+        int percent;
+        synchronized (_batchTable) {
+            long before = _batchTable.sumDone();
+            _batchTable.update(taskIds, bytesDone, bytesTotal);
+            if (_batchTable.sumDone() != before) DownloadLockManager.noteActivity();
+            percent = _batchTable.percent();
+            content = _batchTable.formatSummary(_batchText);
+        }
+
+        if (_serviceRequested) {
+            _serviceThrottle.submit(_batchTitle, content, percent);
         } else {
-            builder = new Notification.Builder(_context);
+            _standaloneThrottle.submit(_batchTitle, content, percent);
         }
+    }
 
-        builder.setContentTitle(title)
-                .setContentText(content)
-                .setSmallIcon(resolveSmallIcon())
-                .setOngoing(true)
-                .setProgress(100, Math.min(progress, 100), false);
+    /**
+     * 设置批量进度通知的标题
+     */
+    public static void setBatchTitle(String title) {
+        if (title != null) _batchTitle = title;
+    }
 
-        // 点击通知打开 App
-        PendingIntent contentIntent = createContentIntent();
-        if (contentIntent != null) {
-            builder.setContentIntent(contentIntent);
+    /**
+     * 清空批量进度表 (一批下载全部结束后调用)
+     */
+    public static void clearProgressBatch() {
+        synchronized (_batchTable) {
+            _batchTable.clear();
         }
-
-        _notificationManager.notify(STANDALONE_NOTIFICATION_ID, builder.build());
     }
 
+    // ---- 原生下载引擎 ----
+
     /**
-     * 隐藏独立通知
+     * 添加原生分段下载任务
+     * <p>下载在 Java 线程中进行, 不受 Unity 主循环暂停影响</p>
+     * <p>
+     * 相同地址和保存路径的任务不会重复下载: 进程重启后从日志恢复的任务会返回原 ID,
+     * 失败的任务保留已下载分段重新开始。
+     * </p>
+     *
+     * @param url         下载地址
+     * @param savePath    保存路径 (下载中使用 savePath + ".part" 临时文件)
+     * @param connections 并行连接数上限 (1~8), 实际连接数由自适应并发控制器决定
+     * @return 任务 ID
      */
-    public static void hideNotification() {
-        if (_notificationManager == null) return;
-        _notificationManager.cancel(STANDALONE_NOTIFICATION_ID);
+    public static long enqueueDownload(String url, String savePath, int connections) {
+        return _control().enqueue(url, savePath, connections, DownloadTask.PRIORITY_NORMAL,
+                null, null, 0, null);
     }
 
-    // ---- 辅助方法 ----
+    /**
+     * 添加指定优先级的原生下载任务
+     * <p>并发槽位已满时, 高优先级任务抢占正在运行的低优先级任务, 被抢占的任务保留分段并暂停排队</p>
+     *
+     * @param priority 0 = 后台预取, 1 = 普通, 2 = 关键 (与 C# EDownloadPriority 一致)
+     * @return 任务 ID; 任务已存在时返回原 ID 并调整其优先级
+     */
+    public static long enqueueDownload(String url, String savePath, int connections, int priority) {
+        return _control().enqueue(url, savePath, connections, priority, null, null, 0, null);
+    }
 
     /**
-     * 解析通知小图标资源 ID
-     * <p>优先使用自定义图标名, 回退到系统默认下载图标</p>
+     * 添加带完整性校验的原生下载任务
+     * <p>摘要随数据到达增量计算, 下载完成即得到校验结果, 无需再读回整个文件</p>
+     * <p>
+     * 提供分块摘要时分段按块对齐, 某块校验失败只重新请求该块;
+     * 只提供整体摘要且不符时任务以 ERROR_INTEGRITY 失败, 临时文件被丢弃。
+     * C# 端无法传 null, 空字符串/空数组表示不提供。
+     * </p>
+     *
+     * @param priority     调度优先级, 见 {@link #enqueueDownload(String, String, int, int)}
+     * @param algorithm    crc32 / md5 / sha256 / xxh64 (xxHash64, seed 0)
+     * @param expectedHash 整个文件的期望摘要 (十六进制, 大小写不敏感)
+     * @param chunkSize    分块大小 (字节), 不分块校验时传 0
+     * @param chunkHashes  各分块的期望摘要, 按文件顺序排列
+     * @return 任务 ID
      */
-    static int resolveSmallIcon() {
-        if (_smallIconName != null && _context != null) {
-            int resId = _context.getResources().getIdentifier(
-                    _smallIconName, "drawable", _context.getPackageName());
-            if (resId != 0) return resId;
+    public static long enqueueVerifiedDownload(String url, String savePath, int connections,
+                                               int priority, String algorithm, String expectedHash,
+                                               long chunkSize, String[] chunkHashes) {
+        if (algorithm == null || algorithm.isEmpty()) {
+            return enqueueDownload(url, savePath, connections, priority);
         }
-        return android.R.drawable.stat_sys_download;
+        if (expectedHash != null && expectedHash.isEmpty()) expectedHash = null;
+        if (chunkHashes != null && chunkHashes.length == 0) chunkHashes = null;
+        return _control().enqueue(url, savePath, connections, priority,
+                algorithm, expectedHash, chunkSize, chunkHashes);
     }
 
     /**
-     * 创建点击通知时打开 App 的 PendingIntent
+     * 添加从多个 CDN 镜像下载同一文件的任务
+     * <p>
+     * 开始下载前并行探测各镜像的首字节时间, 分段分摊到响应最快的几个镜像上;
+     * 某个镜像出错或卡住时, 分段从已写入的位置换到其它镜像继续, 已下载的字节不会丢失。
+     * 大小与多数镜像不一致的镜像不参与下载。镜像间的内容一致性只能靠摘要确认,
+     * 因此多个地址时必须提供 expectedHash 或 chunkHashes, 否则抛出 IllegalArgumentException;
+     * 只有一个地址时可以不校验。C# 端无法传 null, 空字符串/空数组表示不校验。
+     * </p>
+     *
+     * @param urls         镜像地址, 任务以第一个地址标识
+     * @param priority     调度优先级, 见 {@link #enqueueDownload(String, String, int, int)}
+     * @param algorithm    摘要算法, 见 {@link #enqueueVerifiedDownload}
+     * @param expectedHash 整个文件的期望摘要
+     * @param chunkSize    分块大小 (字节), 不分块校验时传 0
+     * @param chunkHashes  各分块的期望摘要
+     * @return 任务 ID
+     * @throws IllegalArgumentException 多个地址却未提供摘要, 或算法不受支持
      */
-    static PendingIntent createContentIntent() {
-        if (_context == null) return null;
+    public static long enqueueMirroredDownload(String[] urls, String savePath, int connections,
+                                               int priority, String algorithm, String expectedHash,
+                                               long chunkSize, String[] chunkHashes) {
+        if (algorithm != null && algorithm.isEmpty()) algorithm = null;
+        if (algorithm == null) {
+            expectedHash = null;
+            chunkHashes = null;
+        }
+        if (expectedHash != null && expectedHash.isEmpty()) expectedHash = null;
+        if (chunkHashes != null && chunkHashes.length == 0) chunkHashes = null;
+        return _control().enqueueMirrored(urls, savePath, connections,
+                priority, algorithm, expectedHash, chunkSize, chunkHashes);
+    }
 
-        Intent launchIntent = _context.getPackageManager()
-                .getLaunchIntentForPackage(_context.getPackageName());
-        if (launchIntent == null) return null;
+    /**
+     * 添加边下载边解压的资源包任务
+     * <p>
+     * 归档不落盘, 数据到达即解压写出最终文件, 省去整包写入再读回解压的一轮闪存读写。
+     * zip 中断后从最近一个已落盘的条目继续; gzip 中断后从头开始。条目按自带的 CRC32 校验,
+     * 不符时为可重试的 ERROR_INTEGRITY, 重试从最近完成的条目之后继续; 归档格式无效或条目路径越界时以 ERROR_CORRUPT 失败, 不重试。
+     * </p>
+     *
+     * @param url      归档地址
+     * @param savePath zip 为解压目录, gzip 为解压后的文件路径
+     * @param format   zip / gzip
+     * @param priority 调度优先级, 见 {@link #enqueueDownload(String, String, int, int)}
+     * @return 任务 ID
+     */
+    public static long enqueueExtract(String url, String savePath, String format, int priority) {
+        return _control().enqueueExtract(url, savePath, format, priority);
+    }
 
-        launchIntent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+    /**
+     * 添加差分补丁任务: 只下载补丁, 与本地旧文件合成新版本
+     * <p>
+     * 补丁为 bsdiff 4.3 交错布局 (ENDSLEY/BSDIFF43), 头部之后的数据不压缩或以 zlib 压缩 (由 zlib 参数指明, 不支持 bzip2)。
+     * 补丁本身格式错误时以 ERROR_CORRUPT 失败, 不会重试。
+     * 补丁边下载边应用, 新文件的摘要与期望值一致后才原子替换 savePath, 失败时旧文件保持不变。
+     * </p>
+     *
+     * @param sourcePath   本地旧文件
+     * @param patchUrl     补丁地址
+     * @param savePath     新文件路径, 可以与 sourcePath 相同 (原地更新)
+     * @param priority     调度优先级, 见 {@link #enqueueDownload(String, String, int, int)}
+     * @param algorithm    新文件的摘要算法, 见 {@link #enqueueVerifiedDownload}
+     * @param expectedHash 新文件的期望摘要 (十六进制)
+     * @param zlib         补丁头部之后的数据为 zlib 流 (否则不压缩)
+     * @return 任务 ID
+     */
+    public static long enqueuePatch(String sourcePath, String patchUrl, String savePath, int priority,
+                                    String algorithm, String expectedHash, boolean zlib) {
+        return _control().enqueuePatch(sourcePath, patchUrl, savePath,
+                priority, algorithm, expectedHash, zlib);
+    }
 
-        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            flags |= PendingIntent.FLAG_IMMUTABLE;
+    /**
+     * 一次调用批量添加小文件下载任务 (如上千个 AssetBundle)
+     * <p>
+     * 小文件省去探测请求和分段, 同一主机的请求复用 keep-alive 连接, 避免每个文件重新进行 TCP/TLS 握手。
+     * 大文件请继续使用 {@link #enqueueDownload(String, String, int, int)}。
+     * C# 端无法传 null, 空字符串/空数组表示不校验。
+     * </p>
+     *
+     * @param urls           下载地址
+     * @param savePaths      保存路径, 与 urls 一一对应
+     * @param priority       调度优先级, 见 {@link #enqueueDownload(String, String, int, int)}
+     * @param algorithm      摘要算法, 见 {@link #enqueueVerifiedDownload}
+     * @param expectedHashes 各文件的期望摘要, 与 urls 一一对应, 某项为空字符串时该文件不校验
+     * @return 各任务 ID, 与 urls 一一对应
+     */
+    public static long[] enqueueBatch(String[] urls, String[] savePaths, int priority,
+                                      String algorithm, String[] expectedHashes) {
+        if (algorithm != null && algorithm.isEmpty()) algorithm = null;
+        if (algorithm == null || (expectedHashes != null && expectedHashes.length == 0)) {
+            expectedHashes = null;
         }
-        return PendingIntent.getActivity(_context, 0, launchIntent, flags);
+        return _control().enqueueBatch(urls, savePaths, priority,
+                algorithm, expectedHashes);
     }
 
     /**
-     * 创建通知渠道 (Android 8.0+)
+     * 从同一远程文件中取出多个切片, 分别保存为文件 (如打包在一个大文件中的上千个小资源)
+     * <p>
+     * 间隔不超过 gapBytes 的切片合并为一个区间, 多个区间以一个 multipart/byteranges 请求取回,
+     * 服务器不支持时自动降级为单区间请求或完整 GET。整批切片对应一个任务, 全部完成后任务完成。
+     * </p>
+     *
+     * @param url         远程文件地址
+     * @param offsets     各切片在远程文件中的偏移
+     * @param lengths     各切片的长度
+     * @param savePaths   各切片的保存路径, 与 offsets 一一对应, 不能重复, 也不能是未结束任务正在写入的路径
+     * @param gapBytes    合并间隔, 小于 0 时使用默认值 (16KB)
+     * @param connections 并行请求数上限 (1~8)
+     * @param priority    调度优先级, 见 {@link #enqueueDownload(String, String, int, int)}
+     * @return 任务 ID
      */
-    private static void _createNotificationChannel() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(
-                    CHANNEL_ID,
-                    "下载服务",
-                    NotificationManager.IMPORTANCE_LOW
-            );
-            channel.setDescription("文件下载进度通知");
-            channel.setSound(null, null);
-            channel.enableVibration(false);
-            _notificationManager.createNotificationChannel(channel);
-        }
+    public static long enqueueRanges(String url, long[] offsets, long[] lengths, String[] savePaths,
+                                     long gapBytes, int connections, int priority) {
+        return _control().enqueueRanges(url, offsets, lengths, savePaths,
+                gapBytes, connections, priority);
+    }
+
+    // ---- 内容缓存 ----
+
+    /**
+     * 添加由内容缓存管理的下载任务, 按摘要去重
+     * <p>
+     * 文件保存在缓存目录中, 以 "算法-摘要" 命名; 缓存中已有该内容时不发出任何网络请求,
+     * 直接返回一个已完成的任务。下载完成后用 {@link #getCachedPath} 取得文件路径, 不要移动或删除该文件。
+     * 缓存总大小超过预算时, 最久未访问的对象在后台被淘汰。
+     * </p>
+     *
+     * @param urls      下载地址, 多个时为镜像, 见 {@link #enqueueMirroredDownload}
+     * @param priority  调度优先级, 见 {@link #enqueueDownload(String, String, int, int)}
+     * @param algorithm md5 / sha256 / xxh64 (crc32 不能作为内容地址)
+     * @param hash      整个文件的期望摘要 (十六进制)
+     * @return 任务 ID
+     */
+    public static long enqueueCachedDownload(String[] urls, int connections, int priority,
+                                             String algorithm, String hash) {
+        return _control().enqueueCached(urls, connections, priority, algorithm, hash);
+    }
+
+    /**
+     * 批量添加由内容缓存管理的小文件任务, 规则同 {@link #enqueueCachedDownload}
+     *
+     * @param hashes 各文件的期望摘要, 与 urls 一一对应
+     * @return 各任务 ID, 与 urls 一一对应; 同一批中摘要相同的文件对应同一个任务
+     */
+    public static long[] enqueueCachedBatch(String[] urls, int priority, String algorithm, String[] hashes) {
+        return _control().enqueueBatchCached(urls, priority, algorithm, hashes);
+    }
+
+    /**
+     * 查询内容在缓存中的路径, 同时记录一次访问 (推迟其被淘汰)
+     *
+     * @return 文件路径, 不在缓存中时返回空字符串 (C# 端无法接收 null)
+     */
+    public static String getCachedPath(String algorithm, String hash) {
+        String path = _control().getCachedPath(algorithm, hash);
+        return path != null ? path : "";
+    }
+
+    /**
+     * 设置内容缓存的总大小预算 (字节), 小于等于 0 时恢复默认值 (512MB)
+     */
+    public static void setContentCacheBudget(long bytes) {
+        _control().setContentCacheBudget(bytes);
+    }
+
+    /**
+     * @return [对象数, 总字节数, 预算字节数, 命中次数, 未命中次数, 淘汰次数, 淘汰字节数]
+     */
+    public static long[] getContentCacheState() {
+        return _control().getContentCacheState();
+    }
+
+    /**
+     * 设置原生下载的读写缓冲区大小 (8KB~1MB, 默认 64KB)
+     * <p>缓冲区为池化的直接内存, 低端机可适当调小以降低内存占用</p>
+     */
+    public static void setDownloadBufferSize(int bytes) {
+        _control().setBufferSize(bytes);
+    }
+
+    /**
+     * 设置是否在原生下载开始前按文件大小预分配磁盘空间 (默认开启)
+     * <p>无论是否预分配, 开始下载前都会检查剩余空间, 不足时任务以 Storage 错误失败</p>
+     */
+    public static void setPreallocateFiles(boolean preallocate) {
+        _control().setPreallocate(preallocate);
+    }
+
+    /**
+     * 运行时修改任务优先级, 可能立即触发抢占或恢复被抢占的任务
+     *
+     * @return 任务不存在或已结束时返回 false
+     */
+    public static boolean setDownloadPriority(long taskId, int priority) {
+        return _control().setPriority(taskId, priority);
+    }
+
+    /**
+     * 设置所有原生下载共享的总限速 (字节/秒), 小于等于 0 表示不限速
+     * <p>如对局中限制后台下载, 对局结束后恢复为 0</p>
+     */
+    public static void setGlobalRateLimit(long bytesPerSecond) {
+        _control().setGlobalRateLimit(bytesPerSecond);
+    }
+
+    /**
+     * 设置单个任务的限速 (字节/秒), 小于等于 0 表示不限速
+     *
+     * @return 任务不存在时返回 false
+     */
+    public static boolean setTaskRateLimit(long taskId, long bytesPerSecond) {
+        return _control().setTaskRateLimit(taskId, bytesPerSecond);
+    }
+
+    /**
+     * 取消原生下载任务
+     *
+     * @return 任务存在且尚未结束时返回 true
+     */
+    public static boolean cancelDownload(long taskId) {
+        return _control().cancel(taskId);
+    }
+
+    /**
+     * 查询原生下载任务状态
+     *
+     * @return [status, error, downloadedBytes, totalBytes], 任务不存在时返回 null
+     * <p>status 对应 EDownloadStatus, error 对应 EDownloadError (-1 表示无错误)</p>
+     */
+    public static long[] queryDownload(long taskId) {
+        long[] state = _control().query(new long[]{taskId});
+        return state[0] >= 0 ? state : null;
+    }
+
+    /**
+     * 批量查询原生下载任务状态, 轮询大量小文件时只需一次 JNI 调用
+     *
+     * @return 每个任务依次占 4 个元素, 布局同 {@link #queryDownload(long)};
+     * 任务不存在时对应位置为 [-1, -1, 0, -1]
+     */
+    public static long[] queryDownloads(long[] taskIds) {
+        return _control().query(taskIds);
+    }
+
+    /**
+     * 移除已结束的原生下载任务记录
+     */
+    public static void removeDownload(long taskId) {
+        _control().remove(taskId);
+    }
+
+    /**
+     * 是否存在未结束的原生下载任务
+     */
+    public static boolean hasActiveDownloads() {
+        return _control().hasActiveTasks();
+    }
+
+    // ---- 独立通知 (前台 DisplayMode.Always 场景) ----
+
+    /**
+     * 显示/更新独立通知 (不依赖前台服务)
+     * <p>用于 App 在前台时显示下载进度通知 (DisplayMode.Always)</p>
+     *
+     * @param title    通知标题
+     * @param content  通知内容
+     * @param progress 进度 (0~100)
+     */
+    public static void showNotification(String title, String content, int progress) {
+        if (_platform == null) return;
+        _standaloneThrottle.submit(title, content, Math.min(progress, 100));
+    }
+
+    /**
+     * 发布独立通知 (由限频器调用)
+     */
+    private static void _postStandalone(String title, String content, int progress) {
+        _platform.showNotification(title, content, progress);
+    }
+
+    /**
+     * 隐藏独立通知
+     */
+    public static void hideNotification() {
+        DownloadPlatform platform = _platform;
+        if (platform == null) return;
+        _standaloneThrottle.reset();
+        platform.hideNotification();
     }
 }
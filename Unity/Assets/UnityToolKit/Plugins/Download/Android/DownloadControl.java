@@ -0,0 +1,94 @@
+package com.toolkit.download;
+
+/**
+ * DownloadBridge 对下载引擎和前台服务的全部操作
+ * <p>
+ * 服务与 Unity 同进程时由 {@link LocalDownloadControl} 直接调用进程内的引擎;
+ * 服务在 AndroidManifest 中声明为独立进程 (android:process) 时由 {@link RemoteDownloadControl}
+ * 经 Binder 转发到服务进程, DownloadBridge 的对外接口保持不变。
+ * </p>
+ * <p>参数已由 DownloadBridge 规整 (C# 传来的空字符串/空数组已转为 null), 语义同 {@link DownloadEngine} 的对应方法</p>
+ */
+interface DownloadControl {
+
+    /** 引擎是否运行在另一个进程中 */
+    boolean isRemote();
+
+    // ---- 添加任务 ----
+
+    long enqueue(String url, String savePath, int connections, int priority,
+                 String algorithm, String expectedHash, long chunkSize, String[] chunkHashes);
+
+    long enqueueMirrored(String[] urls, String savePath, int connections, int priority,
+                         String algorithm, String expectedHash, long chunkSize, String[] chunkHashes);
+
+    long enqueueExtract(String url, String savePath, String format, int priority);
+
+    long enqueuePatch(String sourcePath, String patchUrl, String savePath, int priority,
+                      String algorithm, String expectedHash, boolean zlib);
+
+    long[] enqueueBatch(String[] urls, String[] savePaths, int priority,
+                        String algorithm, String[] expectedHashes);
+
+    long enqueueRanges(String url, long[] offsets, long[] lengths, String[] savePaths,
+                       long gapBytes, int connections, int priority);
+
+    // ---- 内容缓存 ----
+
+    long enqueueCached(String[] urls, int connections, int priority, String algorithm, String hash);
+
+    long[] enqueueBatchCached(String[] urls, int priority, String algorithm, String[] hashes);
+
+    /** @return 对象路径, 不在缓存中时为 null */
+    String getCachedPath(String algorithm, String hash);
+
+    void setContentCacheBudget(long bytes);
+
+    /** @return [对象数, 总字节数, 预算字节数, 命中次数, 未命中次数, 淘汰次数, 淘汰字节数] */
+    long[] getContentCacheState();
+
+    // ---- 任务控制与查询 ----
+
+    boolean cancel(long taskId);
+
+    void remove(long taskId);
+
+    /**
+     * @return 每个任务依次占 4 个元素 [status, error, downloadedBytes, totalBytes];
+     * 任务不存在时对应位置为 [-1, -1, 0, -1]
+     */
+    long[] query(long[] taskIds);
+
+    boolean hasActiveTasks();
+
+    boolean setPriority(long taskId, int priority);
+
+    // ---- 配置 ----
+
+    void setGlobalRateLimit(long bytesPerSecond);
+
+    boolean setTaskRateLimit(long taskId, long bytesPerSecond);
+
+    void setConnectionLimit(int limit);
+
+    void setBufferSize(int bytes);
+
+    void setPreallocate(boolean preallocate);
+
+    // ---- 指标 ----
+
+    /** 引擎指标快照, 已填入 WakeLock/WifiLock 持有时长, 布局见 {@link DownloadStats} */
+    long[] getStats();
+
+    long[] getConcurrencyState();
+
+    /** @return [wakeLockMs, wifiLockMs] */
+    long[] getLockHoldTimes();
+
+    // ---- 前台服务 ----
+
+    /** 更新前台服务通知 (调用方已限频) */
+    void updateService(String title, String content, int progress);
+
+    void stopService();
+}
@@ -0,0 +1,2305 @@
+package com.toolkit.download;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 原生多连接分段下载引擎
+ * <p>
+ * 将文件按 HTTP Range 切分为若干分段, 使用多个连接并行拉取并按偏移写入同一文件。
+ * 分段出错后从已写入的位置继续请求, 不会丢弃已下载的数据。
+ * </p>
+ * <p>
+ * 引擎只依赖 java.net / java.nio, 不依赖 Unity 主线程, App 进入后台后由
+ * {@link DownloadForegroundService} 保活进程, 下载继续全速进行。
+ * </p>
+ * <p>
+ * 启用 {@link DownloadJournal} 后, 分段偏移和 ETag/Last-Modified 会定期落盘,
+ * 进程被杀死后可从日志恢复任务, 以带 If-Range 的 Range 请求续传。
+ * </p>
+ * <p>
+ * 指定期望摘要的任务在字节到达时同步计算摘要 ({@link StreamingDigest}), 不再整体读回文件;
+ * 提供分块摘要时分段按块对齐, 校验失败只重新请求出错的块。
+ * </p>
+ * <p>
+ * 任务按优先级调度, 同时运行的任务数由 {@link ConcurrencyController} 的连接上限推导; 没有空闲槽位时,
+ * 高优先级任务抢占正在运行的最低优先级任务, 被抢占的任务保留分段回到等待队列。
+ * 全局和单任务各有一个令牌桶限速, 均可在运行时调整。
+ * </p>
+ * <p>
+ * 批量添加的小文件任务走独立的调度通道: 不探测、不分段, 同一主机并发受限,
+ * 响应体读完后连接回到 HTTP/1.1 keep-alive 池, 后续文件直接复用已建立的 TCP/TLS 连接。
+ * </p>
+ * <p>
+ * 所有连接向 {@link ConcurrencyController} 申请名额, 上限按吞吐反馈以 AIMD 调整。
+ * 有空闲名额时, 运行中任务剩余最多的分段会被一分为二交给新连接, 分段数随网络状况伸缩。
+ * </p>
+ * <p>
+ * 携带多个镜像地址的任务先并行探测各镜像的首字节时间, 分段分摊到响应最快的几个镜像上 (见 {@link MirrorSet});
+ * 某个镜像出错或卡住 (以较短的超时判定) 时, 分段从已写入的位置换到其它镜像继续。
+ * </p>
+ * <p>
+ * 补丁任务沿用边下载边解压的单连接通道, 由 {@link PatchApplier} 将到达的差分数据与本地旧文件合成新文件,
+ * 校验通过后原子替换, 更新只需下载变化的部分。
+ * </p>
+ * <p>
+ * 区间合并任务从同一远程文件中取出许多小切片, 由 {@link RangePlanner} 将相近的切片合并为区间,
+ * 以 multipart/byteranges 请求一次取回几十个区间; 服务器不支持时降级为单区间请求或完整 GET。
+ * </p>
+ * <p>
+ * DNS、TCP 连接、TLS 握手、首字节时间、卡顿和重试等指标记录在 {@link DownloadStats} 中。
+ * </p>
+ */
+class DownloadEngine {
+
+    /** 大文件通道并发任务数的上限, 实际值由并发控制器决定 */
+    private static final int MAX_CONCURRENT_TASKS = 3;
+    /** 小文件通道并发数的上限, 实际值由并发控制器决定 */
+    private static final int MAX_SMALL_FILE_TASKS = 8;
+    /**
+     * 小文件通道单个主机的并发数, 不超过系统 keep-alive 池的空闲连接上限 (默认 5),
+     * 保证连接用完后都能回池复用
+     */
+    private static final int MAX_SMALL_FILES_PER_HOST = 4;
+    private static final int MAX_CONNECTIONS_PER_TASK = 8;
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024L;
+
+    private static final int CONNECT_TIMEOUT_MS = 30000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int MAX_RETRIES = 3;
+    private static final int RETRY_DELAY_MS = 1000;
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int MIN_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 16;
+    /** 预分配后至少保留的可用空间, 避免把设备存储写满 */
+    private static final long STORAGE_RESERVE_BYTES = 32 * 1024 * 1024L;
+    private static final long CHECKPOINT_INTERVAL_MS = 2000;
+    /** 限速等待时的最大单次休眠, 保证取消/抢占能及时生效 */
+    private static final long MAX_PACE_SLEEP_MS = 100;
+    private static final long STALL_THRESHOLD_NANOS = DownloadStats.STALL_THRESHOLD_MS * 1000000L;
+    /** 分段下载期间检查能否拆分出新分段的间隔 */
+    private static final long SPLIT_CHECK_INTERVAL_MS = 500;
+    /** 最快的镜像响应后, 再等待其它镜像探测结果的时长; 更晚响应的镜像随后加入 */
+    private static final long MIRROR_PROBE_GRACE_MS = 500;
+    /** 还有其它镜像可用时的连接和读取超时, 卡住的镜像很快被放弃, 分段换到其它镜像 */
+    private static final int MIRROR_TIMEOUT_MS = 5000;
+
+    /** 等待队列排序: 优先级高者在前, 同优先级按入队顺序 */
+    private static final Comparator<DownloadTask> QUEUE_ORDER = new Comparator<DownloadTask>() {
+        @Override
+        public int compare(DownloadTask a, DownloadTask b) {
+            if (a.priority != b.priority) return a.priority > b.priority ? -1 : 1;
+            return a.queueSeq < b.queueSeq ? -1 : (a.queueSeq == b.queueSeq ? 0 : 1);
+        }
+    };
+
+    private final ConcurrentHashMap<Long, DownloadTask> _tasks = new ConcurrentHashMap<>();
+    /** 按保存路径索引, 批量添加上千个任务时去重不必遍历全部任务 */
+    private final ConcurrentHashMap<String, DownloadTask> _tasksByPath = new ConcurrentHashMap<>();
+    private final AtomicLong _nextTaskId = new AtomicLong(1);
+    private final AtomicLong _transferredBytes = new AtomicLong();
+    private final TokenBucket _rateLimiter = new TokenBucket();
+    private final DownloadStats _stats = new DownloadStats();
+    private final ConcurrencyController _controller;
+    private volatile TlsTimingSocketFactory _tlsFactory;
+    /** 替代连接默认值的 SSLSocketFactory (如带持久化会话缓存的实现), 为 null 时使用默认值 */
+    private volatile SSLSocketFactory _sslSocketFactory;
+    private volatile DnsCache _dnsCache;
+    private volatile ContentCache _contentCache;
+
+    // ---- 调度状态 (由 this 监视器保护) ----
+    private final List<DownloadTask> _pending = new ArrayList<>();
+    private final List<DownloadTask> _running = new ArrayList<>();
+    private long _nextQueueSeq;
+    private final ExecutorService _taskExecutor;
+    private final ExecutorService _connectionExecutor;
+    private ScheduledExecutorService _checkpointExecutor;
+    private volatile DownloadJournal _journal;
+    private volatile DirectBufferPool _bufferPool =
+            new DirectBufferPool(DEFAULT_BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    private volatile StorageAllocator _storageAllocator = new StorageAllocator();
+    private volatile boolean _preallocate = true;
+
+    DownloadEngine() {
+        _taskExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_TASKS,
+                new NamedThreadFactory("ToolKit-DownloadTask"));
+        _connectionExecutor = Executors.newCachedThreadPool(
+                new NamedThreadFactory("ToolKit-DownloadConn"));
+        _controller = new ConcurrencyController(new Runnable() {
+            @Override
+            public void run() {
+                _onConcurrencyChanged();
+            }
+        });
+    }
+
+    // ---- 配置 ----
+
+    /**
+     * 设置单次读写缓冲区大小 (8KB~1MB), 对之后发起的读取生效
+     */
+    void setBufferSize(int bytes) {
+        int size = Math.max(MIN_BUFFER_SIZE, Math.min(bytes, MAX_BUFFER_SIZE));
+        if (size != _bufferPool.bufferSize()) {
+            _bufferPool = new DirectBufferPool(size, MAX_POOLED_BUFFERS);
+        }
+    }
+
+    /**
+     * 是否在下载前按文件总大小预分配磁盘空间 (默认开启)
+     */
+    void setPreallocate(boolean preallocate) {
+        _preallocate = preallocate;
+    }
+
+    void setStorageAllocator(StorageAllocator allocator) {
+        if (allocator != null) _storageAllocator = allocator;
+    }
+
+    /**
+     * 设置全局限速 (字节/秒), 小于等于 0 表示不限速
+     */
+    void setGlobalRateLimit(long bytesPerSecond) {
+        _rateLimiter.setRate(bytesPerSecond);
+    }
+
+    /**
+     * 设置单任务限速 (字节/秒), 小于等于 0 表示不限速
+     *
+     * @return 任务不存在时返回 false
+     */
+    boolean setTaskRateLimit(long taskId, long bytesPerSecond) {
+        DownloadTask task = _tasks.get(taskId);
+        if (task == null) return false;
+        task.rateLimiter.setRate(bytesPerSecond);
+        return true;
+    }
+
+    /** 固定总连接数, 小于等于 0 表示恢复自适应 */
+    void setConnectionLimit(int limit) {
+        _controller.setFixedLimit(limit);
+    }
+
+    /**
+     * 修改任务优先级, 立即重新调度 (可能触发抢占)
+     *
+     * @return 任务不存在或已结束时返回 false
+     */
+    synchronized boolean setPriority(long taskId, int priority) {
+        DownloadTask task = _tasks.get(taskId);
+        if (task == null || task.isFinished()) return false;
+        if (task.priority == priority) return true;
+
+        boolean queued = _pending.remove(task);
+        task.priority = priority;
+        if (queued) _insertPending(task);
+        _schedule();
+        return true;
+    }
+
+    /**
+     * 设置所有 HTTPS 连接使用的 SSLSocketFactory
+     * <p>
+     * 同一个工厂的连接共享其 SSLSessionContext, 新建连接可以凭会话票据恢复会话, 省去完整握手;
+     * 会话缓存可持久化的实现 (Android 的 SSLSessionCache) 在下次启动时仍能恢复。
+     * 只影响之后新建的连接。
+     * </p>
+     */
+    void setSslSocketFactory(SSLSocketFactory factory) {
+        _sslSocketFactory = factory;
+    }
+
+    // ---- 持久化 ----
+
+    /**
+     * 启用 DNS 解析记录: 读取上次进程中用过的主机并在后台预先解析, 之后的解析结果写回该文件
+     * <p>重复调用无效果</p>
+     *
+     * @param cacheFile 记录文件路径
+     */
+    synchronized void enableDnsCache(File cacheFile) {
+        if (_dnsCache != null) return;
+
+        DnsCache cache = new DnsCache(cacheFile, DnsCache.DEFAULT_TTL_MS);
+        List<String> hosts = cache.load(System.currentTimeMillis());
+        _dnsCache = cache;
+        for (String host : hosts) {
+            _prefetchDns(cache, host);
+        }
+    }
+
+    /**
+     * 启用任务日志: 恢复上次进程中未完成的任务并自动续传, 之后定期写入检查点
+     * <p>重复调用无效果</p>
+     *
+     * @param journalFile 日志文件路径
+     */
+    synchronized void enableJournal(File journalFile) {
+        if (_journal != null) return;
+
+        DownloadJournal journal = new DownloadJournal(journalFile);
+        List<DownloadJournal.Entry> entries;
+        try {
+            entries = journal.load();
+        } catch (IOException e) {
+            journalFile.delete();
+            entries = new ArrayList<>();
+        }
+        _journal = journal;
+
+        for (DownloadJournal.Entry entry : entries) {
+            _restore(entry);
+        }
+
+        _checkpointExecutor = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory("ToolKit-DownloadJournal"));
+        _checkpointExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                _checkpoint();
+            }
+        }, CHECKPOINT_INTERVAL_MS, CHECKPOINT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 启用按内容摘要寻址的缓存, 之后可通过 {@link #enqueueCached} 添加任务 (重复调用无效果)
+     *
+     * @param dir    缓存目录, 只应存放缓存对象
+     * @param budget 总大小预算 (字节), 小于等于 0 时使用 {@link ContentCache#DEFAULT_BUDGET}
+     */
+    synchronized void enableContentCache(File dir, long budget) {
+        if (_contentCache != null) return;
+
+        ContentCache cache = new ContentCache(dir, budget, Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory("ToolKit-ContentCache")));
+        cache.load();
+        _contentCache = cache;
+    }
+
+    private void _restore(DownloadJournal.Entry entry) {
+        DownloadTask task = new DownloadTask(entry.id, entry.url, entry.savePath, entry.connections);
+        task.totalBytes = entry.totalBytes;
+        task.etag = entry.etag;
+        task.lastModified = entry.lastModified;
+        task.supportsRange = true;
+        task.hashAlgorithm = entry.hashAlgorithm;
+        task.expectedHash = entry.expectedHash;
+        task.chunkSize = entry.chunkSize;
+        task.chunkHashes = entry.chunkHashes;
+        task.extractFormat = entry.extractFormat;
+        task.patchSource = entry.patchSource;
+        if (entry.mirrors != null) {
+            task.mirrors = new MirrorSet(entry.mirrors);
+        }
+
+        // 临时文件 (解压任务为输出目录) 丢失时分段偏移没有意义, 从头下载
+        String dataPath = task.extractFormat != null ? task.savePath : task.tempPath();
+        boolean hasData = new File(dataPath).exists();
+        DownloadSegment[] segs = new DownloadSegment[entry.segStart.length];
+        for (int i = 0; i < segs.length; i++) {
+            segs[i] = new DownloadSegment(i, entry.segStart[i], entry.segEnd[i]);
+            segs[i].downloaded = hasData ? entry.segDone[i] : 0;
+        }
+        task.segments = segs;
+        task.checkpointed = task.segmentProgress();
+
+        long next = entry.id + 1;
+        while (true) {
+            long current = _nextTaskId.get();
+            if (current >= next || _nextTaskId.compareAndSet(current, next)) break;
+        }
+        _register(task);
+        _submit(task);
+    }
+
+    /**
+     * 检查点: 先将各任务数据文件落盘, 再记录分段偏移, 最后统一 fsync 日志
+     */
+    private void _checkpoint() {
+        DownloadJournal journal = _journal;
+        if (journal == null) return;
+
+        try {
+            for (DownloadTask task : _tasks.values()) {
+                if (task.status != DownloadTask.STATUS_DOWNLOADING) continue;
+
+                FileChannel channel = task.dataChannel;
+                ArchiveExtractor extractor = task.extractor;
+                long[] done;
+                if (extractor != null) {
+                    // 解压任务只记录已落盘条目之后的归档偏移
+                    done = new long[]{extractor.sync()};
+                    if (Arrays.equals(done, task.checkpointed)) continue;
+                } else if (channel != null) {
+                    done = task.segmentProgress();
+                    if (done == null || Arrays.equals(done, task.checkpointed)) continue;
+                    channel.force(false);
+                } else {
+                    continue;
+                }
+                journal.appendProgress(task.id, done);
+                task.checkpointed = done;
+            }
+            journal.sync();
+        } catch (IOException ignored) {
+            // 检查点失败只影响崩溃后的续传位置, 不影响当前下载
+        }
+    }
+
+    private void _journalTask(DownloadTask task) {
+        DownloadJournal journal = _journal;
+        if (journal == null || !task.supportsRange) return;
+        try {
+            journal.appendTask(task);
+            task.checkpointed = task.segmentProgress();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void _journalRemove(DownloadTask task) {
+        DownloadJournal journal = _journal;
+        if (journal == null) return;
+        try {
+            journal.appendRemove(task.id);
+        } catch (IOException ignored) {
+        }
+    }
+
+    // ---- 任务控制 ----
+
+    /**
+     * 添加下载任务
+     * <p>
+     * 同一保存路径和地址已有任务时不会重复下载: 未结束的任务直接返回其 ID
+     * (如进程重启后从日志恢复的任务), 失败的任务保留已下载分段重新开始。
+     * </p>
+     *
+     * @param url         下载地址
+     * @param savePath    保存路径
+     * @param connections 并行连接数上限 (1~8), 实际连接数由并发控制器决定; 服务器不支持 Range 时为单连接
+     * @return 任务 ID
+     */
+    synchronized long enqueue(String url, String savePath, int connections) {
+        return enqueue(url, savePath, connections, DownloadTask.PRIORITY_NORMAL, null, null, 0, null);
+    }
+
+    /**
+     * 添加指定优先级、可选完整性校验的下载任务
+     * <p>已存在的同一任务会被调整为新的优先级</p>
+     *
+     * @param priority      调度优先级 (PRIORITY_*)
+     * @param hashAlgorithm crc32 / md5 / sha256 / xxh64
+     * @param expectedHash  整个文件的期望摘要 (十六进制), 为 null 时只做分块校验
+     * @param chunkSize     分块大小, 小于等于 0 表示不分块校验
+     * @param chunkHashes   各分块的期望摘要, 为 null 表示不分块校验
+     * @throws IllegalArgumentException 算法不受支持
+     */
+    synchronized long enqueue(String url, String savePath, int connections, int priority,
+                              String hashAlgorithm, String expectedHash,
+                              long chunkSize, String[] chunkHashes) {
+        return enqueueMirrored(new String[]{url}, savePath, connections, priority,
+                hashAlgorithm, expectedHash, chunkSize, chunkHashes);
+    }
+
+    /**
+     * 添加从多个镜像下载同一文件的任务, 参数同 {@link #enqueue(String, String, int, int, String, String, long, String[])}
+     * <p>
+     * 开始下载前探测各镜像, 分段分摊到响应最快的镜像上; 镜像出错或卡住时分段换到其它镜像续传。
+     * 任务以第一个地址标识, 同一保存路径和第一个地址已有任务时按 enqueue 的规则处理。
+     * </p>
+     *
+     * <p>
+     * 各镜像只比对大小和 Range 支持, 无法确认内容相同; 一个文件的分段可能来自不同镜像,
+     * 因此多个地址时必须提供整体摘要或分块摘要, 混入的旧版本内容由校验发现。
+     * </p>
+     *
+     * @param urls 镜像地址, 只有一个地址时等同于 enqueue
+     * @throws IllegalArgumentException 多个地址却未提供摘要, 或算法不受支持
+     */
+    synchronized long enqueueMirrored(String[] urls, String savePath, int connections, int priority,
+                                      String hashAlgorithm, String expectedHash,
+                                      long chunkSize, String[] chunkHashes) {
+        if (urls.length > 1 && (hashAlgorithm == null || (expectedHash == null && chunkHashes == null))) {
+            throw new IllegalArgumentException("mirrored task requires an expected hash or chunk hashes");
+        }
+        if (hashAlgorithm != null) {
+            StreamingDigest.create(hashAlgorithm);
+        }
+
+        long existingId = _reuseExisting(urls[0], savePath, priority);
+        if (existingId >= 0) {
+            _schedule();
+            return existingId;
+        }
+
+        int maxConnections = Math.max(1, Math.min(connections, MAX_CONNECTIONS_PER_TASK));
+        DownloadTask task = new DownloadTask(
+                _nextTaskId.getAndIncrement(), urls[0], savePath, maxConnections);
+        task.priority = priority;
+        if (urls.length > 1) {
+            task.mirrors = new MirrorSet(urls);
+        }
+        if (hashAlgorithm != null) {
+            task.hashAlgorithm = hashAlgorithm;
+            task.expectedHash = expectedHash;
+            task.chunkSize = chunkSize;
+            task.chunkHashes = chunkHashes;
+        }
+        _register(task);
+        _submit(task);
+        return task.id;
+    }
+
+    /**
+     * 添加边下载边解压的归档任务
+     * <p>
+     * 归档以单连接顺序读取, 数据到达即解压, 条目直接写入最终位置, 归档本身不落盘。
+     * zip 中断后从最近一个已落盘的条目边界续传; gzip 中断后从头开始。
+     * 条目完整性由 zip / gzip 自带的 CRC32 校验, 不符时为可重试的 ERROR_INTEGRITY:
+     * 重试从最近一个完成的条目之后重新请求 (gzip 从头), 重试次数用尽后任务以 ERROR_INTEGRITY 失败。
+     * 签名或头部无效、条目路径越出目标目录时以不可重试的 ERROR_CORRUPT 失败。
+     * </p>
+     *
+     * @param url      归档地址
+     * @param savePath zip 为解压目录, gzip 为解压后的文件路径
+     * @param format   zip / gzip
+     * @param priority 调度优先级 (PRIORITY_*)
+     * @return 任务 ID
+     * @throws IllegalArgumentException 格式不受支持
+     */
+    synchronized long enqueueExtract(String url, String savePath, String format, int priority) {
+        // 只做静态检查: 创建再关闭解包器会删除 gzip 的 .part, 破坏同一路径上进行中的任务
+        if (!ArchiveExtractor.isSupported(format)) {
+            throw new IllegalArgumentException("unsupported archive format: " + format);
+        }
+
+        long existingId = _reuseExisting(url, savePath, priority);
+        if (existingId >= 0) {
+            _schedule();
+            return existingId;
+        }
+
+        DownloadTask task = new DownloadTask(_nextTaskId.getAndIncrement(), url, savePath, 1);
+        task.priority = priority;
+        task.extractFormat = format;
+        _register(task);
+        _submit(task);
+        return task.id;
+    }
+
+    /**
+     * 添加差分补丁任务: 下载补丁的同时与本地旧文件合成新文件
+     * <p>
+     * 补丁格式见 {@link PatchApplier}。新文件写入 savePath + ".part", 摘要与期望值一致后 fsync 并原子替换 savePath,
+     * savePath 可以与 sourcePath 相同 (原地更新)。补丁以单连接顺序读取, 中断后从头重新应用;
+     * 摘要不符时任务以 ERROR_INTEGRITY 失败, 旧文件保持不变, 可改为下载完整文件。
+     * </p>
+     *
+     * @param sourcePath    本地旧文件
+     * @param patchUrl      补丁地址
+     * @param savePath      新文件路径
+     * @param priority      调度优先级 (PRIORITY_*)
+     * @param hashAlgorithm 新文件的摘要算法
+     * @param expectedHash  新文件的期望摘要 (十六进制)
+     * @param zlib          补丁头部之后的数据为 zlib 流 (否则不压缩)
+     * @return 任务 ID
+     * @throws IllegalArgumentException 未提供摘要或算法不受支持
+     */
+    synchronized long enqueuePatch(String sourcePath, String patchUrl, String savePath, int priority,
+                                   String hashAlgorithm, String expectedHash, boolean zlib) {
+        if (hashAlgorithm == null || expectedHash == null) {
+            throw new IllegalArgumentException("patch task requires the expected result hash");
+        }
+        StreamingDigest.create(hashAlgorithm);
+
+        long existingId = _reuseExisting(patchUrl, savePath, priority);
+        if (existingId >= 0) {
+            _schedule();
+            return existingId;
+        }
+
+        DownloadTask task = new DownloadTask(_nextTaskId.getAndIncrement(), patchUrl, savePath, 1);
+        task.priority = priority;
+        task.extractFormat = zlib ? PatchApplier.FORMAT_ZLIB : PatchApplier.FORMAT;
+        task.patchSource = sourcePath;
+        task.hashAlgorithm = hashAlgorithm;
+        task.expectedHash = expectedHash;
+        _register(task);
+        _submit(task);
+        return task.id;
+    }
+
+    /**
+     * 添加区间合并任务: 从同一远程文件中取出多个切片, 分别保存为文件
+     * <p>
+     * 切片按偏移合并为区间 (间隔不超过 gapBytes 时合并, 空隙一并下载后丢弃), 多个区间合并为一个
+     * multipart/byteranges 请求; 服务器不支持时依次降级为单区间请求和完整 GET, 见 {@link RangePlanner}。
+     * 区间完成后其中的切片即改名为最终文件, 所有切片完成后任务结束。
+     * 任务不写入日志, 进程重启后需重新添加; 每次调用都创建新任务。
+     * 任务不按保存路径登记, 之后对同一路径的 enqueue 不会复用它; 任一切片路径已被未结束的任务占用时拒绝添加。
+     * </p>
+     *
+     * @param url         远程文件地址
+     * @param offsets     各切片在远程文件中的偏移
+     * @param lengths     各切片的长度
+     * @param savePaths   各切片的保存路径, 与 offsets 一一对应, 不能重复
+     * @param gapBytes    合并间隔, 小于 0 时使用 {@link RangePlanner#DEFAULT_GAP}
+     * @param connections 并行请求数上限 (1~8)
+     * @param priority    调度优先级 (PRIORITY_*)
+     * @return 任务 ID
+     * @throws IllegalArgumentException 数组长度不一致、切片无效、保存路径重复或已被未结束的任务占用
+     */
+    synchronized long enqueueRanges(String url, long[] offsets, long[] lengths, String[] savePaths,
+                                    long gapBytes, int connections, int priority) {
+        RangePlanner planner = new RangePlanner(offsets, lengths, savePaths, gapBytes);
+        for (String path : planner.savePaths()) {
+            if (_isPathBusy(path)) {
+                throw new IllegalArgumentException("slice path in use by another task: " + path);
+            }
+        }
+        int maxConnections = Math.max(1, Math.min(connections, MAX_CONNECTIONS_PER_TASK));
+        DownloadTask task = new DownloadTask(
+                _nextTaskId.getAndIncrement(), url, savePaths[0], maxConnections);
+        task.priority = priority;
+        task.ranges = planner;
+        _register(task);
+        _submit(task);
+        return task.id;
+    }
+
+    // ---- 内容缓存 ----
+
+    /**
+     * 添加由内容缓存管理的下载任务, 文件保存在缓存目录中, 以摘要命名
+     * <p>
+     * 缓存中已有该内容时不发出任何网络请求, 直接返回一个已完成的任务;
+     * 同一内容已在下载时返回该任务。下载完成并校验通过后登记到缓存, 用 {@link #getCachedPath} 取得路径。
+     * </p>
+     *
+     * @param urls      下载地址, 多个时为镜像
+     * @param algorithm md5 / sha256 / xxh64 (crc32 不能作为内容地址)
+     * @param hash      整个文件的期望摘要 (十六进制)
+     * @return 任务 ID
+     * @throws IllegalArgumentException 算法不受支持或摘要无效
+     * @throws IllegalStateException    内容缓存未启用
+     */
+    synchronized long enqueueCached(String[] urls, int connections, int priority,
+                                    String algorithm, String hash) {
+        ContentCache cache = _requireContentCache();
+        String key = ContentCache.key(algorithm, hash);
+        String path = cache.objectFile(key).getPath();
+
+        long size = cache.acquire(key);
+        if (size >= 0) return _registerCacheHit(urls[0], path, size);
+
+        long running = _reuseRunning(path, priority);
+        if (running >= 0) return running;
+        return enqueueMirrored(urls, path, connections, priority, algorithm, hash, 0, null);
+    }
+
+    /**
+     * 批量添加由内容缓存管理的小文件任务, 规则同 {@link #enqueueCached}
+     * <p>缓存命中的文件不进入下载队列; 同一批中摘要相同的文件只下载一次, 返回同一个任务 ID</p>
+     *
+     * @param hashes 各文件的期望摘要, 与 urls 一一对应
+     * @return 各任务 ID, 与 urls 一一对应
+     */
+    synchronized long[] enqueueBatchCached(String[] urls, int priority, String algorithm, String[] hashes) {
+        ContentCache cache = _requireContentCache();
+        int count = Math.min(urls.length, hashes.length);
+        long[] ids = new long[count];
+        String[] paths = new String[count];
+        Map<String, Integer> firstMiss = new HashMap<>();
+        List<Integer> misses = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            String key = ContentCache.key(algorithm, hashes[i]);
+            paths[i] = cache.objectFile(key).getPath();
+            Integer first = firstMiss.get(key);
+            if (first != null) {
+                ids[i] = -first - 1;
+                continue;
+            }
+            long size = cache.acquire(key);
+            if (size >= 0) {
+                ids[i] = _registerCacheHit(urls[i], paths[i], size);
+                continue;
+            }
+            long running = _reuseRunning(paths[i], priority);
+            if (running >= 0) {
+                ids[i] = running;
+                continue;
+            }
+            firstMiss.put(key, i);
+            misses.add(i);
+        }
+
+        if (!misses.isEmpty()) {
+            String[] missUrls = new String[misses.size()];
+            String[] missPaths = new String[misses.size()];
+            String[] missHashes = new String[misses.size()];
+            for (int j = 0; j < missUrls.length; j++) {
+                int i = misses.get(j);
+                missUrls[j] = urls[i];
+                missPaths[j] = paths[i];
+                missHashes[j] = hashes[i];
+            }
+            long[] missIds = enqueueBatch(missUrls, missPaths, priority, algorithm, missHashes);
+            for (int j = 0; j < missIds.length; j++) {
+                ids[misses.get(j)] = missIds[j];
+            }
+        }
+        // 同批重复项指向首个未命中项的任务
+        for (int i = 0; i < count; i++) {
+            if (ids[i] < 0) ids[i] = ids[(int) (-ids[i] - 1)];
+        }
+        return ids;
+    }
+
+    /**
+     * 缓存中的对象路径, 不存在或缓存未启用时返回 null (同时记录一次访问)
+     *
+     * @throws IllegalArgumentException 算法不受支持或摘要无效
+     */
+    String getCachedPath(String algorithm, String hash) {
+        ContentCache cache = _contentCache;
+        return cache != null ? cache.pathIfPresent(ContentCache.key(algorithm, hash)) : null;
+    }
+
+    /**
+     * 修改缓存总大小预算, 超出部分在后台淘汰
+     */
+    void setContentCacheBudget(long bytes) {
+        ContentCache cache = _contentCache;
+        if (cache != null) cache.setBudget(bytes);
+    }
+
+    /**
+     * @return [对象数, 总字节数, 预算字节数, 命中次数, 未命中次数, 淘汰次数, 淘汰字节数], 缓存未启用时全为 0
+     */
+    long[] getContentCacheState() {
+        ContentCache cache = _contentCache;
+        return cache != null ? cache.snapshot() : new long[7];
+    }
+
+    private ContentCache _requireContentCache() {
+        ContentCache cache = _contentCache;
+        if (cache == null) throw new IllegalStateException("content cache not enabled");
+        return cache;
+    }
+
+    /**
+     * 缓存命中: 登记一个已完成的任务, 使调用方可以与普通任务一样查询和移除
+     */
+    private long _registerCacheHit(String url, String path, long size) {
+        DownloadTask task = new DownloadTask(_nextTaskId.getAndIncrement(), url, path, 1);
+        if (size > 0) {
+            DownloadSegment seg = new DownloadSegment(0, 0, size - 1);
+            seg.downloaded = size;
+            task.segments = new DownloadSegment[]{seg};
+        }
+        task.totalBytes = size;
+        task.error = DownloadTask.ERROR_NONE;
+        task.status = DownloadTask.STATUS_COMPLETED;
+        _register(task);
+        return task.id;
+    }
+
+    /**
+     * 同一对象已有未结束的任务 (可能来自另一个镜像地址) 时复用它, 避免两个任务写同一个临时文件
+     *
+     * @return 已有任务的 ID, 没有时返回 -1
+     */
+    private long _reuseRunning(String path, int priority) {
+        DownloadTask existing = _tasksByPath.get(path);
+        if (existing == null || existing.isFinished()) return -1;
+        long id = _reuseExisting(existing.url, path, priority);
+        _schedule();
+        return id;
+    }
+
+    /**
+     * 校验通过并改名到位后, 保存在缓存目录中的文件登记到缓存 (含由日志恢复的任务)
+     */
+    private void _commitToCache(DownloadTask task) {
+        ContentCache cache = _contentCache;
+        if (cache == null) return;
+        String key = cache.keyForPath(task.savePath);
+        if (key != null) cache.commit(key, new File(task.savePath).length());
+    }
+
+    /**
+     * 批量添加小文件任务 (如上千个 AssetBundle)
+     * <p>
+     * 小文件不探测大小、不分段, 以单个 GET 下载, 不做断点续传; 同一主机最多
+     * MAX_SMALL_FILES_PER_HOST 个并发, 连接在文件间复用。已存在的同一任务按 {@link #enqueue} 的规则处理。
+     * </p>
+     *
+     * @param urls           下载地址
+     * @param savePaths      保存路径, 与 urls 一一对应
+     * @param priority       调度优先级 (PRIORITY_*)
+     * @param hashAlgorithm  摘要算法, 为 null 表示不校验
+     * @param expectedHashes 各文件的期望摘要, 为 null 或对应项为空时该文件不校验
+     * @return 各任务 ID, 与 urls 一一对应
+     * @throws IllegalArgumentException 算法不受支持
+     */
+    synchronized long[] enqueueBatch(String[] urls, String[] savePaths, int priority,
+                                     String hashAlgorithm, String[] expectedHashes) {
+        if (hashAlgorithm != null) {
+            StreamingDigest.create(hashAlgorithm);
+        }
+
+        int count = Math.min(urls.length, savePaths.length);
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            long id = _reuseExisting(urls[i], savePaths[i], priority);
+            if (id < 0) {
+                DownloadTask task = new DownloadTask(
+                        _nextTaskId.getAndIncrement(), urls[i], savePaths[i], 1);
+                task.smallFile = true;
+                task.priority = priority;
+                String expected = expectedHashes != null && i < expectedHashes.length
+                        ? expectedHashes[i] : null;
+                if (hashAlgorithm != null && expected != null && !expected.isEmpty()) {
+                    task.hashAlgorithm = hashAlgorithm;
+                    task.expectedHash = expected;
+                }
+                _register(task);
+                _queue(task);
+                id = task.id;
+            }
+            ids[i] = id;
+        }
+        _schedule();
+        return ids;
+    }
+
+    /**
+     * 查找同一地址和保存路径的已有任务: 未结束的任务调整为新的优先级,
+     * 失败的任务保留已下载分段重新排队 (调用方负责随后调度)
+     *
+     * @return 已有任务的 ID, 没有可复用的任务时返回 -1
+     */
+    private long _reuseExisting(String url, String savePath, int priority) {
+        DownloadTask existing = _tasksByPath.get(savePath);
+        if (existing == null || !existing.url.equals(url)) return -1;
+
+        if (!existing.isFinished()) {
+            if (existing.priority != priority) {
+                boolean queued = _pending.remove(existing);
+                existing.priority = priority;
+                if (queued) _insertPending(existing);
+            }
+            return existing.id;
+        }
+        if (existing.status == DownloadTask.STATUS_FAILED) {
+            existing.error = DownloadTask.ERROR_NONE;
+            existing.abortRequested = false;
+            existing.priority = priority;
+            _queue(existing);
+            return existing.id;
+        }
+        return -1;
+    }
+
+    private void _register(DownloadTask task) {
+        _tasks.put(task.id, task);
+        _tasksByPath.put(_pathKey(task), task);
+    }
+
+    /**
+     * 任务在 _tasksByPath 中的键
+     * <p>区间任务写多个文件, 不能以某个切片路径代表; 以 ID 登记 (含 NUL, 不会与文件路径相同)</p>
+     */
+    private static String _pathKey(DownloadTask task) {
+        return task.ranges != null ? "\0ranges:" + task.id : task.savePath;
+    }
+
+    /**
+     * 路径是否正被未结束的任务写入 (单文件任务或区间任务的某个切片)
+     */
+    private boolean _isPathBusy(String path) {
+        DownloadTask owner = _tasksByPath.get(path);
+        if (owner != null && !owner.isFinished()) return true;
+        for (DownloadTask task : _tasks.values()) {
+            if (task.ranges != null && !task.isFinished() && task.ranges.writes(path)) return true;
+        }
+        return false;
+    }
+
+    // ---- 调度 ----
+
+    /**
+     * 将任务放入等待队列并尝试调度
+     */
+    private synchronized void _submit(DownloadTask task) {
+        _queue(task);
+        _schedule();
+    }
+
+    private void _queue(DownloadTask task) {
+        task.status = DownloadTask.STATUS_PENDING;
+        task.queueSeq = _nextQueueSeq++;
+        _insertPending(task);
+    }
+
+    /**
+     * 按 QUEUE_ORDER 插入; 从队尾向前查找, 同优先级连续入队时为 O(1)
+     */
+    private void _insertPending(DownloadTask task) {
+        int index = _pending.size();
+        while (index > 0 && QUEUE_ORDER.compare(_pending.get(index - 1), task) > 0) {
+            index--;
+        }
+        _pending.add(index, task);
+    }
+
+    /**
+     * 按优先级顺序填满两个通道的空闲槽位, 然后检查大文件通道是否需要抢占
+     * <p>小文件通道同时受主机并发上限约束, 某主机已满时跳过其任务, 让其它主机的任务先运行</p>
+     */
+    private void _schedule() {
+        int large = 0;
+        int small = 0;
+        for (DownloadTask task : _running) {
+            if (task.smallFile) small++;
+            else large++;
+        }
+
+        int largeSlots = _controller.taskSlots(MAX_CONCURRENT_TASKS);
+        int smallSlots = _controller.smallFileSlots(MAX_SMALL_FILE_TASKS);
+        int i = 0;
+        while (i < _pending.size() && (large < largeSlots || small < smallSlots)) {
+            DownloadTask task = _pending.get(i);
+            boolean canStart = task.smallFile
+                    ? small < smallSlots
+                    && _runningOnHost(task.host) < MAX_SMALL_FILES_PER_HOST
+                    : large < largeSlots;
+            if (!canStart) {
+                i++;
+                continue;
+            }
+            _pending.remove(i);
+            _start(task);
+            if (task.smallFile) small++;
+            else large++;
+        }
+
+        _preempt();
+    }
+
+    /**
+     * 大文件通道已满且有更高优先级的任务在等待时, 抢占正在运行的最低优先级任务
+     * <p>小文件任务很快结束, 不参与抢占</p>
+     */
+    private void _preempt() {
+        // 正在让出槽位的任务数, 这些槽位已预留给队首的等待任务
+        int yielding = 0;
+        for (DownloadTask task : _running) {
+            if (!task.smallFile && task.preemptRequested) yielding++;
+        }
+
+        int skipped = 0;
+        for (DownloadTask waiting : _pending) {
+            if (waiting.smallFile) continue;
+            if (skipped < yielding) {
+                skipped++;
+                continue;
+            }
+
+            DownloadTask victim = null;
+            for (DownloadTask task : _running) {
+                if (task.smallFile || task.preemptRequested) continue;
+                if (victim == null || QUEUE_ORDER.compare(task, victim) > 0) victim = task;
+            }
+            if (victim == null || victim.priority >= waiting.priority) break;
+
+            victim.preemptRequested = true;
+            _disconnectAll(victim);
+        }
+    }
+
+    private int _runningOnHost(String host) {
+        int count = 0;
+        for (DownloadTask task : _running) {
+            if (task.smallFile && task.host.equals(host)) count++;
+        }
+        return count;
+    }
+
+    /** 并发上限变化后, 按新的槽位数重新调度 */
+    private synchronized void _onConcurrencyChanged() {
+        _schedule();
+    }
+
+    private void _start(final DownloadTask task) {
+        _running.add(task);
+        ExecutorService executor = task.smallFile ? _connectionExecutor : _taskExecutor;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    _runTask(task);
+                } finally {
+                    _onTaskExit(task);
+                }
+            }
+        });
+    }
+
+    /**
+     * 任务线程退出: 被抢占的任务保留分段重新排队, 然后调度下一个任务
+     */
+    private synchronized void _onTaskExit(DownloadTask task) {
+        _running.remove(task);
+        boolean preempted = task.preemptRequested;
+        task.preemptRequested = false;
+        if (preempted && task.status == DownloadTask.STATUS_PAUSED) {
+            task.abortRequested = false;
+            // 沿用原入队序号, 同优先级中仍排在后来的任务之前
+            _insertPending(task);
+        }
+        _schedule();
+    }
+
+    /**
+     * 取消下载任务, 并删除未完成的临时文件
+     *
+     * @return 任务存在且尚未结束时返回 true
+     */
+    boolean cancel(long taskId) {
+        DownloadTask task = _tasks.get(taskId);
+        if (task == null || task.isFinished()) return false;
+
+        task.cancelRequested = true;
+        synchronized (this) {
+            if (_pending.remove(task)) {
+                // 尚未运行或已被抢占: 直接结束, 清理可能残留的临时文件
+                new File(task.tempPath()).delete();
+                if (task.ranges != null) task.ranges.discard();
+                _finish(task, DownloadTask.STATUS_CANCELLED, DownloadTask.ERROR_CANCELLED);
+                return true;
+            }
+        }
+        _disconnectAll(task);
+        return true;
+    }
+
+    DownloadTask getTask(long taskId) {
+        return _tasks.get(taskId);
+    }
+
+    /**
+     * 移除已结束的任务记录
+     */
+    void remove(long taskId) {
+        DownloadTask task = _tasks.get(taskId);
+        if (task != null && task.isFinished()) {
+            _tasks.remove(taskId);
+            _tasksByPath.remove(_pathKey(task), task);
+        }
+    }
+
+    /**
+     * 是否存在未结束的任务
+     */
+    boolean hasActiveTasks() {
+        for (DownloadTask task : _tasks.values()) {
+            if (!task.isFinished()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 引擎启动以来从网络接收的累计字节数 (用于判断是否有数据在流动)
+     */
+    long getTransferredBytes() {
+        return _transferredBytes.get();
+    }
+
+    /**
+     * 导出运行指标快照, 布局见 {@link DownloadStats}
+     */
+    long[] getStats() {
+        return _stats.snapshot(_transferredBytes.get());
+    }
+
+    /**
+     * 导出并发控制器状态, 布局见 {@link ConcurrencyController}
+     */
+    long[] getConcurrencyState() {
+        return _controller.snapshot();
+    }
+
+    // ---- 任务执行 ----
+
+    private void _runTask(DownloadTask task) {
+        if (task.cancelRequested) {
+            _finish(task, DownloadTask.STATUS_CANCELLED, DownloadTask.ERROR_CANCELLED);
+            return;
+        }
+
+        task.status = DownloadTask.STATUS_DOWNLOADING;
+        if (task.extractFormat != null) {
+            _runExtraction(task);
+            return;
+        }
+        if (task.ranges != null) {
+            _runRanges(task);
+            return;
+        }
+
+        File tempFile = new File(task.tempPath());
+        try {
+            boolean resume;
+            if (task.smallFile) {
+                // 小文件直接单连接 GET, 省去探测请求; 体积小, 不做断点续传
+                task.supportsRange = false;
+                task.segments = null;
+                resume = false;
+            } else {
+                resume = _probe(task);
+            }
+            if (!resume) {
+                _createSegments(task);
+            }
+            _prepareFile(tempFile, resume);
+            if (!resume) {
+                _journalTask(task);
+            }
+
+            boolean verified;
+            try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+                _allocate(task, raf, tempFile);
+                task.dataChannel = raf.getChannel();
+                _downloadSegments(task, task.dataChannel);
+                verified = _verifyFile(task, task.dataChannel);
+            } finally {
+                task.dataChannel = null;
+            }
+            if (!verified) {
+                // 整体摘要不符且无法定位到块, 丢弃文件, 再次添加时从头下载
+                _journalRemove(task);
+                task.segments = null;
+                tempFile.delete();
+                throw new DownloadException(DownloadTask.ERROR_INTEGRITY, "digest mismatch");
+            }
+
+            _commitFile(task, tempFile);
+            _commitToCache(task);
+            _finish(task, DownloadTask.STATUS_COMPLETED, DownloadTask.ERROR_NONE);
+        } catch (Exception e) {
+            DownloadException error = classify(e);
+            _reportCongestion(error);
+            _stopWithError(task, tempFile, error.error);
+        }
+    }
+
+    /**
+     * 边下载边解压: 单个分段顺序读取归档, 读到的数据直接推入解包器
+     * <p>分段偏移即归档的消费位置, 续传时由解包器回退到最近的条目边界</p>
+     */
+    private void _runExtraction(DownloadTask task) {
+        ArchiveExtractor extractor = null;
+        try {
+            boolean resume = _probe(task);
+            if (!resume) {
+                _createSegments(task);
+            }
+            DownloadSegment seg = task.segments[0];
+            extractor = task.patchSource != null
+                    ? new PatchApplier(new File(task.patchSource), new File(task.savePath),
+                    task.hashAlgorithm, task.expectedHash, PatchApplier.FORMAT_ZLIB.equals(task.extractFormat))
+                    : ArchiveExtractor.create(task.extractFormat, new File(task.savePath),
+                    resume ? seg.downloaded : 0);
+            if (!resume) {
+                _journalTask(task);
+            }
+
+            task.extractor = extractor;
+            _runSegment(task, seg, null);
+            extractor.finish();
+            _finish(task, DownloadTask.STATUS_COMPLETED, DownloadTask.ERROR_NONE);
+        } catch (Exception e) {
+            _stopWithError(task, new File(task.tempPath()), classify(e).error);
+        } finally {
+            task.extractor = null;
+            if (extractor != null) {
+                if (task.status != DownloadTask.STATUS_COMPLETED && task.segments != null) {
+                    // 被抢占后在本进程内续传时, 从最近完成的条目之后继续
+                    task.segments[0].downloaded = extractor.completedOffset();
+                }
+                extractor.close();
+            }
+        }
+    }
+
+    /**
+     * 区间合并任务: 各请求在连接线程池中并行执行, 每轮结束后未完成的区间重新规划
+     * <p>服务器不支持当前请求方式时降级并立即重新规划, 不计入重试次数</p>
+     */
+    private void _runRanges(final DownloadTask task) {
+        final RangePlanner planner = task.ranges;
+        try {
+            if (task.segments == null) {
+                DownloadSegment[] spans = planner.plan();
+                long total = 0;
+                for (DownloadSegment span : spans) total += span.length();
+                task.totalBytes = total;
+                task.supportsRange = true;
+                task.segments = spans;
+            }
+            final DownloadSegment[] spans = task.segments;
+            int attempt = 0;
+            while (true) {
+                List<int[]> requests = planner.requests(spans);
+                if (requests.isEmpty()) break;
+                final int mode = planner.mode();
+
+                CompletionService<Void> completion = new ExecutorCompletionService<>(_connectionExecutor);
+                DownloadException failure = null;
+                int submitted = 0;
+                int running = 0;
+                while (true) {
+                    // 出错或已降级后不再发出新请求, 已发出的请求继续完成
+                    while (running < task.maxConnections && submitted < requests.size()
+                            && failure == null && planner.mode() == mode && !task.shouldStop()) {
+                        final int[] request = requests.get(submitted++);
+                        completion.submit(new Callable<Void>() {
+                            @Override
+                            public Void call() throws Exception {
+                                _fetchRanges(task, planner, spans, request[0], request[1], mode);
+                                return null;
+                            }
+                        });
+                        running++;
+                    }
+                    if (running == 0) break;
+                    Future<Void> done;
+                    try {
+                        done = completion.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new DownloadException(DownloadTask.ERROR_CANCELLED, "interrupted", e);
+                    }
+                    running--;
+                    DownloadException error = _await(done);
+                    if (error != null && (failure == null || failure.error == DownloadTask.ERROR_CANCELLED)) {
+                        failure = error;
+                    }
+                }
+
+                if (task.shouldStop()) {
+                    throw new DownloadException(DownloadTask.ERROR_CANCELLED, "cancelled", failure);
+                }
+                if (planner.mode() != mode || failure == null) continue;
+                _reportCongestion(failure);
+                if (!failure.isRetryable() || ++attempt > MAX_RETRIES) throw failure;
+                _stats.onRetry();
+                _sleepQuietly((long) RETRY_DELAY_MS * attempt);
+            }
+            _finish(task, DownloadTask.STATUS_COMPLETED, DownloadTask.ERROR_NONE);
+        } catch (Exception e) {
+            DownloadException error = classify(e);
+            // 区间不写入日志, 除被抢占外不再续写, 删除未完成切片的临时文件
+            if (!task.preemptRequested) planner.discard();
+            _stopWithError(task, new File(task.tempPath()), error.error);
+        } finally {
+            planner.close();
+        }
+    }
+
+    /**
+     * 发出一个区间合并请求, 按响应形式分发数据:
+     * multipart/byteranges 逐部分分发; 单区间 206 按 Content-Range 分发;
+     * 未发送 Range 的完整 GET 读到最后一个需要的区间为止。
+     * 服务器忽略多区间 (返回 200 或只返回一个区间) 时降级, 由下一轮按新模式重新规划
+     *
+     * @param mode 规划本轮请求时的模式
+     */
+    private void _fetchRanges(DownloadTask task, RangePlanner planner, DownloadSegment[] spans,
+                              int from, int to, int mode) throws DownloadException {
+        if (!_controller.acquire(task)) {
+            throw new DownloadException(DownloadTask.ERROR_CANCELLED, "cancelled");
+        }
+        DownloadSegment lead = spans[from];
+        HttpURLConnection conn = null;
+        boolean reusable = false;
+        try {
+            conn = _openConnection(task.url);
+            lead.connection = conn;
+            _stats.onConnectionOpened();
+
+            int ranges = 0;
+            for (int i = from; i < to; i++) {
+                if (!spans[i].isComplete()) ranges++;
+            }
+            if (mode != RangePlanner.MODE_FULL) {
+                conn.setRequestProperty("Range", RangePlanner.rangeHeader(spans, from, to));
+            }
+
+            int code = _execute(conn);
+            if (code == HttpURLConnection.HTTP_OK && mode != RangePlanner.MODE_FULL) {
+                // 服务器忽略了 Range, 断开连接不读响应体
+                planner.fallback(mode);
+                return;
+            }
+            if (code != HttpURLConnection.HTTP_PARTIAL && code != HttpURLConnection.HTTP_OK) {
+                throw new DownloadException(DownloadTask.ERROR_SERVER, code, "http " + code, null);
+            }
+
+            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+            try (InputStream in = conn.getInputStream()) {
+                if (code == HttpURLConnection.HTTP_OK) {
+                    _readRange(task, planner, spans, from, to, in, 0,
+                            RangePlanner.lastNeeded(spans, from, to), buffer);
+                } else {
+                    String boundary = RangePlanner.boundary(conn.getContentType());
+                    if (boundary != null) {
+                        RangePlanner.MultipartReader parts =
+                                new RangePlanner.MultipartReader(new BufferedInputStream(in), boundary);
+                        long[] part;
+                        while ((part = parts.next()) != null) {
+                            _readRange(task, planner, spans, from, to, parts, part[0], part[1], buffer);
+                        }
+                        reusable = true;
+                    } else {
+                        long[] part = RangePlanner.parseContentRange(conn.getHeaderField("Content-Range"));
+                        if (part == null) {
+                            throw new DownloadException(DownloadTask.ERROR_SERVER, code,
+                                    "206 without Content-Range", null);
+                        }
+                        reusable = _readRange(task, planner, spans, from, to, in, part[0], part[1], buffer);
+                        if (ranges > 1 && RangePlanner.lastNeeded(spans, from, to) >= 0) {
+                            // 多区间请求只返回了一个区间
+                            planner.fallback(mode);
+                            return;
+                        }
+                    }
+                }
+            }
+
+            if (RangePlanner.lastNeeded(spans, from, to) >= 0) {
+                throw new DownloadException(DownloadTask.ERROR_NETWORK,
+                        "ranges from " + lead.nextOffset() + " truncated");
+            }
+        } catch (DownloadException e) {
+            throw e;
+        } catch (IOException e) {
+            throw classify(e);
+        } finally {
+            lead.connection = null;
+            if (conn != null) {
+                if (!reusable) conn.disconnect();
+                _stats.onConnectionClosed();
+            }
+            _controller.release();
+        }
+    }
+
+    /**
+     * 读取远程文件 [position, end] 的数据并分发到 [from, to) 内的区间
+     *
+     * @return 是否读到了 end (响应体已读完, 连接可复用)
+     */
+    private boolean _readRange(DownloadTask task, RangePlanner planner, DownloadSegment[] spans,
+                               int from, int to, InputStream in, long position, long end,
+                               byte[] buffer) throws IOException {
+        while (position <= end) {
+            if (task.shouldStop()) {
+                throw new DownloadException(DownloadTask.ERROR_CANCELLED, "cancelled");
+            }
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, end - position + 1));
+            if (n < 0) return false;
+            if (n == 0) continue;
+            planner.deliver(spans, from, to, position, buffer, 0, n);
+            position += n;
+            _transferredBytes.addAndGet(n);
+            _controller.onBytes(n);
+            _pace(task, n);
+        }
+        return true;
+    }
+
+    /**
+     * 任务中途结束: 区分用户取消、被抢占和真正的失败
+     */
+    private void _stopWithError(DownloadTask task, File tempFile, int error) {
+        if (task.cancelRequested) {
+            tempFile.delete();
+            _finish(task, DownloadTask.STATUS_CANCELLED, DownloadTask.ERROR_CANCELLED);
+        } else if (task.preemptRequested) {
+            // 保留临时文件和分段, 由调度器重新排队后续传
+            task.status = DownloadTask.STATUS_PAUSED;
+        } else {
+            _finish(task, DownloadTask.STATUS_FAILED, error);
+        }
+    }
+
+    /**
+     * 探测文件大小与 Range 支持情况 (请求 bytes=0-0)
+     * <p>任务已有分段 (续传) 时校验大小和 ETag/Last-Modified, 任一不符则放弃旧分段</p>
+     *
+     * @return 是否沿用已有分段继续下载
+     */
+    private boolean _probe(DownloadTask task) throws DownloadException {
+        MirrorSet.Mirror source;
+        if (task.mirrors != null) {
+            source = _probeMirrors(task);
+        } else {
+            source = new MirrorSet.Mirror(task.url);
+            _probeSource(source);
+        }
+
+        long total = source.totalBytes;
+        boolean supportsRange = source.supportsRange;
+        boolean resume = task.segments != null && supportsRange
+                && total == task.totalBytes
+                && _sameValidator(task.etag, source.etag)
+                && _sameValidator(task.lastModified, source.lastModified);
+
+        task.totalBytes = total;
+        task.supportsRange = supportsRange;
+        task.etag = source.etag;
+        task.lastModified = source.lastModified;
+        if (!resume && task.segments != null) {
+            // 远端文件已变化, 旧分段作废
+            _journalRemove(task);
+            task.segments = null;
+        }
+        return resume;
+    }
+
+    /**
+     * 并行探测所有镜像, 最快的镜像响应后再等待 MIRROR_PROBE_GRACE_MS 收集其它结果
+     *
+     * @return 基准镜像, 任务的大小和校验值以它为准
+     */
+    private MirrorSet.Mirror _probeMirrors(DownloadTask task) throws DownloadException {
+        final MirrorSet mirrors = task.mirrors;
+        MirrorSet.Mirror[] candidates = mirrors.reset();
+        CompletionService<Void> completion = new ExecutorCompletionService<>(_connectionExecutor);
+        for (final MirrorSet.Mirror mirror : candidates) {
+            completion.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    try {
+                        mirrors.onProbed(mirror, _probeSource(mirror));
+                    } catch (DownloadException e) {
+                        mirrors.onProbeFailed(mirror);
+                        throw e;
+                    }
+                    return null;
+                }
+            });
+        }
+
+        // 未响应的镜像继续在后台探测, 成功后自动加入
+        DownloadException failure = null;
+        long deadline = 0;
+        for (int remaining = candidates.length; remaining > 0; remaining--) {
+            Future<Void> done;
+            try {
+                if (deadline == 0) {
+                    done = completion.take();
+                } else {
+                    long waitMs = deadline - System.currentTimeMillis();
+                    done = waitMs > 0 ? completion.poll(waitMs, TimeUnit.MILLISECONDS) : null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DownloadException(DownloadTask.ERROR_CANCELLED, "interrupted", e);
+            }
+            if (done == null) break;
+
+            DownloadException error = _await(done);
+            if (error != null) {
+                if (failure == null) failure = error;
+            } else if (deadline == 0) {
+                deadline = System.currentTimeMillis() + MIRROR_PROBE_GRACE_MS;
+            }
+        }
+
+        MirrorSet.Mirror reference = mirrors.selectReference(task.etag, task.lastModified);
+        if (reference == null) {
+            throw failure != null ? failure
+                    : new DownloadException(DownloadTask.ERROR_NETWORK, "no mirror responded");
+        }
+        return reference;
+    }
+
+    /**
+     * 向一个下载源请求 bytes=0-0, 记录大小、Range 支持和 ETag/Last-Modified
+     *
+     * @return 首字节时间 (含 DNS、连接和 TLS 握手, 纳秒)
+     */
+    private long _probeSource(MirrorSet.Mirror source) throws DownloadException {
+        HttpURLConnection conn = null;
+        boolean reusable = false;
+        try {
+            long start = System.nanoTime();
+            conn = _openConnection(source.url);
+            conn.setRequestProperty("Range", "bytes=0-0");
+            int code = _execute(conn);
+            long latency = System.nanoTime() - start;
+
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                source.totalBytes = parseContentRangeTotal(conn.getHeaderField("Content-Range"));
+                source.supportsRange = source.totalBytes > 0;
+                // 读完 1 字节的响应体, 连接可回到 keep-alive 池供分段复用
+                reusable = _drain(conn);
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                source.totalBytes = conn.getContentLength();
+                source.supportsRange = false;
+            } else {
+                throw new DownloadException(DownloadTask.ERROR_SERVER, code,
+                        "probe http " + code, null);
+            }
+            source.etag = conn.getHeaderField("ETag");
+            source.lastModified = conn.getHeaderField("Last-Modified");
+            return latency;
+        } catch (IOException e) {
+            throw classify(e);
+        } finally {
+            if (conn != null && !reusable) conn.disconnect();
+        }
+    }
+
+    private static boolean _drain(HttpURLConnection conn) {
+        try (InputStream in = conn.getInputStream()) {
+            byte[] skip = new byte[64];
+            while (in.read(skip) >= 0) {
+                // 丢弃
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 按连接数和最小分段大小切分文件
+     */
+    private void _createSegments(DownloadTask task) {
+        long total = task.totalBytes;
+        if (!task.supportsRange || total <= 0) {
+            task.segments = new DownloadSegment[]{new DownloadSegment(0, 0, total > 0 ? total - 1 : -1)};
+            return;
+        }
+
+        // 先按当前空闲名额切分, 之后有名额空出时再拆分剩余最多的分段
+        long bySize = (total + MIN_SEGMENT_SIZE - 1) / MIN_SEGMENT_SIZE;
+        int connections = Math.min(task.maxConnections, Math.max(1, _controller.available()));
+        int count = (int) Math.max(1, Math.min(connections, bySize));
+        long segmentSize = total / count;
+        if (task.verifiesChunks()) {
+            // 分段边界对齐到校验块, 每个块只由一个分段写入
+            long chunk = task.chunkSize;
+            segmentSize = Math.max(1, (segmentSize + chunk - 1) / chunk) * chunk;
+            count = (int) ((total + segmentSize - 1) / segmentSize);
+        }
+
+        DownloadSegment[] segs = new DownloadSegment[count];
+        long start = 0;
+        for (int i = 0; i < count; i++) {
+            long end = (i == count - 1) ? total - 1 : start + segmentSize - 1;
+            segs[i] = new DownloadSegment(i, start, end);
+            start = end + 1;
+        }
+        task.segments = segs;
+    }
+
+    private void _prepareFile(File tempFile, boolean resume) throws DownloadException {
+        File parent = tempFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "mkdirs failed: " + parent);
+        }
+        if (!resume && tempFile.exists() && !tempFile.delete()) {
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "cannot reset " + tempFile);
+        }
+    }
+
+    /**
+     * 检查剩余空间并预分配文件, 空间不足时直接失败而不是写到一半才报错
+     */
+    private void _allocate(DownloadTask task, RandomAccessFile raf, File tempFile)
+            throws DownloadException {
+        long total = task.totalBytes;
+        if (total <= 0) return;
+
+        try {
+            long needed = total - raf.length();
+            if (needed <= 0) return;
+
+            File dir = tempFile.getAbsoluteFile().getParentFile();
+            long available = _storageAllocator.getAvailableBytes(dir);
+            if (available - needed < STORAGE_RESERVE_BYTES) {
+                throw new DownloadException(DownloadTask.ERROR_STORAGE,
+                        "insufficient space: need " + needed + ", available " + available);
+            }
+            if (_preallocate) {
+                _storageAllocator.allocate(raf, total);
+            }
+        } catch (DownloadException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "preallocate failed", e);
+        }
+    }
+
+    /**
+     * 并行下载所有分段, 任意分段最终失败时中断其余分段
+     * <p>并发控制器有空闲名额时, 从剩余最多的分段拆出后半段交给新连接, 直到达到任务的连接数上限</p>
+     */
+    private void _downloadSegments(final DownloadTask task, final FileChannel channel)
+            throws DownloadException {
+        DownloadSegment[] segs = task.segments;
+        if (segs.length == 1 && !_splittable(task)) {
+            // 单分段 (小文件或不支持 Range) 直接在任务线程中下载, 省去一次线程切换
+            _runSegment(task, segs[0], channel);
+            return;
+        }
+
+        CompletionService<Void> completion = new ExecutorCompletionService<>(_connectionExecutor);
+        for (DownloadSegment seg : segs) {
+            _submitSegment(completion, task, seg, channel);
+        }
+
+        DownloadException failure = null;
+        int running = segs.length;
+        while (running > 0) {
+            Future<Void> done;
+            try {
+                done = completion.poll(SPLIT_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DownloadException(DownloadTask.ERROR_CANCELLED, "interrupted", e);
+            }
+            if (done != null) {
+                running--;
+                DownloadException error = _await(done);
+                if (error != null) {
+                    // 优先记录真实错误, 而不是因中断产生的取消
+                    if (failure == null || failure.error == DownloadTask.ERROR_CANCELLED) {
+                        failure = error;
+                    }
+                    if (!task.abortRequested) {
+                        // 一个分段彻底失败, 其余分段没有继续的意义
+                        task.abortRequested = true;
+                        _disconnectAll(task);
+                    }
+                }
+            }
+
+            if (failure == null && !task.shouldStop()) {
+                DownloadSegment extra = _splitSegment(task, running);
+                if (extra != null) {
+                    _submitSegment(completion, task, extra, channel);
+                    running++;
+                }
+            }
+        }
+
+        if (failure != null) throw failure;
+    }
+
+    private void _submitSegment(CompletionService<Void> completion, final DownloadTask task,
+                                final DownloadSegment seg, final FileChannel channel) {
+        completion.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                _runSegment(task, seg, channel);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return 分段或探测的最终错误, 成功时返回 null
+     */
+    private static DownloadException _await(Future<?> done) throws DownloadException {
+        try {
+            done.get();
+            return null;
+        } catch (ExecutionException e) {
+            return classify(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DownloadException(DownloadTask.ERROR_CANCELLED, "interrupted", e);
+        }
+    }
+
+    private static boolean _splittable(DownloadTask task) {
+        return task.supportsRange && task.maxConnections > 1 && task.totalBytes > 0
+                && !task.smallFile && task.extractFormat == null;
+    }
+
+    /**
+     * 将剩余最多的分段一分为二, 后半段作为新分段
+     * <p>
+     * 拆分点距离当前写入位置至少 MIN_SEGMENT_SIZE (不小于最大读缓冲区),
+     * 原连接读完手头的缓冲区后即按新的终点停止, 两个分段不会写入同一区间。
+     * 分块校验的任务拆分点对齐到块边界。新的分段布局先让数据落盘再写入日志。
+     * </p>
+     *
+     * @param running 任务当前的连接数 (含等待名额的分段)
+     * @return 新分段, 不满足拆分条件时返回 null
+     */
+    private DownloadSegment _splitSegment(DownloadTask task, int running) {
+        if (running >= task.maxConnections || !_splittable(task) || _controller.available() <= 0) {
+            return null;
+        }
+
+        DownloadSegment[] segs = task.segments;
+        int victim = -1;
+        long largest = 0;
+        for (int i = 0; i < segs.length; i++) {
+            long remaining = segs[i].end - segs[i].nextOffset() + 1;
+            if (remaining > largest) {
+                largest = remaining;
+                victim = i;
+            }
+        }
+        if (victim < 0 || largest < 2 * MIN_SEGMENT_SIZE) return null;
+
+        DownloadSegment seg = segs[victim];
+        long splitAt = seg.nextOffset() + largest / 2;
+        if (task.verifiesChunks()) {
+            long chunk = task.chunkSize;
+            splitAt = (splitAt + chunk - 1) / chunk * chunk;
+        }
+        long oldEnd = seg.end;
+        if (splitAt > oldEnd) return null;
+
+        DownloadSegment extra = new DownloadSegment(segs.length, splitAt, oldEnd);
+        seg.end = splitAt - 1;
+
+        DownloadSegment[] grown = new DownloadSegment[segs.length + 1];
+        System.arraycopy(segs, 0, grown, 0, victim + 1);
+        grown[victim + 1] = extra;
+        System.arraycopy(segs, victim + 1, grown, victim + 2, segs.length - victim - 1);
+        task.segments = grown;
+        _journalLayout(task);
+        return extra;
+    }
+
+    /**
+     * 分段布局变化后重写日志中的任务记录; 记录中的偏移必须已落盘
+     * <p>与检查点相同: 先取偏移快照再 force, 工作线程在此期间继续写入的部分不会被记录</p>
+     */
+    private void _journalLayout(DownloadTask task) {
+        DownloadJournal journal = _journal;
+        FileChannel channel = task.dataChannel;
+        if (journal == null || channel == null || !task.supportsRange) return;
+
+        DownloadSegment[] segs = task.segments;
+        long[] done = new long[segs.length];
+        for (int i = 0; i < segs.length; i++) done[i] = segs[i].downloaded;
+        try {
+            channel.force(false);
+            journal.appendTask(task, segs, done);
+            task.checkpointed = done;
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 下载单个分段, 出错时从断点重试
+     */
+    private void _runSegment(DownloadTask task, DownloadSegment seg, FileChannel channel)
+            throws DownloadException {
+        MirrorSet mirrors = task.mirrors;
+        MirrorSet.Mirror failed = null;
+        DownloadException error = null;
+        int attempt = 0;
+        while (true) {
+            if (task.shouldStop()) {
+                throw new DownloadException(DownloadTask.ERROR_CANCELLED, "cancelled");
+            }
+            if (seg.isComplete()) return;
+            MirrorSet.Mirror source = null;
+            if (mirrors != null) {
+                source = mirrors.acquire(failed);
+                if (source == null) {
+                    throw error != null ? error
+                            : new DownloadException(DownloadTask.ERROR_NETWORK, "no usable mirror");
+                }
+                seg.source = source;
+            }
+            // 每次请求占用一个并发名额, 重试前的等待期间归还
+            if (!_controller.acquire(task)) {
+                if (source != null) mirrors.release(source);
+                throw new DownloadException(DownloadTask.ERROR_CANCELLED, "cancelled");
+            }
+            try {
+                _fetchSegment(task, seg, channel);
+                if (source != null) mirrors.onSuccess(source);
+                return;
+            } catch (DownloadException e) {
+                error = e;
+            } finally {
+                _controller.release();
+                if (source != null) mirrors.release(source);
+            }
+
+            if (task.shouldStop()) {
+                throw new DownloadException(DownloadTask.ERROR_CANCELLED, "cancelled", error);
+            }
+            if (source != null) {
+                mirrors.onFailure(source, !error.isRetryable());
+                failed = source;
+                if (mirrors.hasAlternative(source)) {
+                    // 换到其它镜像立即重试, 从已写入的位置继续; 镜像连续失败后会被停用, 不会无限切换。
+                    // 单个镜像的问题不代表链路拥塞, 不通知并发控制器
+                    _stats.onRetry();
+                    continue;
+                }
+            }
+            _reportCongestion(error);
+            if (!error.isRetryable() || ++attempt > MAX_RETRIES) throw error;
+            _stats.onRetry();
+            _sleepQuietly((long) RETRY_DELAY_MS * attempt);
+        }
+    }
+
+    /**
+     * 超时和 HTTP 429/503 说明链路或服务器过载, 通知并发控制器减少连接
+     */
+    private void _reportCongestion(DownloadException e) {
+        if (e.error == DownloadTask.ERROR_TIMEOUT
+                || e.httpCode == 429 || e.httpCode == HttpURLConnection.HTTP_UNAVAILABLE) {
+            _controller.onCongestion();
+        }
+    }
+
+    private void _fetchSegment(DownloadTask task, DownloadSegment seg, FileChannel channel)
+            throws DownloadException {
+        // 不支持 Range 时无法续传, 只能从头开始
+        if (!task.supportsRange) seg.downloaded = 0;
+        ArchiveExtractor extractor = task.extractor;
+        if (extractor != null) {
+            // 解压只能从条目边界继续, 写到一半的条目丢弃重写
+            seg.downloaded = extractor.rewind(task.supportsRange) - seg.start;
+        }
+        if (seg.isComplete()) return;
+        _prepareDigest(task, seg);
+
+        MirrorSet.Mirror mirror = task.mirrors != null ? seg.source : null;
+        HttpURLConnection conn = null;
+        long lastRead = 0;
+        boolean reusable = false;
+        try {
+            conn = _openConnection(mirror != null ? mirror.url : task.url);
+            if (mirror != null && task.mirrors.hasAlternative(mirror)) {
+                conn.setConnectTimeout(MIRROR_TIMEOUT_MS);
+                conn.setReadTimeout(MIRROR_TIMEOUT_MS);
+            }
+            seg.connection = conn;
+            _stats.onConnectionOpened();
+
+            long offset = seg.nextOffset();
+            long requestedEnd = seg.end;
+            if (task.supportsRange) {
+                String range = "bytes=" + offset + "-" + (requestedEnd >= 0 ? requestedEnd : "");
+                conn.setRequestProperty("Range", range);
+                // 文件在下载途中被替换时服务器返回 200, 避免拼接出新旧混合的文件
+                String validator = mirror != null ? mirror.validator() : task.validator();
+                if (validator != null) conn.setRequestProperty("If-Range", validator);
+            }
+
+            int code = _execute(conn);
+            if (task.supportsRange && code != HttpURLConnection.HTTP_PARTIAL) {
+                throw new DownloadException(DownloadTask.ERROR_SERVER, code,
+                        "expect 206 but got " + code, null);
+            }
+            if (!task.supportsRange && code != HttpURLConnection.HTTP_OK) {
+                throw new DownloadException(DownloadTask.ERROR_SERVER, code,
+                        "http " + code, null);
+            }
+            if (!task.supportsRange && task.totalBytes < 0) {
+                // 未探测的小文件以 Content-Length 作为总大小, 用于进度显示
+                task.totalBytes = _parseLong(conn.getHeaderField("Content-Length"));
+            }
+
+            // 从连接读入池化的直接缓冲区, 再按分段偏移定位写入 (FileChannel 不必再拷贝到临时直接内存);
+            // HttpURLConnection 只提供 InputStream, Channels.newChannel 仍经过其内部的堆数组中转一次
+            DirectBufferPool pool = _bufferPool;
+            ByteBuffer buffer = pool.acquire();
+            try (InputStream in = conn.getInputStream();
+                 ReadableByteChannel source = Channels.newChannel(in)) {
+                lastRead = System.nanoTime();
+                while (true) {
+                    // 终点可能因拆分而提前, 每次读取前重新计算
+                    long end = seg.end;
+                    long remaining = end >= 0 ? end - seg.nextOffset() + 1 : Long.MAX_VALUE;
+                    if (remaining <= 0) break;
+                    if (task.shouldStop()) {
+                        throw new DownloadException(DownloadTask.ERROR_CANCELLED, "cancelled");
+                    }
+                    buffer.clear();
+                    if (remaining < buffer.capacity()) buffer.limit((int) remaining);
+                    int n = source.read(buffer);
+                    if (n < 0) break;
+                    if (n == 0) continue;
+
+                    long now = System.nanoTime();
+                    if (now - lastRead >= STALL_THRESHOLD_NANOS) {
+                        _stats.recordLatency(DownloadStats.HIST_STALL, now - lastRead);
+                    }
+
+                    buffer.flip();
+                    long position = seg.nextOffset();
+                    if (seg.digest != null && seg.digestLength == seg.downloaded) {
+                        seg.digest.update(buffer);
+                        seg.digestLength += n;
+                    }
+                    if (extractor != null) {
+                        extractor.write(buffer);
+                    } else {
+                        _writeFully(channel, buffer, position);
+                    }
+                    seg.downloaded += n;
+                    _transferredBytes.addAndGet(n);
+                    _controller.onBytes(n);
+                    _pace(task, n);
+                    // 限速等待不算卡顿
+                    lastRead = System.nanoTime();
+
+                    if (task.verifiesChunks()) {
+                        buffer.rewind();
+                        _verifyChunks(task, seg, buffer, position, channel);
+                    }
+                }
+            } finally {
+                pool.release(buffer);
+            }
+
+            // 终点未知的分段以 Content-Length 为准: 服务器正常关闭但响应体不足时同样按断流重试, 不能当作下载完成
+            boolean truncated = seg.end >= 0
+                    ? !seg.isComplete()
+                    : task.totalBytes > 0 && seg.nextOffset() < task.totalBytes;
+            if (truncated) {
+                throw new DownloadException(DownloadTask.ERROR_NETWORK,
+                        "segment " + seg.index + " truncated");
+            }
+            // 响应体已完整读完并关闭, 不断开连接, 交还 keep-alive 池; 被拆分的分段没有读完响应体
+            reusable = seg.end == requestedEnd;
+        } catch (DownloadException e) {
+            throw e;
+        } catch (IOException e) {
+            // 读取超时等中途断流, 断流前的等待同样计为卡顿
+            long stalled = lastRead > 0 ? System.nanoTime() - lastRead : 0;
+            if (stalled >= STALL_THRESHOLD_NANOS) {
+                _stats.recordLatency(DownloadStats.HIST_STALL, stalled);
+            }
+            throw classify(e);
+        } finally {
+            seg.connection = null;
+            if (conn != null) {
+                if (!reusable) conn.disconnect();
+                _stats.onConnectionClosed();
+            }
+        }
+    }
+
+    /**
+     * 按全局和单任务令牌桶限速, 分片休眠以便及时响应取消和抢占
+     */
+    private void _pace(DownloadTask task, int bytes) {
+        long waitNanos = Math.max(_rateLimiter.consume(bytes), task.rateLimiter.consume(bytes));
+        long deadline = System.nanoTime() + waitNanos;
+        while (waitNanos > 0 && !task.shouldStop()) {
+            _sleepQuietly(Math.max(1, Math.min(MAX_PACE_SLEEP_MS, waitNanos / 1000000L)));
+            waitNanos = deadline - System.nanoTime();
+        }
+    }
+
+    private void _writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws DownloadException {
+        try {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "write failed", e);
+        }
+    }
+
+    // ---- 完整性校验 ----
+
+    /**
+     * 分段从起点开始下载时创建实时摘要; 不可合并的算法只有首个分段能实时计算
+     */
+    private void _prepareDigest(DownloadTask task, DownloadSegment seg) {
+        if (task.hashAlgorithm == null || task.expectedHash == null) return;
+        // 补丁任务的摘要针对合成后的新文件, 由 PatchApplier 计算
+        if (task.patchSource != null) return;
+        if (seg.downloaded != 0) return;
+
+        StreamingDigest digest = StreamingDigest.create(task.hashAlgorithm);
+        if (seg.index == 0 || digest instanceof StreamingDigest.Combinable) {
+            seg.digest = digest;
+            seg.digestLength = 0;
+        }
+    }
+
+    /**
+     * 校验刚写入的数据所在的块, 块结束时比对摘要
+     * <p>不符时将分段回退到该块起点并抛出可重试异常, 由分段重试只重新请求该块</p>
+     *
+     * @param data     刚写入的数据 [position, limit), 方法返回后 limit 不变
+     * @param position data 在文件中的起始偏移
+     */
+    private void _verifyChunks(DownloadTask task, DownloadSegment seg, ByteBuffer data,
+                               long position, FileChannel channel) throws DownloadException {
+        long chunkSize = task.chunkSize;
+        String[] hashes = task.chunkHashes;
+        int limit = data.limit();
+        long pos = position;
+
+        while (data.position() < limit) {
+            long chunkIndex = pos / chunkSize;
+            if (chunkIndex >= hashes.length) break;
+            long chunkStart = chunkIndex * chunkSize;
+            long chunkEnd = Math.min(chunkStart + chunkSize, task.totalBytes);
+
+            if (seg.chunkDigest == null || seg.chunkDigestEnd != pos) {
+                // 块的开头或从断点续传: 本块已写入的部分从文件补算
+                seg.chunkDigest = StreamingDigest.create(task.hashAlgorithm);
+                _digestFile(channel, seg.chunkDigest, chunkStart, pos);
+            }
+
+            int take = (int) Math.min(limit - data.position(), chunkEnd - pos);
+            data.limit(data.position() + take);
+            seg.chunkDigest.update(data);
+            data.position(data.limit());
+            data.limit(limit);
+            pos += take;
+            seg.chunkDigestEnd = pos;
+
+            if (pos == chunkEnd) {
+                String actual = seg.chunkDigest.hex();
+                seg.chunkDigest = null;
+                if (!StreamingDigest.matches(actual, hashes[(int) chunkIndex])) {
+                    seg.downloaded = Math.max(0, chunkStart - seg.start);
+                    // 实时摘要已包含错误数据, 收尾时改为从文件读回
+                    seg.digest = null;
+                    throw new DownloadException(DownloadTask.ERROR_INTEGRITY,
+                            "chunk " + chunkIndex + " digest mismatch");
+                }
+            }
+        }
+    }
+
+    /**
+     * 校验整个文件的摘要
+     * <p>
+     * 可合并的算法 (CRC32) 按分段分别补齐后合并; 其余算法沿用首个分段的实时摘要,
+     * 从其覆盖的位置起顺序读回文件剩余部分。
+     * </p>
+     *
+     * @return 未要求校验或校验通过时返回 true
+     */
+    private boolean _verifyFile(DownloadTask task, FileChannel channel) throws DownloadException {
+        if (task.hashAlgorithm == null || task.expectedHash == null) return true;
+
+        DownloadSegment[] segs = task.segments;
+        StreamingDigest result;
+        if (StreamingDigest.create(task.hashAlgorithm) instanceof StreamingDigest.Combinable) {
+            result = null;
+            for (DownloadSegment seg : segs) {
+                StreamingDigest digest = _completeDigest(task, seg, channel, seg.nextOffset());
+                if (result == null) {
+                    result = digest;
+                } else {
+                    ((StreamingDigest.Combinable) result).combine(digest, seg.downloaded);
+                }
+            }
+        } else {
+            result = _completeDigest(task, segs[0], channel, task.getDownloadedBytes());
+        }
+
+        for (DownloadSegment seg : segs) seg.digest = null;
+        return StreamingDigest.matches(result.hex(), task.expectedHash);
+    }
+
+    /**
+     * 将分段的实时摘要补齐到文件偏移 end, 没有实时摘要时从分段起点读回
+     */
+    private StreamingDigest _completeDigest(DownloadTask task, DownloadSegment seg,
+                                            FileChannel channel, long end)
+            throws DownloadException {
+        StreamingDigest digest = seg.digest;
+        long from = seg.start + seg.digestLength;
+        if (digest == null) {
+            digest = StreamingDigest.create(task.hashAlgorithm);
+            from = seg.start;
+        }
+        _digestFile(channel, digest, from, end);
+        return digest;
+    }
+
+    /**
+     * 从文件读取 [from, end) 更新摘要
+     */
+    private void _digestFile(FileChannel channel, StreamingDigest digest, long from, long end)
+            throws DownloadException {
+        if (from >= end) return;
+
+        DirectBufferPool pool = _bufferPool;
+        ByteBuffer buffer = pool.acquire();
+        try {
+            long position = from;
+            while (position < end) {
+                buffer.clear();
+                if (end - position < buffer.capacity()) buffer.limit((int) (end - position));
+                int n = channel.read(buffer, position);
+                if (n < 0) {
+                    throw new DownloadException(DownloadTask.ERROR_STORAGE,
+                            "unexpected end of file at " + position);
+                }
+                buffer.flip();
+                digest.update(buffer);
+                position += n;
+            }
+        } catch (IOException e) {
+            if (e instanceof DownloadException) throw (DownloadException) e;
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "read back failed", e);
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    private void _commitFile(DownloadTask task, File tempFile) throws DownloadException {
+        if (task.totalBytes < 0) {
+            task.totalBytes = task.getDownloadedBytes();
+        }
+        File target = new File(task.savePath);
+        if (target.exists() && !target.delete()) {
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "cannot replace " + target);
+        }
+        if (!tempFile.renameTo(target)) {
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "rename failed: " + target);
+        }
+    }
+
+    private void _finish(DownloadTask task, int status, int error) {
+        if (status != DownloadTask.STATUS_FAILED) {
+            _journalRemove(task);
+        }
+        task.error = error;
+        task.status = status;
+    }
+
+    // ---- 辅助方法 ----
+
+    private static boolean _sameValidator(String saved, String current) {
+        return saved == null || saved.equals(current);
+    }
+
+    private HttpURLConnection _openConnection(String url) throws IOException {
+        URL target = new URL(url);
+        _noteHost(target.getHost());
+
+        HttpURLConnection conn = (HttpURLConnection) target.openConnection();
+        if (conn instanceof HttpsURLConnection) {
+            HttpsURLConnection https = (HttpsURLConnection) conn;
+            SSLSocketFactory base = _sslSocketFactory;
+            https.setSSLSocketFactory(_timingFactory(base != null ? base : https.getSSLSocketFactory()));
+        }
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(READ_TIMEOUT_MS);
+        // 分段按字节偏移写入, 必须拿到原始字节
+        conn.setRequestProperty("Accept-Encoding", "identity");
+        return conn;
+    }
+
+    /**
+     * 连接前登记主机: 解析记录仍有效时计一次命中, 过半 TTL 时在后台刷新系统缓存
+     * <p>
+     * 下载线程上不做解析: HttpURLConnection 连接时总会经由系统解析器解析一次, 且无法改为连接指定地址
+     * (HTTPS 的 SNI 和证书校验依赖主机名), 此前再同步解析一次只为计时, 会让未命中的请求多阻塞一次查询。
+     * 未命中时解析耗时计入连接耗时, DNS 直方图只由后台预解析记录。
+     * </p>
+     */
+    private void _noteHost(String host) {
+        DnsCache cache = _dnsCache;
+        if (cache == null) return;
+        long now = System.currentTimeMillis();
+        if (cache.isFresh(host, now)) {
+            _stats.onDnsCacheHit();
+            if (cache.claimRefresh(host, now)) _prefetchDns(cache, host);
+        } else {
+            // 随后的连接会解析该主机, 系统缓存自此刻起有效
+            cache.put(host, now);
+        }
+    }
+
+    /**
+     * 在连接线程池中解析主机并计时, 不占用下载线程; 失败时留给连接时的解析报告错误
+     */
+    private void _prefetchDns(final DnsCache cache, final String host) {
+        _connectionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long start = System.nanoTime();
+                    InetAddress.getAllByName(host);
+                    _stats.recordLatency(DownloadStats.HIST_DNS, System.nanoTime() - start);
+                    cache.put(host, System.currentTimeMillis());
+                } catch (IOException e) {
+                    cache.failed(host);
+                }
+            }
+        });
+    }
+
+    /**
+     * 共享同一个计时包装, 默认 SSLSocketFactory 被替换时重新包装
+     */
+    private SSLSocketFactory _timingFactory(SSLSocketFactory current) {
+        TlsTimingSocketFactory factory = _tlsFactory;
+        if (current instanceof TlsTimingSocketFactory) return current;
+        if (factory == null || factory.delegate != current) {
+            factory = new TlsTimingSocketFactory(current);
+            _tlsFactory = factory;
+        }
+        return factory;
+    }
+
+    /**
+     * 发送请求并等待响应头, 记录连接、TLS 握手 (及是否恢复会话) 和首字节时间
+     * <p>无法区分 TCP 与 TLS 时 (复用的连接、非 Android 实现) 整段计为连接耗时</p>
+     *
+     * @return HTTP 状态码
+     */
+    private int _execute(HttpURLConnection conn) throws IOException {
+        TlsTimingSocketFactory.reset();
+        long start = System.nanoTime();
+        conn.connect();
+        long connected = System.nanoTime();
+
+        long tcpConnected = TlsTimingSocketFactory.tcpConnectedAt();
+        if (tcpConnected > 0) {
+            _stats.recordLatency(DownloadStats.HIST_CONNECT, tcpConnected - start);
+            _stats.recordLatency(DownloadStats.HIST_TLS, connected - tcpConnected);
+        } else {
+            _stats.recordLatency(DownloadStats.HIST_CONNECT, connected - start);
+        }
+        int resumed = TlsTimingSocketFactory.takeResumed();
+        if (resumed >= 0) _stats.onTlsHandshake(resumed == 1);
+
+        int code = conn.getResponseCode();
+        _stats.recordLatency(DownloadStats.HIST_TTFB, System.nanoTime() - connected);
+        return code;
+    }
+
+    private void _disconnectAll(DownloadTask task) {
+        DownloadSegment[] segs = task.segments;
+        if (segs == null) return;
+        for (DownloadSegment seg : segs) {
+            HttpURLConnection conn = seg.connection;
+            if (conn != null) conn.disconnect();
+        }
+    }
+
+    /**
+     * 解析 Content-Range 中的总长度, 如 "bytes 0-0/12345"
+     */
+    static long parseContentRangeTotal(String contentRange) {
+        if (contentRange == null) return -1;
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0 || slash == contentRange.length() - 1) return -1;
+        String total = contentRange.substring(slash + 1).trim();
+        if ("*".equals(total)) return -1;
+        return _parseLong(total);
+    }
+
+    private static long _parseLong(String value) {
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 将异常归类为 EDownloadError
+     */
+    static DownloadException classify(Throwable e) {
+        if (e instanceof DownloadException) return (DownloadException) e;
+        if (e instanceof SocketTimeoutException) {
+            return new DownloadException(DownloadTask.ERROR_TIMEOUT, e.getMessage(), e);
+        }
+        if (e instanceof MalformedURLException) {
+            return new DownloadException(DownloadTask.ERROR_INVALID_URL, e.getMessage(), e);
+        }
+        if (e instanceof UnknownHostException || e instanceof ConnectException
+                || e instanceof IOException) {
+            return new DownloadException(DownloadTask.ERROR_NETWORK, String.valueOf(e.getMessage()), e);
+        }
+        return new DownloadException(DownloadTask.ERROR_UNKNOWN, String.valueOf(e), e);
+    }
+
+    private static void _sleepQuietly(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String _prefix;
+        private final AtomicInteger _count = new AtomicInteger(1);
+
+        NamedThreadFactory(String prefix) {
+            _prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, _prefix + "-" + _count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
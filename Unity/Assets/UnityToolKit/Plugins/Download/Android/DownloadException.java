@@ -0,0 +1,45 @@
+package com.toolkit.download;
+
+import java.io.IOException;
+
+/**
+ * 原生下载引擎异常
+ * <p>携带错误分类码 (与 C# 端 EDownloadError 一致), 供引擎判断是否可重试</p>
+ */
+class DownloadException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    final int error;
+    final int httpCode;
+
+    DownloadException(int error, String message) {
+        this(error, 0, message, null);
+    }
+
+    DownloadException(int error, String message, Throwable cause) {
+        this(error, 0, message, cause);
+    }
+
+    DownloadException(int error, int httpCode, String message, Throwable cause) {
+        super(message, cause);
+        this.error = error;
+        this.httpCode = httpCode;
+    }
+
+    /**
+     * 是否值得重试: 网络错误、超时、服务器 5xx 和 429、分块校验失败
+     */
+    boolean isRetryable() {
+        switch (error) {
+            case DownloadTask.ERROR_NETWORK:
+            case DownloadTask.ERROR_TIMEOUT:
+            case DownloadTask.ERROR_INTEGRITY:
+                return true;
+            case DownloadTask.ERROR_SERVER:
+                return httpCode >= 500 || httpCode == 429 || httpCode == 0;
+            default:
+                return false;
+        }
+    }
+}
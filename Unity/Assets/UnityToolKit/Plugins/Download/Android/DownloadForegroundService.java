@@ -6,8 +6,14 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
 import android.os.IBinder;
-import android.os.PowerManager;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.net.ssl.SSLSocketFactory;
 
 /**
  * Android 后台下载前台服务
@@ -16,23 +22,109 @@ import android.os.PowerManager;
  * 使下载任务不被系统杀死。同时在通知栏显示下载进度。
  * </p>
  * <p>
- * 通知渠道和图标由 {@link DownloadBridge} 统一管理。
+ * 同时作为原生下载引擎 {@link DownloadEngine} 的宿主: 引擎是进程级单例,
+ * 下载线程不依赖 Unity 主线程, 前台服务保证 App 在后台时进程不被回收。
+ * </p>
+ * <p>
+ * 控制通道: 启动只能通过 Intent; 服务进入前台后通过 {@link #getForegroundInstance()}
+ * 暴露进程内句柄, 后续的进度更新和停止由 {@link AndroidDownloadPlatform} 直接调用,
+ * 不再经过 ActivityManager 的 Intent 分发。
+ * </p>
+ * <p>
+ * 清单中为服务声明 android:process (如 ":download") 后, 服务和引擎运行在独立进程:
+ * 下载线程和缓冲区不占用 Unity 进程的堆, 不与游戏争抢 GC, Unity 进程在后台被回收后下载继续。
+ * 此时 {@link DownloadBridge} 绑定本服务, 经 {@link #onBind} 返回的 {@link RemoteDownloadControl.Stub}
+ * 跨进程调用引擎, 对外接口不变。
+ * </p>
+ * <p>
+ * 通知渠道、图标和点击意图由 {@link AndroidDownloadPlatform} 统一管理。
  * 最小权限: FOREGROUND_SERVICE, POST_NOTIFICATIONS (Android 13+)
  * </p>
  */
 public class DownloadForegroundService extends Service {
 
     private static final int NOTIFICATION_ID = 19900;
+    private static final String JOURNAL_PATH = "toolkit_download/journal.bin";
+    private static final String DNS_CACHE_PATH = "toolkit_download/dns.bin";
+    private static final String TLS_SESSION_DIR = "toolkit_download/tls_sessions";
+    private static final String CONTENT_CACHE_DIR = "toolkit_download/content";
+    private static final int TLS_HANDSHAKE_TIMEOUT_MS = 30000;
+
+    private static DownloadEngine _engine;
+    private static volatile DownloadForegroundService _foregroundInstance;
+    private static boolean _sessionCacheEnabled;
 
     private NotificationManager _notificationManager;
+    private AndroidDownloadPlatform _platform;
     private Notification.Builder _notificationBuilder;
-    private PowerManager.WakeLock _wakeLock;
+    private DownloadLockManager _lockManager;
+    private IBinder _binder;
+
+    /**
+     * 获取进程内的下载引擎 (首次调用时创建)
+     */
+    static synchronized DownloadEngine getEngine() {
+        if (_engine == null) {
+            _engine = new DownloadEngine();
+            _engine.setStorageAllocator(new AndroidStorageAllocator());
+        }
+        return _engine;
+    }
+
+    /**
+     * 为引擎启用持久化状态 (重复调用无效果)
+     * <p>
+     * 任务日志用于恢复并续传上次进程中未完成的任务; DNS 解析记录用于在后台预先解析上次用过的下载主机;
+     * TLS 会话缓存使下次启动后的首个连接即可恢复会话, 不必完整握手;
+     * 内容缓存的索引在启动时读入, 已下载过的内容不再发出网络请求。
+     * </p>
+     * <p>均放在 no-backup 目录, 不参与云备份</p>
+     */
+    static synchronized void enablePersistence(Context context) {
+        File dir = context.getApplicationContext().getNoBackupFilesDir();
+        DownloadEngine engine = getEngine();
+        engine.enableJournal(new File(dir, JOURNAL_PATH));
+        engine.enableDnsCache(new File(dir, DNS_CACHE_PATH));
+        engine.enableContentCache(new File(dir, CONTENT_CACHE_DIR), ContentCache.DEFAULT_BUDGET);
+        if (!_sessionCacheEnabled) {
+            _sessionCacheEnabled = true;
+            try {
+                SSLSessionCache cache = new SSLSessionCache(new File(dir, TLS_SESSION_DIR));
+                engine.setSslSocketFactory(_persistentSessionFactory(cache));
+            } catch (IOException e) {
+                // 缓存目录不可用时沿用默认工厂, 仅失去跨进程的会话恢复
+            }
+        }
+    }
+
+    /**
+     * 会话写入 SSLSessionCache 的 SSLSocketFactory
+     * <p>
+     * SSLCertificateSocketFactory 自 API 29 标记为弃用, 但各版本上仍可用 (校验证书和主机名),
+     * 且 SDK 中没有其它公开接口能把 SSLSessionCache 挂到工厂上; 按版本改用 SSLContext 会在新系统上失去跨进程的会话恢复
+     * </p>
+     */
+    @SuppressWarnings("deprecation")
+    private static SSLSocketFactory _persistentSessionFactory(SSLSessionCache cache) {
+        return SSLCertificateSocketFactory.getDefault(TLS_HANDSHAKE_TIMEOUT_MS, cache);
+    }
+
+    /**
+     * 获取已进入前台的服务实例, 未启动或启动尚未完成时返回 null
+     */
+    static DownloadForegroundService getForegroundInstance() {
+        return _foregroundInstance;
+    }
 
     @Override
     public void onCreate() {
         super.onCreate();
         _notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        _acquireWakeLock();
+        // 独立进程中没有 Unity 侧的平台实例, 通知图标和点击意图由服务自己的实例提供
+        _platform = new AndroidDownloadPlatform(this);
+        enablePersistence(this);
+        _lockManager = new DownloadLockManager(_platform, getEngine());
+        _lockManager.start();
     }
 
     @Override
@@ -42,6 +134,8 @@ public class DownloadForegroundService extends Service {
             if ("start".equals(action)) {
                 String title = intent.getStringExtra("title");
                 String content = intent.getStringExtra("content");
+                String icon = intent.getStringExtra("icon");
+                if (icon != null) _platform.setSmallIconName(icon);
                 if (title == null) title = "下载中";
                 if (content == null) content = "正在下载文件...";
                 _startForeground(title, content);
@@ -57,24 +151,31 @@ public class DownloadForegroundService extends Service {
         return START_NOT_STICKY;
     }
 
+    /**
+     * 跨进程控制通道, 只有服务运行在独立进程时 DownloadBridge 才会绑定
+     */
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        if (_binder == null) {
+            _binder = new RemoteDownloadControl.Stub(new LocalDownloadControl(getEngine(), _platform));
+        }
+        return _binder;
     }
 
     @Override
     public void onDestroy() {
-        _releaseWakeLock();
+        if (_foregroundInstance == this) _foregroundInstance = null;
+        _lockManager.stop();
         super.onDestroy();
     }
 
     /**
      * 启动前台服务并显示通知
-     * <p>使用 DownloadBridge 管理的通知渠道、图标和点击意图</p>
+     * <p>使用 {@link AndroidDownloadPlatform} 管理的通知渠道、图标和点击意图</p>
      */
-    private void _startForeground(String title, String content) {
+    private synchronized void _startForeground(String title, String content) {
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-            _notificationBuilder = new Notification.Builder(this, DownloadBridge.CHANNEL_ID);
+            _notificationBuilder = new Notification.Builder(this, AndroidDownloadPlatform.CHANNEL_ID);
         } else {
             _notificationBuilder = new Notification.Builder(this);
         }
@@ -82,23 +183,41 @@ public class DownloadForegroundService extends Service {
         _notificationBuilder
                 .setContentTitle(title)
                 .setContentText(content)
-                .setSmallIcon(DownloadBridge.resolveSmallIcon())
+                .setSmallIcon(_platform.smallIcon())
                 .setOngoing(true)
+                .setOnlyAlertOnce(true)
                 .setProgress(100, 0, false);
 
         // 点击通知打开 App
-        PendingIntent contentIntent = DownloadBridge.createContentIntent();
+        PendingIntent contentIntent = _platform.contentIntent();
         if (contentIntent != null) {
             _notificationBuilder.setContentIntent(contentIntent);
         }
 
         startForeground(NOTIFICATION_ID, _notificationBuilder.build());
+        _foregroundInstance = this;
+    }
+
+    // ---- 进程内直接调用 (由 AndroidDownloadPlatform 在任意线程调用) ----
+
+    /**
+     * 直接更新通知栏进度, 不经过 Intent
+     */
+    void updateDirect(String title, String content, int progress) {
+        _updateNotification(title, content, progress);
+    }
+
+    /**
+     * 直接停止前台服务, 不经过 Intent
+     */
+    void stopDirect() {
+        _stopForegroundService();
     }
 
     /**
      * 更新通知栏进度
      */
-    private void _updateNotification(String title, String content, int progress) {
+    private synchronized void _updateNotification(String title, String content, int progress) {
         if (_notificationBuilder == null) return;
 
         if (title != null) _notificationBuilder.setContentTitle(title);
@@ -112,32 +231,8 @@ public class DownloadForegroundService extends Service {
      * 停止前台服务
      */
     private void _stopForegroundService() {
+        if (_foregroundInstance == this) _foregroundInstance = null;
         stopForeground(true);
         stopSelf();
     }
-
-    /**
-     * 获取 Partial WakeLock, 防止 CPU 休眠中断下载
-     * <p>最小权限: 仅使用 PARTIAL_WAKE_LOCK, 不影响屏幕和键盘</p>
-     */
-    private void _acquireWakeLock() {
-        PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        if (pm != null) {
-            _wakeLock = pm.newWakeLock(
-                    PowerManager.PARTIAL_WAKE_LOCK,
-                    "ToolKit:DownloadWakeLock"
-            );
-            _wakeLock.acquire(60 * 60 * 1000L); // 最长 1 小时, 防止永久持有
-        }
-    }
-
-    /**
-     * 释放 WakeLock
-     */
-    private void _releaseWakeLock() {
-        if (_wakeLock != null && _wakeLock.isHeld()) {
-            _wakeLock.release();
-            _wakeLock = null;
-        }
-    }
 }
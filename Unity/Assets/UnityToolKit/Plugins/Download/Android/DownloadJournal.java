@@ -0,0 +1,392 @@
+package com.toolkit.download;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 下载任务持久化日志 (追加写 + 批量 fsync)
+ * <p>
+ * 记录每个未完成任务的地址 (含镜像)、保存路径、ETag/Last-Modified、校验、解压和补丁参数以及各分段的写入偏移,
+ * 进程被系统杀死后, 下次启动时据此以 Range 请求续传。
+ * </p>
+ * <p>
+ * 文件格式: 头部 [magic][version], 之后为若干记录 [length][type][payload][crc32]。
+ * 写到一半被杀死的尾部记录会因长度或校验不符被丢弃, 之前的记录不受影响。
+ * 追加的记录只写入页缓存, 由 {@link #sync()} 批量落盘; 文件过大时按当前存活任务重写压缩。
+ * </p>
+ */
+class DownloadJournal {
+
+    private static final int MAGIC = 0x544B444A; // "TKDJ"
+    private static final int VERSION = 5;
+    /** 版本 1 的任务记录不含校验参数, 版本 2 不含解压格式, 版本 3 不含镜像地址, 版本 4 不含补丁旧文件, 仍可读取 */
+    private static final int VERSION_NO_HASH = 1;
+    private static final int VERSION_NO_EXTRACT = 2;
+    private static final int VERSION_NO_MIRRORS = 3;
+    private static final int VERSION_NO_PATCH = 4;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+    private static final long COMPACT_THRESHOLD = 512 * 1024L;
+
+    private static final byte TYPE_TASK = 1;
+    private static final byte TYPE_PROGRESS = 2;
+    private static final byte TYPE_REMOVE = 3;
+
+    /**
+     * 日志中的一条任务记录
+     */
+    static final class Entry {
+        long id;
+        String url;
+        String savePath;
+        int connections;
+        long totalBytes;
+        String etag;
+        String lastModified;
+        String hashAlgorithm;
+        String expectedHash;
+        long chunkSize;
+        String[] chunkHashes;
+        String extractFormat;
+        /** 全部镜像地址 (第一个即 url), 为 null 表示单一地址 */
+        String[] mirrors;
+        String patchSource;
+        long[] segStart;
+        long[] segEnd;
+        long[] segDone;
+    }
+
+    private final File _file;
+    private final Map<Long, Entry> _entries = new LinkedHashMap<>();
+    private final ByteArrayOutputStream _buffer = new ByteArrayOutputStream(256);
+    private final CRC32 _crc = new CRC32();
+    private RandomAccessFile _raf;
+    private FileChannel _channel;
+    private boolean _dirty;
+
+    DownloadJournal(File file) {
+        _file = file;
+    }
+
+    /**
+     * 读取日志并重放, 返回所有存活任务; 随后以压缩后的内容重新打开日志用于追加
+     */
+    synchronized List<Entry> load() throws IOException {
+        _entries.clear();
+        if (_file.exists()) {
+            _replay();
+        }
+        _rewrite();
+        return new ArrayList<>(_entries.values());
+    }
+
+    synchronized void appendTask(DownloadTask task) throws IOException {
+        appendTask(task, task.segments, task.segmentProgress());
+    }
+
+    /**
+     * 按给定的分段布局和偏移快照记录任务; 调用方需保证快照中的偏移已先行落盘
+     */
+    synchronized void appendTask(DownloadTask task, DownloadSegment[] segs, long[] segDone) throws IOException {
+        Entry entry = _toEntry(task, segs, segDone);
+        _entries.put(entry.id, entry);
+
+        DataOutputStream out = _begin(TYPE_TASK);
+        _writeEntry(out, entry);
+        _commit();
+    }
+
+    /**
+     * 记录分段写入偏移; 调用方需保证对应的数据已先行落盘
+     */
+    synchronized void appendProgress(long taskId, long[] segDone) throws IOException {
+        Entry entry = _entries.get(taskId);
+        if (entry == null || entry.segDone.length != segDone.length) return;
+        System.arraycopy(segDone, 0, entry.segDone, 0, segDone.length);
+
+        DataOutputStream out = _begin(TYPE_PROGRESS);
+        out.writeLong(taskId);
+        out.writeInt(segDone.length);
+        for (long done : segDone) out.writeLong(done);
+        _commit();
+    }
+
+    synchronized void appendRemove(long taskId) throws IOException {
+        if (_entries.remove(taskId) == null) return;
+
+        DataOutputStream out = _begin(TYPE_REMOVE);
+        out.writeLong(taskId);
+        _commit();
+    }
+
+    /**
+     * 将已追加的记录落盘 (批量 fsync 检查点)
+     */
+    synchronized void sync() throws IOException {
+        if (!_dirty || _channel == null) return;
+        _channel.force(false);
+        _dirty = false;
+        if (_channel.size() > COMPACT_THRESHOLD) {
+            _rewrite();
+        }
+    }
+
+    synchronized void close() {
+        try {
+            sync();
+        } catch (IOException ignored) {
+        }
+        _closeQuietly();
+    }
+
+    // ---- 读取 ----
+
+    private void _replay() throws IOException {
+        byte[] data;
+        try (RandomAccessFile raf = new RandomAccessFile(_file, "r")) {
+            long length = raf.length();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) return;
+            data = new byte[(int) length];
+            raf.readFully(data);
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        if (buf.getInt() != MAGIC) return;
+        int version = buf.getInt();
+        if (version < VERSION_NO_HASH || version > VERSION) return;
+
+        CRC32 crc = new CRC32();
+        while (buf.remaining() >= 4) {
+            int length = buf.getInt();
+            // 长度异常或剩余不足说明尾部记录被截断, 之后的内容全部丢弃
+            if (length <= 0 || length > MAX_RECORD_SIZE || buf.remaining() < length + 4) break;
+
+            int start = buf.position();
+            crc.reset();
+            crc.update(data, start, length);
+            buf.position(start + length);
+            if ((int) crc.getValue() != buf.getInt()) break;
+
+            _apply(new DataInputStream(new ByteArrayInputStream(data, start, length)), version);
+        }
+    }
+
+    private void _apply(DataInputStream in, int version) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_TASK: {
+                Entry entry = _readEntry(in, version);
+                _entries.put(entry.id, entry);
+                break;
+            }
+            case TYPE_PROGRESS: {
+                Entry entry = _entries.get(in.readLong());
+                int count = in.readInt();
+                if (entry == null || entry.segDone.length != count) break;
+                for (int i = 0; i < count; i++) entry.segDone[i] = in.readLong();
+                break;
+            }
+            case TYPE_REMOVE:
+                _entries.remove(in.readLong());
+                break;
+            default:
+                break;
+        }
+    }
+
+    // ---- 写入 ----
+
+    private DataOutputStream _begin(byte type) throws IOException {
+        _buffer.reset();
+        DataOutputStream out = new DataOutputStream(_buffer);
+        out.writeByte(type);
+        return out;
+    }
+
+    private void _commit() throws IOException {
+        if (_channel == null) _openForAppend();
+
+        byte[] payload = _buffer.toByteArray();
+        _crc.reset();
+        _crc.update(payload, 0, payload.length);
+
+        ByteBuffer record = ByteBuffer.allocate(payload.length + 8);
+        record.putInt(payload.length).put(payload).putInt((int) _crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) _channel.write(record);
+        _dirty = true;
+    }
+
+    /**
+     * 以当前存活任务重写日志: 先写临时文件并落盘, 再原子替换
+     */
+    private void _rewrite() throws IOException {
+        _closeQuietly();
+
+        File parent = _file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("mkdirs failed: " + parent);
+        }
+
+        File temp = new File(_file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+            raf.setLength(0);
+            _raf = raf;
+            _channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            _channel.write(header);
+            for (Entry entry : _entries.values()) {
+                _writeEntry(_begin(TYPE_TASK), entry);
+                _commit();
+            }
+            _channel.force(false);
+        } finally {
+            _raf = null;
+            _channel = null;
+        }
+
+        if (!temp.renameTo(_file)) {
+            throw new IOException("rename failed: " + _file);
+        }
+        _openForAppend();
+        _dirty = false;
+    }
+
+    private void _openForAppend() throws IOException {
+        _raf = new RandomAccessFile(_file, "rw");
+        _channel = _raf.getChannel();
+        _channel.position(_channel.size());
+    }
+
+    private void _closeQuietly() {
+        if (_raf != null) {
+            try {
+                _raf.close();
+            } catch (IOException ignored) {
+            }
+        }
+        _raf = null;
+        _channel = null;
+    }
+
+    // ---- 序列化 ----
+
+    private static Entry _toEntry(DownloadTask task, DownloadSegment[] segs, long[] segDone) {
+        Entry entry = new Entry();
+        entry.id = task.id;
+        entry.url = task.url;
+        entry.savePath = task.savePath;
+        entry.connections = task.maxConnections;
+        entry.totalBytes = task.totalBytes;
+        entry.etag = task.etag;
+        entry.lastModified = task.lastModified;
+        entry.hashAlgorithm = task.hashAlgorithm;
+        entry.expectedHash = task.expectedHash;
+        entry.chunkSize = task.chunkSize;
+        entry.chunkHashes = task.chunkHashes;
+        entry.extractFormat = task.extractFormat;
+        entry.mirrors = task.mirrors != null ? task.mirrors.urls() : null;
+        entry.patchSource = task.patchSource;
+        entry.segStart = new long[segs.length];
+        entry.segEnd = new long[segs.length];
+        entry.segDone = new long[segs.length];
+        for (int i = 0; i < segs.length; i++) {
+            entry.segStart[i] = segs[i].start;
+            entry.segEnd[i] = segs[i].end;
+            entry.segDone[i] = segDone[i];
+        }
+        return entry;
+    }
+
+    private static void _writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeLong(entry.id);
+        out.writeUTF(entry.url);
+        out.writeUTF(entry.savePath);
+        out.writeInt(entry.connections);
+        out.writeLong(entry.totalBytes);
+        out.writeUTF(entry.etag != null ? entry.etag : "");
+        out.writeUTF(entry.lastModified != null ? entry.lastModified : "");
+        out.writeUTF(entry.hashAlgorithm != null ? entry.hashAlgorithm : "");
+        out.writeUTF(entry.expectedHash != null ? entry.expectedHash : "");
+        out.writeLong(entry.chunkSize);
+        String[] chunkHashes = entry.chunkHashes;
+        out.writeInt(chunkHashes != null ? chunkHashes.length : 0);
+        if (chunkHashes != null) {
+            for (String hash : chunkHashes) out.writeUTF(hash != null ? hash : "");
+        }
+        out.writeUTF(entry.extractFormat != null ? entry.extractFormat : "");
+        String[] mirrors = entry.mirrors;
+        out.writeInt(mirrors != null ? mirrors.length : 0);
+        if (mirrors != null) {
+            for (String mirror : mirrors) out.writeUTF(mirror);
+        }
+        out.writeUTF(entry.patchSource != null ? entry.patchSource : "");
+        out.writeInt(entry.segStart.length);
+        for (int i = 0; i < entry.segStart.length; i++) {
+            out.writeLong(entry.segStart[i]);
+            out.writeLong(entry.segEnd[i]);
+            out.writeLong(entry.segDone[i]);
+        }
+    }
+
+    private static Entry _readEntry(DataInputStream in, int version) throws IOException {
+        Entry entry = new Entry();
+        entry.id = in.readLong();
+        entry.url = in.readUTF();
+        entry.savePath = in.readUTF();
+        entry.connections = in.readInt();
+        entry.totalBytes = in.readLong();
+        entry.etag = _emptyToNull(in.readUTF());
+        entry.lastModified = _emptyToNull(in.readUTF());
+        if (version != VERSION_NO_HASH) {
+            entry.hashAlgorithm = _emptyToNull(in.readUTF());
+            entry.expectedHash = _emptyToNull(in.readUTF());
+            entry.chunkSize = in.readLong();
+            int chunkCount = in.readInt();
+            if (chunkCount > 0) {
+                entry.chunkHashes = new String[chunkCount];
+                for (int i = 0; i < chunkCount; i++) entry.chunkHashes[i] = in.readUTF();
+            }
+        }
+        if (version > VERSION_NO_EXTRACT) {
+            entry.extractFormat = _emptyToNull(in.readUTF());
+        }
+        if (version > VERSION_NO_MIRRORS) {
+            int mirrorCount = in.readInt();
+            if (mirrorCount > 0) {
+                entry.mirrors = new String[mirrorCount];
+                for (int i = 0; i < mirrorCount; i++) entry.mirrors[i] = in.readUTF();
+            }
+        }
+        if (version > VERSION_NO_PATCH) {
+            entry.patchSource = _emptyToNull(in.readUTF());
+        }
+        int count = in.readInt();
+        entry.segStart = new long[count];
+        entry.segEnd = new long[count];
+        entry.segDone = new long[count];
+        for (int i = 0; i < count; i++) {
+            entry.segStart[i] = in.readLong();
+            entry.segEnd[i] = in.readLong();
+            entry.segDone[i] = in.readLong();
+        }
+        return entry;
+    }
+
+    private static String _emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,163 @@
+package com.toolkit.download;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 下载期间的 WakeLock / WifiLock 管理
+ * <p>
+ * 仅在确实有数据流动时持有 PARTIAL_WAKE_LOCK 和 WIFI_MODE_FULL_HIGH_PERF 的 WifiLock,
+ * 避免熄屏后 Wi-Fi 进入省电模式导致吞吐骤降。WakeLock 按时间片续期而不是一次持有 1 小时,
+ * 一段时间内没有新的字节到达 (空闲或卡住) 时立即释放两把锁。
+ * </p>
+ * <p>
+ * 活动来源: 原生引擎的累计字节数, 以及 C# 端进度更新时调用的 {@link #noteActivity()}。
+ * 累计持有时长为进程级统计, 可通过 {@link #getHoldTimes()} 查询。
+ * </p>
+ * <p>锁、时钟和定时检查均经 {@link DownloadPlatform} 获取, 本类不引用 android.* 类型。</p>
+ */
+class DownloadLockManager {
+
+    private static final String WAKE_LOCK_TAG = "ToolKit:DownloadWakeLock";
+    private static final String WIFI_LOCK_TAG = "ToolKit:DownloadWifiLock";
+
+    /** 检查间隔 */
+    private static final long CHECK_INTERVAL_MS = 10 * 1000L;
+    /** WakeLock 单次续期时长, 进程异常时最多多持有一个时间片 */
+    private static final long WAKE_SLICE_MS = 30 * 1000L;
+    /** 无数据流动超过该时长视为空闲/卡住, 释放锁 */
+    private static final long IDLE_RELEASE_MS = 30 * 1000L;
+
+    private static final AtomicLong _activityCounter = new AtomicLong();
+
+    private static final Object _statsLock = new Object();
+    private static long _wakeHeldTotalMs;
+    private static long _wifiHeldTotalMs;
+    private static long _wakeAcquiredAt = -1;
+    private static long _wifiAcquiredAt = -1;
+    /** 统计用的时钟, 由最近创建的实例设置; 为 null 时从未持有过锁 */
+    private static DownloadPlatform _clock;
+
+    private final DownloadEngine _engine;
+    private final DownloadPlatform _platform;
+    private final DownloadPlatform.Lock _wakeLock;
+    private final DownloadPlatform.Lock _wifiLock;
+
+    private long _lastCounter = -1;
+    private long _lastActivityTime;
+    private boolean _running;
+
+    private final Runnable _tickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            _tick();
+            if (_running) _platform.postDelayed(this, CHECK_INTERVAL_MS);
+        }
+    };
+
+    DownloadLockManager(DownloadPlatform platform, DownloadEngine engine) {
+        _engine = engine;
+        _platform = platform;
+        _wakeLock = platform.newWakeLock(WAKE_LOCK_TAG);
+        _wifiLock = platform.newWifiLock(WIFI_LOCK_TAG);
+        synchronized (_statsLock) {
+            _clock = platform;
+        }
+    }
+
+    /**
+     * 记录一次下载活动 (C# 端进度推进时由 DownloadBridge 调用)
+     */
+    static void noteActivity() {
+        _activityCounter.incrementAndGet();
+    }
+
+    /**
+     * 获取累计持有时长 (含当前仍在持有的时段)
+     *
+     * @return [wakeLockMs, wifiLockMs]
+     */
+    static long[] getHoldTimes() {
+        synchronized (_statsLock) {
+            long now = _clock != null ? _clock.elapsedRealtime() : 0;
+            long wake = _wakeHeldTotalMs + (_wakeAcquiredAt >= 0 ? now - _wakeAcquiredAt : 0);
+            long wifi = _wifiHeldTotalMs + (_wifiAcquiredAt >= 0 ? now - _wifiAcquiredAt : 0);
+            return new long[]{wake, wifi};
+        }
+    }
+
+    /**
+     * 开始监测 (服务进入前台时调用), 启动时视为有活动, 立即持有锁
+     */
+    void start() {
+        if (_running) return;
+        _running = true;
+        _lastCounter = _readCounter();
+        _lastActivityTime = _platform.elapsedRealtime();
+        _acquire();
+        _platform.postDelayed(_tickRunnable, CHECK_INTERVAL_MS);
+    }
+
+    /**
+     * 停止监测并释放所有锁
+     */
+    void stop() {
+        _running = false;
+        _platform.removeCallbacks(_tickRunnable);
+        _release();
+    }
+
+    private void _tick() {
+        long now = _platform.elapsedRealtime();
+        long counter = _readCounter();
+        if (counter != _lastCounter) {
+            _lastCounter = counter;
+            _lastActivityTime = now;
+            _acquire();
+        } else if (now - _lastActivityTime >= IDLE_RELEASE_MS) {
+            _release();
+        }
+    }
+
+    private long _readCounter() {
+        return _engine.getTransferredBytes() + _activityCounter.get();
+    }
+
+    /**
+     * 持有或续期锁; WakeLock 重复 acquire(timeout) 会刷新超时时间
+     */
+    private void _acquire() {
+        synchronized (_statsLock) {
+            long now = _platform.elapsedRealtime();
+            if (_wakeLock != null) {
+                _wakeLock.acquire(WAKE_SLICE_MS);
+                if (_wakeAcquiredAt < 0) _wakeAcquiredAt = now;
+            }
+            if (_wifiLock != null && !_wifiLock.isHeld()) {
+                _wifiLock.acquire(0);
+                _wifiAcquiredAt = now;
+            }
+        }
+    }
+
+    private void _release() {
+        synchronized (_statsLock) {
+            long now = _platform.elapsedRealtime();
+            if (_wakeLock != null && _wakeLock.isHeld()) {
+                _wakeLock.release();
+            }
+            if (_wakeAcquiredAt >= 0) {
+                // 超时自动释放的时段按时间片上限计入
+                _wakeHeldTotalMs += Math.min(now, _lastActivityTime + WAKE_SLICE_MS)
+                        - _wakeAcquiredAt;
+                _wakeAcquiredAt = -1;
+            }
+            if (_wifiLock != null && _wifiLock.isHeld()) {
+                _wifiLock.release();
+            }
+            if (_wifiAcquiredAt >= 0) {
+                _wifiHeldTotalMs += now - _wifiAcquiredAt;
+                _wifiAcquiredAt = -1;
+            }
+        }
+    }
+}
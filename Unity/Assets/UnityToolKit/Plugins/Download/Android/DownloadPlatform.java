@@ -0,0 +1,102 @@
+package com.toolkit.download;
+
+/**
+ * 下载模块依赖的平台能力
+ * <p>
+ * {@link DownloadBridge}、{@link LocalDownloadControl}、{@link NotificationThrottle} 和 {@link DownloadLockManager}
+ * 只经本接口访问系统服务, 自身不引用 android.* 类型: 设备上由 {@link AndroidDownloadPlatform} 实现,
+ * 桌面 JVM 上的压力测试提供进程内实现, 无需模拟器即可驱动整条链路。
+ * </p>
+ */
+interface DownloadPlatform {
+
+    // ---- 时钟与主线程 ----
+
+    /**
+     * 单调时钟 (毫秒), 包含深度睡眠的时间
+     */
+    long elapsedRealtime();
+
+    /**
+     * 延时在主线程执行
+     */
+    void postDelayed(Runnable task, long delayMs);
+
+    /**
+     * 取消尚未执行的 {@link #postDelayed}
+     */
+    void removeCallbacks(Runnable task);
+
+    // ---- 唤醒锁 ----
+
+    /**
+     * 创建不计引用次数的 CPU 唤醒锁 (PARTIAL_WAKE_LOCK), 系统服务不可用时返回 null
+     */
+    Lock newWakeLock(String tag);
+
+    /**
+     * 创建不计引用次数的高性能 Wi-Fi 锁, 系统服务不可用时返回 null
+     */
+    Lock newWifiLock(String tag);
+
+    // ---- 引擎与前台服务 ----
+
+    /**
+     * 创建控制通道: 服务与调用方同进程时直接调用引擎, 否则跨进程绑定服务
+     */
+    DownloadControl createControl();
+
+    /**
+     * 启动前台服务并显示通知
+     */
+    void startService(String title, String content, String iconName);
+
+    /**
+     * 更新前台服务的通知, 服务尚未启动完成时由平台转交
+     */
+    void updateService(String title, String content, int progress);
+
+    /**
+     * 停止前台服务
+     */
+    void stopService();
+
+    // ---- 独立通知 ----
+
+    /**
+     * 设置通知小图标资源名, null 表示使用默认图标
+     */
+    void setSmallIconName(String iconName);
+
+    /**
+     * 显示或更新不依赖前台服务的通知
+     */
+    void showNotification(String title, String content, int progress);
+
+    /**
+     * 隐藏独立通知
+     */
+    void hideNotification();
+
+    // ---- 诊断 ----
+
+    /**
+     * Native 堆已分配字节, 平台不提供时返回 0
+     */
+    long nativeHeapBytes();
+
+    /**
+     * 唤醒锁
+     */
+    interface Lock {
+
+        /**
+         * 持有锁; timeoutMs 大于 0 时到期自动释放, 重复调用刷新到期时间
+         */
+        void acquire(long timeoutMs);
+
+        void release();
+
+        boolean isHeld();
+    }
+}
@@ -0,0 +1,58 @@
+package com.toolkit.download;
+
+import java.net.HttpURLConnection;
+
+/**
+ * 下载分段
+ * <p>对应文件中的一段字节区间 [start, end], end 为 -1 表示长度未知 (服务器不支持 Range)</p>
+ * <p>每个分段同一时刻只由一个连接线程写入, downloaded 用于出错后从断点继续请求</p>
+ * <p>index 只作标识: 拆分出的分段追加编号, 在任务分段数组中按 start 排序</p>
+ */
+class DownloadSegment {
+
+    final int index;
+    final long start;
+
+    /** 结束偏移 (含), 运行中可能因拆分出新分段而提前 */
+    volatile long end;
+
+    /** 本分段已写入的字节数 */
+    volatile long downloaded;
+
+    /** 当前正在使用的连接, 取消时用于主动断开 */
+    volatile HttpURLConnection connection;
+
+    /** 多镜像任务中当前请求所用的镜像 */
+    volatile MirrorSet.Mirror source;
+
+    /**
+     * 随下载实时计算的摘要, 覆盖 [start, start + digestLength);
+     * 为 null 表示本进程内未能从分段起点连续计算, 收尾时从文件读回
+     */
+    StreamingDigest digest;
+    long digestLength;
+
+    /** 当前校验块的摘要, 覆盖到绝对偏移 chunkDigestEnd */
+    StreamingDigest chunkDigest;
+    long chunkDigestEnd;
+
+    DownloadSegment(int index, long start, long end) {
+        this.index = index;
+        this.start = start;
+        this.end = end;
+    }
+
+    /** 分段总长度, 未知时返回 -1 */
+    long length() {
+        return end < 0 ? -1 : end - start + 1;
+    }
+
+    /** 下一次请求的起始偏移 */
+    long nextOffset() {
+        return start + downloaded;
+    }
+
+    boolean isComplete() {
+        return end >= 0 && downloaded >= length();
+    }
+}
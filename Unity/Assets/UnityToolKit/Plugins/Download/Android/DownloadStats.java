@@ -0,0 +1,186 @@
+package com.toolkit.download;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 下载引擎运行指标
+ * <p>
+ * 所有计数器和直方图在创建时一次性分配, 下载线程记录指标只做原子加法, 热路径上不分配对象。
+ * 吞吐量的 EWMA 在导出快照时按时间间隔计算, 不占用下载线程。
+ * </p>
+ * <p>
+ * 快照为 long[], 布局由下方 IDX_* / HIST_* 常量定义, 与 C# 端 NativeDownloadStats 保持一致;
+ * 一次 JNI 调用即可取得全部指标, 适合每秒轮询并上报。
+ * </p>
+ */
+class DownloadStats {
+
+    // ---- 快照布局 ----
+    static final int IDX_UPTIME_MS = 0;
+    static final int IDX_BYTES_PER_SEC = 1;
+    static final int IDX_TOTAL_BYTES = 2;
+    static final int IDX_ACTIVE_CONNECTIONS = 3;
+    static final int IDX_CONNECTIONS_OPENED = 4;
+    static final int IDX_RETRIES = 5;
+    static final int IDX_WAKE_LOCK_MS = 6;
+    static final int IDX_WIFI_LOCK_MS = 7;
+    static final int IDX_DNS_CACHE_HITS = 8;
+    static final int IDX_TLS_HANDSHAKES = 9;
+    static final int IDX_TLS_RESUMED = 10;
+    static final int HEADER_SIZE = 11;
+
+    /** 直方图顺序 */
+    static final int HIST_TTFB = 0;
+    static final int HIST_DNS = 1;
+    static final int HIST_CONNECT = 2;
+    static final int HIST_TLS = 3;
+    static final int HIST_STALL = 4;
+    static final int HISTOGRAM_COUNT = 5;
+
+    /**
+     * 每个直方图在快照中占用 [count, sumMs, maxMs, bucket0 .. bucket15];
+     * 桶 0 为 &lt;1ms, 桶 i 为 [2^(i-1), 2^i) ms, 最后一个桶包含 &ge;16384ms 的全部样本
+     */
+    static final int BUCKET_COUNT = 16;
+    static final int HISTOGRAM_SIZE = 3 + BUCKET_COUNT;
+    static final int SNAPSHOT_SIZE = HEADER_SIZE + HISTOGRAM_COUNT * HISTOGRAM_SIZE;
+
+    /** 两次读取之间超过该间隔视为一次卡顿 */
+    static final long STALL_THRESHOLD_MS = 2000;
+
+    /** EWMA 时间常数, 约等于最近 5 秒的平均速度 */
+    private static final double EWMA_TAU_SECONDS = 5.0;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final long _startNanos = System.nanoTime();
+    private final AtomicInteger _activeConnections = new AtomicInteger();
+    private final AtomicLong _connectionsOpened = new AtomicLong();
+    private final AtomicLong _retries = new AtomicLong();
+    private final AtomicLong _dnsCacheHits = new AtomicLong();
+    private final AtomicLong _tlsHandshakes = new AtomicLong();
+    private final AtomicLong _tlsResumed = new AtomicLong();
+    private final LatencyHistogram[] _histograms = new LatencyHistogram[HISTOGRAM_COUNT];
+
+    // ---- EWMA (由 this 监视器保护) ----
+    private long _lastSampleNanos;
+    private long _lastSampleBytes;
+    private double _bytesPerSecond;
+
+    DownloadStats() {
+        for (int i = 0; i < HISTOGRAM_COUNT; i++) {
+            _histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    // ---- 记录 (下载线程调用) ----
+
+    void recordLatency(int histogram, long elapsedNanos) {
+        _histograms[histogram].record(elapsedNanos / 1000000L);
+    }
+
+    void onConnectionOpened() {
+        _connectionsOpened.incrementAndGet();
+        _activeConnections.incrementAndGet();
+    }
+
+    void onConnectionClosed() {
+        _activeConnections.decrementAndGet();
+    }
+
+    void onRetry() {
+        _retries.incrementAndGet();
+    }
+
+    /** 连接时主机的解析记录仍有效 (系统 DNS 缓存应当命中) */
+    void onDnsCacheHit() {
+        _dnsCacheHits.incrementAndGet();
+    }
+
+    /**
+     * 新建 TLS 连接完成握手
+     *
+     * @param resumed 是否恢复了已有会话 (省去证书交换和密钥协商)
+     */
+    void onTlsHandshake(boolean resumed) {
+        _tlsHandshakes.incrementAndGet();
+        if (resumed) _tlsResumed.incrementAndGet();
+    }
+
+    // ---- 导出 ----
+
+    /**
+     * 导出快照, 锁持有时长由调用方 (Android 层) 填入 IDX_WAKE_LOCK_MS / IDX_WIFI_LOCK_MS
+     *
+     * @param totalBytes 引擎累计接收字节数
+     */
+    synchronized long[] snapshot(long totalBytes) {
+        long now = System.nanoTime();
+        _sampleThroughput(totalBytes, now);
+
+        long[] out = new long[SNAPSHOT_SIZE];
+        out[IDX_UPTIME_MS] = (now - _startNanos) / 1000000L;
+        out[IDX_BYTES_PER_SEC] = (long) _bytesPerSecond;
+        out[IDX_TOTAL_BYTES] = totalBytes;
+        out[IDX_ACTIVE_CONNECTIONS] = _activeConnections.get();
+        out[IDX_CONNECTIONS_OPENED] = _connectionsOpened.get();
+        out[IDX_RETRIES] = _retries.get();
+        out[IDX_DNS_CACHE_HITS] = _dnsCacheHits.get();
+        out[IDX_TLS_HANDSHAKES] = _tlsHandshakes.get();
+        out[IDX_TLS_RESUMED] = _tlsResumed.get();
+        for (int i = 0; i < HISTOGRAM_COUNT; i++) {
+            _histograms[i].copyTo(out, HEADER_SIZE + i * HISTOGRAM_SIZE);
+        }
+        return out;
+    }
+
+    /**
+     * 按采样间隔计算 EWMA: alpha = 1 - e^(-dt / tau), 轮询频率不同时结果一致
+     */
+    private void _sampleThroughput(long totalBytes, long now) {
+        if (_lastSampleNanos == 0) {
+            _lastSampleNanos = _startNanos;
+        }
+        long dt = now - _lastSampleNanos;
+        if (dt <= 0) return;
+
+        double seconds = dt / NANOS_PER_SECOND;
+        double rate = (totalBytes - _lastSampleBytes) / seconds;
+        double alpha = 1 - Math.exp(-seconds / EWMA_TAU_SECONDS);
+        _bytesPerSecond += alpha * (rate - _bytesPerSecond);
+        _lastSampleNanos = now;
+        _lastSampleBytes = totalBytes;
+    }
+
+    /**
+     * 以 2 的幂为边界的毫秒直方图
+     */
+    static final class LatencyHistogram {
+        private final AtomicLongArray _buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong _count = new AtomicLong();
+        private final AtomicLong _sumMs = new AtomicLong();
+        private final AtomicLong _maxMs = new AtomicLong();
+
+        void record(long ms) {
+            if (ms < 0) ms = 0;
+            int index = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(ms));
+            _buckets.incrementAndGet(index);
+            _count.incrementAndGet();
+            _sumMs.addAndGet(ms);
+            long max;
+            while (ms > (max = _maxMs.get())) {
+                if (_maxMs.compareAndSet(max, ms)) break;
+            }
+        }
+
+        void copyTo(long[] out, int offset) {
+            out[offset] = _count.get();
+            out[offset + 1] = _sumMs.get();
+            out[offset + 2] = _maxMs.get();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                out[offset + 3 + i] = _buckets.get(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.toolkit.download;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+
+/**
+ * 原生下载任务
+ * <p>
+ * 描述一个按 HTTP Range 分段、多连接并行下载的文件。
+ * 状态码、错误码和优先级与 C# 端 EDownloadStatus / EDownloadError / EDownloadPriority 的枚举值保持一致,
+ * 方便 C# 直接强转。
+ * </p>
+ */
+class DownloadTask {
+
+    // ---- 状态 (EDownloadStatus) ----
+    static final int STATUS_PENDING = 0;
+    static final int STATUS_DOWNLOADING = 1;
+    static final int STATUS_PAUSED = 2;
+    static final int STATUS_COMPLETED = 3;
+    static final int STATUS_FAILED = 4;
+    static final int STATUS_CANCELLED = 5;
+
+    // ---- 错误 (EDownloadError), ERROR_NONE 表示无错误 ----
+    static final int ERROR_NONE = -1;
+    static final int ERROR_UNKNOWN = 0;
+    static final int ERROR_NETWORK = 1;
+    static final int ERROR_SERVER = 2;
+    static final int ERROR_INVALID_URL = 3;
+    static final int ERROR_STORAGE = 4;
+    static final int ERROR_CANCELLED = 5;
+    static final int ERROR_TIMEOUT = 6;
+    static final int ERROR_INTEGRITY = 7;
+    /** 内容格式无效, 重新请求同一内容无法恢复, 不重试 */
+    static final int ERROR_CORRUPT = 8;
+
+    // ---- 优先级 (EDownloadPriority), 数值越大越优先 ----
+    static final int PRIORITY_BACKGROUND = 0;
+    static final int PRIORITY_NORMAL = 1;
+    static final int PRIORITY_CRITICAL = 2;
+
+    final long id;
+    final String url;
+    final String savePath;
+    final int maxConnections;
+
+    /** 主机名, 小文件通道按主机限制并发; 地址无效时为空串 */
+    final String host;
+
+    volatile int status = STATUS_PENDING;
+    volatile int error = ERROR_NONE;
+    volatile boolean cancelRequested;
+
+    /** 某个分段彻底失败后由引擎置位, 通知其余分段停止 */
+    volatile boolean abortRequested;
+
+    /** 被更高优先级任务抢占, 分段停止后任务回到等待队列 (保留已下载分段) */
+    volatile boolean preemptRequested;
+
+    /** 调度优先级, 运行时可修改 */
+    volatile int priority = PRIORITY_NORMAL;
+
+    /** 入队序号, 同优先级按先来先服务 */
+    long queueSeq;
+
+    /** 批量添加的小文件: 不探测、不分段, 走小文件调度通道 */
+    boolean smallFile;
+
+    /** 边下载边解压的归档格式 (zip / gzip) 或补丁格式 ({@link PatchApplier#FORMAT}), 为 null 表示普通下载 */
+    String extractFormat;
+
+    /** 补丁任务的旧文件路径, 为 null 表示不是补丁任务 */
+    String patchSource;
+
+    /** 解压任务运行中的解包器, 检查点据此记录已落盘的条目边界 */
+    volatile ArchiveExtractor extractor;
+
+    /** 多镜像下载源 (url 为其中第一个地址), 为 null 表示只从 url 下载 */
+    MirrorSet mirrors;
+
+    /** 区间合并任务的切片规划 (savePath 为其中第一个切片), 为 null 表示下载整个文件 */
+    RangePlanner ranges;
+
+    /** 单任务限速, 默认不限速 */
+    final TokenBucket rateLimiter = new TokenBucket();
+
+    /** 文件总大小, 未知时为 -1 */
+    volatile long totalBytes = -1;
+
+    /** 服务器是否支持 Range 请求 */
+    volatile boolean supportsRange;
+
+    /** 分段信息, 探测完成前为 null; 从日志恢复的任务在启动前即已存在 */
+    volatile DownloadSegment[] segments;
+
+    /** 服务器校验信息, 续传时用于确认文件未变化 */
+    volatile String etag;
+    volatile String lastModified;
+
+    /** 下载中的数据文件通道, 检查点需先将其落盘再记录偏移 */
+    volatile FileChannel dataChannel;
+
+    /** 上一次写入日志的各分段偏移, 用于跳过无变化的检查点 */
+    long[] checkpointed;
+
+    // ---- 完整性校验 (提交前设置, 之后只读) ----
+
+    /** 摘要算法 (见 {@link StreamingDigest}), 为 null 表示不校验 */
+    String hashAlgorithm;
+
+    /** 整个文件的期望摘要, 为 null 时只做分块校验 */
+    String expectedHash;
+
+    /** 分块大小, 大于 0 且提供了 chunkHashes 时逐块校验, 出错只重新下载该块 */
+    long chunkSize;
+
+    /** 各分块的期望摘要, 第 i 项对应 [i * chunkSize, (i + 1) * chunkSize) */
+    String[] chunkHashes;
+
+    DownloadTask(long id, String url, String savePath, int maxConnections) {
+        this.id = id;
+        this.url = url;
+        this.savePath = savePath;
+        this.maxConnections = maxConnections;
+        this.host = _parseHost(url);
+    }
+
+    private static String _parseHost(String url) {
+        try {
+            String host = new URL(url).getHost();
+            return host != null ? host : "";
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    /** 下载过程中使用的临时文件路径 */
+    String tempPath() {
+        return savePath + ".part";
+    }
+
+    /** 所有分段已下载的字节数之和 */
+    long getDownloadedBytes() {
+        DownloadSegment[] segs = segments;
+        if (segs == null) return 0;
+        long sum = 0;
+        for (DownloadSegment seg : segs) sum += seg.downloaded;
+        return sum;
+    }
+
+    /** 分段线程是否应当停止 */
+    boolean shouldStop() {
+        return cancelRequested || abortRequested || preemptRequested;
+    }
+
+    boolean isFinished() {
+        int s = status;
+        return s == STATUS_COMPLETED || s == STATUS_FAILED || s == STATUS_CANCELLED;
+    }
+
+    /** 是否逐块校验 */
+    boolean verifiesChunks() {
+        return hashAlgorithm != null && chunkSize > 0 && chunkHashes != null
+                && chunkHashes.length > 0 && totalBytes > 0;
+    }
+
+    /**
+     * 续传校验值: 优先使用强 ETag, 否则使用 Last-Modified (用于 If-Range)
+     */
+    String validator() {
+        String tag = etag;
+        if (tag != null && !tag.startsWith("W/")) return tag;
+        return lastModified;
+    }
+
+    /**
+     * 各分段当前的写入偏移
+     */
+    long[] segmentProgress() {
+        DownloadSegment[] segs = segments;
+        if (segs == null) return null;
+        long[] done = new long[segs.length];
+        for (int i = 0; i < segs.length; i++) done[i] = segs[i].downloaded;
+        return done;
+    }
+
+    /**
+     * 导出状态快照, 供 C# 端查询
+     *
+     * @return [status, error, downloadedBytes, totalBytes]
+     */
+    long[] snapshot() {
+        return new long[]{status, error, getDownloadedBytes(), totalBytes};
+    }
+}
@@ -0,0 +1,182 @@
+package com.toolkit.download;
+
+/**
+ * 进程内的 {@link DownloadControl}: 直接调用本进程的下载引擎和前台服务
+ * <p>
+ * 服务与 Unity 同进程时由 DownloadBridge 直接使用; 服务在独立进程时,
+ * 服务进程中的 {@link RemoteDownloadControl.Stub} 将 Binder 调用转交给本类。
+ * 前台服务的启停经 {@link DownloadPlatform} 完成, 本类不引用 android.* 类型。
+ * </p>
+ */
+final class LocalDownloadControl implements DownloadControl {
+
+    private final DownloadEngine _engine;
+    private final DownloadPlatform _platform;
+
+    LocalDownloadControl(DownloadEngine engine, DownloadPlatform platform) {
+        _engine = engine;
+        _platform = platform;
+    }
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    @Override
+    public long enqueue(String url, String savePath, int connections, int priority,
+                        String algorithm, String expectedHash, long chunkSize, String[] chunkHashes) {
+        return _engine.enqueue(url, savePath, connections, priority,
+                algorithm, expectedHash, chunkSize, chunkHashes);
+    }
+
+    @Override
+    public long enqueueMirrored(String[] urls, String savePath, int connections, int priority,
+                                String algorithm, String expectedHash, long chunkSize, String[] chunkHashes) {
+        return _engine.enqueueMirrored(urls, savePath, connections, priority,
+                algorithm, expectedHash, chunkSize, chunkHashes);
+    }
+
+    @Override
+    public long enqueueExtract(String url, String savePath, String format, int priority) {
+        return _engine.enqueueExtract(url, savePath, format, priority);
+    }
+
+    @Override
+    public long enqueuePatch(String sourcePath, String patchUrl, String savePath, int priority,
+                             String algorithm, String expectedHash, boolean zlib) {
+        return _engine.enqueuePatch(sourcePath, patchUrl, savePath, priority, algorithm, expectedHash, zlib);
+    }
+
+    @Override
+    public long[] enqueueBatch(String[] urls, String[] savePaths, int priority,
+                               String algorithm, String[] expectedHashes) {
+        return _engine.enqueueBatch(urls, savePaths, priority, algorithm, expectedHashes);
+    }
+
+    @Override
+    public long enqueueRanges(String url, long[] offsets, long[] lengths, String[] savePaths,
+                              long gapBytes, int connections, int priority) {
+        return _engine.enqueueRanges(url, offsets, lengths, savePaths, gapBytes, connections, priority);
+    }
+
+    @Override
+    public long enqueueCached(String[] urls, int connections, int priority, String algorithm, String hash) {
+        return _engine.enqueueCached(urls, connections, priority, algorithm, hash);
+    }
+
+    @Override
+    public long[] enqueueBatchCached(String[] urls, int priority, String algorithm, String[] hashes) {
+        return _engine.enqueueBatchCached(urls, priority, algorithm, hashes);
+    }
+
+    @Override
+    public String getCachedPath(String algorithm, String hash) {
+        return _engine.getCachedPath(algorithm, hash);
+    }
+
+    @Override
+    public void setContentCacheBudget(long bytes) {
+        _engine.setContentCacheBudget(bytes);
+    }
+
+    @Override
+    public long[] getContentCacheState() {
+        return _engine.getContentCacheState();
+    }
+
+    @Override
+    public boolean cancel(long taskId) {
+        return _engine.cancel(taskId);
+    }
+
+    @Override
+    public void remove(long taskId) {
+        _engine.remove(taskId);
+    }
+
+    @Override
+    public long[] query(long[] taskIds) {
+        long[] out = new long[taskIds.length * 4];
+        for (int i = 0; i < taskIds.length; i++) {
+            DownloadTask task = _engine.getTask(taskIds[i]);
+            int offset = i * 4;
+            if (task != null) {
+                System.arraycopy(task.snapshot(), 0, out, offset, 4);
+            } else {
+                out[offset] = -1;
+                out[offset + 1] = -1;
+                out[offset + 3] = -1;
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public boolean hasActiveTasks() {
+        return _engine.hasActiveTasks();
+    }
+
+    @Override
+    public boolean setPriority(long taskId, int priority) {
+        return _engine.setPriority(taskId, priority);
+    }
+
+    @Override
+    public void setGlobalRateLimit(long bytesPerSecond) {
+        _engine.setGlobalRateLimit(bytesPerSecond);
+    }
+
+    @Override
+    public boolean setTaskRateLimit(long taskId, long bytesPerSecond) {
+        return _engine.setTaskRateLimit(taskId, bytesPerSecond);
+    }
+
+    @Override
+    public void setConnectionLimit(int limit) {
+        _engine.setConnectionLimit(limit);
+    }
+
+    @Override
+    public void setBufferSize(int bytes) {
+        _engine.setBufferSize(bytes);
+    }
+
+    @Override
+    public void setPreallocate(boolean preallocate) {
+        _engine.setPreallocate(preallocate);
+    }
+
+    @Override
+    public long[] getStats() {
+        long[] stats = _engine.getStats();
+        long[] locks = DownloadLockManager.getHoldTimes();
+        stats[DownloadStats.IDX_WAKE_LOCK_MS] = locks[0];
+        stats[DownloadStats.IDX_WIFI_LOCK_MS] = locks[1];
+        return stats;
+    }
+
+    @Override
+    public long[] getConcurrencyState() {
+        return _engine.getConcurrencyState();
+    }
+
+    @Override
+    public long[] getLockHoldTimes() {
+        return DownloadLockManager.getHoldTimes();
+    }
+
+    /**
+     * 通知更新说明有下载在进行, 同时记为锁管理器的活动 (独立进程中收不到 Unity 进程的活动信号)
+     */
+    @Override
+    public void updateService(String title, String content, int progress) {
+        DownloadLockManager.noteActivity();
+        _platform.updateService(title, content, progress);
+    }
+
+    @Override
+    public void stopService() {
+        _platform.stopService();
+    }
+}
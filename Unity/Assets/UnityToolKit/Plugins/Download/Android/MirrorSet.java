@@ -0,0 +1,231 @@
+package com.toolkit.download;
+
+/**
+ * 多镜像下载源
+ * <p>
+ * 同一文件发布在多个 CDN 上时, 任务携带全部镜像地址。开始下载前并行探测各镜像 (bytes=0-0),
+ * 以多数镜像一致的文件大小为准选出基准, 大小或 Range 支持与基准不一致的镜像不参与下载。
+ * </p>
+ * <p>
+ * 分段每次发起请求时向本类申请一个镜像: 首字节时间与最快镜像相近的镜像组成候选集,
+ * 从中选择当前连接最少的一个, 分段因此分摊到多个镜像; 明显更慢的镜像只作为后备。
+ * 出错的镜像进入冷却期, 连续失败或返回不可重试的错误后在本次运行中停用,
+ * 分段从已写入的位置换到其它镜像继续, 已下载的字节不会丢失。
+ * </p>
+ * <p>
+ * 各镜像以各自的 ETag/Last-Modified 作为 If-Range 校验值, 只能保证单个镜像上的内容在续传前后不变;
+ * 镜像之间只比对大小, 内容是否相同无从得知, 因此多镜像任务必须携带整体摘要或分块摘要
+ * ({@link DownloadEngine#enqueueMirrored} 会拒绝未提供摘要的任务), 由完整性校验发现混入的不同内容。
+ * </p>
+ */
+class MirrorSet {
+
+    /** 首字节时间不超过最快镜像的该倍数 (再加 SPREAD_SLACK_NANOS) 时参与分摊分段 */
+    private static final long SPREAD_LATENCY_FACTOR = 2;
+    private static final long SPREAD_SLACK_NANOS = 50 * 1000000L;
+    /** 连续失败达到该次数的镜像在本次运行中停用 */
+    private static final int MAX_FAILURES = 3;
+    /** 出错镜像的冷却时间, 期间只在没有其它镜像可用时才会被选中 */
+    private static final long COOLDOWN_NANOS = 10000 * 1000000L;
+
+    /**
+     * 单个镜像及其探测结果
+     * <p>探测字段由探测线程写入后经 {@link #onProbed} 发布, 其余字段由 MirrorSet 监视器保护</p>
+     */
+    static final class Mirror {
+        final String url;
+
+        long totalBytes = -1;
+        boolean supportsRange;
+        String etag;
+        String lastModified;
+        /** 探测的首字节时间 (含 DNS、连接和 TLS 握手), -1 表示尚未探测成功 */
+        long latencyNanos = -1;
+
+        boolean disabled;
+        int active;
+        int failures;
+        long coolUntil;
+
+        Mirror(String url) {
+            this.url = url;
+        }
+
+        /** 该镜像的续传校验值, 规则同 {@link DownloadTask#validator()} */
+        String validator() {
+            String tag = etag;
+            if (tag != null && !tag.startsWith("W/")) return tag;
+            return lastModified;
+        }
+    }
+
+    private final Mirror[] _mirrors;
+    /** 探测选出的基准镜像, 其它镜像的大小和 Range 支持必须与之一致 */
+    private Mirror _reference;
+
+    MirrorSet(String[] urls) {
+        _mirrors = new Mirror[urls.length];
+        for (int i = 0; i < urls.length; i++) _mirrors[i] = new Mirror(urls[i]);
+    }
+
+    /** 全部镜像地址, 顺序与添加时一致 */
+    String[] urls() {
+        String[] urls = new String[_mirrors.length];
+        for (int i = 0; i < urls.length; i++) urls[i] = _mirrors[i].url;
+        return urls;
+    }
+
+    // ---- 探测 ----
+
+    /**
+     * 开始新一轮探测, 清除上一次运行的探测结果和失败记录
+     *
+     * @return 需要探测的镜像
+     */
+    synchronized Mirror[] reset() {
+        Mirror[] fresh = new Mirror[_mirrors.length];
+        for (int i = 0; i < fresh.length; i++) fresh[i] = new Mirror(_mirrors[i].url);
+        System.arraycopy(fresh, 0, _mirrors, 0, fresh.length);
+        _reference = null;
+        return fresh.clone();
+    }
+
+    /**
+     * 探测成功; 基准已选定时立即检查是否一致, 迟到的镜像由此加入
+     * <p>探测结果在此之前写入, latencyNanos 在锁内写入后其余字段对选择方可见</p>
+     */
+    synchronized void onProbed(Mirror mirror, long latencyNanos) {
+        mirror.latencyNanos = latencyNanos;
+        if (_reference != null && !_matches(mirror, _reference)) mirror.disabled = true;
+    }
+
+    synchronized void onProbeFailed(Mirror mirror) {
+        mirror.disabled = true;
+    }
+
+    /**
+     * 选定基准镜像: 先按大小和 Range 支持分组, 取镜像最多的一组 (数量相同时取含最快镜像的一组),
+     * 个别镜像上的旧版本文件不会成为基准; 组内优先选择与上次记录的校验值一致的镜像 (用于续传), 否则选最快的镜像
+     *
+     * @return 没有任何镜像探测成功时返回 null
+     */
+    synchronized Mirror selectReference(String etag, String lastModified) {
+        Mirror majority = null;
+        int votes = 0;
+        for (Mirror candidate : _mirrors) {
+            if (!_probed(candidate)) continue;
+            int count = 0;
+            for (Mirror other : _mirrors) {
+                if (_probed(other) && _matches(other, candidate)) count++;
+            }
+            if (count > votes || (count == votes && candidate.latencyNanos < majority.latencyNanos)) {
+                majority = candidate;
+                votes = count;
+            }
+        }
+        _reference = null;
+        if (majority == null) return null;
+
+        Mirror fastest = null;
+        Mirror matching = null;
+        for (Mirror mirror : _mirrors) {
+            if (!_probed(mirror)) continue;
+            if (!_matches(mirror, majority)) {
+                mirror.disabled = true;
+                continue;
+            }
+            if (fastest == null || mirror.latencyNanos < fastest.latencyNanos) fastest = mirror;
+            if ((etag != null || lastModified != null)
+                    && (etag == null || etag.equals(mirror.etag))
+                    && (lastModified == null || lastModified.equals(mirror.lastModified))
+                    && (matching == null || mirror.latencyNanos < matching.latencyNanos)) {
+                matching = mirror;
+            }
+        }
+        _reference = matching != null ? matching : fastest;
+        return _reference;
+    }
+
+    // ---- 分段分配 ----
+
+    /**
+     * 为一次分段请求选择镜像, 返回的镜像需以 {@link #release} 归还
+     *
+     * @param avoid 刚出错的镜像, 有其它镜像可用时不选它
+     * @return 所有镜像均已停用时返回 null
+     */
+    synchronized Mirror acquire(Mirror avoid) {
+        long now = System.nanoTime();
+        Mirror best = null;
+        for (int pass = 0; pass < 3 && best == null; pass++) {
+            // 依次放宽: 未冷却且非 avoid -> 非 avoid -> 任意可用
+            long fastest = Long.MAX_VALUE;
+            for (Mirror mirror : _mirrors) {
+                if (_eligible(mirror, avoid, now, pass)) fastest = Math.min(fastest, mirror.latencyNanos);
+            }
+            if (fastest == Long.MAX_VALUE) continue;
+
+            long cutoff = fastest * SPREAD_LATENCY_FACTOR + SPREAD_SLACK_NANOS;
+            for (Mirror mirror : _mirrors) {
+                if (!_eligible(mirror, avoid, now, pass) || mirror.latencyNanos > cutoff) continue;
+                if (best == null || mirror.active < best.active
+                        || (mirror.active == best.active && mirror.latencyNanos < best.latencyNanos)) {
+                    best = mirror;
+                }
+            }
+        }
+        if (best != null) best.active++;
+        return best;
+    }
+
+    synchronized void release(Mirror mirror) {
+        mirror.active--;
+    }
+
+    /** 请求成功完成, 清除连续失败计数 */
+    synchronized void onSuccess(Mirror mirror) {
+        mirror.failures = 0;
+    }
+
+    /**
+     * 请求失败 (卡顿被中断同样计入)
+     *
+     * @param fatal 不可重试的错误 (如 404、校验值不符返回 200), 镜像立即停用
+     */
+    synchronized void onFailure(Mirror mirror, boolean fatal) {
+        if (fatal || ++mirror.failures >= MAX_FAILURES) {
+            mirror.disabled = true;
+        } else {
+            mirror.coolUntil = System.nanoTime() + COOLDOWN_NANOS;
+        }
+    }
+
+    /** 除 mirror 外是否还有可用的镜像 */
+    synchronized boolean hasAlternative(Mirror mirror) {
+        for (Mirror other : _mirrors) {
+            if (other != mirror && _usable(other)) return true;
+        }
+        return false;
+    }
+
+    // ---- 内部 ----
+
+    private boolean _eligible(Mirror mirror, Mirror avoid, long now, int pass) {
+        if (!_usable(mirror)) return false;
+        if (pass < 2 && mirror == avoid) return false;
+        return pass > 0 || mirror.failures == 0 || mirror.coolUntil - now <= 0;
+    }
+
+    private static boolean _usable(Mirror mirror) {
+        return !mirror.disabled && _probed(mirror);
+    }
+
+    private static boolean _probed(Mirror mirror) {
+        return mirror.latencyNanos >= 0;
+    }
+
+    private static boolean _matches(Mirror mirror, Mirror reference) {
+        return mirror.totalBytes == reference.totalBytes
+                && mirror.supportsRange == reference.supportsRange;
+    }
+}
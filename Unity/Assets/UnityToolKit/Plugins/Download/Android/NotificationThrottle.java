@@ -0,0 +1,136 @@
+package com.toolkit.download;
+
+/**
+ * 通知更新合并与限频
+ * <p>
+ * C# 端可能每帧推送进度, 直接转发会让 system_server 过载, 且系统会静默丢弃超频的通知。
+ * 本类丢弃内容未变化的更新, 并将发布频率限制在 minIntervalMs 以内;
+ * 限频窗口内的更新只保留最新一次, 在窗口结束时补发, 保证最终状态一定会显示。
+ * 补发经 {@link DownloadPlatform#postDelayed} 在主线程执行。
+ * </p>
+ */
+class NotificationThrottle {
+
+    /**
+     * 实际发布通知的目标
+     */
+    interface Sink {
+        void post(String title, String content, int progress);
+    }
+
+    private final Sink _sink;
+    private final DownloadPlatform _platform;
+    private final Runnable _flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private long _minIntervalMs;
+    private long _lastPostTime;
+    private boolean _hasPosted;
+    private String _lastTitle;
+    private String _lastContent;
+    private int _lastProgress;
+
+    private boolean _hasPending;
+    private String _pendingTitle;
+    private String _pendingContent;
+    private int _pendingProgress;
+
+    // ---- 诊断计数 ----
+    private long _submittedCount;
+    private long _postedCount;
+
+    NotificationThrottle(Sink sink, long minIntervalMs, DownloadPlatform platform) {
+        _sink = sink;
+        _platform = platform;
+        _minIntervalMs = Math.max(0, minIntervalMs);
+    }
+
+    synchronized void setMinIntervalMs(long minIntervalMs) {
+        _minIntervalMs = Math.max(0, minIntervalMs);
+    }
+
+    /**
+     * 提交一次通知更新, 由本类决定立即发布、延后合并或直接丢弃
+     */
+    void submit(String title, String content, int progress) {
+        boolean postNow;
+        synchronized (this) {
+            _submittedCount++;
+            if (_hasPosted && !_hasPending && _isSame(title, content, progress)) return;
+
+            _pendingTitle = title;
+            _pendingContent = content;
+            _pendingProgress = progress;
+
+            long wait = _hasPosted ? _lastPostTime + _minIntervalMs - _platform.elapsedRealtime() : 0;
+            postNow = wait <= 0;
+            if (!postNow && !_hasPending) {
+                _platform.postDelayed(_flushRunnable, wait);
+            }
+            _hasPending = true;
+        }
+        if (postNow) flush();
+    }
+
+    /**
+     * 立即发布挂起的更新 (若有)
+     */
+    void flush() {
+        String title;
+        String content;
+        int progress;
+        synchronized (this) {
+            if (!_hasPending) return;
+            _hasPending = false;
+            _platform.removeCallbacks(_flushRunnable);
+
+            if (_hasPosted && _isSame(_pendingTitle, _pendingContent, _pendingProgress)) return;
+
+            title = _pendingTitle;
+            content = _pendingContent;
+            progress = _pendingProgress;
+            _lastTitle = title;
+            _lastContent = content;
+            _lastProgress = progress;
+            _lastPostTime = _platform.elapsedRealtime();
+            _hasPosted = true;
+            _postedCount++;
+        }
+        _sink.post(title, content, progress);
+    }
+
+    /**
+     * 丢弃挂起的更新并清空去重状态 (通知被隐藏或服务停止时调用)
+     */
+    synchronized void reset() {
+        _platform.removeCallbacks(_flushRunnable);
+        _hasPending = false;
+        _hasPosted = false;
+        _lastTitle = null;
+        _lastContent = null;
+    }
+
+    /** 累计提交的更新次数 (含被丢弃和合并的) */
+    synchronized long submittedCount() {
+        return _submittedCount;
+    }
+
+    /** 累计实际发布的次数 */
+    synchronized long postedCount() {
+        return _postedCount;
+    }
+
+    private boolean _isSame(String title, String content, int progress) {
+        return progress == _lastProgress
+                && _equals(title, _lastTitle)
+                && _equals(content, _lastContent);
+    }
+
+    private static boolean _equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,375 @@
+package com.toolkit.download;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 边下载边应用的二进制差分补丁
+ * <p>
+ * 补丁采用 bsdiff 4.3 (ENDSLEY/BSDIFF43) 的交错布局: 24 字节头部 (魔数 + 新文件大小) 之后,
+ * 按 [控制块 24 字节][diff 数据][extra 数据] 循环排列, 可以顺序流式应用。
+ * Android 没有 bzip2 解码器, 头部之后的数据改为不压缩 ({@link #FORMAT}) 或 zlib 压缩 ({@link #FORMAT_ZLIB}),
+ * 由调用方显式指定 (原始控制块的首字节可以是任意值, 无法可靠地自动识别);
+ * 用 mendsley/bsdiff 的 bsdiff() 接口生成时, 在写回调中直接输出或经 zlib 压缩即可。
+ * </p>
+ * <p>补丁格式错误 (魔数、控制块或 zlib 数据) 以不可重试的 ERROR_CORRUPT 失败, 不会反复重新下载同一个坏补丁</p>
+ * <p>
+ * 新文件写入 savePath + ".part", 同时增量计算摘要; 补丁结束后摘要与期望值一致才 fsync 并以 rename
+ * 原子替换目标文件 (目标可以就是旧文件), 任何失败都不会破坏旧文件。
+ * 解压状态无法持久化, 中断后从头重新应用。
+ * </p>
+ */
+final class PatchApplier extends ArchiveExtractor {
+
+    /** 补丁任务在 DownloadTask.extractFormat 中的标记: 头部之后不压缩 */
+    static final String FORMAT = "bsdiff";
+    /** 补丁任务在 DownloadTask.extractFormat 中的标记: 头部之后为 zlib 流 */
+    static final String FORMAT_ZLIB = "bsdiff+zlib";
+
+    private static final byte[] MAGIC = {
+            'E', 'N', 'D', 'S', 'L', 'E', 'Y', '/', 'B', 'S', 'D', 'I', 'F', 'F', '4', '3'};
+    private static final int HEADER_SIZE = 24;
+    private static final int CONTROL_SIZE = 24;
+    private static final int OLD_WINDOW_SIZE = 64 * 1024;
+
+    private static final int ST_HEADER = 0;
+    private static final int ST_BODY = 1;
+
+    private static final int OP_CONTROL = 0;
+    private static final int OP_DIFF = 1;
+    private static final int OP_EXTRA = 2;
+
+    private final File _source;
+    private final File _target;
+    private final File _temp;
+    private final String _algorithm;
+    private final String _expectedHash;
+    private final boolean _compressed;
+    /** 补丁数据的 zlib 解压器, 与基类的 raw deflate 解压器分开 */
+    private final Inflater _zlib = new Inflater();
+    private final byte[] _plain = new byte[64 * 1024];
+    private final byte[] _control = new byte[CONTROL_SIZE];
+
+    private final RandomAccessFile _old;
+    private final FileChannel _oldChannel;
+    private final long _oldSize;
+    /** 旧文件读取窗口 [_windowStart, _windowStart + _windowLength) */
+    private final ByteBuffer _window = ByteBuffer.allocate(OLD_WINDOW_SIZE);
+    private long _windowStart;
+    private int _windowLength;
+
+    private int _state;
+    private long _newSize;
+
+    // ---- 当前控制块 ----
+    private int _op;
+    private int _controlFilled;
+    private long _diffRemaining;
+    private long _extraRemaining;
+    private long _seek;
+    private long _oldPos;
+    private long _newPos;
+
+    private FileOutputStream _output;
+    private StreamingDigest _digest;
+
+    /**
+     * @param source       旧文件
+     * @param target       新文件的最终路径, 可以与旧文件相同
+     * @param algorithm    新文件的摘要算法
+     * @param expectedHash 新文件的期望摘要
+     * @param compressed   头部之后的数据为 zlib 流
+     * @throws DownloadException 旧文件无法读取
+     */
+    PatchApplier(File source, File target, String algorithm, String expectedHash, boolean compressed)
+            throws DownloadException {
+        super(0);
+        _source = source;
+        _target = target;
+        _temp = new File(target.getPath() + ".part");
+        _algorithm = algorithm;
+        _expectedHash = expectedHash;
+        _compressed = compressed;
+        try {
+            _old = new RandomAccessFile(source, "r");
+            _oldChannel = _old.getChannel();
+            _oldSize = _oldChannel.size();
+        } catch (FileNotFoundException e) {
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "patch source missing: " + source, e);
+        } catch (IOException e) {
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "cannot read " + source, e);
+        }
+        _reset();
+    }
+
+    @Override
+    boolean step(ByteBuffer data) throws IOException, DataFormatException {
+        switch (_state) {
+            case ST_HEADER:
+                if (!fill(data)) return false;
+                _readHeader();
+                return false;
+            default:
+                int take = Math.min(data.remaining(), input.length);
+                data.get(input, 0, take);
+                if (_compressed) {
+                    _inflate(take);
+                } else {
+                    _apply(input, 0, take);
+                }
+                return false;
+        }
+    }
+
+    @Override
+    int corruptError() {
+        return DownloadTask.ERROR_CORRUPT;
+    }
+
+    @Override
+    void onEntryDone() {
+        // 补丁没有条目边界
+    }
+
+    private void _readHeader() throws IOException {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (scratch[i] != MAGIC[i]) {
+                throw new DownloadException(DownloadTask.ERROR_CORRUPT, "not a BSDIFF43 patch");
+            }
+        }
+        _newSize = _offtin(scratch, MAGIC.length);
+        if (_newSize < 0) {
+            throw new DownloadException(DownloadTask.ERROR_CORRUPT, "bad patch size " + _newSize);
+        }
+
+        File parent = _temp.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "mkdirs failed: " + parent);
+        }
+        _output = new FileOutputStream(_temp);
+        _state = ST_BODY;
+    }
+
+    private void _inflate(int length) throws IOException, DataFormatException {
+        if (_zlib.finished()) {
+            throw new DataFormatException("trailing data after patch stream");
+        }
+        _zlib.setInput(input, 0, length);
+        while (true) {
+            int n = _zlib.inflate(_plain);
+            if (n > 0) {
+                _apply(_plain, 0, n);
+                continue;
+            }
+            if (_zlib.finished()) {
+                if (_zlib.getRemaining() > 0) {
+                    throw new DataFormatException("trailing data after patch stream");
+                }
+                return;
+            }
+            if (_zlib.needsInput()) return;
+            if (_zlib.needsDictionary()) {
+                throw new DataFormatException("preset dictionary not supported");
+            }
+        }
+    }
+
+    /**
+     * 消费解压后的补丁数据 b[off, off + len)
+     */
+    private void _apply(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        while (off < end) {
+            switch (_op) {
+                case OP_CONTROL: {
+                    int take = Math.min(CONTROL_SIZE - _controlFilled, end - off);
+                    System.arraycopy(b, off, _control, _controlFilled, take);
+                    _controlFilled += take;
+                    off += take;
+                    if (_controlFilled == CONTROL_SIZE) _readControl();
+                    break;
+                }
+                case OP_DIFF: {
+                    int take = (int) Math.min(Math.min(_diffRemaining, end - off), buffer.length);
+                    _readOld(_oldPos, buffer, take);
+                    for (int i = 0; i < take; i++) buffer[i] += b[off + i];
+                    _emit(buffer, 0, take);
+                    off += take;
+                    _oldPos += take;
+                    _diffRemaining -= take;
+                    if (_diffRemaining == 0) _afterDiff();
+                    break;
+                }
+                default: {
+                    int take = (int) Math.min(_extraRemaining, end - off);
+                    _emit(b, off, take);
+                    off += take;
+                    _extraRemaining -= take;
+                    if (_extraRemaining == 0) _afterExtra();
+                    break;
+                }
+            }
+        }
+    }
+
+    private void _readControl() throws DownloadException {
+        _controlFilled = 0;
+        _diffRemaining = _offtin(_control, 0);
+        _extraRemaining = _offtin(_control, 8);
+        _seek = _offtin(_control, 16);
+        // 逐项与剩余长度比较, 两个接近 Long.MAX_VALUE 的长度相加会溢出为负数而通过检查
+        long left = _newSize - _newPos;
+        if (_diffRemaining < 0 || _extraRemaining < 0
+                || _diffRemaining > left || _extraRemaining > left - _diffRemaining) {
+            throw new DownloadException(DownloadTask.ERROR_CORRUPT, "corrupt patch control block");
+        }
+        if (_diffRemaining > 0) {
+            _op = OP_DIFF;
+        } else {
+            _afterDiff();
+        }
+    }
+
+    private void _afterDiff() {
+        if (_extraRemaining > 0) {
+            _op = OP_EXTRA;
+        } else {
+            _afterExtra();
+        }
+    }
+
+    private void _afterExtra() {
+        _oldPos += _seek;
+        _op = OP_CONTROL;
+    }
+
+    /**
+     * 读取旧文件 [position, position + length) 到 dst, 超出旧文件范围的部分按 0 处理 (与 bspatch 一致)
+     */
+    private void _readOld(long position, byte[] dst, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            long pos = position + done;
+            if (pos < 0 || pos >= _oldSize) {
+                long run = pos < 0 ? -pos : length - done;
+                int zeros = (int) Math.min(run, length - done);
+                for (int i = 0; i < zeros; i++) dst[done + i] = 0;
+                done += zeros;
+                continue;
+            }
+            if (pos < _windowStart || pos >= _windowStart + _windowLength) {
+                _fillWindow(pos);
+            }
+            int from = (int) (pos - _windowStart);
+            int take = Math.min(_windowLength - from, length - done);
+            System.arraycopy(_window.array(), from, dst, done, take);
+            done += take;
+        }
+    }
+
+    private void _fillWindow(long position) throws IOException {
+        _window.clear();
+        long want = Math.min(_window.capacity(), _oldSize - position);
+        _window.limit((int) want);
+        while (_window.hasRemaining()) {
+            if (_oldChannel.read(_window, position + _window.position()) < 0) {
+                throw new DownloadException(DownloadTask.ERROR_STORAGE, "patch source changed: " + _source);
+            }
+        }
+        _windowStart = position;
+        _windowLength = (int) want;
+    }
+
+    private void _emit(byte[] b, int off, int len) throws IOException {
+        _output.write(b, off, len);
+        _digest.update(ByteBuffer.wrap(b, off, len));
+        _newPos += len;
+    }
+
+    @Override
+    void finish() throws DownloadException {
+        if (_state != ST_BODY || _op != OP_CONTROL || _controlFilled != 0 || _newPos != _newSize
+                || (_compressed && !_zlib.finished())) {
+            throw new DownloadException(DownloadTask.ERROR_NETWORK, "patch stream truncated");
+        }
+
+        String actual = _digest.hex();
+        if (!StreamingDigest.matches(actual, _expectedHash)) {
+            closeQuietly(_output);
+            _output = null;
+            _temp.delete();
+            throw new DownloadException(DownloadTask.ERROR_INTEGRITY, "patched file digest mismatch");
+        }
+
+        try {
+            FileOutputStream output = _output;
+            _output = null;
+            output.getFD().sync();
+            output.close();
+        } catch (IOException e) {
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "close failed", e);
+        }
+        // rename 覆盖目标是原子操作, 旧文件在替换前一直完整可用
+        if (_temp.renameTo(_target)) return;
+
+        // 无法直接覆盖时先把旧文件移开, 新文件就位后才删除; 失败则移回, 旧文件不会丢失
+        File backup = new File(_target.getPath() + ".old");
+        backup.delete();
+        if (_target.exists() && !_target.renameTo(backup)) {
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "cannot replace " + _target);
+        }
+        if (!_temp.renameTo(_target)) {
+            backup.renameTo(_target);
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "rename failed: " + _target);
+        }
+        backup.delete();
+    }
+
+    @Override
+    long rewind(boolean canSeek) {
+        closeQuietly(_output);
+        _output = null;
+        _reset();
+        return 0;
+    }
+
+    @Override
+    void close() {
+        closeQuietly(_output);
+        _output = null;
+        _temp.delete();
+        try {
+            _old.close();
+        } catch (IOException ignored) {
+        }
+        _zlib.end();
+        super.close();
+    }
+
+    private void _reset() {
+        offset = 0;
+        _state = ST_HEADER;
+        expect(HEADER_SIZE);
+        _zlib.reset();
+        _op = OP_CONTROL;
+        _controlFilled = 0;
+        _oldPos = 0;
+        _newPos = 0;
+        _digest = StreamingDigest.create(_algorithm);
+    }
+
+    /**
+     * bsdiff 的 64 位整数: 小端序, 最高位为符号位 (符号-绝对值表示)
+     */
+    private static long _offtin(byte[] b, int i) {
+        long magnitude = u64(b, i) & Long.MAX_VALUE;
+        return (b[i + 7] & 0x80) != 0 ? -magnitude : magnitude;
+    }
+}
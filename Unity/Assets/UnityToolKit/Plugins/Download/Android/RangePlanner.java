@@ -0,0 +1,450 @@
+package com.toolkit.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 字节区间合并规划
+ * <p>
+ * 许多小资源打包在同一个远程大文件中时, 每个资源是文件中的一个切片 [offset, offset + length)。
+ * 切片按偏移排序后, 间隔不超过 gap 的相邻切片合并为一个区间 (区间之间的空隙一并下载后丢弃),
+ * 每个区间对应任务中的一个 {@link DownloadSegment}, 下载进度、取消和重试都沿用分段的机制。
+ * </p>
+ * <p>
+ * 多个区间合并到一个 multipart/byteranges 请求中 (Range: bytes=a-b,c-d,...), 一次往返取回几十个切片。
+ * 服务器忽略多区间请求 (返回 200) 时改为每个区间一个 Range 请求; 连单区间也不支持时,
+ * 以一个完整的 GET 顺序读到最后一个区间为止。
+ * </p>
+ * <p>
+ * 区间只按连续前缀推进 (downloaded 即已收到的字节数), 服务器拆分或乱序返回的部分数据会在下一轮补齐。
+ * 切片先写入 savePath + ".part", 所在区间完成后改名为最终文件。
+ * </p>
+ */
+final class RangePlanner {
+
+    /** 默认合并间隔: 小于一次额外往返的代价 */
+    static final long DEFAULT_GAP = 16 * 1024L;
+    /** 单个请求的区间数, 控制请求头长度 (部分服务器限制 8KB) */
+    static final int MAX_RANGES_PER_REQUEST = 32;
+    /** 单个请求的字节数, 大批量时拆成多个请求并行 */
+    static final long MAX_BYTES_PER_REQUEST = 4 * 1024 * 1024L;
+
+    // ---- 回退模式 ----
+    static final int MODE_MULTIPART = 0;
+    static final int MODE_SINGLE_RANGE = 1;
+    static final int MODE_FULL = 2;
+
+    /**
+     * 一个切片: 远程文件中的一段字节, 保存为单独的文件
+     */
+    static final class Slice {
+        final long offset;
+        final long length;
+        final String savePath;
+        RandomAccessFile file;
+
+        Slice(long offset, long length, String savePath) {
+            this.offset = offset;
+            this.length = length;
+            this.savePath = savePath;
+        }
+
+        long end() {
+            return offset + length - 1;
+        }
+    }
+
+    private static final Comparator<Slice> BY_OFFSET = new Comparator<Slice>() {
+        @Override
+        public int compare(Slice a, Slice b) {
+            return a.offset < b.offset ? -1 : (a.offset == b.offset ? 0 : 1);
+        }
+    };
+
+    private final Slice[] _slices;
+    /** 全部切片的保存路径, 用于检查路径是否已被其他任务占用 */
+    private final Set<String> _savePaths = new HashSet<>();
+    private final long _gap;
+    /** 区间 i 包含的切片为 _slices[_spanFirst[i], _spanFirst[i + 1]) */
+    private int[] _spanFirst;
+    private volatile int _mode = MODE_MULTIPART;
+
+    /**
+     * @param gap 合并间隔 (字节), 小于 0 时使用 DEFAULT_GAP; 0 表示只合并相邻或重叠的切片
+     * @throws IllegalArgumentException 数组长度不一致、切片无效或保存路径重复
+     */
+    RangePlanner(long[] offsets, long[] lengths, String[] savePaths, long gap) {
+        if (offsets.length != lengths.length || offsets.length != savePaths.length
+                || offsets.length == 0) {
+            throw new IllegalArgumentException("slice arrays must be non-empty and of equal length");
+        }
+        _slices = new Slice[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] < 0 || lengths[i] <= 0) {
+                throw new IllegalArgumentException("invalid slice " + offsets[i] + "+" + lengths[i]);
+            }
+            // 两个切片写同一个文件会互相覆盖 (.part 也是同一个)
+            if (!_savePaths.add(savePaths[i])) {
+                throw new IllegalArgumentException("duplicate slice path: " + savePaths[i]);
+            }
+            _slices[i] = new Slice(offsets[i], lengths[i], savePaths[i]);
+        }
+        Arrays.sort(_slices, BY_OFFSET);
+        _gap = gap < 0 ? DEFAULT_GAP : gap;
+    }
+
+    int mode() {
+        return _mode;
+    }
+
+    /** 是否有切片保存到该路径 */
+    boolean writes(String savePath) {
+        return _savePaths.contains(savePath);
+    }
+
+    Set<String> savePaths() {
+        return Collections.unmodifiableSet(_savePaths);
+    }
+
+    /**
+     * 服务器不支持当前模式, 降级到下一种
+     * <p>同一轮的多个请求可能同时发现不支持, 只有模式仍为 from 时才降级</p>
+     */
+    synchronized void fallback(int from) {
+        if (_mode == from && _mode < MODE_FULL) _mode++;
+    }
+
+    // ---- 规划 ----
+
+    /**
+     * 合并切片, 生成各区间对应的分段
+     */
+    DownloadSegment[] plan() {
+        List<DownloadSegment> spans = new ArrayList<>();
+        List<Integer> firsts = new ArrayList<>();
+        long start = _slices[0].offset;
+        long end = _slices[0].end();
+        firsts.add(0);
+        for (int i = 1; i < _slices.length; i++) {
+            Slice slice = _slices[i];
+            if (slice.offset - end - 1 <= _gap) {
+                end = Math.max(end, slice.end());
+                continue;
+            }
+            spans.add(new DownloadSegment(spans.size(), start, end));
+            firsts.add(i);
+            start = slice.offset;
+            end = slice.end();
+        }
+        spans.add(new DownloadSegment(spans.size(), start, end));
+        firsts.add(_slices.length);
+
+        _spanFirst = new int[firsts.size()];
+        for (int i = 0; i < _spanFirst.length; i++) _spanFirst[i] = firsts.get(i);
+        return spans.toArray(new DownloadSegment[0]);
+    }
+
+    /**
+     * 将未完成的区间分组为请求
+     *
+     * @return 每项为 [from, to), 表示一个请求覆盖的区间下标; 完整 GET 模式下只有一个请求
+     */
+    List<int[]> requests(DownloadSegment[] spans) {
+        List<int[]> requests = new ArrayList<>();
+        int mode = _mode;
+        int from = -1;
+        int last = -1;
+        int ranges = 0;
+        long bytes = 0;
+        for (int i = 0; i < spans.length; i++) {
+            DownloadSegment span = spans[i];
+            if (span.isComplete()) continue;
+            long size = span.end - span.nextOffset() + 1;
+            // 完整 GET 一次读到底, 中间已完成的区间只是跳过
+            if (from >= 0 && mode != MODE_FULL
+                    && (mode == MODE_SINGLE_RANGE || ranges >= MAX_RANGES_PER_REQUEST
+                    || bytes + size > MAX_BYTES_PER_REQUEST)) {
+                requests.add(new int[]{from, last + 1});
+                from = -1;
+            }
+            if (from < 0) {
+                from = i;
+                ranges = 0;
+                bytes = 0;
+            }
+            last = i;
+            ranges++;
+            bytes += size;
+        }
+        if (from >= 0) requests.add(new int[]{from, last + 1});
+        return requests;
+    }
+
+    /**
+     * 生成 Range 请求头, 已完成的区间不再请求
+     */
+    static String rangeHeader(DownloadSegment[] spans, int from, int to) {
+        StringBuilder header = new StringBuilder("bytes=");
+        boolean first = true;
+        for (int i = from; i < to; i++) {
+            DownloadSegment span = spans[i];
+            if (span.isComplete()) continue;
+            if (!first) header.append(',');
+            header.append(span.nextOffset()).append('-').append(span.end);
+            first = false;
+        }
+        return header.toString();
+    }
+
+    // ---- 数据分发 ----
+
+    /**
+     * 分发远程文件 [position, position + len) 的数据到 [from, to) 内的区间和切片
+     * <p>区间只接受从 nextOffset 开始的连续数据, 重复的前缀跳过, 不连续的数据丢弃</p>
+     *
+     * @return 被接受的字节数
+     */
+    long deliver(DownloadSegment[] spans, int from, int to, long position, byte[] b, int off, int len)
+            throws DownloadException {
+        long accepted = 0;
+        long dataEnd = position + len - 1;
+        for (int i = from; i < to; i++) {
+            DownloadSegment span = spans[i];
+            long next = span.nextOffset();
+            if (span.isComplete() || next < position || next > dataEnd) continue;
+
+            long stop = Math.min(span.end, dataEnd);
+            for (int s = _spanFirst[span.index]; s < _spanFirst[span.index + 1]; s++) {
+                Slice slice = _slices[s];
+                long lo = Math.max(next, slice.offset);
+                long hi = Math.min(stop, slice.end());
+                if (lo > hi) continue;
+                _write(slice, lo - slice.offset, b, off + (int) (lo - position), (int) (hi - lo + 1));
+            }
+            long taken = stop - next + 1;
+            span.downloaded += taken;
+            accepted += taken;
+            if (span.isComplete()) _commit(span);
+        }
+        return accepted;
+    }
+
+    /**
+     * [from, to) 中未完成区间的最大结束偏移, 完整 GET 读到此处即可停止; 都已完成时返回 -1
+     */
+    static long lastNeeded(DownloadSegment[] spans, int from, int to) {
+        long last = -1;
+        for (int i = from; i < to; i++) {
+            if (!spans[i].isComplete()) last = Math.max(last, spans[i].end);
+        }
+        return last;
+    }
+
+    private void _write(Slice slice, long position, byte[] b, int off, int len)
+            throws DownloadException {
+        try {
+            if (slice.file == null) {
+                File part = new File(slice.savePath + ".part");
+                File parent = part.getParentFile();
+                if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                    throw new DownloadException(DownloadTask.ERROR_STORAGE, "mkdirs failed: " + parent);
+                }
+                slice.file = new RandomAccessFile(part, "rw");
+                // 从切片开头写起时丢弃上次残留的临时文件
+                if (position == 0) slice.file.setLength(0);
+            }
+            slice.file.seek(position);
+            slice.file.write(b, off, len);
+        } catch (DownloadException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DownloadException(DownloadTask.ERROR_STORAGE, "write failed: " + slice.savePath, e);
+        }
+    }
+
+    /**
+     * 区间完成: 其中的切片都已完整, 关闭并改名为最终文件
+     */
+    private void _commit(DownloadSegment span) throws DownloadException {
+        for (int s = _spanFirst[span.index]; s < _spanFirst[span.index + 1]; s++) {
+            Slice slice = _slices[s];
+            try {
+                if (slice.file != null) {
+                    slice.file.close();
+                    slice.file = null;
+                }
+            } catch (IOException e) {
+                throw new DownloadException(DownloadTask.ERROR_STORAGE, "close failed: " + slice.savePath, e);
+            }
+            File part = new File(slice.savePath + ".part");
+            File target = new File(slice.savePath);
+            if (target.exists() && !target.delete()) {
+                throw new DownloadException(DownloadTask.ERROR_STORAGE, "cannot replace " + target);
+            }
+            if (!part.renameTo(target)) {
+                throw new DownloadException(DownloadTask.ERROR_STORAGE, "rename failed: " + target);
+            }
+        }
+    }
+
+    /** 关闭未完成切片的文件 (保留临时文件, 重新运行时续写) */
+    void close() {
+        for (Slice slice : _slices) {
+            if (slice.file == null) continue;
+            try {
+                slice.file.close();
+            } catch (IOException ignored) {
+            }
+            slice.file = null;
+        }
+    }
+
+    /** 删除未完成切片的临时文件 */
+    void discard() {
+        close();
+        for (Slice slice : _slices) {
+            new File(slice.savePath + ".part").delete();
+        }
+    }
+
+    // ---- multipart/byteranges ----
+
+    /**
+     * 从 Content-Type 中取出 multipart/byteranges 的分隔符
+     *
+     * @return 不是 multipart/byteranges 时返回 null
+     */
+    static String boundary(String contentType) {
+        if (contentType == null
+                || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/byteranges")) {
+            return null;
+        }
+        int at = contentType.toLowerCase(Locale.ROOT).indexOf("boundary=");
+        if (at < 0) return null;
+        String value = contentType.substring(at + "boundary=".length()).trim();
+        int semicolon = value.indexOf(';');
+        if (semicolon >= 0) value = value.substring(0, semicolon).trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * 解析 "bytes a-b/total" 中的 [a, b]
+     *
+     * @return 格式不符时返回 null
+     */
+    static long[] parseContentRange(String contentRange) {
+        if (contentRange == null) return null;
+        String value = contentRange.trim();
+        if (!value.startsWith("bytes")) return null;
+        value = value.substring(5).trim();
+        int dash = value.indexOf('-');
+        int slash = value.indexOf('/');
+        if (dash <= 0 || slash < dash) return null;
+        try {
+            long start = Long.parseLong(value.substring(0, dash).trim());
+            long end = Long.parseLong(value.substring(dash + 1, slash).trim());
+            return end >= start ? new long[]{start, end} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * multipart/byteranges 响应体的顺序解析器
+     * <p>
+     * 每个部分以 "--boundary" 开头, 头部中的 Content-Range 给出该部分的区间, 之后是等长的原始字节。
+     * {@link #next()} 定位到下一个部分后, 作为 InputStream 读取该部分的数据, 读完返回 -1。
+     * </p>
+     */
+    static final class MultipartReader extends InputStream {
+
+        private static final int MAX_LINE = 8 * 1024;
+
+        private final InputStream _in;
+        private final String _delimiter;
+        private final StringBuilder _line = new StringBuilder(128);
+        private long _remaining;
+
+        MultipartReader(InputStream in, String boundary) {
+            _in = in;
+            _delimiter = "--" + boundary;
+        }
+
+        /**
+         * 跳过当前部分的剩余数据, 解析下一个部分的头部
+         *
+         * @return 该部分的 [start, end], 已到结尾时返回 null
+         */
+        long[] next() throws IOException {
+            while (_remaining > 0) {
+                long skipped = _in.skip(_remaining);
+                if (skipped <= 0) {
+                    if (_in.read() < 0) throw new IOException("multipart truncated");
+                    skipped = 1;
+                }
+                _remaining -= skipped;
+            }
+            // 分隔行之前可能有前导文本和上一部分结尾的空行
+            String line;
+            do {
+                line = _readLine();
+                if (line == null) return null;
+            } while (!line.startsWith(_delimiter));
+            if (line.startsWith(_delimiter + "--")) return null;
+
+            long[] range = null;
+            while ((line = _readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Range")) {
+                    range = parseContentRange(line.substring(colon + 1));
+                }
+            }
+            if (range == null) throw new IOException("multipart part without Content-Range");
+            _remaining = range[1] - range[0] + 1;
+            return range;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (_remaining <= 0) return -1;
+            int c = _in.read();
+            if (c < 0) throw new IOException("multipart truncated");
+            _remaining--;
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (_remaining <= 0) return -1;
+            int n = _in.read(b, off, (int) Math.min(len, _remaining));
+            if (n < 0) throw new IOException("multipart truncated");
+            _remaining -= n;
+            return n;
+        }
+
+        private String _readLine() throws IOException {
+            _line.setLength(0);
+            while (true) {
+                int c = _in.read();
+                if (c < 0) return _line.length() > 0 ? _line.toString() : null;
+                if (c == '\n') break;
+                if (c != '\r') _line.append((char) c);
+                if (_line.length() > MAX_LINE) throw new IOException("multipart header too long");
+            }
+            return _line.toString();
+        }
+    }
+}
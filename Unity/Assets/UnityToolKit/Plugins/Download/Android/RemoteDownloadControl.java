@@ -0,0 +1,671 @@
+package com.toolkit.download;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+import java.util.Arrays;
+
+/**
+ * 跨进程的 {@link DownloadControl}: 服务运行在独立进程 (如 ":download") 时, 经 Binder 同步调用服务进程中的引擎
+ * <p>
+ * 协议是手写的 Parcel 编解码 (等价于一个 AIDL 接口, 省去生成代码): 每个操作一个事务码,
+ * 参数和返回值只用基本类型、字符串及其数组, 进度查询一次事务返回全部任务的 long[]。
+ * 服务进程中的 {@link Stub} 解码后交给 {@link LocalDownloadControl} 执行,
+ * 参数错误 (IllegalArgumentException 等) 经 Parcel 原样回传到调用方。
+ * 批量添加按 BATCH_CHUNK 条拆成多个事务, 避免单个 Parcel 超过 Binder 事务缓冲区 (TransactionTooLargeException);
+ * 某一段失败时, 之前各段已添加的任务保留。
+ * </p>
+ * <p>
+ * 以 BIND_AUTO_CREATE 绑定服务, 服务进程被回收后系统自动重建并重新连接; 连接建立前的调用最多等待
+ * CONNECT_TIMEOUT_MS。onServiceConnected 在主线程回调, 主线程上的调用不等待, 未连接时直接失败。
+ * 服务未导出 (exported=false), 只有本应用可以绑定。
+ * </p>
+ */
+final class RemoteDownloadControl implements DownloadControl, ServiceConnection {
+
+    static final String DESCRIPTOR = "com.toolkit.download.DownloadControl";
+
+    private static final long CONNECT_TIMEOUT_MS = 5000;
+
+    /** 批量添加时每个事务携带的条目数上限 (每条含地址、路径和哈希, 256 条约几十 KB) */
+    private static final int BATCH_CHUNK = 256;
+
+    // ---- 事务码 ----
+    private static final int TX_ENQUEUE = IBinder.FIRST_CALL_TRANSACTION;
+    private static final int TX_ENQUEUE_MIRRORED = TX_ENQUEUE + 1;
+    private static final int TX_ENQUEUE_EXTRACT = TX_ENQUEUE + 2;
+    private static final int TX_ENQUEUE_PATCH = TX_ENQUEUE + 3;
+    private static final int TX_ENQUEUE_BATCH = TX_ENQUEUE + 4;
+    private static final int TX_ENQUEUE_RANGES = TX_ENQUEUE + 5;
+    private static final int TX_CANCEL = TX_ENQUEUE + 6;
+    private static final int TX_REMOVE = TX_ENQUEUE + 7;
+    private static final int TX_QUERY = TX_ENQUEUE + 8;
+    private static final int TX_HAS_ACTIVE = TX_ENQUEUE + 9;
+    private static final int TX_SET_PRIORITY = TX_ENQUEUE + 10;
+    private static final int TX_SET_GLOBAL_RATE = TX_ENQUEUE + 11;
+    private static final int TX_SET_TASK_RATE = TX_ENQUEUE + 12;
+    private static final int TX_SET_CONNECTION_LIMIT = TX_ENQUEUE + 13;
+    private static final int TX_SET_BUFFER_SIZE = TX_ENQUEUE + 14;
+    private static final int TX_SET_PREALLOCATE = TX_ENQUEUE + 15;
+    private static final int TX_GET_STATS = TX_ENQUEUE + 16;
+    private static final int TX_GET_CONCURRENCY = TX_ENQUEUE + 17;
+    private static final int TX_GET_LOCK_TIMES = TX_ENQUEUE + 18;
+    private static final int TX_UPDATE_SERVICE = TX_ENQUEUE + 19;
+    private static final int TX_STOP_SERVICE = TX_ENQUEUE + 20;
+    private static final int TX_ENQUEUE_CACHED = TX_ENQUEUE + 21;
+    private static final int TX_ENQUEUE_BATCH_CACHED = TX_ENQUEUE + 22;
+    private static final int TX_GET_CACHED_PATH = TX_ENQUEUE + 23;
+    private static final int TX_SET_CACHE_BUDGET = TX_ENQUEUE + 24;
+    private static final int TX_GET_CACHE_STATE = TX_ENQUEUE + 25;
+    private static final int TX_LAST = TX_GET_CACHE_STATE;
+
+    private final Object _lock = new Object();
+    private IBinder _binder;
+
+    private RemoteDownloadControl() {
+    }
+
+    /**
+     * 绑定下载服务, 立即返回; 首次调用时等待连接建立
+     */
+    static RemoteDownloadControl bind(Context context) {
+        RemoteDownloadControl control = new RemoteDownloadControl();
+        Intent intent = new Intent(context, DownloadForegroundService.class);
+        if (!context.bindService(intent, control, Context.BIND_AUTO_CREATE)) {
+            throw new IllegalStateException("cannot bind DownloadForegroundService");
+        }
+        return control;
+    }
+
+    /**
+     * 服务是否声明在与当前进程不同的进程中
+     */
+    static boolean isServiceRemote(Context context) {
+        try {
+            String service = context.getPackageManager().getServiceInfo(
+                    new ComponentName(context, DownloadForegroundService.class), 0).processName;
+            String app = context.getApplicationInfo().processName;
+            return service != null && !service.equals(app);
+        } catch (Exception e) {
+            // 服务未在清单中声明等情况, 按同进程处理
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+
+    @Override
+    public void onServiceConnected(ComponentName name, IBinder binder) {
+        synchronized (_lock) {
+            _binder = binder;
+            _lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName name) {
+        // 服务进程已退出, 系统重建后会再次回调 onServiceConnected
+        synchronized (_lock) {
+            _binder = null;
+        }
+    }
+
+    // ---- 客户端 ----
+
+    @Override
+    public long enqueue(String url, String savePath, int connections, int priority,
+                        String algorithm, String expectedHash, long chunkSize, String[] chunkHashes) {
+        Parcel data = _begin();
+        data.writeString(url);
+        data.writeString(savePath);
+        data.writeInt(connections);
+        data.writeInt(priority);
+        data.writeString(algorithm);
+        data.writeString(expectedHash);
+        data.writeLong(chunkSize);
+        data.writeStringArray(chunkHashes);
+        Parcel reply = _transact(TX_ENQUEUE, data);
+        try {
+            return reply.readLong();
+        } finally {
+            reply.recycle();
+        }
+    }
+
+    @Override
+    public long enqueueMirrored(String[] urls, String savePath, int connections, int priority,
+                                String algorithm, String expectedHash, long chunkSize, String[] chunkHashes) {
+        Parcel data = _begin();
+        data.writeStringArray(urls);
+        data.writeString(savePath);
+        data.writeInt(connections);
+        data.writeInt(priority);
+        data.writeString(algorithm);
+        data.writeString(expectedHash);
+        data.writeLong(chunkSize);
+        data.writeStringArray(chunkHashes);
+        Parcel reply = _transact(TX_ENQUEUE_MIRRORED, data);
+        try {
+            return reply.readLong();
+        } finally {
+            reply.recycle();
+        }
+    }
+
+    @Override
+    public long enqueueExtract(String url, String savePath, String format, int priority) {
+        Parcel data = _begin();
+        data.writeString(url);
+        data.writeString(savePath);
+        data.writeString(format);
+        data.writeInt(priority);
+        Parcel reply = _transact(TX_ENQUEUE_EXTRACT, data);
+        try {
+            return reply.readLong();
+        } finally {
+            reply.recycle();
+        }
+    }
+
+    @Override
+    public long enqueuePatch(String sourcePath, String patchUrl, String savePath, int priority,
+                             String algorithm, String expectedHash, boolean zlib) {
+        Parcel data = _begin();
+        data.writeString(sourcePath);
+        data.writeString(patchUrl);
+        data.writeString(savePath);
+        data.writeInt(priority);
+        data.writeString(algorithm);
+        data.writeString(expectedHash);
+        data.writeInt(zlib ? 1 : 0);
+        Parcel reply = _transact(TX_ENQUEUE_PATCH, data);
+        try {
+            return reply.readLong();
+        } finally {
+            reply.recycle();
+        }
+    }
+
+    @Override
+    public long[] enqueueBatch(String[] urls, String[] savePaths, int priority,
+                               String algorithm, String[] expectedHashes) {
+        int count = Math.min(urls.length, savePaths.length);
+        long[] ids = new long[count];
+        int from = 0;
+        do {
+            int to = Math.min(count, from + BATCH_CHUNK);
+            Parcel data = _begin();
+            data.writeStringArray(_slice(urls, from, to));
+            data.writeStringArray(_slice(savePaths, from, to));
+            data.writeInt(priority);
+            data.writeString(algorithm);
+            data.writeStringArray(_slice(expectedHashes, from, to));
+            _readInto(_transact(TX_ENQUEUE_BATCH, data), ids, from, to);
+            from = to;
+        } while (from < count);
+        return ids;
+    }
+
+    @Override
+    public long enqueueRanges(String url, long[] offsets, long[] lengths, String[] savePaths,
+                              long gapBytes, int connections, int priority) {
+        Parcel data = _begin();
+        data.writeString(url);
+        data.writeLongArray(offsets);
+        data.writeLongArray(lengths);
+        data.writeStringArray(savePaths);
+        data.writeLong(gapBytes);
+        data.writeInt(connections);
+        data.writeInt(priority);
+        Parcel reply = _transact(TX_ENQUEUE_RANGES, data);
+        try {
+            return reply.readLong();
+        } finally {
+            reply.recycle();
+        }
+    }
+
+    @Override
+    public long enqueueCached(String[] urls, int connections, int priority, String algorithm, String hash) {
+        Parcel data = _begin();
+        data.writeStringArray(urls);
+        data.writeInt(connections);
+        data.writeInt(priority);
+        data.writeString(algorithm);
+        data.writeString(hash);
+        Parcel reply = _transact(TX_ENQUEUE_CACHED, data);
+        try {
+            return reply.readLong();
+        } finally {
+            reply.recycle();
+        }
+    }
+
+    @Override
+    public long[] enqueueBatchCached(String[] urls, int priority, String algorithm, String[] hashes) {
+        int count = Math.min(urls.length, hashes.length);
+        long[] ids = new long[count];
+        int from = 0;
+        do {
+            int to = Math.min(count, from + BATCH_CHUNK);
+            Parcel data = _begin();
+            data.writeStringArray(_slice(urls, from, to));
+            data.writeInt(priority);
+            data.writeString(algorithm);
+            data.writeStringArray(_slice(hashes, from, to));
+            _readInto(_transact(TX_ENQUEUE_BATCH_CACHED, data), ids, from, to);
+            from = to;
+        } while (from < count);
+        return ids;
+    }
+
+    @Override
+    public String getCachedPath(String algorithm, String hash) {
+        Parcel data = _begin();
+        data.writeString(algorithm);
+        data.writeString(hash);
+        Parcel reply = _transact(TX_GET_CACHED_PATH, data);
+        try {
+            return reply.readString();
+        } finally {
+            reply.recycle();
+        }
+    }
+
+    @Override
+    public void setContentCacheBudget(long bytes) {
+        Parcel data = _begin();
+        data.writeLong(bytes);
+        _transact(TX_SET_CACHE_BUDGET, data).recycle();
+    }
+
+    @Override
+    public long[] getContentCacheState() {
+        return _readLongArray(_transact(TX_GET_CACHE_STATE, _begin()));
+    }
+
+    @Override
+    public boolean cancel(long taskId) {
+        Parcel data = _begin();
+        data.writeLong(taskId);
+        return _readBoolean(_transact(TX_CANCEL, data));
+    }
+
+    @Override
+    public void remove(long taskId) {
+        Parcel data = _begin();
+        data.writeLong(taskId);
+        _transact(TX_REMOVE, data).recycle();
+    }
+
+    @Override
+    public long[] query(long[] taskIds) {
+        Parcel data = _begin();
+        data.writeLongArray(taskIds);
+        return _readLongArray(_transact(TX_QUERY, data));
+    }
+
+    @Override
+    public boolean hasActiveTasks() {
+        return _readBoolean(_transact(TX_HAS_ACTIVE, _begin()));
+    }
+
+    @Override
+    public boolean setPriority(long taskId, int priority) {
+        Parcel data = _begin();
+        data.writeLong(taskId);
+        data.writeInt(priority);
+        return _readBoolean(_transact(TX_SET_PRIORITY, data));
+    }
+
+    @Override
+    public void setGlobalRateLimit(long bytesPerSecond) {
+        Parcel data = _begin();
+        data.writeLong(bytesPerSecond);
+        _transact(TX_SET_GLOBAL_RATE, data).recycle();
+    }
+
+    @Override
+    public boolean setTaskRateLimit(long taskId, long bytesPerSecond) {
+        Parcel data = _begin();
+        data.writeLong(taskId);
+        data.writeLong(bytesPerSecond);
+        return _readBoolean(_transact(TX_SET_TASK_RATE, data));
+    }
+
+    @Override
+    public void setConnectionLimit(int limit) {
+        Parcel data = _begin();
+        data.writeInt(limit);
+        _transact(TX_SET_CONNECTION_LIMIT, data).recycle();
+    }
+
+    @Override
+    public void setBufferSize(int bytes) {
+        Parcel data = _begin();
+        data.writeInt(bytes);
+        _transact(TX_SET_BUFFER_SIZE, data).recycle();
+    }
+
+    @Override
+    public void setPreallocate(boolean preallocate) {
+        Parcel data = _begin();
+        data.writeInt(preallocate ? 1 : 0);
+        _transact(TX_SET_PREALLOCATE, data).recycle();
+    }
+
+    @Override
+    public long[] getStats() {
+        return _readLongArray(_transact(TX_GET_STATS, _begin()));
+    }
+
+    @Override
+    public long[] getConcurrencyState() {
+        return _readLongArray(_transact(TX_GET_CONCURRENCY, _begin()));
+    }
+
+    @Override
+    public long[] getLockHoldTimes() {
+        return _readLongArray(_transact(TX_GET_LOCK_TIMES, _begin()));
+    }
+
+    @Override
+    public void updateService(String title, String content, int progress) {
+        Parcel data = _begin();
+        data.writeString(title);
+        data.writeString(content);
+        data.writeInt(progress);
+        _transact(TX_UPDATE_SERVICE, data).recycle();
+    }
+
+    @Override
+    public void stopService() {
+        _transact(TX_STOP_SERVICE, _begin()).recycle();
+    }
+
+    // ---- 事务辅助 ----
+
+    private static Parcel _begin() {
+        Parcel data = Parcel.obtain();
+        data.writeInterfaceToken(DESCRIPTOR);
+        return data;
+    }
+
+    /**
+     * 同步执行事务并回收 data; 返回的 reply 已读过异常头, 由调用方读取结果后回收
+     *
+     * @throws IllegalStateException 服务进程未连接或已退出
+     */
+    private Parcel _transact(int code, Parcel data) {
+        Parcel reply = Parcel.obtain();
+        try {
+            _awaitBinder().transact(code, data, reply, 0);
+            reply.readException();
+            return reply;
+        } catch (RemoteException e) {
+            reply.recycle();
+            throw new IllegalStateException("download process died", e);
+        } catch (RuntimeException e) {
+            reply.recycle();
+            throw e;
+        } finally {
+            data.recycle();
+        }
+    }
+
+    private IBinder _awaitBinder() {
+        synchronized (_lock) {
+            if (_binder == null && Looper.myLooper() != Looper.getMainLooper()) {
+                long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+                long waitMs = CONNECT_TIMEOUT_MS;
+                while (_binder == null && waitMs > 0) {
+                    try {
+                        _lock.wait(waitMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    waitMs = deadline - System.currentTimeMillis();
+                }
+            }
+            if (_binder == null) {
+                throw new IllegalStateException("download process not connected");
+            }
+            return _binder;
+        }
+    }
+
+    /**
+     * 取数组的 [from, to) 段; array 为 null 或比 from 短时返回 null, 比 to 短时截到末尾
+     * (与引擎对缺失哈希的处理一致)
+     */
+    private static String[] _slice(String[] array, int from, int to) {
+        if (array == null || array.length <= from) return null;
+        return Arrays.copyOfRange(array, from, Math.min(to, array.length));
+    }
+
+    /** 读取一段批量添加的结果写入 ids[from, to) 并回收 reply */
+    private static void _readInto(Parcel reply, long[] ids, int from, int to) {
+        try {
+            long[] part = reply.createLongArray();
+            System.arraycopy(part, 0, ids, from, to - from);
+        } finally {
+            reply.recycle();
+        }
+    }
+
+    private static boolean _readBoolean(Parcel reply) {
+        try {
+            return reply.readInt() != 0;
+        } finally {
+            reply.recycle();
+        }
+    }
+
+    private static long[] _readLongArray(Parcel reply) {
+        try {
+            return reply.createLongArray();
+        } finally {
+            reply.recycle();
+        }
+    }
+
+    // ---- 服务端 ----
+
+    /**
+     * 服务进程中的 Binder 实现, 由 {@link DownloadForegroundService#onBind} 返回
+     */
+    static final class Stub extends Binder {
+
+        private final DownloadControl _control;
+
+        Stub(DownloadControl control) {
+            _control = control;
+        }
+
+        @Override
+        protected boolean onTransact(int code, Parcel data, Parcel reply, int flags)
+                throws RemoteException {
+            if (code < TX_ENQUEUE || code > TX_LAST) {
+                return super.onTransact(code, data, reply, flags);
+            }
+            data.enforceInterface(DESCRIPTOR);
+            try {
+                _dispatch(code, data, reply);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                reply.writeException(e);
+            }
+            return true;
+        }
+
+        /**
+         * 读取参数 (按写入顺序, Java 实参从左到右求值) 并执行, 成功后写入无异常头和返回值
+         */
+        private void _dispatch(int code, Parcel data, Parcel reply) {
+            DownloadControl control = _control;
+            switch (code) {
+                case TX_ENQUEUE: {
+                    long id = control.enqueue(data.readString(), data.readString(), data.readInt(),
+                            data.readInt(), data.readString(), data.readString(), data.readLong(),
+                            data.createStringArray());
+                    reply.writeNoException();
+                    reply.writeLong(id);
+                    break;
+                }
+                case TX_ENQUEUE_MIRRORED: {
+                    long id = control.enqueueMirrored(data.createStringArray(), data.readString(),
+                            data.readInt(), data.readInt(), data.readString(), data.readString(),
+                            data.readLong(), data.createStringArray());
+                    reply.writeNoException();
+                    reply.writeLong(id);
+                    break;
+                }
+                case TX_ENQUEUE_EXTRACT: {
+                    long id = control.enqueueExtract(data.readString(), data.readString(),
+                            data.readString(), data.readInt());
+                    reply.writeNoException();
+                    reply.writeLong(id);
+                    break;
+                }
+                case TX_ENQUEUE_PATCH: {
+                    long id = control.enqueuePatch(data.readString(), data.readString(), data.readString(),
+                            data.readInt(), data.readString(), data.readString(), data.readInt() != 0);
+                    reply.writeNoException();
+                    reply.writeLong(id);
+                    break;
+                }
+                case TX_ENQUEUE_BATCH: {
+                    long[] ids = control.enqueueBatch(data.createStringArray(), data.createStringArray(),
+                            data.readInt(), data.readString(), data.createStringArray());
+                    reply.writeNoException();
+                    reply.writeLongArray(ids);
+                    break;
+                }
+                case TX_ENQUEUE_RANGES: {
+                    long id = control.enqueueRanges(data.readString(), data.createLongArray(),
+                            data.createLongArray(), data.createStringArray(), data.readLong(),
+                            data.readInt(), data.readInt());
+                    reply.writeNoException();
+                    reply.writeLong(id);
+                    break;
+                }
+                case TX_CANCEL: {
+                    boolean cancelled = control.cancel(data.readLong());
+                    reply.writeNoException();
+                    reply.writeInt(cancelled ? 1 : 0);
+                    break;
+                }
+                case TX_REMOVE:
+                    control.remove(data.readLong());
+                    reply.writeNoException();
+                    break;
+                case TX_QUERY: {
+                    long[] states = control.query(data.createLongArray());
+                    reply.writeNoException();
+                    reply.writeLongArray(states);
+                    break;
+                }
+                case TX_HAS_ACTIVE: {
+                    boolean active = control.hasActiveTasks();
+                    reply.writeNoException();
+                    reply.writeInt(active ? 1 : 0);
+                    break;
+                }
+                case TX_SET_PRIORITY: {
+                    boolean changed = control.setPriority(data.readLong(), data.readInt());
+                    reply.writeNoException();
+                    reply.writeInt(changed ? 1 : 0);
+                    break;
+                }
+                case TX_SET_GLOBAL_RATE:
+                    control.setGlobalRateLimit(data.readLong());
+                    reply.writeNoException();
+                    break;
+                case TX_SET_TASK_RATE: {
+                    boolean found = control.setTaskRateLimit(data.readLong(), data.readLong());
+                    reply.writeNoException();
+                    reply.writeInt(found ? 1 : 0);
+                    break;
+                }
+                case TX_SET_CONNECTION_LIMIT:
+                    control.setConnectionLimit(data.readInt());
+                    reply.writeNoException();
+                    break;
+                case TX_SET_BUFFER_SIZE:
+                    control.setBufferSize(data.readInt());
+                    reply.writeNoException();
+                    break;
+                case TX_SET_PREALLOCATE:
+                    control.setPreallocate(data.readInt() != 0);
+                    reply.writeNoException();
+                    break;
+                case TX_GET_STATS: {
+                    long[] stats = control.getStats();
+                    reply.writeNoException();
+                    reply.writeLongArray(stats);
+                    break;
+                }
+                case TX_GET_CONCURRENCY: {
+                    long[] state = control.getConcurrencyState();
+                    reply.writeNoException();
+                    reply.writeLongArray(state);
+                    break;
+                }
+                case TX_GET_LOCK_TIMES: {
+                    long[] times = control.getLockHoldTimes();
+                    reply.writeNoException();
+                    reply.writeLongArray(times);
+                    break;
+                }
+                case TX_UPDATE_SERVICE:
+                    control.updateService(data.readString(), data.readString(), data.readInt());
+                    reply.writeNoException();
+                    break;
+                case TX_ENQUEUE_CACHED: {
+                    long id = control.enqueueCached(data.createStringArray(), data.readInt(),
+                            data.readInt(), data.readString(), data.readString());
+                    reply.writeNoException();
+                    reply.writeLong(id);
+                    break;
+                }
+                case TX_ENQUEUE_BATCH_CACHED: {
+                    long[] ids = control.enqueueBatchCached(data.createStringArray(), data.readInt(),
+                            data.readString(), data.createStringArray());
+                    reply.writeNoException();
+                    reply.writeLongArray(ids);
+                    break;
+                }
+                case TX_GET_CACHED_PATH: {
+                    String path = control.getCachedPath(data.readString(), data.readString());
+                    reply.writeNoException();
+                    reply.writeString(path);
+                    break;
+                }
+                case TX_SET_CACHE_BUDGET:
+                    control.setContentCacheBudget(data.readLong());
+                    reply.writeNoException();
+                    break;
+                case TX_GET_CACHE_STATE: {
+                    long[] state = control.getContentCacheState();
+                    reply.writeNoException();
+                    reply.writeLongArray(state);
+                    break;
+                }
+                default:
+                    control.stopService();
+                    reply.writeNoException();
+                    break;
+            }
+        }
+    }
+}
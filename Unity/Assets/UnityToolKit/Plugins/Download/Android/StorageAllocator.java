@@ -0,0 +1,32 @@
+package com.toolkit.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 下载文件的磁盘空间检查与预分配
+ * <p>
+ * 默认实现仅使用 JDK 接口 (getUsableSpace + setLength), 保证引擎可脱离 Android 运行;
+ * Android 上由 {@link AndroidStorageAllocator} 替换为 StatFs + posix_fallocate,
+ * 一次性分配连续的磁盘块, 减少边下边写产生的文件碎片。
+ * </p>
+ */
+class StorageAllocator {
+
+    /**
+     * 目录所在分区的可用字节数
+     */
+    long getAvailableBytes(File dir) {
+        return dir.getUsableSpace();
+    }
+
+    /**
+     * 将文件预分配到指定长度
+     */
+    void allocate(RandomAccessFile file, long length) throws IOException {
+        if (file.length() < length) {
+            file.setLength(length);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.toolkit.download;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * 增量摘要计算
+ * <p>
+ * 下载线程在字节写盘的同时更新摘要, 完成后无需再整体读回文件。
+ * CRC32 支持按分段独立计算后合并 (实现 {@link Combinable}), 多连接下载时各分段并行计算;
+ * MD5 / SHA-256 / xxHash64 无法合并, 仅首个分段可实时计算, 其余部分在收尾时顺序补算。
+ * </p>
+ */
+abstract class StreamingDigest {
+
+    static final String CRC32 = "crc32";
+    static final String MD5 = "md5";
+    static final String SHA256 = "sha256";
+    static final String XXH64 = "xxh64";
+
+    /**
+     * 按算法名创建摘要 (大小写不敏感)
+     *
+     * @throws IllegalArgumentException 算法不受支持
+     */
+    static StreamingDigest create(String algorithm) {
+        String name = algorithm.toLowerCase(Locale.ROOT);
+        switch (name) {
+            case CRC32:
+                return new Crc32Digest();
+            case MD5:
+                return new JdkDigest("MD5");
+            case SHA256:
+            case "sha-256":
+                return new JdkDigest("SHA-256");
+            case XXH64:
+            case "xxhash64":
+                return new XxHash64Digest();
+            default:
+                throw new IllegalArgumentException("unsupported hash algorithm: " + algorithm);
+        }
+    }
+
+    /**
+     * 更新摘要, 消费 buffer 中 [position, limit) 的字节, 不改变 buffer 自身的位置
+     */
+    abstract void update(ByteBuffer buffer);
+
+    /**
+     * 结束计算并返回十六进制字符串 (小写); 调用后不可再 update
+     */
+    abstract String hex();
+
+    /**
+     * 支持分段独立计算后合并的摘要
+     */
+    interface Combinable {
+
+        /**
+         * 将 next (同一算法, 紧随本摘要之后、长度为 nextLength 的数据的摘要) 合并到本摘要
+         */
+        void combine(StreamingDigest next, long nextLength);
+    }
+
+    static boolean matches(String actualHex, String expectedHex) {
+        return expectedHex != null && expectedHex.trim().equalsIgnoreCase(actualHex);
+    }
+
+    private static String _toHex(long value, int digits) {
+        char[] out = new char[digits];
+        for (int i = digits - 1; i >= 0; i--) {
+            out[i] = Character.forDigit((int) (value & 0xF), 16);
+            value >>>= 4;
+        }
+        return new String(out);
+    }
+
+    // ---- CRC32 ----
+
+    private static final class Crc32Digest extends StreamingDigest implements Combinable {
+        private static final int SCRATCH_SIZE = 8 * 1024;
+
+        private final CRC32 _crc = new CRC32();
+        private long _value = -1;
+        private byte[] _scratch;
+
+        @Override
+        void update(ByteBuffer buffer) {
+            if (buffer.hasArray()) {
+                _crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                return;
+            }
+            // CRC32.update(ByteBuffer) 需要 API 26, 直接缓冲区分块拷贝到复用的小数组
+            if (_scratch == null) _scratch = new byte[SCRATCH_SIZE];
+            ByteBuffer src = buffer.duplicate();
+            while (src.hasRemaining()) {
+                int n = Math.min(src.remaining(), _scratch.length);
+                src.get(_scratch, 0, n);
+                _crc.update(_scratch, 0, n);
+            }
+        }
+
+        @Override
+        String hex() {
+            return _toHex(_current(), 8);
+        }
+
+        @Override
+        public void combine(StreamingDigest next, long nextLength) {
+            _value = _crc32Combine(_current(), ((Crc32Digest) next)._current(), nextLength);
+        }
+
+        private long _current() {
+            return _value >= 0 ? _value : _crc.getValue();
+        }
+
+        /**
+         * zlib crc32_combine: 在 GF(2) 上对 crc1 施加 len2 个零字节的变换后与 crc2 异或
+         */
+        private static long _crc32Combine(long crc1, long crc2, long len2) {
+            if (len2 <= 0) return crc1;
+
+            long[] even = new long[32];
+            long[] odd = new long[32];
+
+            odd[0] = 0xEDB88320L;
+            long row = 1;
+            for (int n = 1; n < 32; n++) {
+                odd[n] = row;
+                row <<= 1;
+            }
+            _gf2MatrixSquare(even, odd);
+            _gf2MatrixSquare(odd, even);
+
+            do {
+                _gf2MatrixSquare(even, odd);
+                if ((len2 & 1) != 0) crc1 = _gf2MatrixTimes(even, crc1);
+                len2 >>= 1;
+                if (len2 == 0) break;
+
+                _gf2MatrixSquare(odd, even);
+                if ((len2 & 1) != 0) crc1 = _gf2MatrixTimes(odd, crc1);
+                len2 >>= 1;
+            } while (len2 != 0);
+
+            return (crc1 ^ crc2) & 0xFFFFFFFFL;
+        }
+
+        private static long _gf2MatrixTimes(long[] mat, long vec) {
+            long sum = 0;
+            int i = 0;
+            while (vec != 0) {
+                if ((vec & 1) != 0) sum ^= mat[i];
+                vec >>>= 1;
+                i++;
+            }
+            return sum;
+        }
+
+        private static void _gf2MatrixSquare(long[] square, long[] mat) {
+            for (int n = 0; n < 32; n++) {
+                square[n] = _gf2MatrixTimes(mat, mat[n]);
+            }
+        }
+    }
+
+    // ---- MD5 / SHA-256 ----
+
+    private static final class JdkDigest extends StreamingDigest {
+        private final MessageDigest _digest;
+
+        JdkDigest(String name) {
+            try {
+                _digest = MessageDigest.getInstance(name);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException(name, e);
+            }
+        }
+
+        @Override
+        void update(ByteBuffer buffer) {
+            _digest.update(buffer.duplicate());
+        }
+
+        @Override
+        String hex() {
+            byte[] bytes = _digest.digest();
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        }
+    }
+
+    // ---- xxHash64 (seed = 0) ----
+
+    private static final class XxHash64Digest extends StreamingDigest {
+        private static final long P1 = 0x9E3779B185EBCA87L;
+        private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long P3 = 0x165667B19E3779F9L;
+        private static final long P4 = 0x85EBCA77C2B2AE63L;
+        private static final long P5 = 0x27D4EB2F165667C5L;
+
+        private long _v1 = P1 + P2;
+        private long _v2 = P2;
+        private long _v3 = 0;
+        private long _v4 = -P1;
+        private long _totalLength;
+
+        private final ByteBuffer _tail = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+
+        @Override
+        void update(ByteBuffer buffer) {
+            ByteBuffer src = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            _totalLength += src.remaining();
+
+            // 先补齐上次剩余的不足 32 字节的块
+            if (_tail.position() > 0) {
+                while (_tail.hasRemaining() && src.hasRemaining()) _tail.put(src.get());
+                if (_tail.hasRemaining()) return;
+                _tail.flip();
+                _stripe(_tail);
+                _tail.clear();
+            }
+
+            while (src.remaining() >= 32) {
+                _stripe(src);
+            }
+            while (src.hasRemaining()) _tail.put(src.get());
+        }
+
+        private void _stripe(ByteBuffer src) {
+            _v1 = _round(_v1, src.getLong());
+            _v2 = _round(_v2, src.getLong());
+            _v3 = _round(_v3, src.getLong());
+            _v4 = _round(_v4, src.getLong());
+        }
+
+        @Override
+        String hex() {
+            long h;
+            if (_totalLength >= 32) {
+                h = Long.rotateLeft(_v1, 1) + Long.rotateLeft(_v2, 7)
+                        + Long.rotateLeft(_v3, 12) + Long.rotateLeft(_v4, 18);
+                h = _merge(h, _v1);
+                h = _merge(h, _v2);
+                h = _merge(h, _v3);
+                h = _merge(h, _v4);
+            } else {
+                h = P5;
+            }
+            h += _totalLength;
+
+            ByteBuffer rest = _tail.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            rest.flip();
+            while (rest.remaining() >= 8) {
+                h ^= _round(0, rest.getLong());
+                h = Long.rotateLeft(h, 27) * P1 + P4;
+            }
+            if (rest.remaining() >= 4) {
+                h ^= (rest.getInt() & 0xFFFFFFFFL) * P1;
+                h = Long.rotateLeft(h, 23) * P2 + P3;
+            }
+            while (rest.hasRemaining()) {
+                h ^= (rest.get() & 0xFFL) * P5;
+                h = Long.rotateLeft(h, 11) * P1;
+            }
+
+            h ^= h >>> 33;
+            h *= P2;
+            h ^= h >>> 29;
+            h *= P3;
+            h ^= h >>> 32;
+            return _toHex(h, 16);
+        }
+
+        private static long _round(long acc, long input) {
+            acc += input * P2;
+            acc = Long.rotateLeft(acc, 31);
+            return acc * P1;
+        }
+
+        private static long _merge(long acc, long v) {
+            acc ^= _round(0, v);
+            return acc * P1 + P4;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.toolkit.download;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 记录 TCP 连接完成时刻的 SSLSocketFactory 包装
+ * <p>
+ * Android 的 HttpsURLConnection 先建立 TCP 连接, 再通过
+ * {@link #createSocket(Socket, String, int, boolean)} 在其上叠加 TLS 并握手,
+ * 因此该调用的时刻即 TCP 连接与 TLS 握手的分界。时刻按线程记录, 由引擎在 connect() 前后读取。
+ * </p>
+ * <p>
+ * 同时记录新建的 SSLSocket, 握手完成后由引擎据此统计会话恢复与完整握手的次数。
+ * </p>
+ * <p>
+ * 所有连接共享同一个实例, 不影响 keep-alive 连接池按 SSLSocketFactory 复用连接。
+ * </p>
+ */
+class TlsTimingSocketFactory extends SSLSocketFactory {
+
+    /** 当前线程最近一次新建 TLS 层的记录 */
+    private static final class Probe {
+        long tcpConnectedNanos;
+        long tcpConnectedMillis;
+        SSLSocket socket;
+    }
+
+    private static final ThreadLocal<Probe> _probe = new ThreadLocal<Probe>() {
+        @Override
+        protected Probe initialValue() {
+            return new Probe();
+        }
+    };
+
+    final SSLSocketFactory delegate;
+
+    TlsTimingSocketFactory(SSLSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    /** 开始一次连接前清除当前线程的记录 */
+    static void reset() {
+        Probe probe = _probe.get();
+        probe.tcpConnectedNanos = 0;
+        probe.socket = null;
+    }
+
+    /**
+     * 当前线程最近一次 TCP 连接完成的 System.nanoTime(), 0 表示本次连接没有新建 TLS 层
+     * (复用的连接或无法区分 TCP 与 TLS 的实现)
+     */
+    static long tcpConnectedAt() {
+        return _probe.get().tcpConnectedNanos;
+    }
+
+    /**
+     * 判断当前线程刚完成的握手是否恢复了已有会话, 并释放对 socket 的引用
+     * <p>
+     * 恢复的会话沿用首次握手时的创建时间, 早于本次创建 socket 的时刻;
+     * 完整握手的会话在连接之后创建。必须在 connect() 返回 (握手完成) 后调用。
+     * </p>
+     *
+     * @return 1 为会话恢复, 0 为完整握手, -1 表示本次连接没有新建 TLS 层
+     */
+    static int takeResumed() {
+        Probe probe = _probe.get();
+        SSLSocket socket = probe.socket;
+        probe.socket = null;
+        if (socket == null) return -1;
+        SSLSession session = socket.getSession();
+        if (session == null || !session.isValid()) return -1;
+        return session.getCreationTime() < probe.tcpConnectedMillis ? 1 : 0;
+    }
+
+    @Override
+    public Socket createSocket(Socket s, String host, int port, boolean autoClose)
+            throws IOException {
+        Probe probe = _probe.get();
+        probe.tcpConnectedNanos = System.nanoTime();
+        probe.tcpConnectedMillis = System.currentTimeMillis();
+        Socket socket = delegate.createSocket(s, host, port, autoClose);
+        probe.socket = socket instanceof SSLSocket ? (SSLSocket) socket : null;
+        return socket;
+    }
+
+    /**
+     * 部分实现 (如 JDK) 先创建未连接的 SSLSocket 再自行连接, 无法区分 TCP 与 TLS,
+     * 只记录 socket 供会话恢复判断
+     */
+    @Override
+    public Socket createSocket() throws IOException {
+        Probe probe = _probe.get();
+        probe.tcpConnectedMillis = System.currentTimeMillis();
+        Socket socket = delegate.createSocket();
+        probe.socket = socket instanceof SSLSocket ? (SSLSocket) socket : null;
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+            throws IOException {
+        return delegate.createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+                               int localPort) throws IOException {
+        return delegate.createSocket(address, port, localAddress, localPort);
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+}
@@ -0,0 +1,53 @@
+package com.toolkit.download;
+
+/**
+ * 令牌桶限速器
+ * <p>
+ * 令牌按 rate 字节/秒匀速补充, 桶容量为 1/4 秒的流量 (允许短时突发)。
+ * 读取数据后调用 {@link #consume(long)} 扣除令牌, 允许透支, 由调用方按返回的时长休眠,
+ * 这样读缓冲区大于桶容量时也能工作, 且不需要在热路径上分配对象。
+ * </p>
+ * <p>rate 小于等于 0 表示不限速, 可在运行时随时修改</p>
+ */
+class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long MIN_CAPACITY = 16 * 1024L;
+
+    private long _rate;
+    private long _capacity;
+    private double _tokens;
+    private long _lastRefill;
+
+    /** 当前限速 (字节/秒), 小于等于 0 表示不限速 */
+    synchronized long getRate() {
+        return _rate;
+    }
+
+    synchronized void setRate(long bytesPerSecond) {
+        _rate = Math.max(0, bytesPerSecond);
+        _capacity = Math.max(MIN_CAPACITY, _rate / 4);
+        // 修改限速后从满桶开始, 旧的透支不再计入
+        _tokens = _capacity;
+        _lastRefill = System.nanoTime();
+    }
+
+    /**
+     * 扣除令牌
+     *
+     * @param bytes 本次读取的字节数
+     * @return 调用方需要等待的纳秒数, 0 表示无需等待
+     */
+    synchronized long consume(long bytes) {
+        if (_rate <= 0) return 0;
+
+        long now = System.nanoTime();
+        double refill = (double) (now - _lastRefill) * _rate / NANOS_PER_SECOND;
+        _tokens = Math.min(_capacity, _tokens + refill);
+        _lastRefill = now;
+
+        _tokens -= bytes;
+        if (_tokens >= 0) return 0;
+        return (long) (-_tokens * NANOS_PER_SECOND / _rate);
+    }
+}
@@ -8,15 +8,36 @@
  *   - ShowNotification 配置控制是否允许显示通知
  *   - DisplayMode 控制显示时机 (Always / BackgroundOnly)
  *   - SmallIconName 自定义通知图标 (drawable 资源名)
+ *   - MaxUpdatesPerSecond 通知刷新限频, 每帧推送的进度由 Java 端合并
  *   - 通知内容完全由业务层通过 ShowNotification 控制
  *
  * 后台策略:
  *   - 仅在 App 进入后台且有下载任务时启动前台服务 (dataSync 类型, 每天有时间限制)
  *   - 回到前台时立即停止前台服务
+ *
+ * 原生下载:
+ *   - EnqueueNativeDownload 将任务交给 Java 端多连接分段下载引擎
+ *   - EnqueueVerifiedNativeDownload 下载同时增量计算摘要, 分块校验失败只重下该块
+ *   - EnqueueNativeMirroredDownload 同一文件多个 CDN 镜像, 探测后分摊分段, 镜像出错或卡住时续传到其它镜像
+ *   - EnqueueNativePatch 只下载差分补丁, 边下载边与旧文件合成新文件, 校验后原子替换
+ *   - EnqueueNativeExtract 边下载边解压 zip/gzip 资源包, 归档不落盘, zip 按条目断点续传
+ *   - EnqueueNativeBatch 一次调用添加大量小文件, 同一主机复用 keep-alive 连接
+ *   - EnqueueNativeRanges 从一个大文件中取出大量小切片, 相近切片合并, 一个 multipart/byteranges 请求取回几十个切片
+ *   - EnqueueCachedNativeDownload / EnqueueCachedNativeBatch 按摘要寻址的内容缓存, 已有的内容不发网络请求,
+ *     超出预算时在后台按最近访问淘汰; GetNativeCachedPath 取得文件路径
+ *   - 任务按 EDownloadPriority 调度, 高优先级可抢占; 全局/单任务限速可在运行时调整
+ *   - GetNativeStats 获取吞吐量、连接各阶段耗时、卡顿和重试等运行指标
+ *   - 下载主机的 DNS 记录和 TLS 会话跨启动持久化, 启动时在后台预先解析上次的主机, 新连接恢复会话; 命中次数见 GetNativeStats
+ *   - GetNativeDiagnostics 获取通知提交/发布次数和内存用量, 供 ManualMode 下的 DownloadSoakTest 压测使用
+ *   - 总连接数由 AIMD 控制器按吞吐自适应, 超时/429/503 时减半; GetNativeConcurrencyState 可记录其状态
+ *   - 下载线程不依赖 Unity 主循环, 进入后台后继续全速下载
+ *   - 清单中为 DownloadForegroundService 加上 android:process=":download" 即可让引擎运行在独立进程,
+ *     与游戏堆隔离, Unity 进程被回收后下载继续; 接口不变, IsNativeDownloadIsolated 可查询
  */
 
 #if UNITY_ANDROID
 
+using System;
 using UnityEngine;
 using ToolKit.Tools.Network;
 
@@ -33,6 +54,7 @@ namespace UnityToolKit.Plugins.Download
         #region Fields
 
         private static readonly string BridgeClassName = "com.toolkit.download.DownloadBridge";
+        private static readonly string PlatformClassName = "com.toolkit.download.AndroidDownloadPlatform";
 
         private AndroidJavaClass _bridge;
         private bool _serviceStarted;
@@ -67,10 +89,12 @@ namespace UnityToolKit.Plugins.Download
 
             _bridge = new AndroidJavaClass(BridgeClassName);
 
+            // 由 Android 平台实现完成初始化, DownloadBridge 本身不依赖 android.* 类型
             using (var unityPlayer = new AndroidJavaClass("com.unity3d.player.UnityPlayer"))
             using (var activity = unityPlayer.GetStatic<AndroidJavaObject>("currentActivity"))
+            using (var platform = new AndroidJavaClass(PlatformClassName))
             {
-                _bridge.CallStatic("init", activity);
+                platform.CallStatic("install", activity);
             }
 
             _initialized = true;
@@ -81,6 +105,12 @@ namespace UnityToolKit.Plugins.Download
                 _bridge.CallStatic("setSmallIconName", NotificationConfig.SmallIconName);
             }
 
+            // 通知刷新限频 (Java 端合并同内容/超频更新)
+            if (NotificationConfig != null)
+            {
+                _bridge.CallStatic("setNotificationMaxRate", NotificationConfig.MaxUpdatesPerSecond);
+            }
+
             // Android 13+ 需要运行时申请通知权限
             if (NotificationConfig?.ShowNotification != false)
             {
@@ -166,6 +196,427 @@ namespace UnityToolKit.Plugins.Download
             }
         }
 
+        /// <summary>
+        /// 批量上报任务进度 (每帧最多调用一次)
+        /// <para>Java 端汇总总进度并生成通知文本, 一次 JNI 调用覆盖全部任务, 不传递逐任务字符串</para>
+        /// <para>仅需传入本帧进度有变化的任务, 其余任务保持上次状态</para>
+        /// </summary>
+        /// <param name="taskIds">任务 ID</param>
+        /// <param name="bytesDone">已下载字节数</param>
+        /// <param name="bytesTotal">总字节数, 小于等于 0 表示未知</param>
+        public void ShowBatchProgress(long[] taskIds, long[] bytesDone, long[] bytesTotal)
+        {
+            if (!ShouldShowNotification()) return;
+
+            EnsureInitialized();
+            _bridge.CallStatic("updateProgressBatch", taskIds, bytesDone, bytesTotal);
+            if (!_serviceStarted) _notificationVisible = true;
+        }
+
+        /// <summary>
+        /// 设置批量进度通知标题
+        /// </summary>
+        public void SetBatchProgressTitle(string title)
+        {
+            EnsureInitialized();
+            _bridge.CallStatic("setBatchTitle", title);
+        }
+
+        /// <summary>
+        /// 清空批量进度 (一批下载全部结束后调用)
+        /// </summary>
+        public void ClearBatchProgress()
+        {
+            EnsureInitialized();
+            _bridge.CallStatic("clearProgressBatch");
+        }
+
+        #endregion
+
+        #region Native Engine
+
+        /// <summary>
+        /// 添加原生分段下载任务
+        /// <para>由 Java 端按 HTTP Range 切分并行下载, 不受 Unity 主循环暂停影响</para>
+        /// </summary>
+        /// <param name="url">下载地址</param>
+        /// <param name="savePath">保存路径</param>
+        /// <param name="connections">并行连接数上限 (1~8), 实际连接数由自适应并发控制器决定</param>
+        /// <param name="priority">调度优先级, 任务已存在时调整为该优先级</param>
+        /// <returns>任务 ID</returns>
+        public long EnqueueNativeDownload(string url, string savePath, int connections = 4,
+            EDownloadPriority priority = EDownloadPriority.Normal)
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<long>("enqueueDownload", url, savePath, connections, (int)priority);
+        }
+
+        /// <summary>
+        /// 添加带完整性校验的原生分段下载任务
+        /// <para>摘要在下载过程中增量计算, 完成后无需再读回文件校验</para>
+        /// <para>提供分块摘要时, 某块校验失败只重新下载该块; 整体摘要不符时任务以 Integrity 错误失败</para>
+        /// </summary>
+        /// <param name="url">下载地址</param>
+        /// <param name="savePath">保存路径</param>
+        /// <param name="algorithm">摘要算法: crc32 / md5 / sha256 / xxh64</param>
+        /// <param name="expectedHash">整个文件的期望摘要 (十六进制), 为空时只做分块校验</param>
+        /// <param name="connections">并行连接数 (1~8)</param>
+        /// <param name="chunkSize">分块大小 (字节), 0 表示不分块校验</param>
+        /// <param name="chunkHashes">各分块的期望摘要, 按文件顺序排列</param>
+        /// <param name="priority">调度优先级</param>
+        /// <returns>任务 ID</returns>
+        public long EnqueueVerifiedNativeDownload(string url, string savePath, string algorithm,
+            string expectedHash, int connections = 4, long chunkSize = 0, string[] chunkHashes = null,
+            EDownloadPriority priority = EDownloadPriority.Normal)
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<long>("enqueueVerifiedDownload", url, savePath, connections,
+                (int)priority, algorithm, expectedHash ?? string.Empty, chunkSize, chunkHashes ?? Array.Empty<string>());
+        }
+
+        /// <summary>
+        /// 添加从多个 CDN 镜像下载同一文件的原生分段下载任务
+        /// <para>开始前并行探测各镜像的首字节时间, 分段分摊到响应最快的几个镜像上</para>
+        /// <para>镜像出错或卡住时分段从断点换到其它镜像继续; 大小与多数镜像不一致的镜像不参与下载</para>
+        /// </summary>
+        /// <param name="urls">镜像地址, 任务以第一个地址标识</param>
+        /// <param name="savePath">保存路径</param>
+        /// <param name="connections">并行连接数上限 (1~8)</param>
+        /// <param name="priority">调度优先级</param>
+        /// <param name="algorithm">摘要算法; 多个镜像时必须提供, 连同 expectedHash 或 chunkHashes 确认各镜像内容一致</param>
+        /// <param name="expectedHash">整个文件的期望摘要 (十六进制)</param>
+        /// <param name="chunkSize">分块大小 (字节), 0 表示不分块校验</param>
+        /// <param name="chunkHashes">各分块的期望摘要, 按文件顺序排列</param>
+        /// <returns>任务 ID</returns>
+        public long EnqueueNativeMirroredDownload(string[] urls, string savePath, int connections = 4,
+            EDownloadPriority priority = EDownloadPriority.Normal, string algorithm = null,
+            string expectedHash = null, long chunkSize = 0, string[] chunkHashes = null)
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<long>("enqueueMirroredDownload", urls, savePath, connections,
+                (int)priority, algorithm ?? string.Empty, expectedHash ?? string.Empty, chunkSize,
+                chunkHashes ?? Array.Empty<string>());
+        }
+
+        /// <summary>
+        /// 添加边下载边解压的资源包任务
+        /// <para>归档不落盘, 条目直接写入最终位置, 安装时的闪存读写量约减半</para>
+        /// <para>zip 中断后从最近一个已落盘的条目继续, gzip 中断后从头开始</para>
+        /// <para>条目 CRC32 不符为可重试的 Integrity 错误, 自动重试从最近完成的条目之后继续, 重试用尽后任务以 Integrity 失败;
+        /// 归档格式无效、含加密或不支持的条目、条目路径越出目标目录时以 Corrupt 失败, 不重试</para>
+        /// </summary>
+        /// <param name="url">归档地址</param>
+        /// <param name="outputPath">zip 为解压目录, gzip 为解压后的文件路径</param>
+        /// <param name="format">归档格式: zip / gzip</param>
+        /// <param name="priority">调度优先级</param>
+        /// <returns>任务 ID</returns>
+        public long EnqueueNativeExtract(string url, string outputPath, string format = "zip",
+            EDownloadPriority priority = EDownloadPriority.Normal)
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<long>("enqueueExtract", url, outputPath, format, (int)priority);
+        }
+
+        /// <summary>
+        /// 添加差分补丁任务: 只下载补丁, 与本地旧文件合成新版本
+        /// <para>补丁为 bsdiff 4.3 交错布局 (ENDSLEY/BSDIFF43), 头部之后的数据不压缩或以 zlib 压缩 (需通过 zlibCompressed 指明), 不支持 bzip2</para>
+        /// <para>补丁本身格式错误时任务以 Corrupt 错误失败, 不会自动重试</para>
+        /// <para>新文件摘要与期望值一致后才原子替换; 摘要不符时任务以 Integrity 错误失败, 旧文件保持不变, 可改为下载完整文件</para>
+        /// </summary>
+        /// <param name="sourcePath">本地旧文件</param>
+        /// <param name="patchUrl">补丁地址</param>
+        /// <param name="savePath">新文件路径, 可以与 sourcePath 相同 (原地更新)</param>
+        /// <param name="algorithm">新文件的摘要算法: crc32 / md5 / sha256 / xxh64</param>
+        /// <param name="expectedHash">新文件的期望摘要 (十六进制)</param>
+        /// <param name="priority">调度优先级</param>
+        /// <param name="zlibCompressed">补丁头部之后的数据为 zlib 流</param>
+        /// <returns>任务 ID</returns>
+        public long EnqueueNativePatch(string sourcePath, string patchUrl, string savePath,
+            string algorithm, string expectedHash, EDownloadPriority priority = EDownloadPriority.Normal,
+            bool zlibCompressed = false)
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<long>("enqueuePatch", sourcePath, patchUrl, savePath, (int)priority,
+                algorithm, expectedHash, zlibCompressed);
+        }
+
+        /// <summary>
+        /// 一次调用批量添加小文件下载任务 (如上千个 AssetBundle)
+        /// <para>小文件不探测、不分段, 同一主机的请求复用 keep-alive 连接, 省去逐个文件的 TCP/TLS 握手</para>
+        /// </summary>
+        /// <param name="urls">下载地址</param>
+        /// <param name="savePaths">保存路径, 与 urls 一一对应</param>
+        /// <param name="priority">调度优先级</param>
+        /// <param name="algorithm">摘要算法, 为空时不校验</param>
+        /// <param name="expectedHashes">各文件的期望摘要, 与 urls 一一对应, 某项为空时该文件不校验</param>
+        /// <returns>各任务 ID, 与 urls 一一对应</returns>
+        public long[] EnqueueNativeBatch(string[] urls, string[] savePaths,
+            EDownloadPriority priority = EDownloadPriority.Normal, string algorithm = null,
+            string[] expectedHashes = null)
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<long[]>("enqueueBatch", urls, savePaths, (int)priority,
+                algorithm ?? string.Empty, expectedHashes ?? Array.Empty<string>());
+        }
+
+        /// <summary>
+        /// 从同一远程文件中取出多个切片 (如打包在一个大文件中的小资源), 分别保存为文件
+        /// <para>切片间隔不超过 gapBytes 时合并为一个区间, 多个区间以一个 multipart/byteranges 请求取回</para>
+        /// <para>服务器不支持多区间时自动改为每个区间一个 Range 请求, 不支持 Range 时以一个完整 GET 读取</para>
+        /// <para>返回一个任务 ID, 所有切片完成后任务完成; 任务不持久化, 进程重启后需重新添加</para>
+        /// </summary>
+        /// <param name="url">远程文件地址</param>
+        /// <param name="offsets">各切片在远程文件中的偏移</param>
+        /// <param name="lengths">各切片的长度</param>
+        /// <param name="savePaths">各切片的保存路径, 与 offsets 一一对应, 不能重复, 也不能是未结束任务正在写入的路径</param>
+        /// <param name="gapBytes">合并间隔 (字节), 小于 0 时使用默认值 16KB</param>
+        /// <param name="connections">并行请求数上限 (1~8)</param>
+        /// <param name="priority">调度优先级</param>
+        /// <returns>任务 ID</returns>
+        public long EnqueueNativeRanges(string url, long[] offsets, long[] lengths, string[] savePaths,
+            long gapBytes = -1, int connections = 2, EDownloadPriority priority = EDownloadPriority.Normal)
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<long>("enqueueRanges", url, offsets, lengths, savePaths, gapBytes,
+                connections, (int)priority);
+        }
+
+        /// <summary>
+        /// 添加由内容缓存管理的下载任务, 按摘要去重
+        /// <para>文件保存在缓存目录中; 缓存中已有该内容时不发出网络请求, 直接返回一个已完成的任务</para>
+        /// <para>完成后用 GetNativeCachedPath 取得路径, 不要移动或删除该文件; 最近 30 秒内访问过的对象不会被淘汰</para>
+        /// </summary>
+        /// <param name="urls">下载地址, 多个时为镜像</param>
+        /// <param name="algorithm">摘要算法: md5 / sha256 / xxh64 (crc32 不能作为内容地址)</param>
+        /// <param name="hash">整个文件的期望摘要 (十六进制)</param>
+        /// <param name="connections">并行连接数上限 (1~8)</param>
+        /// <param name="priority">调度优先级</param>
+        /// <returns>任务 ID</returns>
+        public long EnqueueCachedNativeDownload(string[] urls, string algorithm, string hash, int connections = 4,
+            EDownloadPriority priority = EDownloadPriority.Normal)
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<long>("enqueueCachedDownload", urls, connections, (int)priority,
+                algorithm, hash);
+        }
+
+        /// <summary>
+        /// 批量添加由内容缓存管理的小文件任务, 规则同 EnqueueCachedNativeDownload
+        /// <para>同一批中摘要相同的文件只下载一次, 返回同一个任务 ID</para>
+        /// </summary>
+        /// <param name="urls">下载地址</param>
+        /// <param name="algorithm">摘要算法: md5 / sha256 / xxh64</param>
+        /// <param name="hashes">各文件的期望摘要, 与 urls 一一对应</param>
+        /// <param name="priority">调度优先级</param>
+        /// <returns>各任务 ID, 与 urls 一一对应</returns>
+        public long[] EnqueueCachedNativeBatch(string[] urls, string algorithm, string[] hashes,
+            EDownloadPriority priority = EDownloadPriority.Normal)
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<long[]>("enqueueCachedBatch", urls, (int)priority, algorithm, hashes);
+        }
+
+        /// <summary>
+        /// 查询内容在缓存中的路径, 同时记录一次访问 (推迟其被淘汰)
+        /// </summary>
+        /// <returns>文件路径, 不在缓存中时返回 null</returns>
+        public string GetNativeCachedPath(string algorithm, string hash)
+        {
+            EnsureInitialized();
+            string path = _bridge.CallStatic<string>("getCachedPath", algorithm, hash);
+            return string.IsNullOrEmpty(path) ? null : path;
+        }
+
+        /// <summary>
+        /// 设置内容缓存的总大小预算, 超出部分在后台淘汰
+        /// </summary>
+        /// <param name="bytes">预算字节数, 小于等于 0 时恢复默认值 (512MB)</param>
+        public void SetNativeContentCacheBudget(long bytes)
+        {
+            EnsureInitialized();
+            _bridge.CallStatic("setContentCacheBudget", bytes);
+        }
+
+        /// <summary>
+        /// 获取内容缓存的状态 (对象数、占用、命中和淘汰计数)
+        /// </summary>
+        /// <returns>获取失败时返回 false</returns>
+        public bool GetNativeContentCacheState(out NativeContentCacheState state)
+        {
+            EnsureInitialized();
+            return NativeContentCacheState.TryParse(_bridge.CallStatic<long[]>("getContentCacheState"), out state);
+        }
+
+        /// <summary>
+        /// 配置原生下载的写盘策略
+        /// </summary>
+        /// <param name="bufferSize">读写缓冲区大小 (8KB~1MB), 缓冲区为池化的直接内存</param>
+        /// <param name="preallocate">开始下载前是否按文件大小预分配磁盘空间</param>
+        public void SetNativeWriteOptions(int bufferSize, bool preallocate)
+        {
+            EnsureInitialized();
+            _bridge.CallStatic("setDownloadBufferSize", bufferSize);
+            _bridge.CallStatic("setPreallocateFiles", preallocate);
+        }
+
+        /// <summary>
+        /// 运行时修改原生下载任务的优先级
+        /// <para>提高优先级可能立即抢占正在运行的低优先级任务, 降低优先级可能让出并发槽位</para>
+        /// </summary>
+        /// <returns>任务不存在或已结束时返回 false</returns>
+        public bool SetNativeDownloadPriority(long taskId, EDownloadPriority priority)
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<bool>("setDownloadPriority", taskId, (int)priority);
+        }
+
+        /// <summary>
+        /// 设置原生下载的总限速 (如对局中限制后台下载)
+        /// </summary>
+        /// <param name="bytesPerSecond">字节/秒, 小于等于 0 表示不限速</param>
+        public void SetNativeGlobalRateLimit(long bytesPerSecond)
+        {
+            EnsureInitialized();
+            _bridge.CallStatic("setGlobalRateLimit", bytesPerSecond);
+        }
+
+        /// <summary>
+        /// 设置单个原生下载任务的限速
+        /// </summary>
+        /// <param name="taskId">任务 ID</param>
+        /// <param name="bytesPerSecond">字节/秒, 小于等于 0 表示不限速</param>
+        /// <returns>任务不存在时返回 false</returns>
+        public bool SetNativeTaskRateLimit(long taskId, long bytesPerSecond)
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<bool>("setTaskRateLimit", taskId, bytesPerSecond);
+        }
+
+        /// <summary>
+        /// 取消原生下载任务
+        /// </summary>
+        /// <returns>任务存在且尚未结束时返回 true</returns>
+        public bool CancelNativeDownload(long taskId)
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<bool>("cancelDownload", taskId);
+        }
+
+        /// <summary>
+        /// 查询原生下载任务状态
+        /// </summary>
+        /// <param name="taskId">任务 ID</param>
+        /// <param name="status">任务状态</param>
+        /// <param name="progress">下载进度</param>
+        /// <param name="error">错误类型, 仅在 status 为 Failed 时有意义</param>
+        /// <returns>任务不存在时返回 false</returns>
+        public bool QueryNativeDownload(long taskId, out EDownloadStatus status,
+            out DownloadProgress progress, out EDownloadError error)
+        {
+            EnsureInitialized();
+            var state = _bridge.CallStatic<long[]>("queryDownload", taskId);
+            if (state == null || state.Length < 4)
+            {
+                status = EDownloadStatus.Failed;
+                progress = default;
+                error = EDownloadError.Unknown;
+                return false;
+            }
+
+            status = (EDownloadStatus)state[0];
+            error = state[1] < 0 ? EDownloadError.Unknown : (EDownloadError)state[1];
+            progress = new DownloadProgress { BytesDownloaded = state[2], TotalBytes = state[3] };
+            return true;
+        }
+
+        /// <summary>
+        /// 批量查询原生下载任务状态, 一次 JNI 调用完成
+        /// <para>结果数组由调用方提供, 长度不小于 taskIds; 不存在的任务状态为 Failed, 错误为 Unknown</para>
+        /// </summary>
+        /// <returns>查询失败时返回 false</returns>
+        public bool QueryNativeDownloads(long[] taskIds, EDownloadStatus[] statuses,
+            DownloadProgress[] progresses, EDownloadError[] errors)
+        {
+            EnsureInitialized();
+            var state = _bridge.CallStatic<long[]>("queryDownloads", taskIds);
+            if (state == null || state.Length < taskIds.Length * 4) return false;
+
+            for (int i = 0; i < taskIds.Length; i++)
+            {
+                int offset = i * 4;
+                bool exists = state[offset] >= 0;
+                statuses[i] = exists ? (EDownloadStatus)state[offset] : EDownloadStatus.Failed;
+                errors[i] = state[offset + 1] < 0 ? EDownloadError.Unknown : (EDownloadError)state[offset + 1];
+                progresses[i] = new DownloadProgress
+                    { BytesDownloaded = state[offset + 2], TotalBytes = state[offset + 3] };
+            }
+            return true;
+        }
+
+        /// <summary>
+        /// 获取原生下载引擎的运行指标 (吞吐量、首字节/DNS/连接/TLS/卡顿直方图、重试、锁持有时长)
+        /// <para>一次 JNI 调用取得全部指标, 可每秒轮询; 传入同一个实例复用, 仅快照数组本身会分配</para>
+        /// <para>DnsCacheHits 是按解析记录的 TTL 估计的系统 DNS 缓存命中次数 (原生侧不缓存地址), Dns 直方图只含后台预解析的样本</para>
+        /// </summary>
+        /// <param name="stats">待填充的指标对象</param>
+        /// <returns>获取失败时返回 false</returns>
+        public bool GetNativeStats(NativeDownloadStats stats)
+        {
+            EnsureInitialized();
+            var data = _bridge.CallStatic<long[]>("getStats");
+            return stats != null && stats.Apply(data);
+        }
+
+        /// <summary>
+        /// 获取自适应并发控制器的状态 (连接上限、吞吐、加减窗次数), 用于日志和遥测
+        /// </summary>
+        /// <returns>获取失败时返回 false</returns>
+        public bool GetNativeConcurrencyState(out NativeConcurrencyState state)
+        {
+            EnsureInitialized();
+            return NativeConcurrencyState.TryParse(_bridge.CallStatic<long[]>("getConcurrencyState"), out state);
+        }
+
+        /// <summary>
+        /// 获取 Unity 进程侧的诊断数据 (通知提交/发布次数、Java 堆与 Native 堆用量), 用于压力测试
+        /// <para>引擎运行在独立进程时内存数据不含下载线程和缓冲区</para>
+        /// </summary>
+        /// <returns>获取失败时返回 false</returns>
+        public bool GetNativeDiagnostics(out NativeDiagnostics diagnostics)
+        {
+            EnsureInitialized();
+            return NativeDiagnostics.TryParse(_bridge.CallStatic<long[]>("getDiagnostics"), out diagnostics);
+        }
+
+        /// <summary>
+        /// 固定原生下载的总连接数, 用于与自适应策略对比测试
+        /// </summary>
+        /// <param name="limit">连接数, 小于等于 0 表示恢复自适应 (默认)</param>
+        public void SetNativeConnectionLimit(int limit)
+        {
+            EnsureInitialized();
+            _bridge.CallStatic("setConnectionLimit", limit);
+        }
+
+        /// <summary>
+        /// 原生下载引擎是否运行在独立进程中 (清单中为服务声明了 android:process)
+        /// <para>独立进程时每次调用都是一次 Binder 事务, 进度请用 QueryNativeDownloads 批量查询</para>
+        /// </summary>
+        public bool IsNativeDownloadIsolated()
+        {
+            EnsureInitialized();
+            return _bridge.CallStatic<bool>("isDownloadProcessIsolated");
+        }
+
+        /// <summary>
+        /// 移除已结束的原生下载任务记录
+        /// </summary>
+        public void RemoveNativeDownload(long taskId)
+        {
+            EnsureInitialized();
+            _bridge.CallStatic("removeDownload", taskId);
+        }
+
         #endregion
 
         #region Unity Callbacks
@@ -190,7 +641,8 @@ namespace UnityToolKit.Plugins.Download
         /// <summary> 是否存在未完成的下载任务 </summary>
         private bool HasActiveTasks()
         {
-            return _lastTotalCount > 0 && _lastCompletedCount < _lastTotalCount;
+            if (_lastTotalCount > 0 && _lastCompletedCount < _lastTotalCount) return true;
+            return _initialized && _bridge.CallStatic<bool>("hasActiveDownloads");
         }
 
         /// <summary> 根据配置判断当前是否应该显示通知 </summary>
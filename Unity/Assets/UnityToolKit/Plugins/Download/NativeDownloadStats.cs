@@ -0,0 +1,313 @@
+/*
+ * datetime     : 2026/10/18
+ * description  : Android 原生下载引擎运行指标
+ *                与 Java 端 DownloadStats / ConcurrencyController / DownloadBridge.getDiagnostics 的快照布局一一对应
+ */
+
+namespace UnityToolKit.Plugins.Download
+{
+    /// <summary>
+    /// 原生下载引擎的自适应并发 (AIMD) 状态
+    /// <para>与 Java 端 ConcurrencyController 的快照布局一一对应</para>
+    /// </summary>
+    public struct NativeConcurrencyState
+    {
+        /// <summary> 快照数组长度 </summary>
+        public const int SnapshotSize = 8;
+
+        /// <summary> 当前连接上限 </summary>
+        public long Limit;
+
+        /// <summary> 活跃连接数 </summary>
+        public long Active;
+
+        /// <summary> 上个评估窗口的总吞吐 (字节/秒) </summary>
+        public long Goodput;
+
+        /// <summary> 上个评估窗口的单连接吞吐 (字节/秒) </summary>
+        public long GoodputPerConnection;
+
+        /// <summary> 累计加窗次数 </summary>
+        public long Increases;
+
+        /// <summary> 累计减窗次数 (含拥塞减半和试探撤回) </summary>
+        public long Decreases;
+
+        /// <summary> 累计拥塞信号数 (超时、HTTP 429/503) </summary>
+        public long CongestionEvents;
+
+        /// <summary> 是否自适应; 为 false 时上限由 SetNativeConnectionLimit 固定 </summary>
+        public bool Adaptive;
+
+        internal static bool TryParse(long[] data, out NativeConcurrencyState state)
+        {
+            state = default;
+            if (data == null || data.Length < SnapshotSize) return false;
+
+            state.Limit = data[0];
+            state.Active = data[1];
+            state.Goodput = data[2];
+            state.GoodputPerConnection = data[3];
+            state.Increases = data[4];
+            state.Decreases = data[5];
+            state.CongestionEvents = data[6];
+            state.Adaptive = data[7] != 0;
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// Unity 进程侧的诊断数据 (通知发布计数、内存用量)
+    /// <para>与 Java 端 DownloadBridge.getDiagnostics 的返回布局一一对应, 用于压力测试和内存排查</para>
+    /// </summary>
+    public struct NativeDiagnostics
+    {
+        /// <summary> 快照数组长度 </summary>
+        public const int SnapshotSize = 4;
+
+        /// <summary> 通知累计提交次数 (含被合并和丢弃的更新) </summary>
+        public long NotificationsSubmitted;
+
+        /// <summary> 通知累计实际发布次数 </summary>
+        public long NotificationsPosted;
+
+        /// <summary> Java 堆已用字节数 </summary>
+        public long JavaHeapBytes;
+
+        /// <summary> Native 堆已分配字节数 (含下载缓冲区等直接内存) </summary>
+        public long NativeHeapBytes;
+
+        internal static bool TryParse(long[] data, out NativeDiagnostics diagnostics)
+        {
+            diagnostics = default;
+            if (data == null || data.Length < SnapshotSize) return false;
+
+            diagnostics.NotificationsSubmitted = data[0];
+            diagnostics.NotificationsPosted = data[1];
+            diagnostics.JavaHeapBytes = data[2];
+            diagnostics.NativeHeapBytes = data[3];
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// 内容缓存的状态
+    /// <para>与 Java 端 DownloadBridge.getContentCacheState 的返回布局一一对应</para>
+    /// </summary>
+    public struct NativeContentCacheState
+    {
+        /// <summary> 快照数组长度 </summary>
+        public const int SnapshotSize = 7;
+
+        /// <summary> 缓存中的对象数 </summary>
+        public long Entries;
+
+        /// <summary> 对象总字节数 </summary>
+        public long TotalBytes;
+
+        /// <summary> 总大小预算 (字节) </summary>
+        public long BudgetBytes;
+
+        /// <summary> 累计命中次数 (含 GetNativeCachedPath 查询) </summary>
+        public long Hits;
+
+        /// <summary> 累计未命中次数 </summary>
+        public long Misses;
+
+        /// <summary> 累计淘汰的对象数 </summary>
+        public long Evictions;
+
+        /// <summary> 累计淘汰的字节数 </summary>
+        public long EvictedBytes;
+
+        /// <summary> 命中率, 无查询时为 0 </summary>
+        public double HitRate => Hits + Misses > 0 ? (double)Hits / (Hits + Misses) : 0;
+
+        internal static bool TryParse(long[] data, out NativeContentCacheState state)
+        {
+            state = default;
+            if (data == null || data.Length < SnapshotSize) return false;
+
+            state.Entries = data[0];
+            state.TotalBytes = data[1];
+            state.BudgetBytes = data[2];
+            state.Hits = data[3];
+            state.Misses = data[4];
+            state.Evictions = data[5];
+            state.EvictedBytes = data[6];
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// 毫秒直方图
+    /// <para>桶 0 为 &lt;1ms, 桶 i 为 [2^(i-1), 2^i) ms, 最后一个桶包含 &gt;=16384ms 的全部样本</para>
+    /// </summary>
+    public sealed class LatencyHistogram
+    {
+        /// <summary> 桶数量 </summary>
+        public const int BucketCount = 16;
+
+        /// <summary> 快照中每个直方图占用的元素数 (count, sum, max, 各桶) </summary>
+        internal const int Size = 3 + BucketCount;
+
+        /// <summary> 样本数 </summary>
+        public long Count { get; private set; }
+
+        /// <summary> 样本总和 (毫秒) </summary>
+        public long TotalMs { get; private set; }
+
+        /// <summary> 最大值 (毫秒) </summary>
+        public long MaxMs { get; private set; }
+
+        /// <summary> 各桶样本数 </summary>
+        public readonly long[] Buckets = new long[BucketCount];
+
+        /// <summary> 平均值 (毫秒), 无样本时为 0 </summary>
+        public double AverageMs => Count > 0 ? (double)TotalMs / Count : 0;
+
+        /// <summary>
+        /// 估算分位数, 返回所在桶的上界 (毫秒)
+        /// </summary>
+        /// <param name="quantile">0~1, 如 0.95</param>
+        public long Percentile(double quantile)
+        {
+            if (Count == 0) return 0;
+
+            long target = (long)System.Math.Ceiling(Count * quantile);
+            long seen = 0;
+            for (int i = 0; i < BucketCount - 1; i++)
+            {
+                seen += Buckets[i];
+                if (seen >= target) return 1L << i;
+            }
+            return MaxMs;
+        }
+
+        internal void Apply(long[] data, int offset)
+        {
+            Count = data[offset];
+            TotalMs = data[offset + 1];
+            MaxMs = data[offset + 2];
+            System.Array.Copy(data, offset + 3, Buckets, 0, BucketCount);
+        }
+    }
+
+    /// <summary>
+    /// 原生下载引擎运行指标快照
+    /// <para>通过 AndroidDownloadHandler.GetNativeStats 填充, 实例可复用以避免每次轮询分配</para>
+    /// </summary>
+    public sealed class NativeDownloadStats
+    {
+        #region Layout
+
+        private const int IdxUptimeMs = 0;
+        private const int IdxBytesPerSecond = 1;
+        private const int IdxTotalBytes = 2;
+        private const int IdxActiveConnections = 3;
+        private const int IdxConnectionsOpened = 4;
+        private const int IdxRetries = 5;
+        private const int IdxWakeLockMs = 6;
+        private const int IdxWifiLockMs = 7;
+        private const int IdxDnsCacheHits = 8;
+        private const int IdxTlsHandshakes = 9;
+        private const int IdxTlsResumed = 10;
+        private const int HeaderSize = 11;
+        private const int HistogramCount = 5;
+
+        /// <summary> 快照数组长度 </summary>
+        public const int SnapshotSize = HeaderSize + HistogramCount * LatencyHistogram.Size;
+
+        #endregion
+
+        #region Properties
+
+        /// <summary> 引擎启动后经过的时间 (毫秒) </summary>
+        public long UptimeMs { get; private set; }
+
+        /// <summary> 吞吐量 (字节/秒), 约为最近 5 秒的指数加权平均 </summary>
+        public long BytesPerSecond { get; private set; }
+
+        /// <summary> 累计接收字节数 </summary>
+        public long TotalBytes { get; private set; }
+
+        /// <summary> 当前正在传输的连接数 </summary>
+        public long ActiveConnections { get; private set; }
+
+        /// <summary> 累计发起的分段请求数 (复用 keep-alive 连接的请求同样计入) </summary>
+        public long ConnectionsOpened { get; private set; }
+
+        /// <summary> 累计分段重试次数 </summary>
+        public long Retries { get; private set; }
+
+        /// <summary> WakeLock 累计持有时长 (毫秒) </summary>
+        public long WakeLockMs { get; private set; }
+
+        /// <summary> WifiLock 累计持有时长 (毫秒) </summary>
+        public long WifiLockMs { get; private set; }
+
+        /// <summary>
+        /// 连接时主机的 DNS 解析记录仍在有效期内的次数
+        /// <para>原生侧只记录主机和解析时刻, 不缓存地址, 连接仍由系统解析器完成; 该值是按 TTL 估计的系统缓存命中次数, 并非实际命中数</para>
+        /// </summary>
+        public long DnsCacheHits { get; private set; }
+
+        /// <summary> 新建 TLS 连接的握手次数 </summary>
+        public long TlsHandshakes { get; private set; }
+
+        /// <summary> 其中恢复已有会话 (简化握手) 的次数 </summary>
+        public long TlsResumed { get; private set; }
+
+        /// <summary> 首字节时间: 请求发出到收到响应头 </summary>
+        public readonly LatencyHistogram TimeToFirstByte = new LatencyHistogram();
+
+        /// <summary>
+        /// DNS 解析耗时, 样本只来自后台预解析 (启动时解析上次用过的主机, 以及过半 TTL 的刷新)
+        /// <para>下载线程不单独解析, 系统 DNS 缓存未命中时解析耗时计入 Connect; 未启用 DNS 记录时没有样本</para>
+        /// </summary>
+        public readonly LatencyHistogram Dns = new LatencyHistogram();
+
+        /// <summary> TCP 连接耗时 (无法区分时包含 TLS 握手; 系统 DNS 缓存未命中时包含解析) </summary>
+        public readonly LatencyHistogram Connect = new LatencyHistogram();
+
+        /// <summary> TLS 握手耗时 </summary>
+        public readonly LatencyHistogram Tls = new LatencyHistogram();
+
+        /// <summary> 卡顿时长: 两次读取之间超过 2 秒的间隔 (限速等待不计入) </summary>
+        public readonly LatencyHistogram Stall = new LatencyHistogram();
+
+        /// <summary> 最近一次的原始快照, 可直接用于遥测上报 </summary>
+        public long[] Raw { get; private set; }
+
+        #endregion
+
+        /// <summary>
+        /// 从 Java 端快照填充
+        /// </summary>
+        /// <returns>数据长度不符时返回 false</returns>
+        internal bool Apply(long[] data)
+        {
+            if (data == null || data.Length < SnapshotSize) return false;
+
+            Raw = data;
+            UptimeMs = data[IdxUptimeMs];
+            BytesPerSecond = data[IdxBytesPerSecond];
+            TotalBytes = data[IdxTotalBytes];
+            ActiveConnections = data[IdxActiveConnections];
+            ConnectionsOpened = data[IdxConnectionsOpened];
+            Retries = data[IdxRetries];
+            WakeLockMs = data[IdxWakeLockMs];
+            WifiLockMs = data[IdxWifiLockMs];
+            DnsCacheHits = data[IdxDnsCacheHits];
+            TlsHandshakes = data[IdxTlsHandshakes];
+            TlsResumed = data[IdxTlsResumed];
+
+            TimeToFirstByte.Apply(data, HeaderSize);
+            Dns.Apply(data, HeaderSize + LatencyHistogram.Size);
+            Connect.Apply(data, HeaderSize + LatencyHistogram.Size * 2);
+            Tls.Apply(data, HeaderSize + LatencyHistogram.Size * 3);
+            Stall.Apply(data, HeaderSize + LatencyHistogram.Size * 4);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.toolkit.imagepicker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 原生图片压缩器: 按目标文件大小二分搜索编码质量, 仍超限时逐步降低分辨率
+ * <p>
+ * 搜索策略与 C# 侧 ImageCompressor 一致 (质量上限 95、下限 10、精度 3, 每轮分辨率缩小为 0.75 倍, 最小 64 像素),
+ * 但以 Bitmap.compress 在后台线程执行, 不占用 Unity 主线程, 也省去 C# 侧读回文件再解码的一轮。
+ * </p>
+ * <p>支持 JPEG 和 WebP (有损) 输出; 一次压缩中各轮编码复用同一个缓冲区</p>
+ */
+final class ImageCompressor {
+
+    private static final String TAG = "ToolKit.ImagePicker";
+
+    static final int FORMAT_JPEG = 0;
+    static final int FORMAT_WEBP = 1;
+
+    private static final int QUALITY_MAX = 95;
+    private static final int QUALITY_MIN = 10;
+    private static final int QUALITY_SEARCH_PRECISION = 3;
+    private static final float RESOLUTION_SHRINK_FACTOR = 0.75f;
+    private static final int MIN_DIMENSION = 64;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ToolKit-ImageCompress");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+
+    private ImageCompressor() {
+    }
+
+    /**
+     * 压缩参数 (对应 C# 的 CompressConfig)
+     */
+    static final class Options {
+        int maxWidth;
+        int maxHeight;
+        int quality = 85;
+        long maxFileSize;
+        int format = FORMAT_JPEG;
+
+        /**
+         * 从选图配置中读取压缩参数
+         * <p>选图结果要能被 C# 端的 Texture2D.LoadImage 加载 (只支持 PNG/JPEG), 因此固定输出 JPEG, 忽略 compressFormat</p>
+         *
+         * @return 未启用压缩时返回 null
+         */
+        static Options fromConfig(JSONObject config) {
+            if (!config.optBoolean("compress", false)) return null;
+            Options options = parse(config);
+            options.format = FORMAT_JPEG;
+            return options;
+        }
+
+        static Options parse(JSONObject config) {
+            Options options = new Options();
+            options.maxWidth = config.optInt("compressMaxWidth", 0);
+            options.maxHeight = config.optInt("compressMaxHeight", 0);
+            options.quality = config.optInt("compressQuality", 85);
+            options.maxFileSize = config.optLong("compressMaxFileSize", 0);
+            options.format = config.optInt("compressFormat", FORMAT_JPEG);
+            return options;
+        }
+    }
+
+    /**
+     * 压缩结果回调, 在压缩线程上调用
+     */
+    interface Callback {
+        void onSuccess(String filePath, int width, int height, long fileSize);
+
+        /**
+         * @param code 错误码 (与 C# EImagePickerError 一致)
+         */
+        void onFailed(int code, String detail);
+    }
+
+    // ---- 入口 ----
+
+    /**
+     * 在调用线程上压缩已解码的 Bitmap, 完成后回收它 (调用方需已在后台线程, 如选图的处理线程)
+     * <p>线程被中断时在两轮缩放之间放弃, 以错误码 60 回调</p>
+     */
+    static void compressNow(Bitmap bitmap, Options options, File outputDir, Callback callback) {
+        try {
+            deliver(compress(bitmap, options, outputDir), callback);
+        } catch (Throwable e) {
+            Log.e(TAG, "压缩失败", e);
+            callback.onFailed(60, e.getMessage());
+        }
+    }
+
+    /**
+     * 在后台线程压缩图片文件: 按目标尺寸降采样解码并修正 EXIF 方向后压缩
+     * <p>源文件的格式、尺寸和大小均已满足要求且无需旋转时直接返回源文件</p>
+     */
+    static void compressFileAsync(final String sourcePath, final Options options, final File outputDir,
+                                  final Callback callback) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compressFile(sourcePath, options, outputDir, callback);
+                } catch (Throwable e) {
+                    Log.e(TAG, "压缩失败", e);
+                    callback.onFailed(60, e.getMessage());
+                }
+            }
+        });
+    }
+
+    private static void compressFile(String sourcePath, Options options, File outputDir,
+                                     Callback callback) throws IOException {
+        File file = new File(sourcePath);
+        if (!file.isFile() || file.length() == 0) {
+            callback.onFailed(31, sourcePath);
+            return;
+        }
+
+        // 尺寸、格式和方向从文件头一次读出
+        ImageSource source = ImageSource.fromFile(file);
+        if (source.width <= 0 || source.height <= 0) {
+            callback.onFailed(30, null);
+            return;
+        }
+
+        int rotation = source.rotation;
+        if (rotation == 0 && canSkip(source, options, 0)) {
+            callback.onSuccess(sourcePath, source.width, source.height, source.size);
+            return;
+        }
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = sampleSize(source.width, source.height,
+                options.maxWidth, options.maxHeight, rotation);
+        Bitmap bitmap = BitmapFactory.decodeFile(sourcePath, opts);
+        if (bitmap == null) {
+            callback.onFailed(30, null);
+            return;
+        }
+
+        float scale = fitScale(bitmap.getWidth(), bitmap.getHeight(),
+                options.maxWidth, options.maxHeight, rotation);
+        if (rotation != 0 || scale < 1f) {
+            bitmap = transform(bitmap, rotation, scale);
+        }
+        deliver(compress(bitmap, options, outputDir), callback);
+    }
+
+    /**
+     * 源文件已是目标格式, 且尺寸和大小均在限制内
+     *
+     * @param rotation 显示时的旋转角度, 限制按旋转后的宽高判断
+     */
+    static boolean canSkip(ImageSource source, Options options, int rotation) {
+        String mime = options.format == FORMAT_WEBP ? "image/webp" : "image/jpeg";
+        if (!mime.equals(source.mimeType)) return false;
+        if (options.maxFileSize > 0 && (source.size < 0 || source.size > options.maxFileSize)) return false;
+        return fitScale(source.width, source.height, options.maxWidth, options.maxHeight, rotation) >= 1f;
+    }
+
+    private static void deliver(Result result, Callback callback) {
+        callback.onSuccess(result.file.getAbsolutePath(), result.width, result.height, result.file.length());
+    }
+
+    // ---- 压缩 ----
+
+    private static final class Result {
+        File file;
+        int width;
+        int height;
+    }
+
+    /**
+     * 缩放到最大尺寸内, 按目标大小搜索质量, 写入输出目录 (同步执行, 回收 source)
+     */
+    private static Result compress(Bitmap source, Options options, File outputDir) throws IOException {
+        Bitmap current = source;
+        try {
+            float scale = fitScale(source.getWidth(), source.getHeight(), options.maxWidth, options.maxHeight, 0);
+            if (scale < 1f) {
+                current = Bitmap.createScaledBitmap(source, Math.max(1, Math.round(source.getWidth() * scale)),
+                        Math.max(1, Math.round(source.getHeight() * scale)), true);
+            }
+
+            Bitmap.CompressFormat format = compressFormat(options.format);
+            int highest = Math.min(options.quality > 0 ? options.quality : 85, QUALITY_MAX);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(256 * 1024);
+
+            if (options.maxFileSize <= 0) {
+                encode(current, format, highest, buffer);
+                return write(buffer.toByteArray(), current, options.format, outputDir);
+            }
+
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("压缩已取消");
+                }
+                byte[] best = searchQuality(current, format, highest, options.maxFileSize, buffer);
+                if (best != null) {
+                    return write(best, current, options.format, outputDir);
+                }
+
+                // 当前分辨率下最低质量仍超限 → 缩小分辨率 (总是从 source 缩放, 避免多次重采样累积模糊)
+                int width = Math.max(MIN_DIMENSION, Math.round(current.getWidth() * RESOLUTION_SHRINK_FACTOR));
+                int height = Math.max(MIN_DIMENSION, Math.round(current.getHeight() * RESOLUTION_SHRINK_FACTOR));
+                if (width >= current.getWidth() && height >= current.getHeight()) {
+                    Log.w(TAG, "已达最小分辨率 " + current.getWidth() + "x" + current.getHeight()
+                            + ", 无法满足目标大小 " + options.maxFileSize + " bytes, 使用最低质量");
+                    encode(current, format, QUALITY_MIN, buffer);
+                    return write(buffer.toByteArray(), current, options.format, outputDir);
+                }
+
+                Bitmap next = Bitmap.createScaledBitmap(source, width, height, true);
+                if (current != source) current.recycle();
+                current = next;
+            }
+        } finally {
+            if (current != source) current.recycle();
+            source.recycle();
+        }
+    }
+
+    /**
+     * 在 [QUALITY_MIN, highest] 内二分搜索不超过 maxFileSize 的最高质量
+     *
+     * @return 满足大小的编码结果, 最低质量仍超限时返回 null
+     */
+    private static byte[] searchQuality(Bitmap bitmap, Bitmap.CompressFormat format, int highest,
+                                        long maxFileSize, ByteArrayOutputStream buffer) {
+        int low = QUALITY_MIN;
+        int high = highest;
+        int quality = (low + high) / 2;
+        byte[] best = null;
+
+        while (true) {
+            encode(bitmap, format, quality, buffer);
+            if (buffer.size() <= maxFileSize) {
+                best = buffer.toByteArray();
+                low = quality + 1;
+            } else {
+                high = quality - 1;
+            }
+            if (low > high || high - low < QUALITY_SEARCH_PRECISION) return best;
+            quality = (low + high) / 2;
+        }
+    }
+
+    private static void encode(Bitmap bitmap, Bitmap.CompressFormat format, int quality,
+                               ByteArrayOutputStream buffer) {
+        buffer.reset();
+        bitmap.compress(format, quality, buffer);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat compressFormat(int format) {
+        if (format != FORMAT_WEBP) return Bitmap.CompressFormat.JPEG;
+        // Android 11 起 WEBP 被拆分为有损/无损两种, 之前的 WEBP 即为有损 (quality < 100 时)
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    private static Result write(byte[] data, Bitmap bitmap, int format, File outputDir) throws IOException {
+        if (!outputDir.exists()) outputDir.mkdirs();
+        String ext = format == FORMAT_WEBP ? ".webp" : ".jpg";
+        File file = new File(outputDir, "compressed_" + System.currentTimeMillis() + ext);
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+
+        Result result = new Result();
+        result.file = file;
+        result.width = bitmap.getWidth();
+        result.height = bitmap.getHeight();
+        return result;
+    }
+
+    // ---- 缩放与方向 (ImagePickerActivity 共用) ----
+
+    /**
+     * 不使结果小于目标尺寸的最大 2 的幂次降采样倍数
+     */
+    static int sampleSize(int width, int height, int targetWidth, int targetHeight, int rotation) {
+        float scale = fitScale(width, height, targetWidth, targetHeight, rotation);
+        int sample = 1;
+        while (scale * sample * 2 <= 1f) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /**
+     * 使图片 (旋转后) 放入目标尺寸的缩放比例, 不放大; 目标为 0 的一边不限制
+     */
+    static float fitScale(int width, int height, int targetWidth, int targetHeight, int rotation) {
+        if (rotation == 90 || rotation == 270) {
+            int t = width;
+            width = height;
+            height = t;
+        }
+        float scale = 1f;
+        if (targetWidth > 0 && width > targetWidth) {
+            scale = Math.min(scale, (float) targetWidth / width);
+        }
+        if (targetHeight > 0 && height > targetHeight) {
+            scale = Math.min(scale, (float) targetHeight / height);
+        }
+        return scale;
+    }
+
+    /**
+     * 对 Bitmap 应用旋转和缩放 (一次生成新 Bitmap), 并回收原 Bitmap
+     */
+    static Bitmap transform(Bitmap source, int degrees, float scale) {
+        Matrix matrix = new Matrix();
+        if (scale < 1f) {
+            matrix.postScale(scale, scale);
+        }
+        matrix.postRotate(degrees);
+        Bitmap transformed = Bitmap.createBitmap(source, 0, 0,
+                source.getWidth(), source.getHeight(), matrix, true);
+        if (transformed != source) {
+            source.recycle();
+        }
+        return transformed;
+    }
+
+    /**
+     * EXIF 方向值转换为顺时针旋转角度 (0, 90, 180, 270), 镜像方向不处理
+     */
+    static int orientationToDegrees(int orientation) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:  return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180: return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270: return 270;
+            default: return 0;
+        }
+    }
+}
@@ -2,14 +2,10 @@ package com.toolkit.imagepicker;
 
 import android.Manifest;
 import android.app.Activity;
-import android.content.ContentResolver;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
-import android.media.ExifInterface;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -24,13 +20,24 @@ import org.json.JSONObject;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 图片选择/拍照处理 Activity
  * <p>
- * 透明 Activity, 统一处理权限请求 → 打开相机/图库 → (可选) uCrop 裁剪 → 返回结果给 Unity。
- * 压缩功能已移至 Unity C# 侧统一处理, 保证跨平台一致性。
+ * 透明 Activity, 统一处理权限请求 → 打开相机/图库 → (可选) uCrop 裁剪 → (可选) 压缩 → 返回结果给 Unity。
+ * 启用压缩时由 {@link ImageCompressor} 按目标大小编码, 直接返回最终文件。
+ * </p>
+ * <p>
+ * 拿到图片后的校验、解码、变换和编码都在处理线程上执行, UI 线程只负责启动系统界面和结束 Activity。
+ * Activity 被关闭 (返回键等) 时取消进行中的处理并回收 Bitmap, 结果只会向 Unity 发送一次。
  * </p>
  */
 public class ImagePickerActivity extends Activity {
@@ -44,11 +51,35 @@ public class ImagePickerActivity extends Activity {
     private static final int PERMISSION_REQUEST_CAMERA = 2001;
     private static final int PERMISSION_REQUEST_STORAGE = 2002;
 
+    /**
+     * 图片处理线程: 单线程, 队列有界
+     * <p>同一时间只有一个选图流程, 队列积压说明之前的任务仍未结束, 此时直接拒绝新任务</p>
+     */
+    private static final ThreadPoolExecutor PROCESS_EXECUTOR = new ThreadPoolExecutor(1, 1,
+            30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(2), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ToolKit-ImagePicker");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+
+    static {
+        PROCESS_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
     private JSONObject _config;
     private Uri _cameraOutputUri;
     private File _cameraOutputFile;
     private boolean _isWaitingForPermission;
 
+    private Future<?> _task;
+    private volatile boolean _cancelled;
+    /** 当前图片来源, 裁剪期间保留原图的落盘副本, Activity 销毁时删除 */
+    private volatile ImageSource _source;
+    private final AtomicBoolean _delivered = new AtomicBoolean();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -69,6 +100,22 @@ public class ImagePickerActivity extends Activity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        _cancelled = true;
+        if (_task != null) {
+            _task.cancel(true);
+        }
+        if (_source != null) {
+            _source.close();
+        }
+        // 用户中途退出: 仍要回调 Unity, 否则 C# 侧的回调永远等不到结果
+        if (isFinishing() && _delivered.compareAndSet(false, true)) {
+            ImagePickerBridge.sendToUnity("OnImagePickerCancelled", "");
+        }
+        super.onDestroy();
+    }
+
     // ---- 权限处理 ----
 
     /**
@@ -229,7 +276,7 @@ public class ImagePickerActivity extends Activity {
             sendFailed(31, null);
             return;
         }
-        processImage(Uri.fromFile(_cameraOutputFile));
+        processInBackground(Uri.fromFile(_cameraOutputFile), false);
     }
 
     private void handleGalleryResult(Intent data) throws Exception {
@@ -237,7 +284,7 @@ public class ImagePickerActivity extends Activity {
             sendFailed(31, null);
             return;
         }
-        processImage(data.getData());
+        processInBackground(data.getData(), false);
     }
 
     private void handleCropResult(Intent data) throws Exception {
@@ -262,60 +309,135 @@ public class ImagePickerActivity extends Activity {
         }
 
         // 裁剪后保存返回
-        saveAndReturn(resultUri);
+        processInBackground(resultUri, true);
     }
 
     // ---- 图片处理流程 ----
 
     /**
-     * 处理选择/拍照的图片: 约束校验 → 裁剪 → 压缩 → 返回
+     * 把图片处理提交到处理线程
+     *
+     * @param cropped 已完成裁剪 (或跳过裁剪), 只需保存返回
      */
-    private void processImage(Uri imageUri) throws Exception {
-        // 1. 解码图片尺寸 (不加载完整图片)
-        BitmapFactory.Options opts = new BitmapFactory.Options();
-        opts.inJustDecodeBounds = true;
+    private void processInBackground(final Uri imageUri, final boolean cropped) {
+        try {
+            _task = PROCESS_EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (cropped) {
+                            saveAndReturn(loadSource(imageUri));
+                        } else {
+                            processImage(imageUri);
+                        }
+                    } catch (CancellationException e) {
+                        Log.i(TAG, "图片处理已取消");
+                    } catch (Throwable e) {
+                        Log.e(TAG, "图片处理失败", e);
+                        sendFailed(33, e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            sendFailed(33, "图片处理队列已满");
+        }
+    }
 
-        InputStream is1 = getContentResolver().openInputStream(imageUri);
-        BitmapFactory.decodeStream(is1, null, opts);
-        if (is1 != null) is1.close();
+    /**
+     * Activity 已关闭或任务被中断时放弃处理, 并回收手上的 Bitmap
+     */
+    private void checkCancelled(Bitmap bitmap) {
+        if (_cancelled || Thread.currentThread().isInterrupted()) {
+            if (bitmap != null) bitmap.recycle();
+            throw new CancellationException();
+        }
+    }
 
-        int width = opts.outWidth;
-        int height = opts.outHeight;
+    /**
+     * 处理选择/拍照的图片: 约束校验 → 裁剪 → 压缩 → 返回 (处理线程)
+     */
+    private void processImage(Uri imageUri) throws Exception {
+        // 1. 打开来源 (整个流程只打开这一次), 提供方给出的大小已超限时不必读取内容
+        ImageSource source = openSource(imageUri);
+        String sizeError = validateFileSize(source.size);
+        if (sizeError != null) {
+            sendFailed(40, sizeError);
+            return;
+        }
 
-        // 获取文件大小
-        long fileSize = getFileSize(imageUri);
+        // 2. 落盘并从文件头读取尺寸、格式和 EXIF 方向 (大小未知时边复制边检查上限)
+        long maxFileSize = _config.optLong("maxFileSize", 0);
+        if (!source.load(new File(getCacheDir(), "ImagePicker"), maxFileSize)) {
+            sendFailed(40, "文件大小超过限制 (" + maxFileSize + " bytes)");
+            return;
+        }
+        checkCancelled(null);
 
-        // 2. 约束校验
-        String validationError = validateConstraints(width, height, fileSize);
+        // 3. 约束校验
+        String validationError = validateConstraints(source.width, source.height, source.size);
         if (validationError != null) {
             sendFailed(40, validationError);
             return;
         }
 
-        // 3. 裁剪
+        // 4. 裁剪 (uCrop 读取本地副本)
         boolean enableCrop = _config.optBoolean("enableCrop", false);
         if (enableCrop) {
-            startCrop(imageUri);
+            final Uri localUri = Uri.fromFile(source.file);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (!_cancelled) startCrop(localUri);
+                }
+            });
             return; // 裁剪完成后在 onActivityResult 中继续处理
         }
 
-        // 4. 保存并返回 (压缩在 Unity C# 侧统一处理)
-        saveAndReturn(imageUri);
+        // 5. 保存 (可选压缩) 并返回
+        saveAndReturn(source);
+    }
+
+    /**
+     * 打开图片来源, 替换之前的来源 (裁剪完成后原图的落盘副本随之删除)
+     * <p>uCrop 不可用时会以原图的本地副本回到这里, 此时沿用已有来源</p>
+     */
+    private ImageSource openSource(Uri uri) throws Exception {
+        ImageSource previous = _source;
+        if (previous != null) {
+            if ("file".equals(uri.getScheme()) && previous.file != null
+                    && previous.file.getPath().equals(uri.getPath())) {
+                return previous;
+            }
+            previous.close();
+        }
+        ImageSource source = ImageSource.open(getContentResolver(), uri);
+        _source = source;
+        return source;
+    }
+
+    /**
+     * 打开并读取裁剪结果 (或跳过裁剪的原图)
+     */
+    private ImageSource loadSource(Uri uri) throws Exception {
+        ImageSource source = openSource(uri);
+        if (source.file == null || source.width <= 0) {
+            source.load(new File(getCacheDir(), "ImagePicker"), 0);
+        }
+        return source;
     }
 
     /**
      * 约束校验
      */
     private String validateConstraints(int width, int height, long fileSize) {
-        long maxFileSize = _config.optLong("maxFileSize", 0);
+        String sizeError = validateFileSize(fileSize);
+        if (sizeError != null) return sizeError;
+
         int minWidth = _config.optInt("minWidth", 0);
         int minHeight = _config.optInt("minHeight", 0);
         int maxWidth = _config.optInt("maxWidth", 0);
         int maxHeight = _config.optInt("maxHeight", 0);
 
-        if (maxFileSize > 0 && fileSize > maxFileSize)
-            return "文件大小 (" + fileSize + " bytes) 超过限制 (" + maxFileSize + " bytes)";
-
         if (minWidth > 0 && width < minWidth)
             return "图片宽度 (" + width + "px) 小于最小限制 (" + minWidth + "px)";
 
@@ -331,6 +453,16 @@ public class ImagePickerActivity extends Activity {
         return null;
     }
 
+    /**
+     * 文件大小校验 (大小未知时为 -1, 不校验)
+     */
+    private String validateFileSize(long fileSize) {
+        long maxFileSize = _config.optLong("maxFileSize", 0);
+        if (maxFileSize > 0 && fileSize > maxFileSize)
+            return "文件大小 (" + fileSize + " bytes) 超过限制 (" + maxFileSize + " bytes)";
+        return null;
+    }
+
     /**
      * 启动 uCrop 裁剪
      * <p>如果 uCrop 库不可用, 跳过裁剪直接压缩</p>
@@ -389,104 +521,134 @@ public class ImagePickerActivity extends Activity {
         } catch (ClassNotFoundException e) {
             Log.w(TAG, "uCrop 库不可用, 跳过裁剪");
             // uCrop 不可用时直接保存返回
-            try {
-                saveAndReturn(sourceUri);
-            } catch (Exception ex) {
-                sendFailed(33, ex.getMessage());
-            }
+            processInBackground(sourceUri, true);
         } catch (Exception e) {
             Log.e(TAG, "启动裁剪失败", e);
-            try {
-                saveAndReturn(sourceUri);
-            } catch (Exception ex) {
-                sendFailed(33, ex.getMessage());
-            }
+            processInBackground(sourceUri, true);
         }
     }
 
     /**
-     * 保存图片并返回结果给 Unity (不做压缩, 压缩在 Unity C# 侧统一处理)
+     * 保存图片并返回结果给 Unity (启用压缩时交给 {@link ImageCompressor})
      * <p>会读取 EXIF 旋转信息并应用到像素数据, 避免 Unity 渲染时方向错误</p>
+     * <p>原图无需任何像素处理时走 {@link #tryPassthrough} 直接复制原始字节</p>
+     * <p>
+     * 配置了解码目标尺寸 (decodeMaxWidth/decodeMaxHeight) 时, 先以 inSampleSize 按 2 的幂次降采样解码,
+     * 再将精确缩放与旋转合并为一次变换, 全程不会出现全分辨率的 Bitmap。
+     * </p>
+     * <p>在处理线程上执行, 每个耗时步骤之间检查取消</p>
      */
-    private void saveAndReturn(Uri imageUri) throws Exception {
-        // 1. 解码图片
-        InputStream is2 = getContentResolver().openInputStream(imageUri);
-        Bitmap bitmap = BitmapFactory.decodeStream(is2);
-        if (is2 != null) is2.close();
+    private void saveAndReturn(ImageSource source) throws Exception {
+        int targetWidth = _config.optInt("decodeMaxWidth", 0);
+        int targetHeight = _config.optInt("decodeMaxHeight", 0);
+        boolean rgb565 = _config.optBoolean("decodeRgb565", false);
 
+        // 1. EXIF 旋转信息已在读取文件头时得到 (目标尺寸是旋转后的宽高, 降采样前需要知道方向)
+        int rotation = source.rotation;
+
+        // 2. 尺寸、格式和大小均已满足时不解码, 直接保留原文件
+        checkCancelled(null);
+        if (tryPassthrough(source, rotation, targetWidth, targetHeight)) return;
+
+        // 3. 按目标尺寸降采样解码
+        Bitmap bitmap = decodeSampled(source, targetWidth, targetHeight, rotation, rgb565);
         if (bitmap == null) {
             sendFailed(30, null);
             return;
         }
+        checkCancelled(bitmap);
+
+        // 4. 精确缩放和旋转合并为一次变换
+        float scale = ImageCompressor.fitScale(bitmap.getWidth(), bitmap.getHeight(), targetWidth, targetHeight, rotation);
+        if (rotation != 0 || scale < 1f) {
+            bitmap = ImageCompressor.transform(bitmap, rotation, scale);
+            checkCancelled(bitmap);
+        }
 
-        // 2. 读取 EXIF 旋转信息并应用
-        int rotation = getExifRotation(imageUri);
-        if (rotation != 0) {
-            bitmap = applyRotation(bitmap, rotation);
+        // 5. 启用压缩时按目标大小编码, 直接得到最终文件, 不再写高质量中间文件
+        ImageCompressor.Options compress = ImageCompressor.Options.fromConfig(_config);
+        if (compress != null) {
+            ImageCompressor.compressNow(bitmap, compress, new File(getCacheDir(), "ImagePicker"),
+                    new ImageCompressor.Callback() {
+                        @Override
+                        public void onSuccess(String filePath, int width, int height, long fileSize) {
+                            sendSuccess(filePath, width, height, fileSize);
+                        }
+
+                        @Override
+                        public void onFailed(int code, String detail) {
+                            sendFailed(code, detail);
+                        }
+                    });
+            return;
         }
 
         int width = bitmap.getWidth();
         int height = bitmap.getHeight();
 
-        // 3. 以高质量 JPEG 保存到临时文件, 压缩由 Unity C# 侧统一处理
-        byte[] jpgData = compressToJpeg(bitmap, 95);
-        bitmap.recycle();
+        // 6. 未启用压缩时以高质量 JPEG 保存到临时文件
+        byte[] jpgData;
+        try {
+            jpgData = compressToJpeg(bitmap, 95);
+        } finally {
+            bitmap.recycle();
+        }
+        checkCancelled(null);
 
         File resultFile = saveToFile(jpgData);
         sendSuccess(resultFile.getAbsolutePath(), width, height, jpgData.length);
     }
 
-    // ---- 工具方法 ----
-
     /**
-     * 从 Uri 读取 EXIF 旋转角度
-     * <p>相机拍摄的照片在 EXIF 中记录了设备方向, 但 BitmapFactory 解码时不会自动应用</p>
+     * 无损快速通道: 原图是 JPEG, 不超过解码目标尺寸, 启用压缩时也已满足压缩限制, 则直接复制原始图像数据,
+     * 跳过解码和重新编码 (也不会损失画质)
+     * <p>复制时去掉 EXIF/XMP 等元数据 (见 {@link ImageSource#keepStrippedIn}), 结果与解码路径一样不含 GPS 位置等隐私信息</p>
+     * <p>
+     * EXIF 方向不是正常方向时, 默认仍走解码路径把旋转应用到像素;
+     * 配置了 rotationAsMetadata 时改为原样复制, 把旋转角度随结果返回, 由 Unity 侧在加载纹理时处理。
+     * </p>
      *
-     * @return 旋转角度 (0, 90, 180, 270)
+     * @return 已返回结果时为 true
      */
-    private int getExifRotation(Uri uri) {
-        try {
-            ExifInterface exif;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                // Android 7.0+ 支持从 InputStream 读取 EXIF
-                InputStream exifStream = getContentResolver().openInputStream(uri);
-                if (exifStream == null) return 0;
-                exif = new ExifInterface(exifStream);
-                exifStream.close();
-            } else {
-                // 低版本仅支持文件路径
-                String path = uri.getPath();
-                if (path == null) return 0;
-                exif = new ExifInterface(path);
-            }
+    private boolean tryPassthrough(ImageSource source, int rotation, int targetWidth, int targetHeight)
+            throws Exception {
+        if (rotation != 0 && !_config.optBoolean("rotationAsMetadata", false)) return false;
+        if (!"image/jpeg".equals(source.mimeType)) return false;
+        if (ImageCompressor.fitScale(source.width, source.height, targetWidth, targetHeight, rotation) < 1f) {
+            return false;
+        }
 
-            int orientation = exif.getAttributeInt(
-                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        ImageCompressor.Options compress = ImageCompressor.Options.fromConfig(_config);
+        if (compress != null && !ImageCompressor.canSkip(source, compress, rotation)) return false;
 
-            switch (orientation) {
-                case ExifInterface.ORIENTATION_ROTATE_90:  return 90;
-                case ExifInterface.ORIENTATION_ROTATE_180: return 180;
-                case ExifInterface.ORIENTATION_ROTATE_270: return 270;
-                default: return 0;
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "EXIF 读取失败, 跳过旋转修正", e);
-            return 0;
-        }
+        File file = source.keepStrippedIn(new File(getCacheDir(), "ImagePicker"),
+                "result_" + System.currentTimeMillis() + ".jpg");
+        if (file == null) return false;
+        deliver("OnImagePickerSuccess",
+                successMessage(file.getAbsolutePath(), source.width, source.height, file.length(), rotation));
+        return true;
     }
 
+    // ---- 工具方法 ----
+
     /**
-     * 应用旋转到 Bitmap, 并回收原 Bitmap
+     * 解码图片, 指定了目标尺寸时以最大的 2 的幂次降采样 (结果不小于目标尺寸, 留给精确缩放)
+     *
+     * @param targetWidth  旋转后的最大宽度, 0 表示不限制
+     * @param targetHeight 旋转后的最大高度, 0 表示不限制
+     * @param rgb565       以 RGB_565 解码, 内存减半 (JPEG 无透明通道, 渐变处可能出现色带)
+     * @return 解码失败时返回 null
      */
-    private Bitmap applyRotation(Bitmap source, int degrees) {
-        Matrix matrix = new Matrix();
-        matrix.postRotate(degrees);
-        Bitmap rotated = Bitmap.createBitmap(source, 0, 0,
-                source.getWidth(), source.getHeight(), matrix, true);
-        if (rotated != source) {
-            source.recycle();
+    private Bitmap decodeSampled(ImageSource source, int targetWidth, int targetHeight, int rotation,
+                                 boolean rgb565) {
+        if (source.width <= 0 || source.height <= 0) return null;
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = ImageCompressor.sampleSize(source.width, source.height, targetWidth, targetHeight, rotation);
+        if (rgb565) {
+            opts.inPreferredConfig = Bitmap.Config.RGB_565;
         }
-        return rotated;
+        return BitmapFactory.decodeFile(source.file.getPath(), opts);
     }
 
     private byte[] compressToJpeg(Bitmap bitmap, int quality) {
@@ -505,52 +667,47 @@ public class ImagePickerActivity extends Activity {
         return file;
     }
 
-    private long getFileSize(Uri uri) {
-        try {
-            if ("file".equals(uri.getScheme())) {
-                File f = new File(uri.getPath());
-                return f.length();
-            }
-            ContentResolver cr = getContentResolver();
-            Cursor cursor = cr.query(uri, new String[]{MediaStore.MediaColumns.SIZE},
-                    null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                long size = cursor.getLong(0);
-                cursor.close();
-                return size;
-            }
-            // 回退: 读取流
-            InputStream is3 = cr.openInputStream(uri);
-            if (is3 != null) {
-                long size = 0;
-                byte[] buf = new byte[8192];
-                int n;
-                while ((n = is3.read(buf)) != -1) size += n;
-                is3.close();
-                return size;
+    // ---- Unity 消息回调 ----
+
+    /**
+     * 向 Unity 发送结果并结束 Activity (任意线程可调用, 只有第一次生效)
+     */
+    private void deliver(String method, String message) {
+        if (!_delivered.compareAndSet(false, true)) return;
+        ImagePickerBridge.sendToUnity(method, message);
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                finish();
             }
-        } catch (Exception e) {
-            Log.w(TAG, "获取文件大小失败", e);
-        }
-        return 0;
+        });
     }
 
-    // ---- Unity 消息回调 ----
-
     private void sendSuccess(String filePath, int width, int height, long fileSize) {
-        String result = filePath + "|" + width + "|" + height + "|" + fileSize;
-        ImagePickerBridge.sendToUnity("OnImagePickerSuccess", result);
-        finish();
+        deliver("OnImagePickerSuccess", successMessage(filePath, width, height, fileSize));
     }
 
     private void sendFailed(int code, String detail) {
-        String msg = detail != null ? code + "|" + detail : String.valueOf(code);
-        ImagePickerBridge.sendToUnity("OnImagePickerFailed", msg);
-        finish();
+        deliver("OnImagePickerFailed", failedMessage(code, detail));
+    }
+
+    static String successMessage(String filePath, int width, int height, long fileSize) {
+        return filePath + "|" + width + "|" + height + "|" + fileSize;
+    }
+
+    /**
+     * @param rotation 文件像素未应用的顺时针旋转角度, 非 0 时追加为第 5 段
+     */
+    static String successMessage(String filePath, int width, int height, long fileSize, int rotation) {
+        String message = successMessage(filePath, width, height, fileSize);
+        return rotation != 0 ? message + "|" + rotation : message;
+    }
+
+    static String failedMessage(int code, String detail) {
+        return detail != null ? code + "|" + detail : String.valueOf(code);
     }
 
     private void sendCancelled() {
-        ImagePickerBridge.sendToUnity("OnImagePickerCancelled", "");
-        finish();
+        deliver("OnImagePickerCancelled", "");
     }
 }
@@ -7,12 +7,17 @@ import android.util.Log;
 
 import com.unity3d.player.UnityPlayer;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+
 /**
  * Android 图片选择器桥接类
  * <p>
  * 供 Unity C# 端通过 AndroidJavaClass 调用, 控制图片选择流程。
  * 权限检查和请求由 {@link ImagePickerActivity} 统一处理。
- * 实际的选图/拍照逻辑在 {@link ImagePickerActivity} 中处理。
+ * 实际的选图/拍照逻辑在 {@link ImagePickerActivity} 中处理, 压缩由 {@link ImageCompressor} 在后台线程执行。
  * </p>
  */
 public class ImagePickerBridge {
@@ -58,6 +63,49 @@ public class ImagePickerBridge {
         currentActivity.startActivity(intent);
     }
 
+    /**
+     * 在后台线程压缩图片文件, 按目标文件大小搜索质量, 必要时降低分辨率
+     * <p>
+     * 完成后回调 OnImageCompressSuccess ("requestId|filePath|width|height|fileSize")
+     * 或 OnImageCompressFailed ("requestId|错误码|详情")。
+     * 源文件已是目标格式且满足全部限制时直接返回源文件路径。
+     * </p>
+     *
+     * @param requestId  C# 端的请求 ID, 原样带回
+     * @param sourcePath 源图片路径
+     * @param configJson 压缩配置 (compressMaxWidth/compressMaxHeight/compressQuality/compressMaxFileSize/compressFormat)
+     */
+    public static void compressImage(final int requestId, String sourcePath, String configJson) {
+        if (_context == null) {
+            Log.e(TAG, "未初始化, 请先调用 init()");
+            sendToUnity("OnImageCompressFailed", requestId + "|90");
+            return;
+        }
+
+        ImageCompressor.Options options;
+        try {
+            options = ImageCompressor.Options.parse(new JSONObject(configJson));
+        } catch (JSONException e) {
+            sendToUnity("OnImageCompressFailed", requestId + "|91|" + e.getMessage());
+            return;
+        }
+
+        ImageCompressor.compressFileAsync(sourcePath, options, new File(_context.getCacheDir(), "ImagePicker"),
+                new ImageCompressor.Callback() {
+                    @Override
+                    public void onSuccess(String filePath, int width, int height, long fileSize) {
+                        sendToUnity("OnImageCompressSuccess", requestId + "|"
+                                + ImagePickerActivity.successMessage(filePath, width, height, fileSize));
+                    }
+
+                    @Override
+                    public void onFailed(int code, String detail) {
+                        sendToUnity("OnImageCompressFailed", requestId + "|"
+                                + ImagePickerActivity.failedMessage(code, detail));
+                    }
+                });
+    }
+
     /**
      * 发送消息给 Unity (UnitySendMessage)
      *
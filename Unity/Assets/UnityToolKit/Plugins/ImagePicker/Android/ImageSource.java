@@ -0,0 +1,443 @@
+package com.toolkit.imagepicker;
+
+import android.content.ContentResolver;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 选中图片的单次读取入口
+ * <p>
+ * content:// 来源只打开一次 (一次 ContentProvider 调用, 云端图片也只拉取一次): 先从 ParcelFileDescriptor 的 statSize
+ * 得到文件大小, 再把内容落盘到缓存目录, 落盘时保留开头 {@link #HEADER_BYTES} 字节解析尺寸、格式和 EXIF 方向。
+ * 之后的校验、裁剪、解码和快速通道都使用本地文件, 不再访问原 Uri。
+ * </p>
+ * <p>file:// 来源 (相机、裁剪输出) 本身就是本地文件, 不复制, 只读取文件头</p>
+ * <p>头部解析支持 JPEG / PNG / WebP, 其他格式或头部不完整时回退到 BitmapFactory 和 ExifInterface 读取本地文件</p>
+ */
+final class ImageSource implements Closeable {
+
+    private static final String TAG = "ToolKit.ImagePicker";
+
+    /** 保留用于解析的头部长度 (JPEG 的 EXIF 段含缩略图时可达数十 KB, SOF 在其后) */
+    static final int HEADER_BYTES = 64 * 1024;
+
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    /** 本地文件 (落盘的副本或 file:// 原文件), 落盘前为 null */
+    File file;
+    /** 文件大小, 落盘前可能为 -1 (提供方未给出 statSize) */
+    long size = -1;
+    int width;
+    int height;
+    /** 格式 (image/jpeg 等), 无法识别时为 null */
+    String mimeType;
+    /** EXIF 顺时针旋转角度 (0, 90, 180, 270) */
+    int rotation;
+
+    private ParcelFileDescriptor _descriptor;
+    private boolean _temporary;
+
+    private ImageSource() {
+    }
+
+    // ---- 打开 ----
+
+    /**
+     * 打开图片来源并取得文件大小 (此时还未读取内容)
+     */
+    static ImageSource open(ContentResolver resolver, Uri uri) throws IOException {
+        ImageSource source = new ImageSource();
+        if ("file".equals(uri.getScheme()) && uri.getPath() != null) {
+            source.file = new File(uri.getPath());
+            if (!source.file.isFile()) throw new FileNotFoundException(uri.getPath());
+            source.size = source.file.length();
+            return source;
+        }
+
+        source._descriptor = resolver.openFileDescriptor(uri, "r");
+        if (source._descriptor == null) throw new FileNotFoundException(String.valueOf(uri));
+        long statSize = source._descriptor.getStatSize();
+        source.size = statSize >= 0 ? statSize : -1;
+        return source;
+    }
+
+    /**
+     * 本地图片文件 (供 {@link ImageCompressor} 处理任意路径)
+     */
+    static ImageSource fromFile(File file) throws IOException {
+        if (!file.isFile()) throw new FileNotFoundException(file.getPath());
+        ImageSource source = new ImageSource();
+        source.file = file;
+        source.size = file.length();
+        source.load(null, 0);
+        return source;
+    }
+
+    /**
+     * 读取内容: content:// 来源复制到 spoolDir, 然后解析头部信息
+     * <p>复制时就地保留开头的字节, 不需要再读一遍</p>
+     * <p>提供方未给出 statSize 时大小事先无法校验, 复制超过 maxBytes 即停止并删除副本, 不会把超大文件整个落盘</p>
+     *
+     * @param maxBytes 允许的最大文件大小, 0 表示不限制
+     * @return 内容超过 maxBytes 时返回 false (此时 size 为已读取的字节数, 已超过限制)
+     */
+    boolean load(File spoolDir, long maxBytes) throws IOException {
+        byte[] header = new byte[HEADER_BYTES];
+        int headerLength;
+
+        if (_descriptor == null) {
+            InputStream in = new FileInputStream(file);
+            try {
+                headerLength = readFully(in, header);
+            } finally {
+                in.close();
+            }
+        } else {
+            if (!spoolDir.exists()) spoolDir.mkdirs();
+            File spool = new File(spoolDir, "source_" + System.currentTimeMillis());
+            InputStream in = new FileInputStream(_descriptor.getFileDescriptor());
+            FileOutputStream out = new FileOutputStream(spool);
+            long total = 0;
+            boolean complete = false;
+            try {
+                headerLength = readFully(in, header);
+                out.write(header, 0, headerLength);
+                total = headerLength;
+
+                byte[] buffer = new byte[COPY_BUFFER];
+                int n;
+                while ((maxBytes <= 0 || total <= maxBytes) && (n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                    total += n;
+                }
+                complete = maxBytes <= 0 || total <= maxBytes;
+            } finally {
+                in.close();
+                out.close();
+                if (!complete) spool.delete();
+            }
+            if (!complete) {
+                size = total;
+                closeDescriptor();
+                return false;
+            }
+
+            file = spool;
+            _temporary = true;
+            size = total;
+            closeDescriptor();
+        }
+
+        if (!parseHeader(header, headerLength, this)) {
+            readWithFramework();
+        }
+        return true;
+    }
+
+    /**
+     * 头部无法解析时, 用系统解码器读取本地文件 (仍不会再访问原 Uri)
+     */
+    private void readWithFramework() {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), opts);
+        width = Math.max(0, opts.outWidth);
+        height = Math.max(0, opts.outHeight);
+        mimeType = opts.outMimeType;
+        try {
+            rotation = ImageCompressor.orientationToDegrees(new ExifInterface(file.getPath()).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL));
+        } catch (Exception e) {
+            Log.w(TAG, "EXIF 读取失败, 跳过旋转修正", e);
+            rotation = 0;
+        }
+    }
+
+    // ---- 结果 ----
+
+    /**
+     * 把 JPEG 源文件去掉元数据后作为结果保存, 图像数据按原样复制 (不重新编码)
+     * <p>
+     * 丢弃 APP1 (EXIF 和 XMP, 含 GPS 位置、设备型号、拍摄时间)、IPTC 等应用段、注释, 以及 EOI 之后附加的内容
+     * (多图格式的副图可能带有自己的 EXIF); 保留 JFIF (APP0)、ICC 色彩配置 (APP2) 和 Adobe (APP14) 段,
+     * 这些段影响颜色的解释。EXIF 方向随之丢失, 需由调用方另行传递。
+     * </p>
+     *
+     * @return 文件结构不是完整的 JPEG 时返回 null (不留下部分文件)
+     */
+    File keepStrippedIn(File dir, String name) throws IOException {
+        if (!dir.exists()) dir.mkdirs();
+        File target = new File(dir, name);
+        boolean complete = false;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), COPY_BUFFER));
+        try {
+            FileOutputStream out = new FileOutputStream(target);
+            try {
+                complete = copyStripped(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+            if (!complete) target.delete();
+        }
+        return complete ? target : null;
+    }
+
+    /**
+     * 逐段复制到 SOS, 跳过元数据段, 之后复制熵编码数据直到 EOI
+     * <p>熵编码数据中的 0xFF 总是后跟 0x00 或 RST 标记, 因此第一个 0xFFD9 即为 EOI</p>
+     */
+    private static boolean copyStripped(DataInputStream in, FileOutputStream out) throws IOException {
+        if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != 0xD8) return false;
+        out.write(0xFF);
+        out.write(0xD8);
+
+        byte[] segment = new byte[0xFFFF];
+        while (true) {
+            if (in.readUnsignedByte() != 0xFF) return false;
+            int marker = in.readUnsignedByte();
+            while (marker == 0xFF) marker = in.readUnsignedByte();
+            if (marker == 0xD9) return false;
+            if ((marker >= 0xD0 && marker <= 0xD7) || marker == 0x01) {
+                out.write(0xFF);
+                out.write(marker);
+                continue;
+            }
+
+            int length = in.readUnsignedShort();
+            if (length < 2) return false;
+            in.readFully(segment, 0, length - 2);
+            if (marker != 0xDA && isMetadata(marker, segment, length - 2)) continue;
+            out.write(0xFF);
+            out.write(marker);
+            out.write(length >> 8);
+            out.write(length & 0xFF);
+            out.write(segment, 0, length - 2);
+            if (marker == 0xDA) break;
+        }
+
+        byte[] buffer = new byte[COPY_BUFFER];
+        boolean pendingFF = false;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            for (int i = 0; i < n; i++) {
+                int b = buffer[i] & 0xFF;
+                if (pendingFF && b == 0xD9) {
+                    out.write(buffer, 0, i + 1);
+                    return true;
+                }
+                pendingFF = b == 0xFF;
+            }
+            out.write(buffer, 0, n);
+        }
+        return false;
+    }
+
+    private static boolean isMetadata(int marker, byte[] body, int length) {
+        if (marker == 0xFE) return true;
+        if (marker < 0xE0 || marker > 0xEF) return false;
+        if (marker == 0xE0 || marker == 0xEE) return false;
+        return marker != 0xE2 || !startsWith(body, length, "ICC_PROFILE");
+    }
+
+    private static boolean startsWith(byte[] body, int length, String prefix) {
+        if (length < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (body[i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 关闭文件描述符, 并删除仍未被保留的落盘副本
+     */
+    @Override
+    public void close() {
+        closeDescriptor();
+        if (_temporary && file != null) {
+            file.delete();
+            _temporary = false;
+        }
+    }
+
+    private void closeDescriptor() {
+        if (_descriptor == null) return;
+        try {
+            _descriptor.close();
+        } catch (IOException e) {
+            Log.w(TAG, "关闭文件描述符失败", e);
+        }
+        _descriptor = null;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        int n;
+        while (length < buffer.length && (n = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += n;
+        }
+        return length;
+    }
+
+    // ---- 头部解析 ----
+
+    /**
+     * 从文件开头解析格式、尺寸和 EXIF 方向
+     *
+     * @return 无法识别或头部不完整时返回 false
+     */
+    static boolean parseHeader(byte[] data, int length, ImageSource out) {
+        if (length >= 4 && u8(data, 0) == 0xFF && u8(data, 1) == 0xD8) {
+            return parseJpeg(data, length, out);
+        }
+        if (length >= 24 && u8(data, 0) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G'
+                && data[12] == 'I' && data[13] == 'H' && data[14] == 'D' && data[15] == 'R') {
+            out.mimeType = "image/png";
+            out.width = (int) u32be(data, 16);
+            out.height = (int) u32be(data, 20);
+            out.rotation = 0;
+            return out.width > 0 && out.height > 0;
+        }
+        if (length >= 30 && data[0] == 'R' && data[1] == 'I' && data[2] == 'F' && data[3] == 'F'
+                && data[8] == 'W' && data[9] == 'E' && data[10] == 'B' && data[11] == 'P') {
+            return parseWebp(data, length, out);
+        }
+        return false;
+    }
+
+    /**
+     * 依次跳过 JPEG 段, 从 APP1 (Exif) 读取方向, 从 SOF 读取尺寸, 遇到 SOS 前未找到 SOF 则失败
+     */
+    private static boolean parseJpeg(byte[] data, int length, ImageSource out) {
+        int rotation = 0;
+        int pos = 2;
+        while (pos + 4 <= length) {
+            if (u8(data, pos) != 0xFF) return false;
+            int marker = u8(data, pos + 1);
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            if (marker == 0xD8 || (marker >= 0xD0 && marker <= 0xD7) || marker == 0x01) {
+                pos += 2;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA) return false;
+
+            int segment = u16be(data, pos + 2);
+            if (segment < 2) return false;
+            int body = pos + 4;
+
+            if (marker == 0xE1 && body + 6 <= length && data[body] == 'E' && data[body + 1] == 'x'
+                    && data[body + 2] == 'i' && data[body + 3] == 'f' && data[body + 4] == 0 && data[body + 5] == 0) {
+                rotation = ImageCompressor.orientationToDegrees(
+                        exifOrientation(data, body + 6, Math.min(length, pos + 2 + segment)));
+            } else if (isStartOfFrame(marker)) {
+                if (body + 5 > length) return false;
+                out.mimeType = "image/jpeg";
+                out.height = u16be(data, body + 1);
+                out.width = u16be(data, body + 3);
+                out.rotation = rotation;
+                return out.width > 0 && out.height > 0;
+            }
+            pos += 2 + segment;
+        }
+        return false;
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    /**
+     * 在 TIFF 结构的 IFD0 中查找 Orientation (0x0112)
+     *
+     * @return EXIF 方向值, 未找到时为 ORIENTATION_NORMAL
+     */
+    private static int exifOrientation(byte[] data, int tiff, int end) {
+        if (tiff + 8 > end) return ExifInterface.ORIENTATION_NORMAL;
+        boolean little;
+        if (data[tiff] == 'I' && data[tiff + 1] == 'I') {
+            little = true;
+        } else if (data[tiff] == 'M' && data[tiff + 1] == 'M') {
+            little = false;
+        } else {
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+
+        long ifd = u32(data, tiff + 4, little);
+        if (ifd < 8 || tiff + ifd + 2 > end) return ExifInterface.ORIENTATION_NORMAL;
+        int entries = u16(data, tiff + (int) ifd, little);
+        int entry = tiff + (int) ifd + 2;
+        for (int i = 0; i < entries && entry + 12 <= end; i++, entry += 12) {
+            if (u16(data, entry, little) == 0x0112) {
+                // SHORT 类型, 值保存在 value 字段的前两个字节
+                return u16(data, entry + 8, little);
+            }
+        }
+        return ExifInterface.ORIENTATION_NORMAL;
+    }
+
+    /**
+     * WebP 的三种编码 (VP8 有损 / VP8L 无损 / VP8X 扩展) 分别读取尺寸, 方向不解析 (回退到 ExifInterface)
+     */
+    private static boolean parseWebp(byte[] data, int length, ImageSource out) {
+        if (data[12] != 'V' || data[13] != 'P' || data[14] != '8') return false;
+        byte kind = data[15];
+        if (kind == ' ') {
+            out.width = u16le(data, 26) & 0x3FFF;
+            out.height = u16le(data, 28) & 0x3FFF;
+        } else if (kind == 'L') {
+            int b0 = u8(data, 21);
+            int b1 = u8(data, 22);
+            int b2 = u8(data, 23);
+            int b3 = u8(data, 24);
+            out.width = 1 + (((b1 & 0x3F) << 8) | b0);
+            out.height = 1 + (((b3 & 0x0F) << 10) | (b2 << 2) | ((b1 & 0xC0) >> 6));
+        } else {
+            // VP8X 可能带 EXIF 块, 交给 ExifInterface
+            return false;
+        }
+        out.mimeType = "image/webp";
+        out.rotation = 0;
+        return out.width > 0 && out.height > 0;
+    }
+
+    private static int u8(byte[] data, int pos) {
+        return data[pos] & 0xFF;
+    }
+
+    private static int u16be(byte[] data, int pos) {
+        return (u8(data, pos) << 8) | u8(data, pos + 1);
+    }
+
+    private static int u16le(byte[] data, int pos) {
+        return u8(data, pos) | (u8(data, pos + 1) << 8);
+    }
+
+    private static long u32be(byte[] data, int pos) {
+        return ((long) u16be(data, pos) << 16) | u16be(data, pos + 2);
+    }
+
+    private static int u16(byte[] data, int pos, boolean little) {
+        return little ? u16le(data, pos) : u16be(data, pos);
+    }
+
+    private static long u32(byte[] data, int pos, boolean little) {
+        return little ? ((long) u16le(data, pos + 2) << 16) | u16le(data, pos) : u32be(data, pos);
+    }
+}
@@ -9,8 +9,15 @@
  *   2. Java 端处理权限请求 (相机权限/存储权限)
  *   3. Java 端获取图片后进行约束校验
  *   4. 需要裁剪时跳转 uCrop (开源裁剪库)
- *   5. 通过 UnitySendMessage 回调 C# 返回原始图片
- *   6. C# 侧统一执行压缩 (保证跨平台一致性)
+ *   5. 按解码目标尺寸 (默认为压缩尺寸) 降采样解码, 修正 EXIF 方向
+ *   6. 启用压缩时 Java 端在后台线程按目标大小搜索质量 (必要时降分辨率), 直接写出最终文件;
+ *      否则以高质量 JPEG 保存
+ *   7. 通过 UnitySendMessage 回调 C# 返回图片
+ *
+ * 原生压缩:
+ *   - 与 C# ImageCompressor 使用相同的搜索策略, 但不占用主线程, 也不需要读回文件再解码
+ *   - 选图结果固定输出 JPEG (C# 端 Texture2D.LoadImage 不支持 WebP);
+ *     CompressImage 可单独压缩任意图片文件, 支持 JPEG / WebP 输出
  *
  * 依赖:
  *   - uCrop 库 (Yalantis/uCrop) 的 AAR 需要放在 Plugins/Android/ 下
@@ -20,7 +27,7 @@
 #if UNITY_ANDROID
 
 using System;
-using System.Collections;
+using System.Collections.Generic;
 using ToolKit.Tools.ImagePicker;
 using UnityEngine;
 
@@ -29,7 +36,7 @@ namespace UnityToolKit.Plugins.ImagePicker
     /// <summary>
     /// Android 平台图片选择器
     /// <para>通过 Java Bridge 调用 Android 原生相机/图库, 支持 uCrop 裁剪</para>
-    /// <para>压缩在 C# 侧由 <see cref="ImageCompressor"/> 统一处理</para>
+    /// <para>压缩由 Java 端在后台线程执行 (与 <see cref="ImageCompressor"/> 策略一致), 不占用主线程</para>
     /// </summary>
     public class AndroidImagePicker : MonoBehaviour, IImagePicker
     {
@@ -41,6 +48,9 @@ namespace UnityToolKit.Plugins.ImagePicker
         private bool _initialized;
         private Action<ImagePickerResult> _callback;
         private ImagePickerRequest _currentRequest;
+        private readonly Dictionary<int, Action<ImagePickerResult>> _compressCallbacks =
+            new Dictionary<int, Action<ImagePickerResult>>();
+        private int _nextCompressId;
 
         #endregion
 
@@ -88,11 +98,38 @@ namespace UnityToolKit.Plugins.ImagePicker
             _callback = callback;
             _currentRequest = request;
 
-            // 构造 JSON 配置传递给 Java 端 (不含压缩配置, 压缩在 C# 侧处理)
+            // 构造 JSON 配置传递给 Java 端 (含压缩配置, 压缩在 Java 端后台线程执行)
             string configJson = BuildConfigJson(request);
             _bridge.CallStatic("pickImage", configJson);
         }
 
+        /// <summary>
+        /// 在 Java 端后台线程压缩任意图片文件, 按目标文件大小搜索质量, 必要时降低分辨率
+        /// <para>会修正 EXIF 方向; 源文件已是目标格式且满足全部限制时直接返回源文件</para>
+        /// </summary>
+        /// <param name="filePath">源图片路径</param>
+        /// <param name="config">压缩配置 (忽略 EnableCompress)</param>
+        /// <param name="callback">结果回调, 在主线程调用</param>
+        public void CompressImage(string filePath, CompressConfig config, Action<ImagePickerResult> callback)
+        {
+            if (string.IsNullOrEmpty(filePath) || config == null)
+            {
+                callback?.Invoke(ImagePickerResult.Fail(EImagePickerError.InvalidRequest));
+                return;
+            }
+
+            EnsureInitialized();
+
+            int requestId = ++_nextCompressId;
+            _compressCallbacks[requestId] = callback;
+
+            var sb = new System.Text.StringBuilder();
+            sb.Append("{");
+            AppendCompressConfig(sb, config, true);
+            sb.Append("}");
+            _bridge.CallStatic("compressImage", requestId, filePath, sb.ToString());
+        }
+
         #endregion
 
         #region Native Callbacks (由 UnitySendMessage 调用)
@@ -100,7 +137,6 @@ namespace UnityToolKit.Plugins.ImagePicker
         /// <summary>
         /// 选图成功回调
         /// <para>参数格式: filePath|width|height|fileSize</para>
-        /// <para>收到原始图片后在 C# 侧执行压缩</para>
         /// </summary>
         // ReSharper disable once UnusedMember.Local
         private void OnImagePickerSuccess(string result)
@@ -112,20 +148,14 @@ namespace UnityToolKit.Plugins.ImagePicker
                     parts[0],
                     int.Parse(parts[1]),
                     int.Parse(parts[2]),
-                    long.Parse(parts[3])
+                    long.Parse(parts[3]),
+                    parts.Length >= 5 ? int.Parse(parts[4]) : 0
                 );
 
-                // 在 C# 侧异步执行压缩, 不阻塞主线程
-                if (_currentRequest?.Compress != null && _currentRequest.Compress.EnableCompress)
-                {
-                    StartCoroutine(CompressAndCallback(pickerResult, _currentRequest.Compress));
-                }
-                else
-                {
-                    _callback?.Invoke(pickerResult);
-                    _callback = null;
-                    _currentRequest = null;
-                }
+                // 启用压缩时 Java 端已返回压缩后的文件; 原图满足要求时返回的是原图的副本
+                _callback?.Invoke(pickerResult);
+                _callback = null;
+                _currentRequest = null;
             }
             else
             {
@@ -135,15 +165,6 @@ namespace UnityToolKit.Plugins.ImagePicker
             }
         }
 
-        private IEnumerator CompressAndCallback(ImagePickerResult pickerResult, CompressConfig compressConfig)
-        {
-            var request = ImageCompressor.CompressAsync(pickerResult, compressConfig);
-            yield return request;
-            _callback?.Invoke(request.Result);
-            _callback = null;
-            _currentRequest = null;
-        }
-
         /// <summary>
         /// 选图失败回调
         /// </summary>
@@ -167,6 +188,42 @@ namespace UnityToolKit.Plugins.ImagePicker
             _currentRequest = null;
         }
 
+        /// <summary>
+        /// 压缩成功回调
+        /// <para>参数格式: requestId|filePath|width|height|fileSize</para>
+        /// </summary>
+        // ReSharper disable once UnusedMember.Local
+        private void OnImageCompressSuccess(string result)
+        {
+            var parts = result.Split('|');
+            if (parts.Length < 5 || !int.TryParse(parts[0], out int requestId)) return;
+            if (!_compressCallbacks.TryGetValue(requestId, out var callback)) return;
+
+            _compressCallbacks.Remove(requestId);
+            callback?.Invoke(ImagePickerResult.Succeed(
+                parts[1],
+                int.Parse(parts[2]),
+                int.Parse(parts[3]),
+                long.Parse(parts[4])
+            ));
+        }
+
+        /// <summary>
+        /// 压缩失败回调
+        /// <para>参数格式: requestId|错误码 或 requestId|错误码|详情</para>
+        /// </summary>
+        // ReSharper disable once UnusedMember.Local
+        private void OnImageCompressFailed(string errorData)
+        {
+            var parts = errorData.Split(new[] { '|' }, 2);
+            if (!int.TryParse(parts[0], out int requestId)) return;
+            if (!_compressCallbacks.TryGetValue(requestId, out var callback)) return;
+
+            _compressCallbacks.Remove(requestId);
+            ParseNativeError(parts.Length > 1 ? parts[1] : null, out var code, out var detail);
+            callback?.Invoke(ImagePickerResult.Fail(code, detail));
+        }
+
         #endregion
 
         #region Private Methods
@@ -204,7 +261,6 @@ namespace UnityToolKit.Plugins.ImagePicker
 
         /// <summary>
         /// 将 ImagePickerRequest 序列化为 JSON 字符串传递给 Java 端
-        /// <para>不含压缩配置, 压缩在 C# 侧统一处理</para>
         /// </summary>
         private string BuildConfigJson(ImagePickerRequest request)
         {
@@ -241,10 +297,54 @@ namespace UnityToolKit.Plugins.ImagePicker
                 sb.Append(",\"enableCrop\":false");
             }
 
+            // 解码目标尺寸: 未指定时取压缩尺寸, 原生侧直接降采样解码, 不产生全分辨率的中间图
+            int decodeMaxWidth = request.DecodeMaxWidth;
+            int decodeMaxHeight = request.DecodeMaxHeight;
+            if (decodeMaxWidth <= 0 && decodeMaxHeight <= 0
+                                    && request.Compress != null && request.Compress.EnableCompress)
+            {
+                decodeMaxWidth = request.Compress.MaxWidth;
+                decodeMaxHeight = request.Compress.MaxHeight;
+            }
+            sb.AppendFormat(",\"decodeMaxWidth\":{0}", Math.Max(0, decodeMaxWidth));
+            sb.AppendFormat(",\"decodeMaxHeight\":{0}", Math.Max(0, decodeMaxHeight));
+            if (request.LowMemoryDecode)
+            {
+                sb.Append(",\"decodeRgb565\":true");
+            }
+            if (request.RotationAsMetadata)
+            {
+                sb.Append(",\"rotationAsMetadata\":true");
+            }
+
+            // 压缩配置
+            if (request.Compress != null && request.Compress.EnableCompress)
+            {
+                // 选图结果固定为 JPEG, 以便 ImagePickerHelper 用 Texture2D.LoadImage 加载, 不传 Format
+                sb.Append(",\"compress\":true,");
+                AppendCompressConfig(sb, request.Compress, false);
+            }
+
             sb.Append("}");
             return sb.ToString();
         }
 
+        /// <summary>
+        /// 追加压缩配置字段 (不含首尾逗号)
+        /// </summary>
+        /// <param name="includeFormat">是否传递输出格式, 仅 CompressImage 使用</param>
+        private static void AppendCompressConfig(System.Text.StringBuilder sb, CompressConfig config, bool includeFormat)
+        {
+            sb.AppendFormat("\"compressMaxWidth\":{0}", Math.Max(0, config.MaxWidth));
+            sb.AppendFormat(",\"compressMaxHeight\":{0}", Math.Max(0, config.MaxHeight));
+            sb.AppendFormat(",\"compressQuality\":{0}", config.Quality);
+            sb.AppendFormat(",\"compressMaxFileSize\":{0}", Math.Max(0, config.MaxFileSize));
+            if (includeFormat)
+            {
+                sb.AppendFormat(",\"compressFormat\":{0}", (int)config.Format);
+            }
+        }
+
         #endregion
     }
 }
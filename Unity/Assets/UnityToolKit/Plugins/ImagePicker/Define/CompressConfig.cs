@@ -31,5 +31,12 @@ namespace ToolKit.Tools.ImagePicker
         /// <para>引擎会循环降低质量直到文件大小满足该限制</para>
         /// </summary>
         public long MaxFileSize { get; set; }
+
+        /// <summary>
+        /// 输出格式, 默认 JPEG
+        /// <para>仅对 CompressImage 生效, WebP 仅 Android 支持 (由原生侧压缩), 其它平台忽略该项输出 JPEG</para>
+        /// <para>选图 (PickImage) 的压缩结果固定为 JPEG, 以便 ImagePickerHelper 通过 Texture2D.LoadImage 加载</para>
+        /// </summary>
+        public ECompressFormat Format { get; set; } = ECompressFormat.Jpeg;
     }
 }
@@ -0,0 +1,21 @@
+/*
+ * datetime     : 2026/10/18
+ * description  : 压缩输出格式枚举
+ */
+
+namespace ToolKit.Tools.ImagePicker
+{
+    /// <summary>
+    /// 压缩输出格式
+    /// <para>WebP 仅 Android 原生压缩 (CompressImage) 支持, 其它平台输出 JPEG</para>
+    /// <para>WebP 文件无法用 Texture2D.LoadImage 加载, 适合直接上传或写入文件的场景</para>
+    /// </summary>
+    public enum ECompressFormat
+    {
+        /// <summary> JPEG </summary>
+        Jpeg = 0,
+
+        /// <summary> WebP (有损), 同等画质下通常比 JPEG 小 25%~35% </summary>
+        WebP = 1
+    }
+}
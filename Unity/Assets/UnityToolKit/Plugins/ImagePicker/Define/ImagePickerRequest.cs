@@ -35,5 +35,30 @@ namespace ToolKit.Tools.ImagePicker
         /// <para>为 null 或 <see cref="CompressConfig.EnableCompress"/> 为 false 时不压缩</para>
         /// </summary>
         public CompressConfig Compress { get; set; }
+
+        /// <summary>
+        /// 原生侧解码的最大宽度 (像素, 按修正方向后的宽高), 0 = 不限制
+        /// <para>宽高均为 0 且启用了压缩时, 使用 <see cref="CompressConfig.MaxWidth"/>/<see cref="CompressConfig.MaxHeight"/></para>
+        /// <para>Android 按该尺寸降采样解码, 大图不再以全分辨率载入内存; 其它平台由压缩阶段缩放</para>
+        /// </summary>
+        public int DecodeMaxWidth { get; set; }
+
+        /// <summary>
+        /// 原生侧解码的最大高度 (像素), 0 = 不限制, 规则同 <see cref="DecodeMaxWidth"/>
+        /// </summary>
+        public int DecodeMaxHeight { get; set; }
+
+        /// <summary>
+        /// 原生侧以 RGB_565 解码 (仅 Android)
+        /// <para>解码内存减半, 适合低内存设备; 渐变区域可能出现色带</para>
+        /// </summary>
+        public bool LowMemoryDecode { get; set; }
+
+        /// <summary>
+        /// EXIF 方向不是正常方向时, 不旋转像素, 而是原样返回原图并通过 <see cref="ImagePickerResult.Rotation"/> 告知旋转角度 (仅 Android)
+        /// <para>省去解码和重新编码; 直接读取文件的业务需要自行处理旋转, 通过 ImagePickerHelper 加载时会自动处理</para>
+        /// <para>返回的文件已去掉 EXIF/XMP 等元数据 (GPS 位置、设备型号、拍摄时间), 文件内不再含方向标记, 旋转只能从 Rotation 得知</para>
+        /// </summary>
+        public bool RotationAsMetadata { get; set; }
     }
 }
@@ -33,10 +33,17 @@ namespace ToolKit.Tools.ImagePicker
         /// <summary> 文件大小 (字节) </summary>
         public long FileSize { get; set; }
 
+        /// <summary>
+        /// 显示时还需顺时针旋转的角度 (0/90/180/270)
+        /// <para>仅在请求开启 <see cref="ImagePickerRequest.RotationAsMetadata"/> 且原图被原样返回时非 0,
+        /// 此时 Width/Height 是文件中像素的宽高; <see cref="UnityToolKit.Plugins.ImagePicker.ImagePickerHelper"/> 加载纹理时会自动应用</para>
+        /// </summary>
+        public int Rotation { get; set; }
+
         /// <summary>
         /// 创建成功结果
         /// </summary>
-        public static ImagePickerResult Succeed(string filePath, int width, int height, long fileSize)
+        public static ImagePickerResult Succeed(string filePath, int width, int height, long fileSize, int rotation = 0)
         {
             return new ImagePickerResult
             {
@@ -45,7 +52,8 @@ namespace ToolKit.Tools.ImagePicker
                 FilePath = filePath,
                 Width = width,
                 Height = height,
-                FileSize = fileSize
+                FileSize = fileSize,
+                Rotation = rotation
             };
         }
 
@@ -27,7 +27,51 @@ namespace UnityToolKit.Plugins.ImagePicker
             if (result == null || !result.Success || string.IsNullOrEmpty(result.FilePath))
                 return null;
 
-            return LoadTextureFromFile(result.FilePath);
+            var texture = LoadTextureFromFile(result.FilePath);
+            if (texture == null || result.Rotation == 0) return texture;
+
+            // LoadImage 不读取 EXIF, 原样返回的原图需要在这里旋转
+            var rotated = RotateTexture(texture, result.Rotation);
+            UnityEngine.Object.Destroy(texture);
+            return rotated;
+        }
+
+        /// <summary>
+        /// 将纹理顺时针旋转 90/180/270 度, 返回新纹理 (不销毁原纹理)
+        /// </summary>
+        /// <param name="source">原纹理 (需可读)</param>
+        /// <param name="degrees">顺时针旋转角度</param>
+        public static Texture2D RotateTexture(Texture2D source, int degrees)
+        {
+            degrees = ((degrees % 360) + 360) % 360;
+            int w = source.width;
+            int h = source.height;
+            Color32[] src = source.GetPixels32();
+            var dst = new Color32[src.Length];
+
+            // 纹理行序自下而上
+            for (int y = 0; y < h; y++)
+            {
+                int row = y * w;
+                for (int x = 0; x < w; x++)
+                {
+                    int index;
+                    switch (degrees)
+                    {
+                        case 90: index = (w - 1 - x) * h + y; break;
+                        case 180: index = (h - 1 - y) * w + (w - 1 - x); break;
+                        case 270: index = x * h + (h - 1 - y); break;
+                        default: index = row + x; break;
+                    }
+                    dst[index] = src[row + x];
+                }
+            }
+
+            bool swap = degrees == 90 || degrees == 270;
+            var texture = new Texture2D(swap ? h : w, swap ? w : h, TextureFormat.RGBA32, false);
+            texture.SetPixels32(dst);
+            texture.Apply();
+            return texture;
         }
 
         /// <summary>